@@ -55,6 +55,18 @@ public abstract class ArrayUtil
 	 */
 	public static final double[][] EMPTY_DOUBLE_ARRAY_ARRAY = new double[0][];
 	
+	/**
+	 * Canonical empty float array.
+	 * @since 0.08
+	 */
+	public static final float[] EMPTY_FLOAT_ARRAY = new float[0];
+	
+	/**
+	 * Canonical empty float[][].
+	 * @since 0.08
+	 */
+	public static final float[][] EMPTY_FLOAT_ARRAY_ARRAY = new float[0][];
+	
 	/**
 	 * Canonical empty Object array.
 	 * 
@@ -37,6 +37,8 @@ import com.analog.lyric.dimple.events.IDimpleEventSource;
 import com.analog.lyric.dimple.events.IModelEventSource;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunctionRegistry;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableCache;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableInterner;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.core.FactorGraphRegistry;
 import com.analog.lyric.dimple.model.core.Ids;
@@ -154,6 +156,11 @@ public class DimpleEnvironment extends DimpleOptionHolder
 		}
 	};
 	
+	/**
+	 * Thread-specific override of {@link #activeRandom()}, if not null.
+	 */
+	private static final ThreadLocal<DimpleRandom> _threadRandom = new ThreadLocal<>();
+	
 	/**
 	 * Cache of double[] for temporary use.
 	 */
@@ -198,6 +205,10 @@ public class DimpleEnvironment extends DimpleOptionHolder
 	
 	private final FactorFunctionRegistry _factorFunctions = new FactorFunctionRegistry();
 	
+	private final FactorTableCache _factorTableCache = new FactorTableCache();
+	
+	private final FactorTableInterner _factorTableInterner = new FactorTableInterner();
+	
 	private final FactorGraphRegistry _factorGraphs = new FactorGraphRegistry();
 	
 	private final ConstructorRegistry<IGenericSampler> _genericSamplers =
@@ -574,12 +585,58 @@ public class DimpleEnvironment extends DimpleOptionHolder
 
 	/**
 	 * Random generator belonging to the {@link #active} environment.
+	 * <p>
+	 * If a random generator has been set for the current thread using {@link #setThreadRandom},
+	 * that will be returned instead.
 	 * @since 0.08
 	 * @see #random()
 	 */
 	public static DimpleRandom activeRandom()
 	{
-		return active().random();
+		final DimpleRandom threadRandom = _threadRandom.get();
+		return threadRandom != null ? threadRandom : active().random();
+	}
+	
+	/**
+	 * Sets random generator to be returned by {@link #activeRandom()} on the current thread.
+	 * <p>
+	 * This can be used by multithreaded solvers to give each worker its own independent
+	 * random stream, since {@link DimpleRandom} is not thread safe. Callers should restore
+	 * the previous value when done. Streams may be obtained using {@link #forkActiveRandom()}.
+	 * <p>
+	 * @param random is the random generator to use for the current thread or null to revert
+	 * to using the environment's {@link #random()}.
+	 * @return the previous thread-specific random generator, or null if there was none.
+	 * @since 0.08
+	 */
+	public static @Nullable DimpleRandom setThreadRandom(@Nullable DimpleRandom random)
+	{
+		final DimpleRandom prevRandom = _threadRandom.get();
+		if (random != null)
+		{
+			_threadRandom.set(random);
+		}
+		else
+		{
+			_threadRandom.remove();
+		}
+		return prevRandom;
+	}
+	
+	/**
+	 * Creates root of a tree of independent random streams for use by a parallel computation.
+	 * <p>
+	 * This simply invokes {@link DimpleRandom#fork()} on the {@link #activeRandom()}, so it is
+	 * deterministic given the seed of the active random generator. Each worker, chain or restart
+	 * should be given its own stream obtained from the root using {@link DimpleRandom#split(long)}
+	 * with a unique index, and can install it using {@link #setThreadRandom}. As long as the indexes do
+	 * not depend on which thread does the work, the results will not depend on the number of threads.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static DimpleRandom forkActiveRandom()
+	{
+		return activeRandom().fork();
 	}
 	
 	/**
@@ -745,6 +802,33 @@ public class DimpleEnvironment extends DimpleOptionHolder
 		return _factorFunctions;
 	}
 	
+	/**
+	 * Cache of factor tables generated by {@link FactorFunction}s in this environment.
+	 * <p>
+	 * The cache's capacity can be configured using {@link FactorTableCache#setCapacity(long)}, and
+	 * its hit, miss and eviction counts can be used to monitor its effectiveness.
+	 * <p>
+	 * @see FactorFunction#getFactorTable(com.analog.lyric.dimple.model.domains.JointDomainIndexer)
+	 * @since 0.08
+	 */
+	public FactorTableCache factorTableCache()
+	{
+		return _factorTableCache;
+	}
+	
+	/**
+	 * Shares factor tables with identical contents among factors in this environment.
+	 * <p>
+	 * Its statistics report how many tables were shared and an estimate of the memory saved.
+	 * <p>
+	 * @see FactorGraph#internFactorTables()
+	 * @since 0.08
+	 */
+	public FactorTableInterner factorTableInterner()
+	{
+		return _factorTableInterner;
+	}
+	
 	/**
 	 * Registry of factor graphs associated with this environment.
 	 * <p>
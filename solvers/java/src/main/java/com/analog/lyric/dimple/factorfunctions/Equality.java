@@ -86,6 +86,10 @@ public class Equality extends FactorFunction
     protected IFactorTable createTableForDomains(JointDomainIndexer domains)
     {
     	final DiscreteDomain domain = domains.get(0);
+    	if (_smoothingSpecified)
+    	{
+    		return super.createTableForDomains(domains);
+    	}
     	for (int i = 1; i < domains.size(); ++ i)
     	{
     		if (!domain.equals(domains.get(i)))
@@ -94,9 +98,9 @@ public class Equality extends FactorFunction
     		}
     	}
     	
-    	// Special case for all domains the same
+    	// Special case for all domains the same and no smoothing: one entry per domain element
 
-		final int size = domains.size();
+		final int size = domain.size();
 		final double[] energies = new double[size];
 		final int[] jointIndices = new int[size];
 		final int[] indices = new int[domains.size()];
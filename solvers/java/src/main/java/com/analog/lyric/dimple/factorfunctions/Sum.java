@@ -79,6 +79,8 @@ public class Sum extends FactorFunction
 	public final int[] getDirectedToIndices() {return new int[]{0};}
     @Override
 	public final boolean isDeterministicDirected() {return !_smoothingSpecified;}
+    @Override
+	public final boolean isThreadSafe() {return true;}
     @Override
 	public final void evalDeterministic(Value[] arguments)
     {
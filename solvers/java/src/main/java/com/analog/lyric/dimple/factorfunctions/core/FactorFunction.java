@@ -23,13 +23,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.MatrixProduct;
 import com.analog.lyric.dimple.model.domains.Domain;
@@ -61,10 +60,7 @@ public abstract class FactorFunction implements IFactorFunction
 	 * State
 	 */
 	
-	// FIXME - make factor table cache weak
-	// Cache of factor tables for this function by domain.
-	private AtomicReference<ConcurrentMap<JointDomainIndexer, IFactorTable>> _factorTables =
-		new AtomicReference<ConcurrentMap<JointDomainIndexer, IFactorTable>>();
+	// Factor tables for this function are cached by domain in the environment's FactorTableCache.
 	private final String _name;
 	
 	/*--------------
@@ -230,8 +226,7 @@ public abstract class FactorFunction implements IFactorFunction
     	boolean exists = false;
     	if (domains != null)
     	{
-    		ConcurrentMap<JointDomainIndexer, IFactorTable> factorTables = _factorTables.get();
-    		exists = factorTables != null && factorTables.containsKey(domains);
+    		exists = DimpleEnvironment.active().factorTableCache().contains(this, domains);
     	}
     	return exists;
     }
@@ -251,15 +246,10 @@ public abstract class FactorFunction implements IFactorFunction
     	
     	if (oldDomains != null && newDomains != null)
     	{
-    		ConcurrentMap<JointDomainIndexer, IFactorTable> tables = _factorTables.get();
-    		
-    		if (tables != null)
+    		IFactorTable table = getFactorTableIfExists(oldDomains);
+    		if (table != null)
     		{
-    			IFactorTable table = tables.get(oldDomains);
-    			if (table != null)
-    			{
-    				table.setConditional(Objects.requireNonNull(newDomains.getOutputSet()));
-    			}
+    			table.setConditional(Objects.requireNonNull(newDomains.getOutputSet()));
     		}
     	}
     	
@@ -297,6 +287,12 @@ public abstract class FactorFunction implements IFactorFunction
     }
     
     /**
+     * Returns factor table for this function with given domains.
+     * <p>
+     * Returns the table from the {@linkplain DimpleEnvironment#factorTableCache() factor table cache} of the
+     * active environment if it is there, otherwise creates it using {@link #createTableForDomains} and adds
+     * it to the cache.
+     * <p>
      * @since 0.05
      */
     public IFactorTable getFactorTable(@Nullable JointDomainIndexer domains)
@@ -306,26 +302,7 @@ public abstract class FactorFunction implements IFactorFunction
     		throw new DimpleException("only support getFactorTable for discrete domains");
     	}
 
-    	ConcurrentMap<JointDomainIndexer, IFactorTable> factorTables = _factorTables.get();
-    	if (factorTables == null)
-    	{
-    		_factorTables.compareAndSet(null, new ConcurrentHashMap<JointDomainIndexer, IFactorTable>());
-    		factorTables = _factorTables.get();
-    	}
-
-    	IFactorTable factorTable = factorTables.get(domains);
-    	
-    	if (factorTable == null)
-    	{
-    		IFactorTable newTable = createTableForDomains(domains);
-    		factorTable = factorTables.putIfAbsent(domains, newTable);
-    		if (factorTable == null)
-    		{
-    			factorTable = newTable;
-    		}
-    	}
-    	
-    	return factorTable;
+    	return DimpleEnvironment.active().factorTableCache().getOrCreate(this, domains);
     }
     
     /**
@@ -364,11 +341,7 @@ public abstract class FactorFunction implements IFactorFunction
     	IFactorTable factorTable = null;
     	if (domains != null)
     	{
-    		ConcurrentMap<JointDomainIndexer, IFactorTable> factorTables = _factorTables.get();
-    		if (factorTables != null)
-    		{
-    			factorTable = factorTables.get(domains);
-    		}
+    		factorTable = DimpleEnvironment.active().factorTableCache().get(this, domains);
     	}
     	return factorTable;
     }
@@ -401,6 +374,22 @@ public abstract class FactorFunction implements IFactorFunction
 		return IParametricFactorFunction.class.isInstance(this);
 	}
 	
+	/**
+	 * True if {@link #evalEnergy} and {@link #evalDeterministic} may be invoked concurrently from
+	 * multiple threads on this instance.
+	 * <p>
+	 * This is used to decide whether {@link IFactorTable#populateFromFunction} may evaluate the
+	 * function in parallel. Default implementation returns false, since many functions reuse
+	 * instance fields as scratch space during evaluation. Subclasses that do not modify any state
+	 * during evaluation may override this to return true.
+	 * <p>
+	 * @since 0.08
+	 */
+	public boolean isThreadSafe()
+	{
+		return false;
+	}
+	
     /**
      * The maximum number of variable updates beyond which {@link #updateDeterministic}
      * should not be called.
@@ -1154,6 +1154,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public final void setEnergyForJointIndex(double energy, int jointIndex)
 	{
+		assertNotInterned("setEnergyForJointIndex");
 		final double prevEnergy = getEnergyForJointIndex(jointIndex);
 		if (prevEnergy != energy)
 		{
@@ -1184,6 +1185,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void setEnergyForSparseIndex(double energy, int sparseIndex)
 	{
+		assertNotInterned("setEnergyForSparseIndex");
 		final double prevEnergy = getEnergyForSparseIndex(sparseIndex);
 		if (prevEnergy != energy)
 		{
@@ -1213,6 +1215,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void setWeightForJointIndex(double weight, int jointIndex)
 	{
+		assertNotInterned("setWeightForJointIndex");
 		final double prevWeight = getWeightForJointIndex(jointIndex);
 		if (prevWeight != weight)
 		{
@@ -1243,6 +1246,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void setWeightForSparseIndex(double weight, int sparseIndex)
 	{
+		assertNotInterned("setWeightForSparseIndex");
 		final double prevWeight = getWeightForSparseIndex(sparseIndex);
 		if (prevWeight != weight)
 		{
@@ -1417,6 +1421,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public int compact()
 	{
+		assertNotInterned("compact");
 		int nRemoved = 0;
 		
 		if ((_representation & ALL_SPARSE) != 0)
@@ -1678,18 +1683,21 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void setEnergiesDense(double[] energies)
 	{
+		assertNotInterned("setEnergiesDense");
 		setDenseValues(energies, DENSE_ENERGY);
 	}
 	
 	@Override
 	public void setWeightsDense(double[] weights)
 	{
+		assertNotInterned("setWeightsDense");
 		setDenseValues(weights, DENSE_WEIGHT);
 	}
 	
 	@Override
 	public void setDeterministicOutputIndices(int[] outputIndices)
 	{
+		assertNotInterned("setDeterministicOutputIndices");
 		_function = null;
 		final JointDomainIndexer domains = getDomainIndexer();
 		final int size = domains.getInputCardinality();
@@ -1732,12 +1740,14 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void setEnergiesSparse(int[] jointIndices, double[] energies)
 	{
+		assertNotInterned("setEnergiesSparse");
 		setSparseValues(jointIndices, energies, SPARSE_ENERGY);
 	}
 	
 	@Override
 	public void setWeightsSparse(int[] jointIndices, double[] weights)
 	{
+		assertNotInterned("setWeightsSparse");
 		setSparseValues(jointIndices, weights, SPARSE_WEIGHT);
 	}
 	
@@ -2110,6 +2120,7 @@ public class FactorTable extends SparseFactorTableBase
 	@Override
 	public void copy(IFactorTable that)
 	{
+		assertNotInterned("copy");
 		if (that == this)
 		{
 			return;
@@ -2273,6 +2284,27 @@ public class FactorTable extends SparseFactorTableBase
 		return converter;
 	}
 
+	/*-----------------
+	 * Package methods
+	 */
+	
+	/**
+	 * Computes the columns from the sparse to joint index mapping, without computing sparse indices.
+	 */
+	@Override
+	SparseIndexColumns computeIndexColumns(@Nullable SparseIndexColumns columns)
+	{
+		if (!hasSparseRepresentation())
+		{
+			setRepresentation(_representation | (hasDenseWeights() ? SPARSE_WEIGHT : SPARSE_ENERGY));
+		}
+		
+		final int[] sparseToJoint = _sparseIndexToJointIndex;
+		final int size = sparseSize();
+		return columns != null && columns.isFor(sparseToJoint) && columns.size() == size ? columns :
+			new SparseIndexColumns(getDomainIndexer(), sparseToJoint, size);
+	}
+	
 	/*-----------------
 	 * Private methods
 	 */
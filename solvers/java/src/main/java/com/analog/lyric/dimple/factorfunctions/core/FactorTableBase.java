@@ -16,16 +16,25 @@
 
 package com.analog.lyric.dimple.factorfunctions.core;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.environment.DimpleThread;
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 
 import cern.colt.list.DoubleArrayList;
 import cern.colt.list.IntArrayList;
@@ -40,9 +49,22 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 	
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Minimum number of joint (or input, for deterministic directed functions) indexes handled by one task
+	 * when populating a table in parallel.
+	 */
+	private static final int MIN_POPULATION_CHUNK_SIZE = 1 << 14;
+	
+	private static volatile int _parallelPopulationThreshold = 1 << 18;
+	
 	private JointDomainIndexer _domains;
 	protected @Nullable FactorFunction _function;
 	
+	/**
+	 * Set if this table was returned by {@link FactorTableInterner#intern}. This is not copied by clone.
+	 */
+	transient volatile @Nullable FactorTableInterner.Content _internKey;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -280,53 +302,76 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 		return _function;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * When the number of function evaluations is at least {@link #getParallelPopulationThreshold()},
+	 * the index range is split into chunks that are evaluated concurrently on the shared
+	 * {@link ThreadPool}, provided that {@link FactorFunction#isThreadSafe()} is true. Each chunk
+	 * collects only the entries with non-zero weight, which are then concatenated into a dense or sparse
+	 * representation as in the serial case. Population is always serial when invoked from a
+	 * {@link DimpleThread}, to avoid waiting on the pool from one of its own threads.
+	 */
 	@Override
 	public void populateFromFunction(FactorFunction function)
 	{
+		assertNotInterned("populateFromFunction");
 		final JointDomainIndexer domains = getDomainIndexer();
 		final IFactorTable table = this;
 		
-    	final Value[] values = Value.createFromDomains(domains);
-
     	if (function.isDeterministicDirected() && domains.isDirected())
     	{
     		final int maxInput = domains.getInputCardinality();
     		final int[] outputs = new int[maxInput];
 
-    		for (int inputIndex = 0; inputIndex < maxInput; ++inputIndex)
+    		final List<Callable<Object>> chunks = new ArrayList<>();
+    		for (int[] range : populationChunks(maxInput, function))
     		{
-    			domains.inputIndexToValues(inputIndex, values);
-    			function.evalDeterministic(values);
-    			outputs[inputIndex] = domains.outputIndexFromValues(values);
+    			chunks.add(new DeterministicChunk(function, domains, outputs, range[0], range[1]));
     		}
+    		invokeChunks(chunks);
 
     		table.setDeterministicOutputIndices(outputs);
     	}
     	else
     	{
-    		IntArrayList indexes = new IntArrayList();
-    		DoubleArrayList energies = new DoubleArrayList();
-
     		final int maxJoint = domains.getCardinality();
-    		for (int jointIndex = 0; jointIndex < maxJoint; ++ jointIndex)
+    		
+    		final List<EnergyChunk> chunks = new ArrayList<>();
+    		for (int[] range : populationChunks(maxJoint, function))
     		{
-    			domains.jointIndexToValues(jointIndex, values);
-    			double energy = function.evalEnergy(values);
-    			if (!Double.isInfinite(energy))
-    			{
-    				indexes.add(jointIndex);
-    				energies.add(energy);
-    			}
+    			chunks.add(new EnergyChunk(function, domains, range[0], range[1]));
     		}
+    		invokeChunks(chunks);
 
-    		if (indexes.size() == maxJoint)
+    		int size = 0;
+    		for (EnergyChunk chunk : chunks)
+    		{
+    			size += chunk._indexes.size();
+    		}
+    		
+    		final double[] energies = new double[size];
+    		for (int i = 0, offset = 0, n = chunks.size(); i < n; ++i)
     		{
-    			table.setEnergiesDense(Arrays.copyOf(energies.elements(), maxJoint));
+    			final DoubleArrayList chunkEnergies = chunks.get(i)._energies;
+    			System.arraycopy(chunkEnergies.elements(), 0, energies, offset, chunkEnergies.size());
+    			offset += chunkEnergies.size();
+    		}
+    		
+    		if (size == maxJoint)
+    		{
+    			table.setEnergiesDense(energies);
     		}
     		else
     		{
-    			table.setEnergiesSparse(Arrays.copyOf(indexes.elements(), indexes.size()),
-    				Arrays.copyOf(energies.elements(), indexes.size()));
+    			final int[] indexes = new int[size];
+    			for (int i = 0, offset = 0, n = chunks.size(); i < n; ++i)
+    			{
+    				final IntArrayList chunkIndexes = chunks.get(i)._indexes;
+    				System.arraycopy(chunkIndexes.elements(), 0, indexes, offset, chunkIndexes.size());
+    				offset += chunkIndexes.size();
+    			}
+    			table.setEnergiesSparse(indexes, energies);
     		}
     	}
 		
@@ -336,6 +381,7 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 	@Override
 	public void randomizeWeights(Random rand)
 	{
+		assertNotInterned("randomizeWeights");
 		_function = null;
 		if (hasDenseRepresentation())
 		{
@@ -353,5 +399,212 @@ public abstract class FactorTableBase implements IFactorTableBase, IFactorTable
 			}
 		}
 	}
+	
+	/*---------------
+	 * Static methods
+	 */
+	
+	/**
+	 * Minimum number of function evaluations for {@link #populateFromFunction(FactorFunction)} to
+	 * run in parallel.
+	 * <p>
+	 * Defaults to 2<sup>18</sup>.
+	 * <p>
+	 * @since 0.08
+	 * @see #setParallelPopulationThreshold(int)
+	 */
+	public static int getParallelPopulationThreshold()
+	{
+		return _parallelPopulationThreshold;
+	}
+	
+	/**
+	 * Sets value of {@link #getParallelPopulationThreshold()}.
+	 * <p>
+	 * Use {@link Integer#MAX_VALUE} to disable parallel population.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static void setParallelPopulationThreshold(int threshold)
+	{
+		_parallelPopulationThreshold = threshold;
+	}
+	
+	/*-----------------
+	 * Package methods
+	 */
+	
+	/**
+	 * Throws an exception if this table was returned by {@link FactorTableInterner#intern}.
+	 * <p>
+	 * Invoked on entry to methods that modify the contents of the table, because an interned table
+	 * may be shared by many factors.
+	 */
+	final void assertNotInterned(String method)
+	{
+		if (_internKey != null)
+		{
+			throw DimpleException.unsupportedMethod(getClass(), method,
+				"table is interned and may be shared, modify a copy instead");
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * Splits [0, size-1] into ranges to be evaluated by separate tasks, or a single range if
+	 * population should be done serially.
+	 */
+	private static List<int[]> populationChunks(int size, FactorFunction function)
+	{
+		final List<int[]> chunks = new ArrayList<>();
+		
+		int nChunks = 1;
+		if (size >= _parallelPopulationThreshold && function.isThreadSafe() &&
+			!(Thread.currentThread() instanceof DimpleThread))
+		{
+			// Get more chunks than threads to balance uneven evaluation costs.
+			ThreadPool.getThreadPool(); // make sure pool has been configured
+			final int nThreads = ThreadPool.getNumThreads();
+			if (nThreads > 1)
+			{
+				nChunks = Math.max(1, Math.min(4 * nThreads, size / MIN_POPULATION_CHUNK_SIZE));
+			}
+		}
+
+		for (int i = 0; i < nChunks; ++i)
+		{
+			chunks.add(new int[] { (int)((long)size * i / nChunks), (int)((long)size * (i + 1) / nChunks) });
+		}
 
-}
\ No newline at end of file
+		return chunks;
+	}
+	
+	private static void invokeChunks(List<? extends Callable<Object>> chunks)
+	{
+		try
+		{
+			if (chunks.size() == 1)
+			{
+				chunks.get(0).call();
+				return;
+			}
+
+			final ExecutorService service = ThreadPool.getThreadPool();
+			for (Future<Object> future : service.invokeAll(chunks))
+			{
+				future.get();
+			}
+		}
+		catch (ExecutionException ex)
+		{
+			final Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new DimpleException(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			throw ex;
+		}
+		catch (Exception ex)
+		{
+			throw new DimpleException(ex);
+		}
+	}
+	
+	/*---------------
+	 * Inner classes
+	 */
+	
+	/**
+	 * Evaluates energies for a range of joint indexes, keeping those with non-zero weight.
+	 */
+	private static final class EnergyChunk implements Callable<Object>
+	{
+		private final FactorFunction _function;
+		private final JointDomainIndexer _domains;
+		private final int _start;
+		private final int _end;
+		
+		private final IntArrayList _indexes = new IntArrayList();
+		private final DoubleArrayList _energies = new DoubleArrayList();
+		
+		private EnergyChunk(FactorFunction function, JointDomainIndexer domains, int start, int end)
+		{
+			_function = function;
+			_domains = domains;
+			_start = start;
+			_end = end;
+		}
+		
+		@Override
+		public @Nullable Object call()
+		{
+			final FactorFunction function = _function;
+			final JointDomainIndexer domains = _domains;
+			final Value[] values = Value.createFromDomains(domains);
+			
+    		for (int jointIndex = _start, end = _end; jointIndex < end; ++ jointIndex)
+    		{
+    			domains.jointIndexToValues(jointIndex, values);
+    			double energy = function.evalEnergy(values);
+    			if (!Double.isInfinite(energy))
+    			{
+    				_indexes.add(jointIndex);
+    				_energies.add(energy);
+    			}
+    		}
+    		
+			return null;
+		}
+	}
+	
+	/**
+	 * Evaluates output indexes of a deterministic directed function for a range of input indexes.
+	 */
+	private static final class DeterministicChunk implements Callable<Object>
+	{
+		private final FactorFunction _function;
+		private final JointDomainIndexer _domains;
+		private final int[] _outputs;
+		private final int _start;
+		private final int _end;
+		
+		private DeterministicChunk(FactorFunction function, JointDomainIndexer domains, int[] outputs,
+			int start, int end)
+		{
+			_function = function;
+			_domains = domains;
+			_outputs = outputs;
+			_start = start;
+			_end = end;
+		}
+		
+		@Override
+		public @Nullable Object call()
+		{
+			final FactorFunction function = _function;
+			final JointDomainIndexer domains = _domains;
+			final int[] outputs = _outputs;
+			final Value[] values = Value.createFromDomains(domains);
+			
+    		for (int inputIndex = _start, end = _end; inputIndex < end; ++inputIndex)
+    		{
+    			domains.inputIndexToValues(inputIndex, values);
+    			function.evalDeterministic(values);
+    			outputs[inputIndex] = domains.outputIndexFromValues(values);
+    		}
+    		
+			return null;
+		}
+	}
+}
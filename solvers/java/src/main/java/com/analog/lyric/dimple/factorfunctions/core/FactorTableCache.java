@@ -0,0 +1,513 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Bounded cache of factor tables generated by {@link FactorFunction}s.
+ * <p>
+ * Tables are cached by the identity of the function that produced them and the
+ * {@link JointDomainIndexer} of their domains. The cache holds strong references to the most recently
+ * used tables up to a total {@linkplain #getCapacity() capacity} in bytes, as estimated by
+ * {@link #estimateBytes(IFactorTableBase)}. When that is exceeded, the least recently used tables
+ * are evicted. Evicted tables are still weakly referenced, so a table that is held by a live factor will
+ * still be found by subsequent lookups, and will move back to the strongly referenced set, but one that
+ * is no longer in use can be reclaimed by the garbage collector.
+ * <p>
+ * Functions are also only weakly referenced, and the tables for a function are removed from the cache once
+ * it has been reclaimed. Note that a table populated by evaluating its function refers to it through
+ * {@link IFactorTable#getFactorFunction()}, so the function will not be reclaimed while that table is
+ * strongly referenced.
+ * <p>
+ * Cached tables are shared and solvers may add representations to them after they have been cached, so the
+ * size of a strongly referenced table is re-estimated whenever it is looked up. The {@linkplain #getBytes() total}
+ * is updated incrementally as tables are added, looked up and evicted, so it will not reflect growth of a
+ * table that has not been looked up since it grew.
+ * <p>
+ * There is one instance per {@link DimpleEnvironment}, which can be obtained from
+ * {@link DimpleEnvironment#factorTableCache()}.
+ * <p>
+ * @since 0.08
+ */
+@ThreadSafe
+public class FactorTableCache
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * The default value of {@link #getCapacity()}: 256MB.
+	 */
+	public static final long DEFAULT_CAPACITY = 256L * 1024 * 1024;
+
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Weakly references the function. Once the function has been reclaimed, a key is only equal to itself.
+	 */
+	private static final class Key extends WeakReference<FactorFunction>
+	{
+		private final JointDomainIndexer _domains;
+		private final int _hashCode;
+
+		private Key(FactorFunction function, JointDomainIndexer domains, @Nullable ReferenceQueue<FactorFunction> queue)
+		{
+			super(function, queue);
+			_domains = domains;
+			_hashCode = System.identityHashCode(function) * 31 + domains.hashCode();
+		}
+
+		@Override
+		public boolean equals(@Nullable Object obj)
+		{
+			if (obj == this)
+			{
+				return true;
+			}
+
+			if (obj instanceof Key)
+			{
+				final Key that = (Key)obj;
+				final FactorFunction function = get();
+				return function != null && function == that.get() && _domains.equals(that._domains);
+			}
+
+			return false;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hashCode;
+		}
+	}
+
+	private static final class WeakEntry extends WeakReference<IFactorTable>
+	{
+		private final Key _key;
+
+		private WeakEntry(Key key, IFactorTable table, ReferenceQueue<IFactorTable> queue)
+		{
+			super(table, queue);
+			_key = key;
+		}
+	}
+
+	private static final class StrongEntry
+	{
+		private final IFactorTable _table;
+		private long _bytes;
+
+		private StrongEntry(IFactorTable table)
+		{
+			_table = table;
+			_bytes = estimateBytes(table);
+		}
+
+		/**
+		 * Updates estimated size of table and returns the change from the previous estimate.
+		 */
+		private long reestimateBytes()
+		{
+			final long prevBytes = _bytes;
+			_bytes = estimateBytes(_table);
+			return _bytes - prevBytes;
+		}
+	}
+
+	/**
+	 * Most recently used tables in access order.
+	 */
+	@GuardedBy("this")
+	private final LinkedHashMap<Key, StrongEntry> _strong = new LinkedHashMap<>(16, .75f, true);
+
+	/**
+	 * Weak references to all tables in the cache, including those in {@link #_strong}.
+	 */
+	@GuardedBy("this")
+	private final Map<Key, WeakEntry> _weak = new HashMap<>();
+
+	private final ReferenceQueue<IFactorTable> _queue = new ReferenceQueue<>();
+
+	/**
+	 * Queue for keys of the tables in the cache whose functions have been reclaimed.
+	 */
+	private final ReferenceQueue<FactorFunction> _functionQueue = new ReferenceQueue<>();
+
+	@GuardedBy("this")
+	private long _capacity = DEFAULT_CAPACITY;
+
+	@GuardedBy("this")
+	private long _bytes = 0;
+
+	@GuardedBy("this")
+	private long _hitCount = 0;
+
+	@GuardedBy("this")
+	private long _missCount = 0;
+
+	@GuardedBy("this")
+	private long _evictionCount = 0;
+
+	/*----------------
+	 * Static methods
+	 */
+
+	/**
+	 * Estimates the number of bytes of heap used by the values of the table.
+	 * <p>
+	 * This counts the dense and sparse value arrays, the sparse to joint index mapping and the
+	 * sparse index arrays that are currently present in the table, including any
+	 * {@linkplain IFactorTable#getIndexColumnsSparseUnsafe() index columns} that have been computed for it.
+	 * It does not include the fixed overhead of the table object or its domains.
+	 */
+	public static long estimateBytes(IFactorTableBase table)
+	{
+		final long jointSize = table.jointSize();
+		final long sparseSize = table.sparseSize();
+
+		long bytes = 0;
+		if (table.hasDenseEnergies())
+		{
+			bytes += 8 * jointSize;
+		}
+		if (table.hasDenseWeights())
+		{
+			bytes += 8 * jointSize;
+		}
+		if (table.hasSparseEnergies())
+		{
+			bytes += 8 * sparseSize;
+		}
+		if (table.hasSparseWeights())
+		{
+			bytes += 8 * sparseSize;
+		}
+		if (table.hasSparseRepresentation())
+		{
+			// sparse to joint index mapping
+			bytes += 4 * sparseSize;
+		}
+		if (table instanceof IFactorTable && ((IFactorTable)table).hasSparseIndices())
+		{
+			// one int[] per sparse entry plus array header
+			bytes += (4 * table.getDimensions() + 16) * sparseSize;
+		}
+		if (table instanceof SparseFactorTableBase)
+		{
+			final SparseIndexColumns columns = ((SparseFactorTableBase)table).getIndexColumnsSparseIfComputed();
+			if (columns != null)
+			{
+				bytes += columns.estimateBytes();
+			}
+		}
+		return bytes;
+	}
+
+	/*---------
+	 * Lookup
+	 */
+
+	/**
+	 * Returns cached table for given function and domains or else null.
+	 * <p>
+	 * Counts as a cache hit or miss.
+	 */
+	public synchronized @Nullable IFactorTable get(FactorFunction function, JointDomainIndexer domains)
+	{
+		final IFactorTable table = lookup(new Key(function, domains, null));
+		if (table != null)
+		{
+			++_hitCount;
+		}
+		else
+		{
+			++_missCount;
+		}
+		return table;
+	}
+
+	/**
+	 * Returns cached table for given function and domains, if there is one, or else creates
+	 * a new table using {@link FactorFunction#createTableForDomains(JointDomainIndexer)} and
+	 * adds it to the cache.
+	 * <p>
+	 * The table is created without holding any lock on the cache, so it is possible that two threads
+	 * will create the same table concurrently, in which case the one added first will be returned
+	 * to both.
+	 */
+	public IFactorTable getOrCreate(FactorFunction function, JointDomainIndexer domains)
+	{
+		final Key key = new Key(function, domains, _functionQueue);
+
+		synchronized (this)
+		{
+			final IFactorTable table = lookup(key);
+			if (table != null)
+			{
+				++_hitCount;
+				return table;
+			}
+			++_missCount;
+		}
+
+		final IFactorTable newTable = function.createTableForDomains(domains);
+
+		synchronized (this)
+		{
+			final IFactorTable table = lookup(key);
+			if (table != null)
+			{
+				return table;
+			}
+			_weak.put(key, new WeakEntry(key, newTable, _queue));
+			addStrong(key, newTable);
+			return newTable;
+		}
+	}
+
+	/**
+	 * True if there is a table in the cache for given function and domains.
+	 * <p>
+	 * Unlike {@link #get}, this does not affect the hit or miss counts or recency of use.
+	 */
+	public synchronized boolean contains(FactorFunction function, JointDomainIndexer domains)
+	{
+		expungeStaleEntries();
+		final WeakEntry entry = _weak.get(new Key(function, domains, null));
+		return entry != null && entry.get() != null;
+	}
+
+	/*-----------------
+	 * Cache contents
+	 */
+
+	/**
+	 * Removes all tables from the cache.
+	 * <p>
+	 * Does not reset statistics.
+	 */
+	public synchronized void clear()
+	{
+		_strong.clear();
+		_weak.clear();
+		_bytes = 0;
+		expungeStaleEntries();
+	}
+
+	/**
+	 * Maximum total number of bytes of tables that will be strongly referenced by the cache.
+	 * <p>
+	 * Defaults to {@link #DEFAULT_CAPACITY}.
+	 * @see #setCapacity(long)
+	 */
+	public synchronized long getCapacity()
+	{
+		return _capacity;
+	}
+
+	/**
+	 * Sets {@link #getCapacity()}, evicting least recently used tables as needed.
+	 * <p>
+	 * @param bytes a non-negative value. If zero, tables will only be weakly referenced.
+	 * @throws IllegalArgumentException if {@code bytes} is negative.
+	 */
+	public synchronized void setCapacity(long bytes)
+	{
+		if (bytes < 0)
+		{
+			throw new IllegalArgumentException(String.format("Negative factor table cache capacity %d", bytes));
+		}
+		_capacity = bytes;
+		evict();
+	}
+
+	/**
+	 * Estimated total number of bytes of tables strongly referenced by the cache.
+	 * <p>
+	 * This will not exceed {@link #getCapacity()}. Each table is counted at its size when it was last
+	 * added or looked up.
+	 * @see #estimateBytes(IFactorTableBase)
+	 */
+	public synchronized long getBytes()
+	{
+		expungeStaleEntries();
+		return _bytes;
+	}
+
+	/**
+	 * Number of tables strongly referenced by the cache.
+	 */
+	public synchronized int getStrongCount()
+	{
+		return _strong.size();
+	}
+
+	/**
+	 * Number of tables in the cache that have not yet been reclaimed, including those only
+	 * weakly referenced.
+	 */
+	public synchronized int size()
+	{
+		expungeStaleEntries();
+		return _weak.size();
+	}
+
+	/*------------
+	 * Statistics
+	 */
+
+	/**
+	 * Number of lookups that found a table in the cache.
+	 */
+	public synchronized long getHitCount()
+	{
+		return _hitCount;
+	}
+
+	/**
+	 * Number of lookups that did not find a table in the cache.
+	 */
+	public synchronized long getMissCount()
+	{
+		return _missCount;
+	}
+
+	/**
+	 * Number of times a table has been evicted from the strongly referenced set.
+	 * <p>
+	 * This includes tables that were never strongly referenced because they were larger than the
+	 * {@link #getCapacity() capacity}.
+	 */
+	public synchronized long getEvictionCount()
+	{
+		return _evictionCount;
+	}
+
+	/**
+	 * Resets hit, miss and eviction counts to zero.
+	 */
+	public synchronized void resetStatistics()
+	{
+		_hitCount = 0;
+		_missCount = 0;
+		_evictionCount = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("FactorTableCache[tables=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+			_weak.size(), _bytes, _capacity, _hitCount, _missCount, _evictionCount);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	@GuardedBy("this")
+	private @Nullable IFactorTable lookup(Key key)
+	{
+		expungeStaleEntries();
+
+		final StrongEntry strong = _strong.get(key);
+		if (strong != null)
+		{
+			// The table may have grown since it was last looked up.
+			_bytes += strong.reestimateBytes();
+			evict();
+			return strong._table;
+		}
+
+		final WeakEntry weak = _weak.get(key);
+		if (weak != null)
+		{
+			final IFactorTable table = weak.get();
+			if (table != null)
+			{
+				// Still in use, so make it strong again.
+				addStrong(weak._key, table);
+				return table;
+			}
+		}
+
+		return null;
+	}
+
+	@GuardedBy("this")
+	private void addStrong(Key key, IFactorTable table)
+	{
+		final StrongEntry entry = new StrongEntry(table);
+		_strong.put(key, entry);
+		_bytes += entry._bytes;
+		evict();
+	}
+
+	@GuardedBy("this")
+	private void evict()
+	{
+		final Iterator<StrongEntry> iter = _strong.values().iterator();
+		while (_bytes > _capacity && iter.hasNext())
+		{
+			final StrongEntry entry = iter.next();
+			iter.remove();
+			_bytes -= entry._bytes;
+			++_evictionCount;
+		}
+	}
+
+	@GuardedBy("this")
+	private void expungeStaleEntries()
+	{
+		for (Object ref; (ref = _queue.poll()) != null; )
+		{
+			final WeakEntry entry = (WeakEntry)ref;
+			if (_weak.get(entry._key) == entry)
+			{
+				_weak.remove(entry._key);
+			}
+		}
+
+		for (Object ref; (ref = _functionQueue.poll()) != null; )
+		{
+			final Key key = (Key)ref;
+			_weak.remove(key);
+			final StrongEntry entry = _strong.remove(key);
+			if (entry != null)
+			{
+				_bytes -= entry._bytes;
+			}
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.WeakInterner;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.factors.DiscreteFactor;
+
+/**
+ * Shares a single instance among factor tables with identical contents.
+ * <p>
+ * Tables are compared by their {@linkplain IFactorTableBase#getDomainIndexer() domains}, including
+ * directionality, and by the exact energy of every entry with non-zero weight. The first time a table
+ * with given contents is {@linkplain #intern interned}, a copy of it is made and that copy is returned for
+ * all tables with the same contents. The copy is only weakly referenced by the interner, so it can be
+ * reclaimed once no factor is using it.
+ * <p>
+ * Interned tables are shared and cannot be modified: methods that change their contents, direction or
+ * sparse layout throw a {@link DimpleException}, while changes of {@linkplain
+ * IFactorTable#setRepresentation representation} are still allowed. {@link DiscreteFactor} keeps track of
+ * whether its table is shared and makes a private copy before modifying it.
+ * <p>
+ * There is one instance per {@link DimpleEnvironment}, which can be obtained from
+ * {@link DimpleEnvironment#factorTableInterner()}.
+ * <p>
+ * @since 0.08
+ * @see DiscreteFactor#internFactorTable()
+ */
+@ThreadSafe
+public class FactorTableInterner
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Content-based key for a table.
+	 * <p>
+	 * The key of an interned table is referenced by the table itself, so that it will remain in the weak
+	 * interner for as long as the table is in use.
+	 */
+	static final class Content
+	{
+		private FactorTableBase _table;
+		private final int _hashCode;
+
+		private Content(FactorTableBase table)
+		{
+			_table = table;
+			_hashCode = computeHash(table);
+		}
+
+		@Override
+		public boolean equals(@Nullable Object obj)
+		{
+			if (obj == this)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof Content))
+			{
+				return false;
+			}
+
+			final Content that = (Content)obj;
+			return _hashCode == that._hashCode && contentEquals(_table, that._table);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hashCode;
+		}
+	}
+
+	private final WeakInterner<Content> _interner = WeakInterner.create();
+
+	private final AtomicLong _internCount = new AtomicLong();
+	private final AtomicLong _sharedCount = new AtomicLong();
+	private final AtomicLong _bytesSaved = new AtomicLong();
+
+	/*-----------------------------
+	 * FactorTableInterner methods
+	 */
+
+	/**
+	 * Returns shared table with the same contents as {@code table}.
+	 * <p>
+	 * If {@code table} is already an interned table it will simply be returned. Otherwise, if no other table
+	 * with the same contents has been interned, an immutable copy of it will be interned. Tables that are
+	 * not a subclass of {@link FactorTableBase} or that do not
+	 * {@linkplain IFactorTableBase#supportsJointIndexing() support joint indexing} are returned as is.
+	 * <p>
+	 * Methods that modify the contents of the returned table will throw a {@link DimpleException}.
+	 */
+	public IFactorTable intern(IFactorTable table)
+	{
+		if (!(table instanceof FactorTableBase) || !table.supportsJointIndexing())
+		{
+			return table;
+		}
+
+		final FactorTableBase tableBase = (FactorTableBase)table;
+		if (tableBase._internKey != null)
+		{
+			return table;
+		}
+
+		_internCount.incrementAndGet();
+
+		final Content content = new Content(tableBase);
+		
+		// WeakInterner synchronizes on itself, so holding its lock here ensures that other threads
+		// cannot see a new key until its table has been replaced by the copy.
+		synchronized (_interner)
+		{
+			final Content shared = _interner.intern(content);
+			if (shared != content)
+			{
+				_sharedCount.incrementAndGet();
+				_bytesSaved.addAndGet(FactorTableCache.estimateBytes(table));
+				return shared._table;
+			}
+
+			// Intern a private copy, so that subsequent changes to the caller's table by the caller
+			// cannot affect the interned contents.
+			final FactorTableBase copy = tableBase.clone();
+			copy._internKey = content;
+			content._table = copy;
+			return copy;
+		}
+	}
+
+	/**
+	 * True if {@code table} was returned by {@link #intern} and therefore must not be modified.
+	 */
+	public static boolean isInterned(IFactorTable table)
+	{
+		return table instanceof FactorTableBase && ((FactorTableBase)table)._internKey != null;
+	}
+
+	/**
+	 * The number of times {@link #intern} has been invoked on a table that was not already interned.
+	 */
+	public long getInternCount()
+	{
+		return _internCount.get();
+	}
+
+	/**
+	 * The number of times {@link #intern} returned a table that had previously been interned.
+	 */
+	public long getSharedCount()
+	{
+		return _sharedCount.get();
+	}
+
+	/**
+	 * The estimated number of bytes of table values that were replaced by a previously interned table.
+	 * <p>
+	 * This is the sum of {@link FactorTableCache#estimateBytes(IFactorTableBase)} over all tables for which
+	 * {@link #intern} returned a different, previously interned table. The memory is only actually saved
+	 * if the caller no longer refers to the original table.
+	 */
+	public long getBytesSaved()
+	{
+		return _bytesSaved.get();
+	}
+
+	/**
+	 * Resets intern count, shared count and bytes saved to zero.
+	 */
+	public void resetStatistics()
+	{
+		_internCount.set(0);
+		_sharedCount.set(0);
+		_bytesSaved.set(0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("FactorTableInterner[interned=%d, shared=%d, bytesSaved=%d]",
+			getInternCount(), getSharedCount(), getBytesSaved());
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Computes hash from the joint index and energy of each entry with non-zero weight.
+	 * <p>
+	 * Visits the sparse entries if the table has a sparse representation, and otherwise the dense
+	 * entries, without changing the table's representation. The combination does not depend on the
+	 * order in which entries are visited.
+	 */
+	private static int computeHash(FactorTableBase table)
+	{
+		int hash = 0;
+
+		if (table.hasSparseRepresentation())
+		{
+			for (int si = 0, n = table.sparseSize(); si < n; ++si)
+			{
+				final double energy = table.getEnergyForSparseIndex(si);
+				if (!Double.isInfinite(energy))
+				{
+					hash += hashEntry(table.sparseIndexToJointIndex(si), energy);
+				}
+			}
+		}
+		else
+		{
+			for (int ji = 0, n = table.jointSize(); ji < n; ++ji)
+			{
+				final double energy = table.getEnergyForJointIndex(ji);
+				if (!Double.isInfinite(energy))
+				{
+					hash += hashEntry(ji, energy);
+				}
+			}
+		}
+
+		return table.getDomainIndexer().hashCode() * 31 + hash;
+	}
+
+	/**
+	 * Compares the entries of two tables with the same hash.
+	 * <p>
+	 * Since both tables have the same number of entries with non-zero weight, it is enough to look
+	 * up each such entry of {@code table1} in {@code table2}.
+	 */
+	private static boolean contentEquals(FactorTableBase table1, FactorTableBase table2)
+	{
+		if (table1 == table2)
+		{
+			return true;
+		}
+
+		if (!table1.getDomainIndexer().equals(table2.getDomainIndexer()) ||
+			table1.countNonZeroWeights() != table2.countNonZeroWeights())
+		{
+			return false;
+		}
+
+		if (table1.hasSparseRepresentation())
+		{
+			for (int si = 0, n = table1.sparseSize(); si < n; ++si)
+			{
+				final double energy = table1.getEnergyForSparseIndex(si);
+				if (!Double.isInfinite(energy) &&
+					!sameEnergy(energy, table2.getEnergyForJointIndex(table1.sparseIndexToJointIndex(si))))
+				{
+					return false;
+				}
+			}
+		}
+		else
+		{
+			for (int ji = 0, n = table1.jointSize(); ji < n; ++ji)
+			{
+				final double energy = table1.getEnergyForJointIndex(ji);
+				if (!Double.isInfinite(energy) && !sameEnergy(energy, table2.getEnergyForJointIndex(ji)))
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean sameEnergy(double energy1, double energy2)
+	{
+		return Double.doubleToLongBits(energy1) == Double.doubleToLongBits(energy2);
+	}
+
+	private static int hashEntry(int jointIndex, double energy)
+	{
+		return (jointIndex * 31) ^ hashDouble(energy);
+	}
+
+	private static int hashDouble(double value)
+	{
+		final long bits = Double.doubleToLongBits(value);
+		return (int)(bits ^ (bits >>> 32));
+	}
+}
@@ -250,6 +250,22 @@ public interface IFactorTable extends IFactorTableBase
 	 */
 	public int[][] getIndicesSparseUnsafe();
 	
+	/**
+	 * Returns column-major representation of the sparse element indices.
+	 * <p>
+	 * This contains the same information as {@link #getIndicesSparseUnsafe()} but is laid out to
+	 * allow efficient iteration over a single dimension of the table. The object is computed on demand
+	 * and cached until the sparse indices of the table change, so callers should not hold onto it across
+	 * modifications of the table.
+	 * <p>
+	 * This may implicitly modify the representation of the table to include a sparse form. A {@link FactorTable}
+	 * computes the columns without also computing the sparse indices returned by {@link #getIndicesSparseUnsafe()},
+	 * as described in {@link SparseIndexColumns}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public SparseIndexColumns getIndexColumnsSparseUnsafe();
+	
 	/**
 	 * {@inheritDoc}
 	 * <p>
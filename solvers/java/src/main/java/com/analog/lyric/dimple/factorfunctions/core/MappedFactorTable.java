@@ -0,0 +1,931 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * Read-only factor table values stored in a memory-mapped file.
+ * <p>
+ * The energies of a table are stored either densely, one per joint index, or sparsely, as an ascending
+ * array of joint indices with non-zero weight followed by their energies. The file is memory mapped in
+ * windows of up to 1GB and values are read directly from the mapped buffers, so tables need not fit
+ * on the Java heap, do not add to garbage collection costs, and can be computed offline and shared
+ * between processes through the operating system's page cache.
+ * <p>
+ * Files are written using {@link #write(IFactorTableBase, File)} and opened using
+ * {@link #open(File, JointDomainIndexer)}. The file records the sizes of the table's domains, which
+ * must match those provided when it is opened. Values are stored in little-endian order.
+ * <p>
+ * This is a read-only {@link IFactorTableBase} whose energies are stored densely or sparsely as
+ * described above, and which has no weight representation. Methods that would modify the table throw a
+ * {@link DimpleException}. It is not an {@link IFactorTable}, since that interface exposes its values through
+ * heap arrays. It provides the lookups needed for sampling directly, such as {@link #getEnergySlice}, and
+ * {@link #toFactorTable()} can be used to load the values onto the heap when a full table is needed. Use
+ * {@link MappedTableFactorFunction} to create factors from the table. The
+ * table is not analyzed when opened, so it is never reported to be directed, deterministic, conditional or
+ * normalized beyond what is specified by its domains.
+ * <p>
+ * @since 0.08
+ */
+@ThreadSafe
+public final class MappedFactorTable implements IFactorTableBase, Closeable
+{
+	/*-----------
+	 * Constants
+	 */
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAGIC = 0x54464D44; // "DMFT" in little-endian order
+	private static final int VERSION = 1;
+	private static final int FLAG_DENSE = 1;
+
+	private static final int DOUBLE_WINDOW_SHIFT = 27;
+	private static final int INT_WINDOW_SHIFT = 28;
+
+	/*-------
+	 * State
+	 */
+
+	private final transient FileChannel _channel;
+	private final JointDomainIndexer _domains;
+	private final boolean _dense;
+	private final int _sparseSize;
+
+	/**
+	 * Energies in windows of 2<sup>{@link #DOUBLE_WINDOW_SHIFT}</sup> values.
+	 */
+	private final transient DoubleBuffer[] _energies;
+
+	/**
+	 * Ascending sparse to joint index mapping in windows of 2<sup>{@link #INT_WINDOW_SHIFT}</sup> values.
+	 * Empty if {@link #_dense}.
+	 */
+	private final transient IntBuffer[] _jointIndices;
+
+	/*--------------
+	 * Construction
+	 */
+
+	private MappedFactorTable(FileChannel channel, JointDomainIndexer domains) throws IOException
+	{
+		_channel = channel;
+		_domains = domains;
+
+		final int nDomains = domains.size();
+		final int headerSize = headerSize(nDomains);
+		if (channel.size() < headerSize)
+		{
+			throw new DimpleException("Factor table file is too small (%d bytes)", channel.size());
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(header, 0);
+		header.flip();
+
+		if (header.getInt() != MAGIC)
+		{
+			throw new DimpleException("Not a factor table file");
+		}
+		final int version = header.getInt();
+		if (version != VERSION)
+		{
+			throw new DimpleException("Unsupported factor table file version %d", version);
+		}
+		final int flags = header.getInt();
+		final int fileDomains = header.getInt();
+		if (fileDomains != nDomains)
+		{
+			throw new DimpleException("Factor table file has %d dimensions but expected %d", fileDomains, nDomains);
+		}
+		for (int i = 0; i < nDomains; ++i)
+		{
+			final int size = header.getInt();
+			if (size != domains.getDomainSize(i))
+			{
+				throw new DimpleException("Factor table file has size %d for dimension %d but expected %d",
+					size, i, domains.getDomainSize(i));
+			}
+		}
+
+		_dense = (flags & FLAG_DENSE) != 0;
+		final int cardinality = domains.getCardinality();
+		_sparseSize = _dense ? cardinality : header.getInt(16 + 4 * nDomains);
+		if (_sparseSize < 0 || _sparseSize > cardinality)
+		{
+			throw new DimpleException("Factor table file has invalid size %d", _sparseSize);
+		}
+
+		// Check the length before mapping, so that a truncated file is reported as such rather than
+		// as a failure to map a region beyond the end of a read-only channel.
+		final long energiesOffset = headerSize + (_dense ? 0 : align8(4L * _sparseSize));
+		if (channel.size() < energiesOffset + 8L * _sparseSize)
+		{
+			throw new DimpleException("Factor table file is truncated");
+		}
+
+		_jointIndices = _dense ? new IntBuffer[0] : mapInts(headerSize, _sparseSize);
+		_energies = mapDoubles(energiesOffset, _sparseSize);
+	}
+
+	/**
+	 * Opens read-only table stored in {@code file} by {@link #write}.
+	 * <p>
+	 * @param domains must have the same number of dimensions with the same sizes as the table that
+	 * was written. Only the sizes are checked.
+	 * @throws IOException if file cannot be opened or mapped.
+	 * @throws DimpleException if file is not a factor table file or does not match {@code domains}.
+	 */
+	public static MappedFactorTable open(File file, JointDomainIndexer domains) throws IOException
+	{
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			return new MappedFactorTable(channel, domains);
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Writes values of {@code table} to {@code file} in the form read by {@link #open}.
+	 * <p>
+	 * Tables with a {@linkplain IFactorTableBase#hasDenseRepresentation() dense representation} are
+	 * written densely, others sparsely. Any existing file will be overwritten.
+	 * <p>
+	 * @throws IOException if file cannot be written.
+	 */
+	public static void write(IFactorTableBase table, File file) throws IOException
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		final int nDomains = domains.size();
+		final boolean dense = table.hasDenseRepresentation();
+		final int size = dense ? table.jointSize() : table.sparseSize();
+
+		final ByteBuffer header = ByteBuffer.allocate(headerSize(nDomains)).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(dense ? FLAG_DENSE : 0).putInt(nDomains);
+		for (int i = 0; i < nDomains; ++i)
+		{
+			header.putInt(domains.getDomainSize(i));
+		}
+		header.putInt(dense ? 0 : size);
+		header.rewind();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			long offset = header.capacity();
+			channel.write(header, 0);
+
+			if (!dense)
+			{
+				final IntBuffer[] jointIndices = mapInts(channel, FileChannel.MapMode.READ_WRITE, offset, size);
+				for (int si = 0; si < size; ++si)
+				{
+					jointIndices[si >>> INT_WINDOW_SHIFT].put(table.sparseIndexToJointIndex(si));
+				}
+				offset += align8(4L * size);
+			}
+
+			final DoubleBuffer[] energies = mapDoubles(channel, FileChannel.MapMode.READ_WRITE, offset, size);
+			for (int i = 0; i < size; ++i)
+			{
+				energies[i >>> DOUBLE_WINDOW_SHIFT].put(dense ? table.getEnergyForJointIndex(i) :
+					table.getEnergyForSparseIndex(i));
+			}
+		}
+	}
+
+	/*-------------------
+	 * Closeable methods
+	 */
+
+	/**
+	 * Closes the underlying file channel.
+	 * <p>
+	 * The mapped buffers remain readable and will not be released until this object is garbage
+	 * collected.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		_channel.close();
+	}
+
+	/*------------------
+	 * Iterable methods
+	 */
+
+	@Override
+	public IFactorTableIterator iterator()
+	{
+		return new FactorTableIterator(this, false);
+	}
+
+	@Override
+	public IFactorTableIterator fullIterator()
+	{
+		return new FactorTableIterator(this, true);
+	}
+
+	/*--------------------------
+	 * IFactorTableBase methods
+	 */
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns a modifiable heap-based copy as produced by {@link #toFactorTable()}.
+	 */
+	@Override
+	public IFactorTable clone()
+	{
+		return toFactorTable();
+	}
+
+	@Override
+	public int countNonZeroWeights()
+	{
+		int count = 0;
+		for (int i = 0, n = _sparseSize; i < n; ++i)
+		{
+			if (getEnergyForSparseIndex(i) != Double.POSITIVE_INFINITY)
+			{
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The result is a heap-based table.
+	 */
+	@Override
+	public IFactorTableBase convert(JointDomainReindexer converter)
+	{
+		return toFactorTable().convert(converter);
+	}
+
+	@Override
+	public double density()
+	{
+		return (double)countNonZeroWeights() / jointSize();
+	}
+
+	/**
+	 * @throws DimpleException since table is never {@link #isDeterministicDirected()}.
+	 */
+	@Override
+	public void evalDeterministic(Value[] arguments)
+	{
+		throw DimpleException.unsupportedMethod(getClass(), "evalDeterministic", "Table is not deterministic directed.");
+	}
+
+	@Override
+	public int getDimensions()
+	{
+		return _domains.size();
+	}
+
+	@Override
+	public double getEnergyForIndicesDense(int ... indices)
+	{
+		return getEnergyForIndices(indices);
+	}
+
+	@Override
+	public double getEnergyForValuesDense(Value ... values)
+	{
+		return getEnergyForValues(values);
+	}
+
+	@Override
+	public double getWeightForIndicesDense(int ... indices)
+	{
+		return getWeightForIndices(indices);
+	}
+
+	@Override
+	public double getWeightForValuesDense(Value ... values)
+	{
+		return getWeightForValues(values);
+	}
+
+	/**
+	 * The domains of the table as provided to {@link #open}.
+	 */
+	@Override
+	public JointDomainIndexer getDomainIndexer()
+	{
+		return _domains;
+	}
+
+	@Override
+	public double getEnergyForElements(Object ... elements)
+	{
+		return getEnergyForJointIndex(_domains.jointIndexFromElements(elements));
+	}
+
+	/**
+	 * The energy for given joint index, which is infinite if not stored.
+	 */
+	@Override
+	public double getEnergyForJointIndex(int jointIndex)
+	{
+		final int sparseIndex = sparseIndexFromJointIndex(jointIndex);
+		return sparseIndex >= 0 ? getEnergyForSparseIndex(sparseIndex) : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * The energy of the value with given sparse index.
+	 * @param sparseIndex is in the range [0, {@link #sparseSize()} - 1].
+	 */
+	@Override
+	public double getEnergyForSparseIndex(int sparseIndex)
+	{
+		return _energies[sparseIndex >>> DOUBLE_WINDOW_SHIFT].get(sparseIndex & windowMask(DOUBLE_WINDOW_SHIFT));
+	}
+
+	/**
+	 * The energy for given element indices, which is infinite if not stored.
+	 */
+	@Override
+	public double getEnergyForIndices(int ... indices)
+	{
+		return getEnergyForJointIndex(_domains.jointIndexFromIndices(indices));
+	}
+
+	@Override
+	public double getEnergyForValues(Value ... values)
+	{
+		return getEnergyForJointIndex(_domains.jointIndexFromValues(values));
+	}
+
+	@Override
+	public @Nullable BitSet getInputSet()
+	{
+		return _domains.getInputSet();
+	}
+
+	@Override
+	public @Nullable BitSet getOutputSet()
+	{
+		return _domains.getOutputSet();
+	}
+
+	@Override
+	public double getWeightForElements(Object ... elements)
+	{
+		return Math.exp(-getEnergyForElements(elements));
+	}
+
+	/**
+	 * The weight for given joint index, which is zero if not stored.
+	 */
+	@Override
+	public double getWeightForJointIndex(int jointIndex)
+	{
+		return Math.exp(-getEnergyForJointIndex(jointIndex));
+	}
+
+	@Override
+	public double getWeightForSparseIndex(int sparseIndex)
+	{
+		return Math.exp(-getEnergyForSparseIndex(sparseIndex));
+	}
+
+	@Override
+	public double getWeightForIndices(int ... indices)
+	{
+		return Math.exp(-getEnergyForIndices(indices));
+	}
+
+	@Override
+	public double getWeightForValues(Value ... values)
+	{
+		return Math.exp(-getEnergyForValues(values));
+	}
+
+	@Override
+	public boolean hasDenseRepresentation()
+	{
+		return _dense;
+	}
+
+	@Override
+	public boolean hasDenseEnergies()
+	{
+		return _dense;
+	}
+
+	@Override
+	public boolean hasDenseWeights()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean hasMaximumDensity()
+	{
+		return _sparseSize == jointSize() && countNonZeroWeights() == _sparseSize;
+	}
+
+	@Override
+	public boolean hasSparseRepresentation()
+	{
+		return !_dense;
+	}
+
+	@Override
+	public boolean hasSparseEnergies()
+	{
+		return !_dense;
+	}
+
+	@Override
+	public boolean hasSparseWeights()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isDeterministicDirected()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isConditional()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean isDirected()
+	{
+		return _domains.isDirected();
+	}
+
+	@Override
+	public boolean isNormalized()
+	{
+		return false;
+	}
+
+	/**
+	 * The number of joint indexes in the table.
+	 */
+	@Override
+	public int jointSize()
+	{
+		return _domains.getCardinality();
+	}
+
+	@Override
+	public int sparseIndexFromElements(Object ... elements)
+	{
+		return sparseIndexFromJointIndex(_domains.jointIndexFromElements(elements));
+	}
+
+	@Override
+	public int sparseIndexFromIndices(int ... indices)
+	{
+		return sparseIndexFromJointIndex(_domains.jointIndexFromIndices(indices));
+	}
+
+	@Override
+	public int sparseIndexFromValues(Value ... values)
+	{
+		return sparseIndexFromJointIndex(_domains.jointIndexFromValues(values));
+	}
+
+	/**
+	 * The sparse index of the value with given joint index, or a negative value if not stored.
+	 * <p>
+	 * As with {@link IFactorTableBase#sparseIndexFromJointIndex(int)}, a negative value
+	 * is -1 minus the position at which the index would be inserted. This uses a binary search
+	 * when not {@link #isDense()}.
+	 */
+	@Override
+	public int sparseIndexFromJointIndex(int jointIndex)
+	{
+		if (_dense)
+		{
+			return jointIndex;
+		}
+
+		int low = 0, high = _sparseSize - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final int midJoint = jointIndex(mid);
+			if (midJoint < jointIndex)
+			{
+				low = mid + 1;
+			}
+			else if (midJoint > jointIndex)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+		return -1 - low;
+	}
+
+	@Override
+	public Object[] sparseIndexToElements(int sparseIndex, @Nullable Object[] elements)
+	{
+		return _domains.jointIndexToElements(sparseIndexToJointIndex(sparseIndex), elements);
+	}
+
+	/**
+	 * The joint index of the value with given sparse index.
+	 * @param sparseIndex is in the range [0, {@link #sparseSize()} - 1].
+	 */
+	@Override
+	public int sparseIndexToJointIndex(int sparseIndex)
+	{
+		return _dense ? sparseIndex : jointIndex(sparseIndex);
+	}
+
+	@Override
+	public int[] sparseIndexToIndices(int sparseIndex, @Nullable int[] indices)
+	{
+		return _domains.jointIndexToIndices(sparseIndexToJointIndex(sparseIndex), indices);
+	}
+
+	@Override
+	public int[] sparseIndexToIndices(int sparseIndex)
+	{
+		return sparseIndexToIndices(sparseIndex, null);
+	}
+
+	@Override
+	public void normalize()
+	{
+		throw readOnly("normalize");
+	}
+
+	@Override
+	public void normalizeConditional()
+	{
+		throw readOnly("normalizeConditional");
+	}
+
+	@Override
+	public int normalizeConditional(boolean ignoreZeroWeightInputs)
+	{
+		throw readOnly("normalizeConditional");
+	}
+
+	@Override
+	public void setEnergyForElements(double energy, Object ... elements)
+	{
+		throw readOnly("setEnergyForElements");
+	}
+
+	@Override
+	public void setEnergyForIndices(double energy, int ... indices)
+	{
+		throw readOnly("setEnergyForIndices");
+	}
+
+	@Override
+	public void setEnergyForValues(double energy, Value ... values)
+	{
+		throw readOnly("setEnergyForValues");
+	}
+
+	@Override
+	public void setEnergyForSparseIndex(double energy, int sparseIndex)
+	{
+		throw readOnly("setEnergyForSparseIndex");
+	}
+
+	@Override
+	public void setEnergyForJointIndex(double energy, int jointIndex)
+	{
+		throw readOnly("setEnergyForJointIndex");
+	}
+
+	@Override
+	public void setWeightForElements(double weight, Object ... elements)
+	{
+		throw readOnly("setWeightForElements");
+	}
+
+	@Override
+	public void setWeightForIndices(double weight, int ... indices)
+	{
+		throw readOnly("setWeightForIndices");
+	}
+
+	@Override
+	public void setWeightForValues(double weight, Value ... values)
+	{
+		throw readOnly("setWeightForValues");
+	}
+
+	@Override
+	public void setWeightForSparseIndex(double weight, int sparseIndex)
+	{
+		throw readOnly("setWeightForSparseIndex");
+	}
+
+	@Override
+	public void setWeightForJointIndex(double weight, int jointIndex)
+	{
+		throw readOnly("setWeightForJointIndex");
+	}
+
+	/**
+	 * The number of stored values: the same as {@link #jointSize()} if {@link #isDense()}.
+	 */
+	@Override
+	public int sparseSize()
+	{
+		return _sparseSize;
+	}
+
+	@Override
+	public boolean supportsJointIndexing()
+	{
+		return true;
+	}
+
+	/*---------------------------
+	 * MappedFactorTable methods
+	 */
+
+	/**
+	 * True if the values are stored densely, one per joint index.
+	 */
+	public boolean isDense()
+	{
+		return _dense;
+	}
+
+	/**
+	 * Computes energies along one dimension of the table with the other dimensions fixed.
+	 * <p>
+	 * This is the equivalent of {@link IFactorTable#getEnergySlice(double[], int, int[])}, as used in
+	 * Gibbs sampling.
+	 * <p>
+	 * @param slice if non-null and large enough will be used as the return value, otherwise a new array
+	 * will be allocated.
+	 * @param sliceDimension is in the range [0, {@link JointDomainIndexer#size()} - 1].
+	 * @param indices specifies the fixed element indices. The value at position {@code sliceDimension} is
+	 * ignored.
+	 */
+	public double[] getEnergySlice(@Nullable double[] slice, int sliceDimension, int ... indices)
+	{
+		final int start = _domains.jointIndexFromIndices(indices) -
+			indices[sliceDimension] * _domains.getStride(sliceDimension);
+		return getEnergySliceFrom(slice, sliceDimension, start);
+	}
+
+	/**
+	 * Computes energies along one dimension of the table with the other dimensions fixed.
+	 * <p>
+	 * This is the equivalent of {@link IFactorTable#getEnergySlice(double[], int, Value...)}, as used in
+	 * Gibbs sampling.
+	 * <p>
+	 * @param values specifies the values of the fixed dimensions. The value at position {@code sliceDimension}
+	 * is ignored.
+	 * @see #getEnergySlice(double[], int, int...)
+	 */
+	public double[] getEnergySlice(@Nullable double[] slice, int sliceDimension, Value ... values)
+	{
+		final int start = _domains.jointIndexFromValues(values) -
+			values[sliceDimension].getIndex() * _domains.getStride(sliceDimension);
+		return getEnergySliceFrom(slice, sliceDimension, start);
+	}
+
+	/**
+	 * Creates a new heap-based table with the same values.
+	 * <p>
+	 * This copies the values and is intended for use with code that requires an {@link IFactorTable}.
+	 */
+	public IFactorTable toFactorTable()
+	{
+		return toFactorTable(_domains);
+	}
+
+	/**
+	 * Creates a new heap-based table with the same values over given domains.
+	 * <p>
+	 * @param domains must have the same number of dimensions with the same sizes as the table's.
+	 * @throws DimpleException if {@code domains} do not match.
+	 * @see #toFactorTable()
+	 */
+	public IFactorTable toFactorTable(JointDomainIndexer domains)
+	{
+		final int nDomains = _domains.size();
+		boolean matches = domains.size() == nDomains;
+		for (int i = 0; matches && i < nDomains; ++i)
+		{
+			matches = domains.getDomainSize(i) == _domains.getDomainSize(i);
+		}
+		if (!matches)
+		{
+			throw new DimpleException("Domains do not match those of mapped factor table");
+		}
+
+		final IFactorTable table = FactorTable.create(domains);
+		final int size = _sparseSize;
+		final double[] energies = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			energies[i] = getEnergyForSparseIndex(i);
+		}
+		if (_dense)
+		{
+			table.setEnergiesDense(energies);
+		}
+		else
+		{
+			final int[] jointIndices = new int[size];
+			for (int i = 0; i < size; ++i)
+			{
+				jointIndices[i] = jointIndex(i);
+			}
+			table.setEnergiesSparse(jointIndices, energies);
+		}
+		return table;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Serializes as a heap-based copy, since the mapped buffers cannot be serialized.
+	 */
+	private Object writeReplace() throws ObjectStreamException
+	{
+		return toFactorTable();
+	}
+
+	private double[] getEnergySliceFrom(@Nullable double[] slice, int sliceDimension, int start)
+	{
+		final int size = _domains.getDomainSize(sliceDimension);
+		if (slice == null || slice.length < size)
+		{
+			slice = new double[size];
+		}
+
+		final int stride = _domains.getStride(sliceDimension);
+
+		if (_dense)
+		{
+			for (int i = 0, joint = start; i < size; ++i, joint += stride)
+			{
+				slice[i] = getEnergyForSparseIndex(joint);
+			}
+		}
+		else
+		{
+			Arrays.fill(slice, 0, size, Double.POSITIVE_INFINITY);
+			int si = sparseIndexFromJointIndex(start);
+			if (si < 0)
+			{
+				si = -1 - si;
+			}
+			final int end = start + (size - 1) * stride;
+			for (int nSparse = _sparseSize; si < nSparse; )
+			{
+				final int joint = jointIndex(si);
+				if (joint > end)
+				{
+					break;
+				}
+				final int offset = joint - start;
+				if (offset % stride == 0)
+				{
+					slice[offset / stride] = getEnergyForSparseIndex(si);
+					++si;
+				}
+				else
+				{
+					// Skip to the next joint index on the slice.
+					si = sparseIndexFromJointIndex(start + (offset / stride + 1) * stride);
+					if (si < 0)
+					{
+						si = -1 - si;
+					}
+				}
+			}
+		}
+
+		return slice;
+	}
+
+	private DimpleException readOnly(String method)
+	{
+		return DimpleException.unsupportedMethod(getClass(), method, "Table is read-only.");
+	}
+
+	private int jointIndex(int sparseIndex)
+	{
+		return _jointIndices[sparseIndex >>> INT_WINDOW_SHIFT].get(sparseIndex & windowMask(INT_WINDOW_SHIFT));
+	}
+
+	private DoubleBuffer[] mapDoubles(long offset, int size) throws IOException
+	{
+		return mapDoubles(_channel, FileChannel.MapMode.READ_ONLY, offset, size);
+	}
+
+	private IntBuffer[] mapInts(long offset, int size) throws IOException
+	{
+		return mapInts(_channel, FileChannel.MapMode.READ_ONLY, offset, size);
+	}
+
+	private static DoubleBuffer[] mapDoubles(FileChannel channel, FileChannel.MapMode mode, long offset, int size)
+		throws IOException
+	{
+		final int windowSize = 1 << DOUBLE_WINDOW_SHIFT;
+		final DoubleBuffer[] windows = new DoubleBuffer[(int)((size + (long)windowSize - 1) / windowSize)];
+		for (int i = 0; i < windows.length; ++i)
+		{
+			final long start = (long)i * windowSize;
+			final long n = Math.min(windowSize, size - start);
+			windows[i] = channel.map(mode, offset + 8 * start, 8 * n).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+		return windows;
+	}
+
+	private static IntBuffer[] mapInts(FileChannel channel, FileChannel.MapMode mode, long offset, int size)
+		throws IOException
+	{
+		final int windowSize = 1 << INT_WINDOW_SHIFT;
+		final IntBuffer[] windows = new IntBuffer[(int)((size + (long)windowSize - 1) / windowSize)];
+		for (int i = 0; i < windows.length; ++i)
+		{
+			final long start = (long)i * windowSize;
+			final long n = Math.min(windowSize, size - start);
+			windows[i] = channel.map(mode, offset + 4 * start, 4 * n).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		}
+		return windows;
+	}
+
+	private static int windowMask(int shift)
+	{
+		return (1 << shift) - 1;
+	}
+
+	/**
+	 * Header: magic, version, flags, number of domains, domain sizes, sparse size, padded to a multiple of 8.
+	 */
+	private static int headerSize(int nDomains)
+	{
+		return (int)align8(4 * (5 + nDomains));
+	}
+
+	private static long align8(long bytes)
+	{
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.values.Value;
+
+/**
+ * A factor function whose energies are read from a {@link MappedFactorTable}.
+ * <p>
+ * The arguments of the function are the dimensions of the table, so it should not be used with
+ * factors that have constant arguments.
+ * <p>
+ * The Gibbs solver reads energies directly from the mapped table and does not create a heap-based
+ * factor table for this function. Solvers that require an {@link IFactorTable}, such as sum-product
+ * and min-sum, still load a copy of the table onto the heap, using {@link MappedFactorTable#toFactorTable()}
+ * rather than evaluating the function for every joint index.
+ * <p>
+ * @since 0.08
+ */
+public class MappedTableFactorFunction extends FactorFunction
+{
+	/*-------
+	 * State
+	 */
+
+	private final MappedFactorTable _table;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public MappedTableFactorFunction(MappedFactorTable table)
+	{
+		super();
+		_table = table;
+	}
+
+	/*------------------------
+	 * FactorFunction methods
+	 */
+
+	@Override
+	public double evalEnergy(Value[] values)
+	{
+		return _table.getEnergyForValues(values);
+	}
+
+	@Override
+	public JointDomainIndexer getDomains()
+	{
+		return _table.getDomainIndexer();
+	}
+
+	@Override
+	public boolean isDirected()
+	{
+		return _table.isDirected();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns true, since the mapped table is read-only.
+	 */
+	@Override
+	public boolean isThreadSafe()
+	{
+		return true;
+	}
+
+	/**
+	 * Loads a heap-based copy of the mapped table.
+	 */
+	@Override
+	protected IFactorTable createTableForDomains(JointDomainIndexer domains)
+	{
+		return _table.toFactorTable(domains);
+	}
+
+	/*-----------------------------------
+	 * MappedTableFactorFunction methods
+	 */
+
+	/**
+	 * The underlying table.
+	 */
+	public MappedFactorTable getMappedTable()
+	{
+		return _table;
+	}
+}
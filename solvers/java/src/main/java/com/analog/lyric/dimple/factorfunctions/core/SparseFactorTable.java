@@ -444,12 +444,14 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void setEnergyForElements(double energy, Object ... elements)
 	{
+		assertNotInterned("setEnergyForElements");
 		setEnergyForIndices(energy, getDomainIndexer().elementsToIndices(elements, _scratchIndices));
 	}
 
 	@Override
 	public void setEnergyForIndices(double energy, int ... indices)
 	{
+		assertNotInterned("setEnergyForIndices");
 		getDomainIndexer().validateIndices(indices);
 		setEnergyForSparseIndex(energy, createSparseIndexForIndices(indices));
 	}
@@ -457,12 +459,14 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void setWeightForElements(double weight, Object ... elements)
 	{
+		assertNotInterned("setWeightForElements");
 		setWeightForIndices(weight, getDomainIndexer().elementsToIndices(elements, _scratchIndices));
 	}
 
 	@Override
 	public void setWeightForIndices(double weight, int ... indices)
 	{
+		assertNotInterned("setWeightForIndices");
 		getDomainIndexer().validateIndices(indices);
 		setWeightForSparseIndex(weight, createSparseIndexForIndices(indices));
 	}
@@ -528,6 +532,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public int compact()
 	{
+		assertNotInterned("compact");
 		int nRemoved = 0;
 		final int curSparseSize = sparseSize();
 		if (curSparseSize > _nonZeroWeights)
@@ -597,6 +602,7 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void copy(IFactorTable that)
 	{
+		assertNotInterned("copy");
 		if (that == this)
 		{
 			return;
@@ -786,30 +792,35 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void setEnergiesDense(double[] energies)
 	{
+		assertNotInterned("setEnergiesDense");
 		throw notDense("setEnergiesDense");
 	}
 
 	@Override
 	public void setWeightsDense(double[] weights)
 	{
+		assertNotInterned("setWeightsDense");
 		throw notDense("setWeightsDense");
 	}
 
 	@Override
 	public void setDeterministicOutputIndices(int[] outputIndices)
 	{
+		assertNotInterned("setDeterministicOutputIndices");
 		throw notDeterministic("setDeterministicOutputIndices");
 	}
 
 	@Override
 	public void setEnergyForJointIndex(double energy, int jointIndex)
 	{
+		assertNotInterned("setEnergyForJointIndex");
 		throw notDense("setEnergyForJointIndex");
 	}
 
 	@Override
 	public void setEnergyForSparseIndex(double energy, int sparseIndex)
 	{
+		assertNotInterned("setEnergyForSparseIndex");
 		final double prevEnergy = getEnergyForSparseIndex(sparseIndex);
 		if (prevEnergy != energy)
 		{
@@ -831,12 +842,14 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void setWeightForJointIndex(double weight, int jointIndex)
 	{
+		assertNotInterned("setWeightForJointIndex");
 		throw notDense("setWeightForJointIndex");
 	}
 
 	@Override
 	public void setWeightForSparseIndex(double weight, int sparseIndex)
 	{
+		assertNotInterned("setWeightForSparseIndex");
 		final double prevWeight = getWeightForSparseIndex(sparseIndex);
 		if (prevWeight != weight)
 		{
@@ -858,12 +871,14 @@ public class SparseFactorTable extends SparseFactorTableBase implements IFactorT
 	@Override
 	public void setEnergiesSparse(int[] jointIndices, double[] energies)
 	{
+		assertNotInterned("setEnergiesSparse");
 		throw notDense("setEnergiesSparse(int[] jointIndices, double[])");
 	}
 
 	@Override
 	public void setWeightsSparse(int[] jointIndices, double[] weights)
 	{
+		assertNotInterned("setWeightsSparse");
 		throw notDense("setWeightsSparse(int[] jointIndices, double[])");
 	}
 
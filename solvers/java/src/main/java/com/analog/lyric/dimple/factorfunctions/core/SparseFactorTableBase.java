@@ -82,6 +82,11 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 */
 	int[][] _sparseIndices = ArrayUtil.EMPTY_INT_ARRAY_ARRAY;
 	
+	/**
+	 * Column representation of the sparse indices computed on demand by {@link #getIndexColumnsSparseUnsafe()}.
+	 */
+	private transient @Nullable SparseIndexColumns _sparseIndexColumns = null;
+	
 	/**
 	 * Information computed about the table based on its values. This field is zeroed out whenever
 	 * table weights or energies are changed.
@@ -170,6 +175,7 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final void normalize()
 	{
+		assertNotInterned("normalize");
 		if (isDirected())
 		{
 			throw new UnsupportedOperationException(
@@ -188,6 +194,7 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final int normalizeConditional(boolean ignoreZeroWeightInputs)
 	{
+		assertNotInterned("normalizeConditional");
 		if (!isDirected())
 		{
 			throw new UnsupportedOperationException(
@@ -200,6 +207,7 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final void setDirected(@Nullable BitSet outputSet)
 	{
+		assertNotInterned("setDirected");
 		setDirected(outputSet, false);
 	}
 
@@ -229,6 +237,12 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 		return getEnergySlice(null, sliceDimension, values);
 	}
 
+	@Override
+	public final SparseIndexColumns getIndexColumnsSparseUnsafe()
+	{
+		return _sparseIndexColumns = computeIndexColumns(_sparseIndexColumns);
+	}
+
 	@Override
 	public final FactorTableRepresentation getRepresentation()
 	{
@@ -282,6 +296,7 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final void setConditional(BitSet outputSet)
 	{
+		assertNotInterned("setConditional");
 		Objects.requireNonNull(outputSet);
 		setDirected(outputSet, true);
 	}
@@ -289,6 +304,7 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final void setEnergiesSparse(int[][] indices, double[] energies)
 	{
+		assertNotInterned("setEnergiesSparse");
 		setSparseValues(indices, energies, FactorTable.SPARSE_ENERGY);
 	}
 
@@ -301,12 +317,14 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	@Override
 	public final void setWeightsSparse(int[][] indices, double[] weights)
 	{
+		assertNotInterned("setWeightsSparse");
 		setSparseValues(indices, weights, FactorTable.SPARSE_WEIGHT);
 	}
 
 	@Override
 	public final void makeConditional(BitSet outputSet)
 	{
+		assertNotInterned("makeConditional");
 		Objects.requireNonNull(outputSet);
 		setDirected(outputSet, false);
 		normalizeConditional();
@@ -316,6 +334,26 @@ public abstract class SparseFactorTableBase extends FactorTableBase implements I
 	 * Package methods
 	 */
 	
+	/**
+	 * Returns {@code columns} if non-null and up-to-date, otherwise computes new index columns for the table.
+	 * <p>
+	 * Invoked by {@link #getIndexColumnsSparseUnsafe()}. The default implementation computes the columns from
+	 * {@link #getIndicesSparseUnsafe()}.
+	 */
+	SparseIndexColumns computeIndexColumns(@Nullable SparseIndexColumns columns)
+	{
+		final int[][] indices = getIndicesSparseUnsafe();
+		return columns != null && columns.isFor(indices) ? columns : new SparseIndexColumns(getDomainIndexer(), indices);
+	}
+	
+	/**
+	 * The column representation last computed by {@link #getIndexColumnsSparseUnsafe()}, if any.
+	 */
+	final @Nullable SparseIndexColumns getIndexColumnsSparseIfComputed()
+	{
+		return _sparseIndexColumns;
+	}
+	
 	final void assertIsConditional()
 	{
 		 if (!isConditional())
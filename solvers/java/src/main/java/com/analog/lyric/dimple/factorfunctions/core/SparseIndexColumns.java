@@ -0,0 +1,409 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.factorfunctions.core;
+
+import net.jcip.annotations.Immutable;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Column-major representation of the sparse element indices of a factor table.
+ * <p>
+ * Holds the same information as {@link IFactorTable#getIndicesSparseUnsafe()}, but stores the
+ * element indices for each dimension of the table in a separate contiguous array, using the narrowest
+ * of {@code byte}, {@code short} or {@code int} elements that can hold the indices of that dimension's
+ * domain. The bulk operations provided by this class loop over the entries of a single column with
+ * unit stride, which is much more cache friendly than visiting a separately allocated row array
+ * for each table entry.
+ * <p>
+ * For a {@link FactorTable} the columns are computed from the table's mapping from sparse to joint
+ * indices, so they do not require the row representation, which is only computed when something asks
+ * for it. The sum-product and min-sum solvers use the columns for their general table updates and do
+ * not ask the table for rows, so those tables need only between 1 and 4 bytes per dimension per entry
+ * (see {@link #estimateBytes()}) for their indices instead of the roughly {@code 4 * dimensions + 16}
+ * bytes per entry of the rows. Tables that have both representations hold both.
+ * <p>
+ * Instances are obtained from {@link IFactorTable#getIndexColumnsSparseUnsafe()}.
+ * <p>
+ * @since 0.08
+ */
+@Immutable
+public final class SparseIndexColumns
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * The representation from which this was constructed: either the rows or the sparse to joint
+	 * index mapping. Used to determine whether this is still up-to-date with respect to its table.
+	 */
+	private final Object _source;
+
+	private final int _size;
+
+	/**
+	 * For each dimension exactly one of these will be non-null.
+	 */
+	private final @Nullable byte[][] _byteColumns;
+	private final @Nullable short[][] _shortColumns;
+	private final @Nullable int[][] _intColumns;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs column representation of sparse {@code indices} for table with given domains.
+	 * <p>
+	 * @param domains determines the number of columns and the width of each column.
+	 * @param indices is an array of sparse element indices for each table entry, as returned
+	 * by {@link IFactorTable#getIndicesSparseUnsafe()}.
+	 */
+	public SparseIndexColumns(JointDomainIndexer domains, int[][] indices)
+	{
+		this(domains, (Object)indices, indices.length);
+
+		for (int column = 0, n = columns(); column < n; ++column)
+		{
+			for (int i = 0; i < _size; ++i)
+			{
+				set(i, column, indices[i][column]);
+			}
+		}
+	}
+
+	/**
+	 * Constructs column representation of sparse entries identified by their joint indices.
+	 * <p>
+	 * @param domains determines the number of columns and the width of each column and is used to
+	 * compute the element indices from the joint indices.
+	 * @param jointIndices contains the joint index of each of the first {@code size} sparse entries. If
+	 * shorter than {@code size}, the sparse index of every entry is its joint index.
+	 * @param size is the number of sparse entries.
+	 * @since 0.08
+	 */
+	public SparseIndexColumns(JointDomainIndexer domains, int[] jointIndices, int size)
+	{
+		this(domains, (Object)jointIndices, size);
+
+		final boolean identity = jointIndices.length < size;
+		for (int column = 0, n = columns(); column < n; ++column)
+		{
+			for (int i = 0; i < size; ++i)
+			{
+				set(i, column, domains.jointIndexToElementIndex(identity ? i : jointIndices[i], column));
+			}
+		}
+	}
+
+	private SparseIndexColumns(JointDomainIndexer domains, Object source, int size)
+	{
+		final int nColumns = domains.size();
+
+		_source = source;
+		_size = size;
+		_byteColumns = new byte[nColumns][];
+		_shortColumns = new short[nColumns][];
+		_intColumns = new int[nColumns][];
+
+		for (int column = 0; column < nColumns; ++column)
+		{
+			final int domainSize = domains.getDomainSize(column);
+			if (domainSize <= 1 << Byte.SIZE)
+			{
+				_byteColumns[column] = new byte[size];
+			}
+			else if (domainSize <= 1 << Short.SIZE)
+			{
+				_shortColumns[column] = new short[size];
+			}
+			else
+			{
+				_intColumns[column] = new int[size];
+			}
+		}
+	}
+
+	/*----------------------------
+	 * SparseIndexColumns methods
+	 */
+
+	/**
+	 * The number of columns, which is the same as the number of dimensions of the table.
+	 */
+	public int columns()
+	{
+		return _intColumns.length;
+	}
+
+	/**
+	 * The number of sparse table entries.
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * The number of bytes used to represent each element in given {@code column}: 1, 2 or 4.
+	 */
+	public int elementBytes(int column)
+	{
+		return _byteColumns[column] != null ? 1 : _shortColumns[column] != null ? 2 : 4;
+	}
+
+	/**
+	 * Estimates the number of bytes of heap used by the columns.
+	 * <p>
+	 * This is the sum of {@linkplain #elementBytes element bytes} times {@linkplain #size size} over
+	 * all columns, plus an array header for each column. It does not include the row representation.
+	 * @see FactorTableCache#estimateBytes(IFactorTableBase)
+	 */
+	public long estimateBytes()
+	{
+		long bytes = 0;
+		for (int column = 0, n = columns(); column < n; ++column)
+		{
+			bytes += (long)elementBytes(column) * _size + 16;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The element index for given {@code column} of given sparse table entry.
+	 */
+	public int get(int sparseIndex, int column)
+	{
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			return bytes[sparseIndex] & 0xFF;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			return shorts[sparseIndex] & 0xFFFF;
+		}
+		return _intColumns[column][sparseIndex];
+	}
+
+	/**
+	 * Computes {@code values[i] += message[index(i,column)]} for every sparse entry {@code i}.
+	 */
+	public void addFrom(int column, double[] values, double[] message)
+	{
+		final int size = _size;
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] += message[bytes[i] & 0xFF];
+			return;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] += message[shorts[i] & 0xFFFF];
+			return;
+		}
+		final int[] ints = _intColumns[column];
+		for (int i = 0; i < size; ++i)
+			values[i] += message[ints[i]];
+	}
+
+	/**
+	 * Computes {@code values[i] *= message[index(i,column)]} for every sparse entry {@code i}.
+	 */
+	public void multiplyFrom(int column, double[] values, double[] message)
+	{
+		final int size = _size;
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] *= message[bytes[i] & 0xFF];
+			return;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] *= message[shorts[i] & 0xFFFF];
+			return;
+		}
+		final int[] ints = _intColumns[column];
+		for (int i = 0; i < size; ++i)
+			values[i] *= message[ints[i]];
+	}
+
+	/**
+	 * Computes {@code values[i] *= message[index(i,column)]} for every sparse entry {@code i}
+	 * for a single precision {@code message}.
+	 */
+	public void multiplyFrom(int column, double[] values, float[] message)
+	{
+		final int size = _size;
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] *= message[bytes[i] & 0xFF];
+			return;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			for (int i = 0; i < size; ++i)
+				values[i] *= message[shorts[i] & 0xFFFF];
+			return;
+		}
+		final int[] ints = _intColumns[column];
+		for (int i = 0; i < size; ++i)
+			values[i] *= message[ints[i]];
+	}
+
+	/**
+	 * Computes {@code message[index(i,column)] += values[i]} for every sparse entry {@code i}.
+	 */
+	public void sumInto(int column, double[] values, double[] message)
+	{
+		final int size = _size;
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			for (int i = 0; i < size; ++i)
+				message[bytes[i] & 0xFF] += values[i];
+			return;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			for (int i = 0; i < size; ++i)
+				message[shorts[i] & 0xFFFF] += values[i];
+			return;
+		}
+		final int[] ints = _intColumns[column];
+		for (int i = 0; i < size; ++i)
+			message[ints[i]] += values[i];
+	}
+
+	/**
+	 * Computes {@code message[j] = min(message[j], values[i] - subtract[j])}, where {@code j = index(i,column)},
+	 * for every sparse entry {@code i}.
+	 * <p>
+	 * @param subtract if null, nothing will be subtracted from {@code values}
+	 */
+	public void minInto(int column, double[] values, @Nullable double[] subtract, double[] message)
+	{
+		final int size = _size;
+		final byte[] bytes = _byteColumns[column];
+		final short[] shorts = _shortColumns[column];
+		final int[] ints = _intColumns[column];
+
+		if (subtract == null)
+		{
+			if (bytes != null)
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = bytes[i] & 0xFF;
+					message[j] = Math.min(message[j], values[i]);
+				}
+			}
+			else if (shorts != null)
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = shorts[i] & 0xFFFF;
+					message[j] = Math.min(message[j], values[i]);
+				}
+			}
+			else
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = ints[i];
+					message[j] = Math.min(message[j], values[i]);
+				}
+			}
+		}
+		else
+		{
+			if (bytes != null)
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = bytes[i] & 0xFF;
+					message[j] = Math.min(message[j], values[i] - subtract[j]);
+				}
+			}
+			else if (shorts != null)
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = shorts[i] & 0xFFFF;
+					message[j] = Math.min(message[j], values[i] - subtract[j]);
+				}
+			}
+			else
+			{
+				for (int i = 0; i < size; ++i)
+				{
+					final int j = ints[i];
+					message[j] = Math.min(message[j], values[i] - subtract[j]);
+				}
+			}
+		}
+	}
+
+	/*-----------------
+	 * Package methods
+	 */
+
+	/**
+	 * True if this was constructed from the given row representation or sparse to joint index mapping.
+	 */
+	boolean isFor(Object source)
+	{
+		return _source == source;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void set(int sparseIndex, int column, int index)
+	{
+		final byte[] bytes = _byteColumns[column];
+		if (bytes != null)
+		{
+			bytes[sparseIndex] = (byte)index;
+			return;
+		}
+		final short[] shorts = _shortColumns[column];
+		if (shorts != null)
+		{
+			shorts[sparseIndex] = (short)index;
+			return;
+		}
+		_intColumns[column][sparseIndex] = index;
+	}
+}
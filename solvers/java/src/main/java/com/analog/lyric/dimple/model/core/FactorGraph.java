@@ -55,6 +55,7 @@ import com.analog.lyric.dimple.factorfunctions.Uniform;
 import com.analog.lyric.dimple.factorfunctions.core.CustomFactorFunctionWrapper;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableInterner;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.JointFactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.JointFactorFunction.Functions;
@@ -3767,6 +3768,33 @@ public class FactorGraph extends FactorBase
 		return new FactorList(FactorGraphIterables.factors(this));
 	}
 
+	/**
+	 * Shares factor tables with identical contents among the discrete factors in this graph and its subgraphs.
+	 * <p>
+	 * Invokes {@link DiscreteFactor#internFactorTable()} on every discrete factor that
+	 * {@linkplain Factor#hasFactorTable() already has a factor table}. Tables that have not yet been
+	 * created are not created by this method.
+	 * <p>
+	 * @return the estimated number of bytes of factor tables that were replaced by a shared table, as
+	 * reported by {@link FactorTableInterner#getBytesSaved()}.
+	 * @since 0.08
+	 */
+	public long internFactorTables()
+	{
+		final FactorTableInterner interner = DimpleEnvironment.active().factorTableInterner();
+		final long prevBytesSaved = interner.getBytesSaved();
+		
+		for (Factor factor : FactorGraphIterables.factors(this))
+		{
+			if (factor instanceof DiscreteFactor && factor.hasFactorTable())
+			{
+				((DiscreteFactor)factor).internFactorTable();
+			}
+		}
+		
+		return interner.getBytesSaved() - prevBytesSaved;
+	}
+
 	/**
 	 * Returns newly constructed collection containing all of the factors
 	 * and subgraphs that are directly owned by this graph.
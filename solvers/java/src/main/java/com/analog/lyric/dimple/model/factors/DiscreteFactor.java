@@ -23,7 +23,10 @@ import java.util.List;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableInterner;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.TableFactorFunction;
 import com.analog.lyric.dimple.model.core.EdgeState;
@@ -34,6 +37,8 @@ import com.analog.lyric.dimple.model.variables.Constant;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.model.variables.IConstantOrVariable;
 import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.core.STableFactorBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.util.misc.Internal;
 
 /**
@@ -191,6 +196,65 @@ public class DiscreteFactor extends Factor
 		_factorTable = null;
 	}
 	
+	/**
+	 * Replaces factor's table with one with identical contents that may be shared with other factors.
+	 * <p>
+	 * Uses the {@linkplain DimpleEnvironment#factorTableInterner() factor table interner} of the active
+	 * environment. Methods that modify the contents of the returned table will throw a {@link DimpleException}.
+	 * Use {@link #getFactorTableForUpdate()} to obtain a table that can be modified.
+	 * <p>
+	 * @return the shared table, which will also be returned by {@link #getFactorTable()}.
+	 * @since 0.08
+	 * @see com.analog.lyric.dimple.model.core.FactorGraph#internFactorTables()
+	 */
+	public IFactorTable internFactorTable()
+	{
+		final IFactorTable table = getFactorTable();
+		final IFactorTable sharedTable = DimpleEnvironment.active().factorTableInterner().intern(table);
+		if (sharedTable != table)
+		{
+			replaceFactorTable(sharedTable);
+		}
+		return sharedTable;
+	}
+	
+	/**
+	 * True if factor's table was obtained from {@link #internFactorTable()} and may be shared with
+	 * other factors.
+	 * @since 0.08
+	 */
+	public boolean isFactorTableShared()
+	{
+		final IFactorTable table = _factorTable;
+		return table != null && FactorTableInterner.isInterned(table);
+	}
+	
+	/**
+	 * Returns factor table that may be modified.
+	 * <p>
+	 * If the factor's table {@linkplain #isFactorTableShared() is shared}, it will first be replaced by
+	 * a private copy. Otherwise this is the same as {@link #getFactorTable()}.
+	 * @since 0.08
+	 */
+	public IFactorTable getFactorTableForUpdate()
+	{
+		IFactorTable table = getFactorTable();
+		if (FactorTableInterner.isInterned(table))
+		{
+			replaceFactorTable(table = table.clone());
+		}
+		return table;
+	}
+	
+	@Override
+	protected void ensureFactorTableNotShared()
+	{
+		if (isFactorTableShared())
+		{
+			getFactorTableForUpdate();
+		}
+	}
+	
 	public int[][] getPossibleBeliefIndices()
 	{
 		return requireSolver("getPossibleBeliefIndices").getPossibleBeliefIndices();
@@ -304,6 +368,25 @@ public class DiscreteFactor extends Factor
 		return (double[])requireSolver("getBelief").getBelief();
 	}
 
+	/**
+	 * Replaces factor table with one with the same contents and domains.
+	 */
+	private void replaceFactorTable(IFactorTable table)
+	{
+		if (getFactorFunction() instanceof TableFactorFunction)
+		{
+			// Replace function so that it no longer refers to the old table. The direction is unchanged.
+			replaceFactorFunction(TableFactorFunction.forFactor(this, table));
+		}
+		_factorTable = table;
+		
+		final ISolverFactor sfactor = getSolver();
+		if (sfactor instanceof STableFactorBase)
+		{
+			((STableFactorBase)sfactor).clearFactorTable();
+		}
+	}
+	
 	void setFactorTable(IFactorTable table)
 	{
 		assertNotFrozen();
@@ -679,6 +679,29 @@ public class Factor extends FactorBase implements Cloneable
 		throw new UnsupportedOperationException("Factor tables only available on DiscreteFactors");
 	}
 	
+	/**
+	 * Invoked before the factor's table is modified in place, to make sure that it is not shared
+	 * with other factors.
+	 * <p>
+	 * Does nothing by default.
+	 * <p>
+	 * @since 0.08
+	 * @see DiscreteFactor#getFactorTableForUpdate()
+	 */
+	protected void ensureFactorTableNotShared()
+	{
+	}
+	
+	/**
+	 * Replaces factor function without changing direction of factor.
+	 * <p>
+	 * For use when replacing function with one that is equivalent.
+	 */
+	void replaceFactorFunction(FactorFunction function)
+	{
+		_factorFunction = function;
+	}
+	
 	@Override
 	public String getLabel()
 	{
@@ -1004,6 +1027,8 @@ public class Factor extends FactorBase implements Cloneable
 				getClass().getSimpleName()));
 		}
 		
+		ensureFactorTableNotShared();
+		
 		final JointDomainIndexer curDomains = getDomainList().asJointDomainIndexer();
 
 		BitSet toSet = new BitSet(directedTo.length);
@@ -1123,6 +1148,7 @@ public class Factor extends FactorBase implements Cloneable
 		_directedFrom = null;
 		if (hasFactorTable())
 		{
+			ensureFactorTableNotShared();
 			getFactorTable().setDirected(null);
 		}
 	}
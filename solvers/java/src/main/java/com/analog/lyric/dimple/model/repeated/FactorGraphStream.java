@@ -28,8 +28,11 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.model.core.Port;
 import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 
 /*
  * This class represents one stream of Nested Factor Graphs.
@@ -45,6 +48,12 @@ public class FactorGraphStream
 	private FactorGraph _graph;
 	private FactorGraph _repeatedGraph;
 	private FactorGraph _parameterFactorGraph;
+	
+	/*
+	 * Used by advance() to move messages between the nested graphs. Lazily created and
+	 * recreated when the solver or graph structure changes.
+	 */
+	private @Nullable MessageShifter _messageShifter = null;
 
 	/*
 	 * The constructor adds Factors and Variables and BlastFromThePastFactors.
@@ -226,6 +235,12 @@ public class FactorGraphStream
 		}
 	}
 
+	/**
+	 * Advances the stream by one step.
+	 * <p>
+	 * The solver state of each nested graph is copied into the graph before it and the state of the newest
+	 * graph is reset, so the cost of each step is proportional to the buffer size.
+	 */
 	public void advance()
 	{
 	
@@ -249,17 +264,30 @@ public class FactorGraphStream
 			}
 		}
 
-		//For each graph in list of nested graphs
-		for (int j = 0; j < _nestedGraphs.size()-1; j++)
+		//Move all messages one nested graph to the left
+		MessageShifter shifter = _messageShifter;
+		if (shifter == null || !shifter.isValidFor(_graph, _nestedGraphs))
 		{
-			//Tell it to move all factor messages to left
-			final ISolverFactorGraph otherGraph = requireNonNull(_nestedGraphs.get(j+1).getSolver());
-			requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph);
+			_messageShifter = shifter = MessageShifter.create(_graph, _nestedGraphs);
 		}
-
-		//Newest nested graph should initialize its messages
-		_nestedGraphs.get(_nestedGraphs.size()-1).recreateMessages();
 		
+		if (shifter != null)
+		{
+			shifter.shift();
+		}
+		else
+		{
+			//For each graph in list of nested graphs
+			for (int j = 0; j < _nestedGraphs.size()-1; j++)
+			{
+				//Tell it to move all factor messages to left
+				final ISolverFactorGraph otherGraph = requireNonNull(_nestedGraphs.get(j+1).getSolver());
+				requireNonNull(_nestedGraphs.get(j).getSolver()).moveMessages(otherGraph);
+			}
+
+			//Newest nested graph should initialize its messages
+			_nestedGraphs.get(_nestedGraphs.size()-1).recreateMessages();
+		}
 
 	}
 
@@ -306,4 +334,137 @@ public class FactorGraphStream
 	{
 		return _nestedGraphs;
 	}
+	
+	/*
+	 * Moves the solver state of each nested graph to the graph to its left.
+	 * 
+	 * Instead of traversing each pair of nested graphs on every call to advance() as
+	 * ISolverFactorGraph.moveMessages does, this collects the solver edges and variables of each
+	 * nested graph once, lined up so that the same index refers to the same edge or variable in
+	 * every graph, and then moves the state with a single pass over each array. Since the state of
+	 * every graph but the last is overwritten by its neighbor, only the last one needs to be reset, which
+	 * is done using the same collected objects instead of FactorGraph.recreateMessages.
+	 * 
+	 * This still copies the state of every nested graph on each advance, so the cost remains proportional
+	 * to the buffer size. The nested graphs are not rotated in place because each is connected to its own
+	 * boundary variables and BlastFromThePast factors, and solver factors hold references to the message
+	 * objects of their own edges, so the edge states cannot be exchanged between graphs.
+	 * 
+	 * The collected objects are discarded when the structure of the graph changes, or when any solver edge
+	 * is removed, such as when the solver recreates edges on initialization because of a change to options.
+	 */
+	private static final class MessageShifter
+	{
+		private final long _structureVersion;
+		private final long _edgeVersion;
+		private final ISolverFactorGraph[] _sgraphs;
+		private final ISolverEdgeState[][] _edges;
+		private final ISolverVariable[][] _variables;
+		
+		private MessageShifter(long structureVersion, long edgeVersion, ISolverFactorGraph[] sgraphs,
+			ISolverEdgeState[][] edges, ISolverVariable[][] variables)
+		{
+			_structureVersion = structureVersion;
+			_edgeVersion = edgeVersion;
+			_sgraphs = sgraphs;
+			_edges = edges;
+			_variables = variables;
+		}
+		
+		/*
+		 * Returns null if any of the nested graphs does not support collecting its state.
+		 */
+		private static @Nullable MessageShifter create(FactorGraph graph, ArrayList<FactorGraph> nestedGraphs)
+		{
+			final int size = nestedGraphs.size();
+			final ISolverFactorGraph[] sgraphs = new ISolverFactorGraph[size];
+			final ISolverEdgeState[][] edges = new ISolverEdgeState[size][];
+			final ISolverVariable[][] variables = new ISolverVariable[size][];
+			
+			for (int j = 0; j < size; ++j)
+			{
+				sgraphs[j] = requireNonNull(nestedGraphs.get(j).getSolver());
+				if (!(sgraphs[j] instanceof SFactorGraphBase))
+				{
+					return null;
+				}
+			}
+			
+			// Collect the state of each graph lined up with that of the first one.
+			final SFactorGraphBase<?,?,?,?> first = (SFactorGraphBase<?,?,?,?>)sgraphs[0];
+			for (int j = 0; j < size; ++j)
+			{
+				final ArrayList<ISolverEdgeState> firstEdges = new ArrayList<>(), otherEdges = new ArrayList<>();
+				final ArrayList<ISolverVariable> firstVariables = new ArrayList<>(), otherVariables = new ArrayList<>();
+				if (!first.collectMessageState(sgraphs[j], firstEdges, otherEdges, firstVariables, otherVariables))
+				{
+					return null;
+				}
+				edges[j] = otherEdges.toArray(new ISolverEdgeState[otherEdges.size()]);
+				variables[j] = otherVariables.toArray(new ISolverVariable[otherVariables.size()]);
+			}
+			
+			return new MessageShifter(graph.graphTreeStructureVersion(), first.solverEdgeVersion(), sgraphs, edges, variables);
+		}
+		
+		private boolean isValidFor(FactorGraph graph, ArrayList<FactorGraph> nestedGraphs)
+		{
+			final ISolverFactorGraph[] sgraphs = _sgraphs;
+			
+			if (_structureVersion != graph.graphTreeStructureVersion() || sgraphs.length != nestedGraphs.size())
+			{
+				return false;
+			}
+			
+			if (_edgeVersion != ((SFactorGraphBase<?,?,?,?>)sgraphs[0]).solverEdgeVersion())
+			{
+				return false;
+			}
+			
+			for (int j = sgraphs.length; --j >= 0;)
+			{
+				if (sgraphs[j] != nestedGraphs.get(j).getSolver())
+				{
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		private void shift()
+		{
+			final ISolverEdgeState[][] edges = _edges;
+			final ISolverVariable[][] variables = _variables;
+			final int last = edges.length - 1;
+			
+			for (int j = 0; j < last; ++j)
+			{
+				final ISolverEdgeState[] to = edges[j], from = edges[j+1];
+				for (int i = 0, n = to.length; i < n; ++i)
+				{
+					to[i].setFrom(from[i]);
+				}
+				
+				final ISolverVariable[] toVars = variables[j], fromVars = variables[j+1];
+				for (int i = 0, n = toVars.length; i < n; ++i)
+				{
+					toVars[i].moveNonEdgeSpecificState(fromVars[i]);
+				}
+			}
+			
+			// Reset the state of the newest graph, whose edge state has been moved to its neighbor, if any.
+			if (last > 0)
+			{
+				for (ISolverEdgeState edge : edges[last])
+				{
+					edge.reset();
+				}
+			}
+			for (ISolverVariable var : variables[last])
+			{
+				var.createNonEdgeSpecificState();
+			}
+		}
+	}
 }
@@ -0,0 +1,245 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.repeated;
+
+import static com.analog.lyric.dimple.model.repeated.MappedDoubleArrayDataSource.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
+
+/**
+ * Data sink that writes fixed length records of doubles to a flat binary file.
+ * <p>
+ * Beliefs pushed to the sink must either be a double array of length {@link #getRecordLength()},
+ * such as the belief of a discrete variable, or, when the record length is two, a
+ * {@link NormalParameters}, which is written as [mean, standard deviation] as in
+ * {@link DoubleArrayDataSink#getNext()}. The records are written with no header and can be read back
+ * using {@link MappedDoubleArrayDataSource}.
+ * <p>
+ * The file is written through a memory mapped window that is extended as needed, so {@link #push}
+ * does not allocate or retain any objects. The file is truncated to the size of the records that
+ * were written when the sink is {@linkplain #close closed}.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class MappedDoubleArrayDataSink implements IDataSink, Closeable, Flushable
+{
+	/*-------
+	 * State
+	 */
+
+	private final FileChannel _channel;
+	private final ByteOrder _order;
+	private final int _recordLength;
+	private final long _windowRecords;
+
+	/**
+	 * Number of records written.
+	 */
+	private long _recordCount = 0;
+
+	/**
+	 * Index of first record in current {@link #_window}.
+	 */
+	private long _windowStart = 0;
+	private @Nullable MappedByteBuffer _mappedWindow = null;
+	private @Nullable DoubleBuffer _window = null;
+
+	/**
+	 * Default maximum size of mapped window in bytes.
+	 */
+	private static final long WINDOW_BYTES = 1L << 26;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs sink writing records of length {@code recordLength} to {@code file} in
+	 * little-endian byte order.
+	 * <p>
+	 * Any existing contents of the file will be discarded.
+	 * <p>
+	 * @throws IOException if file cannot be opened for writing.
+	 */
+	public MappedDoubleArrayDataSink(File file, int recordLength) throws IOException
+	{
+		this(file, recordLength, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Constructs sink writing records of length {@code recordLength} to {@code file} in
+	 * given byte order.
+	 * <p>
+	 * Any existing contents of the file will be discarded.
+	 * <p>
+	 * @throws IOException if file cannot be opened for writing.
+	 */
+	public MappedDoubleArrayDataSink(File file, int recordLength, ByteOrder order) throws IOException
+	{
+		if (recordLength <= 0)
+		{
+			throw new IllegalArgumentException(String.format("Non-positive record length %d", recordLength));
+		}
+
+		_channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		_order = order;
+		_recordLength = recordLength;
+		_windowRecords = Math.max(1, Math.min(WINDOW_BYTES / recordBytes(recordLength), windowRecords(recordLength)));
+	}
+
+	/*-------------------
+	 * IDataSink methods
+	 */
+
+	/**
+	 * Appends {@code data} to the end of the file.
+	 * <p>
+	 * @throws DimpleException if {@code data} is not a double array of the expected length or a
+	 * {@link NormalParameters} when the record length is two, or if the file cannot be written.
+	 */
+	@Override
+	public void push(Object data)
+	{
+		DoubleBuffer window = _window;
+		if (window == null || _recordCount >= _windowStart + _windowRecords)
+		{
+			window = _window = mapWindow(_recordCount);
+		}
+
+		window.position((int)((_recordCount - _windowStart) * _recordLength));
+
+		if (data instanceof double[])
+		{
+			final double[] array = (double[])data;
+			if (array.length != _recordLength)
+			{
+				throw new DimpleException("Expected array of length %d but got %d", _recordLength, array.length);
+			}
+			window.put(array);
+		}
+		else if (data instanceof NormalParameters && _recordLength == 2)
+		{
+			final NormalParameters normal = (NormalParameters)data;
+			window.put(normal.getMean());
+			window.put(normal.getStandardDeviation());
+		}
+		else
+		{
+			throw new DimpleException("Cannot write '%s' as record of %d doubles", data, _recordLength);
+		}
+
+		++_recordCount;
+	}
+
+	/*-------------------
+	 * Flushable methods
+	 */
+
+	/**
+	 * Forces records written to the current window to the storage device.
+	 */
+	@Override
+	public void flush()
+	{
+		final MappedByteBuffer mappedWindow = _mappedWindow;
+		if (mappedWindow != null)
+		{
+			mappedWindow.force();
+		}
+	}
+
+	/*-------------------
+	 * Closeable methods
+	 */
+
+	/**
+	 * Flushes written records, truncates file to their size and closes the underlying file channel.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_channel.isOpen())
+		{
+			flush();
+			_mappedWindow = null;
+			_window = null;
+			_channel.truncate(_recordCount * recordBytes(_recordLength));
+			_channel.close();
+		}
+	}
+
+	/*-----------------------------------
+	 * MappedDoubleArrayDataSink methods
+	 */
+
+	/**
+	 * The number of doubles in each record.
+	 */
+	public int getRecordLength()
+	{
+		return _recordLength;
+	}
+
+	/**
+	 * The number of records that have been written.
+	 */
+	public long getRecordCount()
+	{
+		return _recordCount;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private DoubleBuffer mapWindow(long firstRecord)
+	{
+		flush();
+
+		final long recordBytes = recordBytes(_recordLength);
+		try
+		{
+			// Mapping a region past the end of the file extends the file.
+			final MappedByteBuffer mappedWindow = _channel.map(FileChannel.MapMode.READ_WRITE,
+				firstRecord * recordBytes, _windowRecords * recordBytes);
+			_mappedWindow = mappedWindow;
+			_windowStart = firstRecord;
+			return mappedWindow.order(_order).asDoubleBuffer();
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException((Exception)ex);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.model.repeated;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Data source that reads fixed length records of doubles from a flat binary file.
+ * <p>
+ * The file consists of consecutive records of {@link #getRecordLength()} doubles with no header, such
+ * as the weights of a discrete variable or the [mean, standard deviation] of a real variable, in the
+ * same form accepted by {@link DoubleArrayDataSource}. The file is memory mapped in large windows, so
+ * streams that do not fit on the heap may be used, and {@link #getNext()} does not allocate.
+ * <p>
+ * Note that the array returned by {@link #getNext()} is reused and will be overwritten by the next
+ * call. This is fine for use with {@link VariableStreamBase#setDataSource} since variables copy their
+ * inputs.
+ * <p>
+ * @since 0.08
+ * @see MappedDoubleArrayDataSink
+ */
+@NotThreadSafe
+public class MappedDoubleArrayDataSource implements IDataSource, Closeable
+{
+	/*-------
+	 * State
+	 */
+
+	private final FileChannel _channel;
+	private final ByteOrder _order;
+	private final double[] _record;
+	private final long _recordCount;
+	private final long _windowRecords;
+
+	/**
+	 * Index of next record to be returned.
+	 */
+	private long _position = 0;
+
+	/**
+	 * Index of first record in current {@link #_window}.
+	 */
+	private long _windowStart = 0;
+	private @Nullable DoubleBuffer _window = null;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs source reading records of length {@code recordLength} from {@code file} in
+	 * little-endian byte order.
+	 * <p>
+	 * @throws IOException if file cannot be opened.
+	 * @throws DimpleException if the size of the file is not a multiple of the record size.
+	 */
+	public MappedDoubleArrayDataSource(File file, int recordLength) throws IOException
+	{
+		this(file, recordLength, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Constructs source reading records of length {@code recordLength} from {@code file} in
+	 * given byte order.
+	 * <p>
+	 * @throws IOException if file cannot be opened.
+	 * @throws DimpleException if the size of the file is not a multiple of the record size.
+	 */
+	public MappedDoubleArrayDataSource(File file, int recordLength, ByteOrder order) throws IOException
+	{
+		if (recordLength <= 0)
+		{
+			throw new IllegalArgumentException(String.format("Non-positive record length %d", recordLength));
+		}
+
+		_channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		_order = order;
+		_record = new double[recordLength];
+
+		final long recordBytes = recordBytes(recordLength);
+		final long size = _channel.size();
+		if (size % recordBytes != 0)
+		{
+			_channel.close();
+			throw new DimpleException("Size of '%s' (%d bytes) is not a multiple of record size (%d bytes)",
+				file, size, recordBytes);
+		}
+		_recordCount = size / recordBytes;
+		_windowRecords = windowRecords(recordLength);
+	}
+
+	/*---------------------
+	 * IDataSource methods
+	 */
+
+	@Override
+	public boolean hasNext()
+	{
+		return _position < _recordCount;
+	}
+
+	/**
+	 * Returns next record.
+	 * <p>
+	 * The returned array is owned by this object and will be overwritten by the next call.
+	 * <p>
+	 * @throws DimpleException if there are no more records or the file cannot be read.
+	 */
+	@Override
+	public double[] getNext()
+	{
+		if (!hasNext())
+		{
+			throw new DimpleException("Data source is empty.");
+		}
+
+		DoubleBuffer window = _window;
+		if (window == null || _position < _windowStart || _position >= _windowStart + _windowRecords)
+		{
+			window = _window = mapWindow(_position);
+		}
+
+		window.position((int)((_position - _windowStart) * _record.length));
+		window.get(_record);
+		++_position;
+
+		return _record;
+	}
+
+	/*-------------------
+	 * Closeable methods
+	 */
+
+	/**
+	 * Closes the underlying file channel.
+	 * <p>
+	 * The current memory mapped window will not be released until it is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		_window = null;
+		_channel.close();
+	}
+
+	/*-------------------------------------
+	 * MappedDoubleArrayDataSource methods
+	 */
+
+	/**
+	 * The number of doubles in each record.
+	 */
+	public int getRecordLength()
+	{
+		return _record.length;
+	}
+
+	/**
+	 * The total number of records in the file.
+	 */
+	public long getRecordCount()
+	{
+		return _recordCount;
+	}
+
+	/**
+	 * The number of records that have not yet been returned by {@link #getNext()}.
+	 */
+	public long getRemainingRecordCount()
+	{
+		return _recordCount - _position;
+	}
+
+	/**
+	 * Restarts the source from the first record in the file.
+	 */
+	public void rewind()
+	{
+		_position = 0;
+	}
+
+	/*-----------------
+	 * Package methods
+	 */
+
+	static long recordBytes(int recordLength)
+	{
+		return (long)recordLength * (Double.SIZE / Byte.SIZE);
+	}
+
+	/**
+	 * The number of records to include in each mapped window, which is limited by the maximum
+	 * size of a {@link java.nio.MappedByteBuffer}.
+	 */
+	static long windowRecords(int recordLength)
+	{
+		return Math.max(1, Integer.MAX_VALUE / recordBytes(recordLength));
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private DoubleBuffer mapWindow(long firstRecord)
+	{
+		final long recordBytes = recordBytes(_record.length);
+		final long nRecords = Math.min(_windowRecords, _recordCount - firstRecord);
+		try
+		{
+			DoubleBuffer window = _channel.map(FileChannel.MapMode.READ_ONLY, firstRecord * recordBytes,
+				nRecords * recordBytes).order(_order).asDoubleBuffer();
+			_windowStart = firstRecord;
+			return window;
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException((Exception)ex);
+		}
+	}
+}
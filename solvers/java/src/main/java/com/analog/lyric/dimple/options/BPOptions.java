@@ -22,6 +22,7 @@ import com.analog.lyric.dimple.schedulers.validator.AllEdgeScheduleValidator;
 import com.analog.lyric.dimple.schedulers.validator.ScheduleValidatorOptionKey;
 import com.analog.lyric.dimple.solvers.core.SNode;
 import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+import com.analog.lyric.options.BooleanOptionKey;
 import com.analog.lyric.options.DoubleListOptionKey;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.EnumOptionKey;
@@ -58,6 +59,37 @@ public class BPOptions extends SolverOptions
 	public final static IntegerOptionKey iterations =
 		new IntegerOptionKey(BPOptions.class, "iterations", 1);
 
+	/**
+	 * Convergence tolerance for stopping iteration early.
+	 * <p>
+	 * When set to a positive value, the solver will keep track of the largest change to any discrete
+	 * message during each iteration and will stop iterating as soon as that change is no greater than
+	 * this value. This is currently only supported by the SumProduct and MinSum solvers, and only for graphs
+	 * whose variables are all discrete and whose factors all use factor tables. If any other variable or factor
+	 * is present, its message changes cannot be tracked, so convergence checking will be disabled and
+	 * {@link #iterations} will be used.
+	 * <p>
+	 * A value of 0.0 (the default) disables convergence checking.
+	 * <p>
+	 * @since 0.08
+	 * @see #maxIterations
+	 */
+	public static final DoubleOptionKey convergenceTolerance =
+		new DoubleOptionKey(BPOptions.class, "convergenceTolerance", 0.0, 0.0, Double.POSITIVE_INFINITY);
+	
+	/**
+	 * Maximum number of iterations to perform when solving with a positive {@link #convergenceTolerance}.
+	 * <p>
+	 * When the convergence tolerance is positive, and this value is greater than zero, it will be
+	 * used instead of {@link #iterations} as the limit on the number of iterations. A value of 0 (the default)
+	 * means that {@link #iterations} will be used. This option has no effect when convergence checking
+	 * is disabled.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey maxIterations =
+		new IntegerOptionKey(BPOptions.class, "maxIterations", 0, 0, Integer.MAX_VALUE);
+
 	/**
 	 * Node specific damping values.
 	 * <p>
@@ -87,6 +119,32 @@ public class BPOptions extends SolverOptions
 	 */
 	public static final IntegerOptionKey maxMessageSize =
 		new IntegerOptionKey(BPOptions.class, "maxMessageSize", Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+	
+	/**
+	 * Store discrete messages in single precision.
+	 * <p>
+	 * This option may be set on entire graph or on individual discrete factors.
+	 * <p>
+	 * When true, messages on edges between discrete variables and SumProduct table factors will be stored
+	 * using single precision floating point values, which halves the memory used by those messages.
+	 * <p>
+	 * Message computations are still performed in double precision: updates read the single precision
+	 * values directly and only round the results when they are stored. Factors with single precision messages
+	 * always use the general table update rather than the {@linkplain #updateApproach optimized} or other
+	 * specialized update algorithms. The option is ignored for factors whose {@link #maxMessageSize} is
+	 * smaller than the domain of any of their variables, since the k-best update requires double precision.
+	 * <p>
+	 * Only the SumProduct solver supports this option, and other solvers that use this class will throw an
+	 * exception on initialization if it is enabled for any factor. Within the SumProduct solver, custom
+	 * factors that create their own edges keep double precision messages.
+	 * <p>
+	 * Changes to this option take effect the next time the graph is initialized.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey singlePrecisionMessages =
+		new BooleanOptionKey(BPOptions.class, "singlePrecisionMessages", false);
+	
 	/**
 	 * Update approach.
 	 * <p>
@@ -0,0 +1,139 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers;
+
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Scheduler for residual belief propagation.
+ * <p>
+ * Produces a {@link ResidualSchedule}, which updates directed edges in order of decreasing
+ * change of their input messages and skips edges whose inputs have changed by no more than
+ * the {@linkplain #getThreshold() threshold}.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler associations.
+ * <p>
+ * @since 0.08
+ */
+public class ResidualScheduler extends BPSchedulerBase
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Default value of {@link #getThreshold()}.
+	 * @since 0.08
+	 */
+	public static final double DEFAULT_THRESHOLD = 1e-6;
+
+	/*-------
+	 * State
+	 */
+
+	private final double _threshold;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public ResidualScheduler()
+	{
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param threshold is a non-negative residual threshold.
+	 * @since 0.08
+	 */
+	public ResidualScheduler(double threshold)
+	{
+		if (!(threshold >= 0))
+		{
+			throw new IllegalArgumentException(String.format("Residual threshold %g is not non-negative", threshold));
+		}
+		_threshold = threshold;
+	}
+
+	/*----------------
+	 * Object methods
+	 */
+
+	@Override
+	public int hashCode()
+	{
+		return getClass().hashCode() + 13 * Double.valueOf(_threshold).hashCode();
+	}
+
+	@Override
+	public boolean equals(@Nullable Object obj)
+	{
+		return obj != null && obj.getClass() == getClass() && ((ResidualScheduler)obj)._threshold == _threshold;
+	}
+
+	/*----------------------
+	 * IOptionValue methods
+	 */
+
+	@Override
+	public boolean isMutable()
+	{
+		return false;
+	}
+
+	/*--------------------
+	 * IScheduler methods
+	 */
+
+	@Override
+	public IScheduler copy(Map<Object,Object> old2NewMap, boolean copyToRoot)
+	{
+		return this;
+	}
+
+	@Override
+	public ISchedule createSchedule(ISolverFactorGraph solverGraph)
+	{
+		return new ResidualSchedule(this, solverGraph, _threshold);
+	}
+
+	@Override
+	public ISchedule createSchedule(FactorGraph graph)
+	{
+		return new ResidualSchedule(this, graph, _threshold);
+	}
+
+	/*---------------------------
+	 * ResidualScheduler methods
+	 */
+
+	/**
+	 * Residuals less than or equal to this value will not cause an edge to be updated.
+	 * <p>
+	 * Defaults to {@link #DEFAULT_THRESHOLD}.
+	 * @since 0.08
+	 */
+	public double getThreshold()
+	{
+		return _threshold;
+	}
+}
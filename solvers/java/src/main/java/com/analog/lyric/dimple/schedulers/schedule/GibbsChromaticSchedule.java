@@ -0,0 +1,283 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.GibbsSequentialScanScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.google.common.collect.Iterators;
+
+/**
+ * Sequential scan Gibbs schedule ordered by graph coloring.
+ * <p>
+ * Contains the same entries as the schedule produced by {@link GibbsSequentialScanScheduler}, but
+ * partitioned into {@linkplain #getColor(int) colors} such that no two entries of the same color share
+ * a neighboring factor. Since a variable's conditional distribution depends only on the values of the
+ * variables connected to its neighboring factors, the entries of a single color are conditionally
+ * independent of each other given the values of the other colors, and may be updated concurrently
+ * without changing the Gibbs transition kernel.
+ * <p>
+ * When iterated sequentially, this visits all of the entries of one color before moving on to the next.
+ * <p>
+ * The coloring is computed lazily using a greedy algorithm and is recomputed if the entries change.
+ * <p>
+ * @since 0.08
+ */
+public class GibbsChromaticSchedule extends ScheduleBase implements IGibbsSchedule
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+
+	private FixedSchedule _scheduleEntryPool;
+
+	/**
+	 * Schedule entries for each color. Computed lazily.
+	 */
+	private @Nullable IScheduleEntry[][] _colors = null;
+
+	/**
+	 * Entries of {@link #_colors} concatenated in order. Computed lazily.
+	 */
+	private @Nullable IScheduleEntry[] _orderedEntries = null;
+
+	/**
+	 * Value of {@link #scheduleVersion()} when {@link #_colors} was computed.
+	 */
+	private long _colorsVersion = -1;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public GibbsChromaticSchedule(@Nullable IScheduler scheduler, FactorGraph factorGraph)
+	{
+		super(scheduler, factorGraph);
+		_scheduleEntryPool = (FixedSchedule)new GibbsSequentialScanScheduler().createSchedule(factorGraph);
+	}
+
+	/*-------------------
+	 * ISchedule methods
+	 */
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		_scheduleEntryPool = (FixedSchedule)new GibbsSequentialScanScheduler().createSchedule(factorGraph);
+		++_version;
+	}
+
+	@Override
+	public @NonNull FactorGraph getFactorGraph()
+	{
+		return Objects.requireNonNull(_factorGraph);
+	}
+
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		return Iterators.forArray(orderedEntries());
+	}
+
+	@Override
+	public final long scheduleVersion()
+	{
+		return _version + _scheduleEntryPool.scheduleVersion();
+	}
+
+	/*------------------------
+	 * IGibbsSchedule methods
+	 */
+
+	@Override
+	public void addBlockScheduleEntry(BlockScheduleEntry blockScheduleEntry)
+	{
+		_scheduleEntryPool.addBlockScheduleEntry(blockScheduleEntry);
+	}
+
+	@Override
+	public int size()
+	{
+		return _scheduleEntryPool.size();
+	}
+
+	/*--------------------------------
+	 * GibbsChromaticSchedule methods
+	 */
+
+	/**
+	 * The number of colors used to partition the schedule entries.
+	 * @since 0.08
+	 */
+	public int getColorCount()
+	{
+		return colors().length;
+	}
+
+	/**
+	 * The schedule entries with given {@code color}, none of which share a neighboring factor.
+	 * <p>
+	 * The caller must not modify the returned array.
+	 * <p>
+	 * @param color is a value in the range [0, {@link #getColorCount()}-1].
+	 * @since 0.08
+	 */
+	public IScheduleEntry[] getColor(int color)
+	{
+		return colors()[color];
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private IScheduleEntry[][] colors()
+	{
+		IScheduleEntry[][] colors = _colors;
+
+		if (colors == null || _colorsVersion != scheduleVersion())
+		{
+			colors = computeColors(_scheduleEntryPool);
+
+			final IScheduleEntry[] orderedEntries = new IScheduleEntry[_scheduleEntryPool.size()];
+			int i = 0;
+			for (IScheduleEntry[] color : colors)
+			{
+				System.arraycopy(color, 0, orderedEntries, i, color.length);
+				i += color.length;
+			}
+
+			_colors = colors;
+			_orderedEntries = orderedEntries;
+			_colorsVersion = scheduleVersion();
+		}
+
+		return colors;
+	}
+
+	private IScheduleEntry[] orderedEntries()
+	{
+		colors();
+		return Objects.requireNonNull(_orderedEntries);
+	}
+
+	/**
+	 * Greedily assigns each entry the smallest color not used by any earlier entry that shares one
+	 * of its neighboring factors.
+	 */
+	private static IScheduleEntry[][] computeColors(FixedSchedule schedule)
+	{
+		final int nEntries = schedule.size();
+		final IdentityHashMap<INode, BitSet> colorsByFactor = new IdentityHashMap<>();
+		final ArrayList<ArrayList<IScheduleEntry>> colors = new ArrayList<>();
+		final ArrayList<INode> factors = new ArrayList<>();
+		final BitSet usedColors = new BitSet();
+
+		for (int i = 0; i < nEntries; ++i)
+		{
+			final IScheduleEntry entry = schedule.get(i);
+
+			factors.clear();
+			if (entry instanceof BlockScheduleEntry)
+			{
+				for (INode node : ((BlockScheduleEntry)entry).getNodes())
+				{
+					addNeighboringFactors(node, factors);
+				}
+			}
+			else if (entry instanceof NodeScheduleEntry)
+			{
+				addNeighboringFactors(((NodeScheduleEntry)entry).getNode(), factors);
+			}
+
+			usedColors.clear();
+			for (INode factor : factors)
+			{
+				final BitSet factorColors = colorsByFactor.get(factor);
+				if (factorColors != null)
+				{
+					usedColors.or(factorColors);
+				}
+			}
+
+			final int color = usedColors.nextClearBit(0);
+			while (colors.size() <= color)
+			{
+				colors.add(new ArrayList<IScheduleEntry>());
+			}
+			colors.get(color).add(entry);
+
+			for (INode factor : factors)
+			{
+				BitSet factorColors = colorsByFactor.get(factor);
+				if (factorColors == null)
+				{
+					colorsByFactor.put(factor, factorColors = new BitSet());
+				}
+				factorColors.set(color);
+			}
+		}
+
+		final IScheduleEntry[][] result = new IScheduleEntry[colors.size()][];
+		for (int color = 0; color < result.length; ++color)
+		{
+			final ArrayList<IScheduleEntry> entries = colors.get(color);
+			result[color] = entries.toArray(new IScheduleEntry[entries.size()]);
+		}
+
+		return result;
+	}
+
+	private static void addNeighboringFactors(INode node, ArrayList<INode> factors)
+	{
+		if (node instanceof Variable)
+		{
+			final Variable var = (Variable)node;
+			for (int i = 0, n = var.getSiblingCount(); i < n; ++i)
+			{
+				factors.add(var.getSibling(i));
+			}
+		}
+		else
+		{
+			// Not expected in a Gibbs schedule, but treat the node as conflicting with anything
+			// adjacent to it.
+			factors.add(node);
+			for (int i = 0, n = node.getSiblingCount(); i < n; ++i)
+			{
+				factors.add(node.getSibling(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.Iterator;
+
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+
+/**
+ * A schedule whose order of updates depends on the effect of previously run entries.
+ * <p>
+ * The standard {@link #iterator()} of such a schedule describes the set of entries that
+ * may be run in one iteration and is used for purposes such as schedule validation, update
+ * cost optimization and dependency analysis. When actually running the schedule, the solver
+ * graph instead uses {@link #adaptiveIterator()}, whose entries must each be run before the
+ * iterator is advanced, since the iterator examines the results of the previous entry to
+ * decide what to do next.
+ * <p>
+ * @since 0.08
+ * @see SFactorGraphBase#update()
+ */
+public interface IAdaptiveSchedule extends ISchedule
+{
+	/**
+	 * Iterator over entries to run for a single iteration of the solver.
+	 * <p>
+	 * Each entry returned by {@link Iterator#next()} must be run before {@link Iterator#hasNext()}
+	 * or {@link Iterator#next()} is invoked again.
+	 * <p>
+	 * @since 0.08
+	 */
+	public Iterator<IScheduleEntry> adaptiveIterator();
+
+	/**
+	 * Discards adaptive state accumulated from previous iterations.
+	 * <p>
+	 * This is invoked when the solver graph is {@linkplain SFactorGraphBase#initialize() initialized}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public void reset();
+}
@@ -0,0 +1,603 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.schedulers.schedule;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.BinaryHeap;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.google.common.collect.Iterators;
+
+/**
+ * Schedule for residual belief propagation.
+ * <p>
+ * Instead of visiting every edge on every iteration, this schedule repeatedly updates the
+ * directed edge whose input messages have changed the most since its outgoing message was
+ * last computed. The change of an incoming message is measured when the edge that produced
+ * it is run, and is then propagated as the pending residual of the other outgoing edges of the
+ * receiving node. Edges whose pending residual does not exceed the {@linkplain #getThreshold()
+ * threshold} are not updated at all.
+ * <p>
+ * One iteration performs at most as many edge updates as there are directed edges in the graph,
+ * but will stop early when there are no edges left with a pending residual above the threshold.
+ * <p>
+ * The static {@link #iterator()} returns an edge flooding schedule over all of the directed edges,
+ * which is used for validation and dependency analysis. In particular, when multithreading is
+ * enabled, the solver will simply run that flooding schedule.
+ * <p>
+ * WARNING: This schedule DOES NOT respect any existing sub-graph scheduler associations. Nested
+ * graphs are flattened into a single residual queue.
+ * <p>
+ * @since 0.08
+ * @see com.analog.lyric.dimple.schedulers.ResidualScheduler
+ */
+@NotThreadSafe
+public class ResidualSchedule extends ScheduleBase implements IAdaptiveSchedule
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+
+	private final double _threshold;
+	private final @Nullable ISolverFactorGraph _solverGraph;
+
+	/**
+	 * Precomputed schedule entries indexed by directed edge number.
+	 */
+	private ResidualEdgeEntry[] _entries = new ResidualEdgeEntry[0];
+
+	/**
+	 * Directed edge number of the edge going in the opposite direction.
+	 */
+	private int[] _reverseEdge = new int[0];
+
+	/**
+	 * For each directed edge, the node index of its receiving node.
+	 */
+	private int[] _targetNode = new int[0];
+
+	/**
+	 * Index of each node with edges in the schedule. Factors and variables of the graph come first, followed
+	 * by any variables that are only connected to its factors.
+	 */
+	private IdentityHashMap<INode,Integer> _nodeIndex = new IdentityHashMap<>();
+
+	/**
+	 * Outgoing directed edge numbers indexed by node index.
+	 */
+	private int[][] _nodeOutEdges = new int[0][];
+
+	/**
+	 * Heap entries for edges currently queued for update. Priorities are negated residuals so that the
+	 * edge with the largest residual is at the head of the heap.
+	 */
+	private BinaryHeap.Entry<ResidualEdgeEntry>[] _queued;
+	private final BinaryHeap<ResidualEdgeEntry> _queue = new BinaryHeap<>();
+
+	/**
+	 * Value of each outgoing message when it was last measured.
+	 */
+	private @Nullable IParameterizedMessage[] _lastMessage = new IParameterizedMessage[0];
+
+	private @Nullable ISolverNode[] _solverNodes = null;
+
+	private long _updateCount = 0;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public ResidualSchedule(@Nullable IScheduler scheduler, FactorGraph factorGraph, double threshold)
+	{
+		this(scheduler, factorGraph, null, threshold);
+	}
+
+	public ResidualSchedule(@Nullable IScheduler scheduler, ISolverFactorGraph solverGraph, double threshold)
+	{
+		this(scheduler, solverGraph.getModelObject(), solverGraph, threshold);
+	}
+
+	private ResidualSchedule(@Nullable IScheduler scheduler, FactorGraph factorGraph,
+		@Nullable ISolverFactorGraph solverGraph, double threshold)
+	{
+		super(scheduler, factorGraph);
+		_solverGraph = solverGraph;
+		_threshold = threshold;
+		_queued = newQueuedArray(0);
+		initialize();
+	}
+
+	/*-------------------
+	 * ISchedule methods
+	 */
+
+	@Override
+	public void attach(FactorGraph factorGraph)
+	{
+		super.attach(factorGraph);
+		initialize();
+	}
+
+	@Override
+	public @NonNull FactorGraph getFactorGraph()
+	{
+		return Objects.requireNonNull(_factorGraph);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns edge flooding schedule with all variable-to-factor edges followed
+	 * by all factor-to-variable edges.
+	 */
+	@Override
+	public Iterator<IScheduleEntry> iterator()
+	{
+		return Iterators.<IScheduleEntry>forArray(_entries);
+	}
+
+	/*---------------------------
+	 * IAdaptiveSchedule methods
+	 */
+
+	@Override
+	public Iterator<IScheduleEntry> adaptiveIterator()
+	{
+		return new ResidualIterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Forgets all measured messages and residuals, so that every directed edge will be
+	 * updated at least once before any residuals are measured.
+	 */
+	@Override
+	public void reset()
+	{
+		_queue.clear();
+		Arrays.fill(_lastMessage, null);
+		_solverNodes = null;
+		_updateCount = 0;
+
+		final BinaryHeap.Entry<ResidualEdgeEntry>[] queued = _queued;
+		_queue.deferOrderingForBulkAdd(queued.length);
+		for (int edge = 0; edge < queued.length; ++edge)
+		{
+			queued[edge] = _queue.offer(_entries[edge], Double.NEGATIVE_INFINITY);
+		}
+	}
+
+	/*---------------------------
+	 * ResidualSchedule methods
+	 */
+
+	/**
+	 * Removes all edges from the queue and forgets all measured messages without scheduling any edges.
+	 * <p>
+	 * Unlike {@link #reset()}, subsequent {@linkplain #adaptiveIterator() adaptive iteration} will only
+	 * update edges that are explicitly {@linkplain #touch touched} or that depend on them, so this can be
+	 * used to resume propagation from the current messages after a local change.
+	 * @since 0.08
+	 */
+	public void clear()
+	{
+		final BinaryHeap.Entry<ResidualEdgeEntry>[] queued = _queued;
+		_queue.clear();
+		Arrays.fill(queued, null);
+		Arrays.fill(_lastMessage, null);
+		_updateCount = 0;
+	}
+
+	/**
+	 * The number of directed edges in the schedule.
+	 * @since 0.08
+	 */
+	public int getEdgeCount()
+	{
+		return _entries.length;
+	}
+
+	/**
+	 * The number of edges currently waiting to be updated because their pending residual
+	 * exceeds the threshold.
+	 * @since 0.08
+	 */
+	public int getPendingEdgeCount()
+	{
+		return _queue.size();
+	}
+
+	/**
+	 * Residuals less than or equal to this value will not cause an edge to be updated.
+	 * @since 0.08
+	 */
+	public double getThreshold()
+	{
+		return _threshold;
+	}
+
+	/**
+	 * Total number of edge updates run by this schedule since it was last {@linkplain #reset() reset}.
+	 * @since 0.08
+	 */
+	public long getUpdateCount()
+	{
+		return _updateCount;
+	}
+
+	/**
+	 * Marks all of the outgoing edges of {@code node} as needing to be updated.
+	 * <p>
+	 * This can be used to restart propagation from a node whose local state (e.g. an input or
+	 * fixed value) changed without being reflected in any incoming message.
+	 * <p>
+	 * @return false if {@code node} does not belong to the schedule.
+	 * @since 0.08
+	 */
+	public boolean touch(INode node)
+	{
+		final Integer index = _nodeIndex.get(node);
+		if (index == null)
+		{
+			return false;
+		}
+
+		final int[] edges = _nodeOutEdges[index];
+		for (int edge : edges)
+		{
+			raiseResidual(edge, Double.POSITIVE_INFINITY);
+		}
+		return edges.length > 0;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private void initialize()
+	{
+		final FactorGraph fg = getFactorGraph();
+		final IdentityHashMap<INode,Integer> nodeIndex = _nodeIndex = new IdentityHashMap<>();
+
+		int nEdges = 0;
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			nodeIndex.put(factor, nodeIndex.size());
+			nEdges += 2 * factor.getSiblingCount();
+		}
+		for (Variable var : fg.getVariables())
+		{
+			nodeIndex.put(var, nodeIndex.size());
+		}
+		
+		// Variables outside of the graph are indexed so that they can be touched, but messages are
+		// not propagated through them.
+		final int nInternal = nodeIndex.size();
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			for (int port = 0, n = factor.getSiblingCount(); port < n; ++port)
+			{
+				final Variable var = factor.getSibling(port);
+				if (!nodeIndex.containsKey(var))
+				{
+					nodeIndex.put(var, nodeIndex.size());
+				}
+			}
+		}
+
+		final int nNodes = nodeIndex.size();
+		final int half = nEdges / 2;
+		_entries = new ResidualEdgeEntry[nEdges];
+		_reverseEdge = new int[nEdges];
+		_targetNode = new int[nEdges];
+		_nodeOutEdges = new int[nNodes][];
+
+		int edge = 0;
+		for (Factor factor : fg.getNonGraphFactors())
+		{
+			final int factorIndex = nodeIndex.get(factor);
+			final int nSiblings = factor.getSiblingCount();
+			_nodeOutEdges[factorIndex] = new int[nSiblings];
+			for (int port = 0; port < nSiblings; ++port, ++edge)
+			{
+				final Variable var = factor.getSibling(port);
+				final int varIndex = nodeIndex.get(var);
+				final int varPort = factor.getReverseSiblingNumber(port);
+
+				// Variable to factor edges come first so that the static schedule floods
+				// variables before factors.
+				_entries[edge] = new ResidualEdgeEntry(var, varPort, edge);
+				_entries[edge + half] = new ResidualEdgeEntry(factor, port, edge + half);
+				_reverseEdge[edge] = edge + half;
+				_reverseEdge[edge + half] = edge;
+				_targetNode[edge] = factorIndex;
+				_targetNode[edge + half] = varIndex < nInternal ? varIndex : -1;
+
+				_nodeOutEdges[factorIndex][port] = edge + half;
+				int[] varEdges = _nodeOutEdges[varIndex];
+				if (varEdges == null)
+				{
+					varEdges = _nodeOutEdges[varIndex] = new int[var.getSiblingCount()];
+					Arrays.fill(varEdges, -1);
+				}
+				varEdges[varPort] = edge;
+			}
+		}
+
+		for (int i = 0; i < nNodes; ++i)
+		{
+			int[] edges = _nodeOutEdges[i];
+			if (edges == null)
+			{
+				_nodeOutEdges[i] = new int[0];
+			}
+			else
+			{
+				// Drop edges to factors that are not part of this schedule.
+				int n = 0;
+				for (int e : edges)
+				{
+					if (e >= 0)
+					{
+						edges[n++] = e;
+					}
+				}
+				if (n < edges.length)
+				{
+					_nodeOutEdges[i] = Arrays.copyOf(edges, n);
+				}
+			}
+		}
+
+		_queued = newQueuedArray(nEdges);
+		_lastMessage = new IParameterizedMessage[nEdges];
+		_queue.ensureCapacity(nEdges);
+		reset();
+		++_version;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static BinaryHeap.Entry<ResidualEdgeEntry>[] newQueuedArray(int size)
+	{
+		return new BinaryHeap.Entry[size];
+	}
+
+	private ISolverNode[] solverNodes()
+	{
+		ISolverNode[] snodes = _solverNodes;
+		if (snodes == null)
+		{
+			ISolverFactorGraph sgraph = _solverGraph;
+			if (sgraph == null)
+			{
+				sgraph = Objects.requireNonNull(getFactorGraph().getSolver());
+			}
+			snodes = _solverNodes = new ISolverNode[_entries.length];
+			for (int edge = 0; edge < snodes.length; ++edge)
+			{
+				snodes[edge] = sgraph.getSolverMapping().getSolverNode(_entries[edge].getNode());
+			}
+		}
+		return snodes;
+	}
+
+	private void raiseResidual(int edge, double residual)
+	{
+		final BinaryHeap.Entry<ResidualEdgeEntry> entry = _queued[edge];
+		if (entry == null)
+		{
+			_queued[edge] = _queue.offer(_entries[edge], -residual);
+		}
+		else if (-residual < entry.getPriority())
+		{
+			_queue.changePriority(entry, -residual);
+		}
+	}
+
+	private @Nullable IParameterizedMessage outgoingMessage(int edge)
+	{
+		final ISolverNode snode = solverNodes()[edge];
+		final ISolverEdgeState sedge = snode.getSiblingEdgeState(_entries[edge].getPortNum());
+		if (sedge != null)
+		{
+			final Object msg =
+				snode.getModelObject() instanceof Factor ? sedge.getFactorToVarMsg() : sedge.getVarToFactorMsg();
+			if (msg instanceof IParameterizedMessage)
+			{
+				return (IParameterizedMessage)msg;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Records value of outgoing message of {@code edge} before it is first updated.
+	 */
+	private void snapshot(int edge)
+	{
+		if (_lastMessage[edge] == null)
+		{
+			final IParameterizedMessage msg = outgoingMessage(edge);
+			if (msg != null)
+			{
+				_lastMessage[edge] = msg.clone();
+			}
+		}
+	}
+	
+	/**
+	 * Measures change in outgoing message of {@code edge} since it was last measured and
+	 * raises the pending residual of the edges that depend on it.
+	 */
+	private void measure(int edge)
+	{
+		final IParameterizedMessage newMsg = outgoingMessage(edge);
+		final IParameterizedMessage oldMsg = _lastMessage[edge];
+		if (newMsg == null || oldMsg == null)
+		{
+			return;
+		}
+
+		final double residual = messageResidual(oldMsg, newMsg);
+		oldMsg.setFrom(newMsg);
+
+		if (residual > _threshold)
+		{
+			final int target = _targetNode[edge];
+			if (target >= 0)
+			{
+				final int reverse = _reverseEdge[edge];
+				for (int dependent : _nodeOutEdges[target])
+				{
+					if (dependent != reverse)
+					{
+						raiseResidual(dependent, residual);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes distance between two messages.
+	 * <p>
+	 * For {@link DiscreteMessage}s this is the maximum absolute difference between the
+	 * normalized weights. For other messages it is the {@linkplain IParameterizedMessage#computeKLDivergence
+	 * KL divergence}. Returns positive infinity if the distance cannot be computed.
+	 * @since 0.08
+	 */
+	public static double messageResidual(IParameterizedMessage oldMsg, IParameterizedMessage newMsg)
+	{
+		if (oldMsg instanceof DiscreteMessage && newMsg instanceof DiscreteMessage)
+		{
+			final DiscreteMessage oldDiscrete = (DiscreteMessage)oldMsg;
+			final DiscreteMessage newDiscrete = (DiscreteMessage)newMsg;
+			final int size = oldDiscrete.size();
+			if (size != newDiscrete.size())
+			{
+				return Double.POSITIVE_INFINITY;
+			}
+
+			final double oldSum = oldDiscrete.sumOfWeights(), newSum = newDiscrete.sumOfWeights();
+			if (oldSum == 0 || newSum == 0)
+			{
+				return oldSum == newSum ? 0.0 : Double.POSITIVE_INFINITY;
+			}
+
+			double residual = 0.0;
+			for (int i = 0; i < size; ++i)
+			{
+				residual = Math.max(residual,
+					Math.abs(newDiscrete.getWeight(i) / newSum - oldDiscrete.getWeight(i) / oldSum));
+			}
+			return residual;
+		}
+
+		try
+		{
+			final double residual = newMsg.computeKLDivergence(oldMsg);
+			return residual >= 0 ? residual : Double.isNaN(residual) ? Double.POSITIVE_INFINITY : 0.0;
+		}
+		catch (RuntimeException ex)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	private class ResidualIterator implements Iterator<IScheduleEntry>
+	{
+		private final int _limit = _entries.length;
+		private int _count = 0;
+		private int _lastEdge = -1;
+
+		@Override
+		public boolean hasNext()
+		{
+			if (_lastEdge >= 0)
+			{
+				measure(_lastEdge);
+				_lastEdge = -1;
+			}
+			return _count < _limit && !_queue.isEmpty();
+		}
+
+		@Override
+		public IScheduleEntry next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+
+			final ResidualEdgeEntry entry = Objects.requireNonNull(_queue.poll());
+			final int edge = entry._edge;
+			_queued[edge] = null;
+			snapshot(edge);
+			_lastEdge = edge;
+			++_count;
+			++_updateCount;
+			return entry;
+		}
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("remove");
+		}
+	}
+
+	/**
+	 * Edge schedule entry that remembers its directed edge number.
+	 */
+	private static final class ResidualEdgeEntry extends EdgeScheduleEntry
+	{
+		private final int _edge;
+
+		private ResidualEdgeEntry(INode node, int portNum, int edge)
+		{
+			super(node, portNum);
+			_edge = edge;
+		}
+	}
+}
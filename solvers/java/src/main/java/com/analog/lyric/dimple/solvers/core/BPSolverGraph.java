@@ -16,15 +16,24 @@
 
 package com.analog.lyric.dimple.solvers.core;
 
+import java.util.Iterator;
+
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.dimple.data.IDatum;
+import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.ResidualScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
+import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
 
 /**
  * Base implementation class for belief-propagation-style solvers.
@@ -39,6 +48,17 @@ public abstract class BPSolverGraph
 	<SFactor extends ISolverFactor, SVariable extends ISolverVariable, SEdge extends ISolverEdgeState>
 	extends SFactorGraphBase<SFactor, SVariable, SEdge, NoSolverVariableBlock>
 {
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * State saved by {@link #solveIncremental()}, which is discarded when the graph is initialized.
+	 */
+	private @Nullable IncrementalState _incrementalState = null;
+	
+	private long _incrementalUpdateCount = -1;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -61,4 +81,180 @@ public abstract class BPSolverGraph
 	{
 		return BPOptions.scheduler;
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Also discards any state saved by {@link #solveIncremental()}.
+	 */
+	@Override
+	public void initialize()
+	{
+		_incrementalState = null;
+		super.initialize();
+	}
+	
+	/*-----------------------
+	 * BPSolverGraph methods
+	 */
+	
+	/**
+	 * Solves graph starting from the messages computed by the previous solve.
+	 * <p>
+	 * When only the inputs or fixed values of a few variables have changed since the graph was
+	 * last solved, this will usually be much cheaper than a full {@link #solve()}. Instead of initializing
+	 * all of the messages and running the entire schedule, only the outgoing edges of variables whose
+	 * {@linkplain Variable#getPrior() prior} or {@linkplain #getConditioningLayer() condition} has changed
+	 * are queued for update, and changes are propagated through the graph in the manner of
+	 * residual belief propagation (see {@link ResidualSchedule}) until no edge has an incoming message
+	 * that changed by more than the tolerance. The tolerance is {@link BPOptions#convergenceTolerance}
+	 * if that is positive and otherwise is {@link ResidualScheduler#DEFAULT_THRESHOLD}. At most
+	 * {@link BPOptions#maxIterations} or {@link #getNumIterations()} (whichever is larger) times the
+	 * number of directed edges will be updated.
+	 * <p>
+	 * Changes are detected by comparing the identity of each variable's current prior and condition with
+	 * those seen by the previous solve, so this will not notice data objects that are modified in place; use
+	 * {@link Variable#setPrior} or {@link Variable#setInputObject} to change them instead.
+	 * <p>
+	 * A full {@link #solve()} will be done instead if the graph has not been solved incrementally since it
+	 * was last {@linkplain #initialize() initialized}, if its structure has changed, or if it contains
+	 * {@linkplain FactorGraph#getFactorGraphStreams() factor graph streams}. For a loopy graph, the resulting
+	 * beliefs will generally differ from those produced by a full solve from initial messages, although
+	 * usually only by a small amount. As with {@link ResidualScheduler}, changes are only propagated
+	 * across edges whose messages are parameterized messages.
+	 * <p>
+	 * @since 0.08
+	 * @see #getIncrementalUpdateCount()
+	 */
+	public void solveIncremental()
+	{
+		final FactorGraph fg = getModelObject();
+		IncrementalState state = _incrementalState;
+		
+		if (state == null || !state.isUpToDate(fg) || !fg.getFactorGraphStreams().isEmpty())
+		{
+			solve();
+			_incrementalState = new IncrementalState(this);
+			_incrementalUpdateCount = -1;
+			return;
+		}
+		
+		final ResidualSchedule schedule = state._schedule;
+		schedule.clear();
+		
+		final SolverNodeMapping solvers = getSolverMapping();
+		final Variable[] variables = state._variables;
+		for (int i = 0; i < variables.length; ++i)
+		{
+			final Variable var = variables[i];
+			final ISolverVariable svar = solvers.getSolverVariable(var);
+			final IDatum prior = var.getPrior(), condition = conditionOf(svar);
+			if (prior != state._priors[i] || condition != state._conditions[i])
+			{
+				state._priors[i] = prior;
+				state._conditions[i] = condition;
+				svar.updatePriorAndCondition();
+				schedule.touch(var);
+			}
+		}
+		
+		final int passes = Math.max(getNumIterations(), getOptionOrDefault(BPOptions.maxIterations));
+		for (int pass = 0; pass < passes && schedule.getPendingEdgeCount() > 0; ++pass)
+		{
+			final Iterator<IScheduleEntry> entries = schedule.adaptiveIterator();
+			while (entries.hasNext())
+			{
+				runScheduleEntry(entries.next());
+			}
+		}
+		
+		_incrementalUpdateCount = schedule.getUpdateCount();
+	}
+	
+	/**
+	 * The number of directed edge updates performed by the last call to {@link #solveIncremental()}.
+	 * <p>
+	 * Returns -1 if {@link #solveIncremental()} has not been called or if the last call did a full solve.
+	 * <p>
+	 * @since 0.08
+	 */
+	public long getIncrementalUpdateCount()
+	{
+		return _incrementalUpdateCount;
+	}
+	
+	/*-------------------
+	 * Protected methods
+	 */
+	
+	/**
+	 * Throws if {@link BPOptions#singlePrecisionMessages} is enabled for any factor owned by this graph.
+	 * <p>
+	 * For use in {@link #initialize()} by solvers that do not support single precision messages, after
+	 * the solver factors have been created.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected void assertNoSinglePrecisionMessages()
+	{
+		for (ISolverFactor sfactor : getSolverFactors())
+		{
+			if (sfactor.getOptionOrDefault(BPOptions.singlePrecisionMessages))
+			{
+				throw DimpleException.unsupportedBySolver(getSolverName(), "BPOptions.singlePrecisionMessages");
+			}
+		}
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+	
+	private static @Nullable IDatum conditionOf(ISolverVariable svar)
+	{
+		return svar instanceof SVariableBase ? ((SVariableBase<?>)svar).getCondition() : null;
+	}
+	
+	/*---------------
+	 * Inner classes
+	 */
+	
+	/**
+	 * Priors and conditions of all variables in the graph as of the last solve, along with the
+	 * residual schedule used to propagate subsequent changes.
+	 */
+	private static final class IncrementalState
+	{
+		private final long _structureVersion;
+		private final ResidualSchedule _schedule;
+		private final Variable[] _variables;
+		private final @Nullable IDatum[] _priors;
+		private final @Nullable IDatum[] _conditions;
+		
+		private IncrementalState(BPSolverGraph<?,?,?> sgraph)
+		{
+			final FactorGraph fg = sgraph.getModelObject();
+			final double tolerance = sgraph.getOptionOrDefault(BPOptions.convergenceTolerance);
+			
+			_structureVersion = fg.graphTreeStructureVersion();
+			_schedule =
+				new ResidualSchedule(null, sgraph, tolerance > 0 ? tolerance : ResidualScheduler.DEFAULT_THRESHOLD);
+			_variables = fg.getVariables().values().toArray(new Variable[0]);
+			_priors = new IDatum[_variables.length];
+			_conditions = new IDatum[_variables.length];
+			
+			final SolverNodeMapping solvers = sgraph.getSolverMapping();
+			for (int i = 0; i < _variables.length; ++i)
+			{
+				final Variable var = _variables[i];
+				_priors[i] = var.getPrior();
+				_conditions[i] = conditionOf(solvers.getSolverVariable(var));
+			}
+		}
+		
+		private boolean isUpToDate(FactorGraph fg)
+		{
+			return _structureVersion == fg.graphTreeStructureVersion();
+		}
+	}
 }
@@ -0,0 +1,325 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+
+/**
+ * Accumulates the largest change in message values over a single solver iteration.
+ * <p>
+ * Solver nodes that support {@linkplain BPOptions#convergenceTolerance convergence checking}
+ * {@linkplain #register register} themselves during initialization, and then {@linkplain #save save} their
+ * outgoing message values before an update and {@linkplain #record record} the difference afterward. The
+ * solver graph {@linkplain #reset() resets} the tracker at the start of each iteration. Because the maximum
+ * only reflects nodes that record their deltas, the solver graph will not stop early unless every node
+ * in the graph has {@linkplain #isRegistered been registered}.
+ * <p>
+ * Nodes may be updated concurrently when multithreading is enabled, so the maximum is maintained
+ * atomically.
+ * <p>
+ * @since 0.08
+ * @see SFactorGraphBase#getMessageDeltaTracker()
+ */
+@ThreadSafe
+public final class MessageDeltaTracker
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Bits of non-negative double value of maximum delta. Non-negative doubles
+	 * have the same ordering as their raw long bits.
+	 */
+	private final AtomicLong _maxDeltaBits = new AtomicLong(0L);
+
+	/**
+	 * Nodes that record their deltas with this tracker.
+	 */
+	private final Set<ISolverNode> _nodes = Collections.newSetFromMap(new ConcurrentHashMap<ISolverNode,Boolean>());
+
+	/*-----------------------------
+	 * MessageDeltaTracker methods
+	 */
+
+	/**
+	 * Returns the {@linkplain SFactorGraphBase#getMessageDeltaTracker() tracker} of the
+	 * root solver graph of {@code node}, if any, after registering {@code node} with it.
+	 * <p>
+	 * To be invoked during initialization by nodes that will record the deltas of all of their
+	 * message updates with the returned tracker.
+	 */
+	public static @Nullable MessageDeltaTracker register(ISolverNode node)
+	{
+		final ISolverFactorGraph root = node.getRootSolverGraph();
+		final MessageDeltaTracker tracker =
+			root instanceof SFactorGraphBase ? ((SFactorGraphBase<?,?,?,?>)root).getMessageDeltaTracker() : null;
+		if (tracker != null)
+		{
+			tracker._nodes.add(node);
+		}
+		return tracker;
+	}
+
+	/**
+	 * True if {@code node} has been {@linkplain #register registered} with this tracker.
+	 */
+	public boolean isRegistered(ISolverNode node)
+	{
+		return _nodes.contains(node);
+	}
+
+	/**
+	 * The largest delta {@linkplain #record recorded} since the last {@link #reset}.
+	 */
+	public double getMaxDelta()
+	{
+		return Double.longBitsToDouble(_maxDeltaBits.get());
+	}
+
+	/**
+	 * Resets {@linkplain #getMaxDelta() maximum delta} to zero and returns its previous value.
+	 */
+	public double reset()
+	{
+		return Double.longBitsToDouble(_maxDeltaBits.getAndSet(0L));
+	}
+
+	/**
+	 * Updates {@linkplain #getMaxDelta() maximum delta} if {@code delta} is larger.
+	 * <p>
+	 * NaN values are recorded as positive infinity.
+	 */
+	public void record(double delta)
+	{
+		if (delta != delta)
+		{
+			delta = Double.POSITIVE_INFINITY;
+		}
+
+		final long bits = Double.doubleToRawLongBits(Math.abs(delta));
+
+		for (long prev = _maxDeltaBits.get(); bits > prev; prev = _maxDeltaBits.get())
+		{
+			if (_maxDeltaBits.compareAndSet(prev, bits))
+			{
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records largest absolute difference between {@code message} and {@code saved} values
+	 * and releases {@code saved} array.
+	 *
+	 * @param message is the updated message value
+	 * @param saved is an array returned by {@link #save(double[])} for the same message
+	 * before it was updated.
+	 */
+	public void record(double[] message, double[] saved)
+	{
+		record(maxAbsDifference(message, saved, 0));
+		DimpleEnvironment.doubleArrayCache.release(saved);
+	}
+
+	/**
+	 * Records largest absolute difference between {@code messages} and {@code saved} values
+	 * and releases {@code saved} array.
+	 *
+	 * @param messages are the updated message values
+	 * @param saved is an array returned by {@link #save(double[][])} for the same messages
+	 * before they were updated.
+	 */
+	public void record(double[][] messages, double[] saved)
+	{
+		double delta = 0.0;
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			delta = Math.max(delta, maxAbsDifference(message, saved, offset));
+			offset += message.length;
+		}
+		record(delta);
+		DimpleEnvironment.doubleArrayCache.release(saved);
+	}
+
+	/**
+	 * Records largest absolute difference between single precision {@code message} and {@code saved} values
+	 * and releases {@code saved} array.
+	 *
+	 * @param message is the updated message value
+	 * @param saved is an array returned by {@link #save(float[])} for the same message
+	 * before it was updated.
+	 */
+	public void record(float[] message, double[] saved)
+	{
+		record(maxAbsDifference(message, saved, 0));
+		DimpleEnvironment.doubleArrayCache.release(saved);
+	}
+	
+	/**
+	 * Records largest absolute difference between messages and {@code saved} values
+	 * and releases {@code saved} array.
+	 * <p>
+	 * For each index, the message is held in either {@code messages} or {@code floatMessages}, and
+	 * the other array holds an empty array.
+	 *
+	 * @param saved is an array returned by {@link #save(double[][], float[][])} for the same messages
+	 * before they were updated.
+	 */
+	public void record(double[][] messages, float[][] floatMessages, double[] saved)
+	{
+		double delta = 0.0;
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			final float[] floatMessage = floatMessages[i];
+			delta = Math.max(delta, maxAbsDifference(message, saved, offset));
+			offset += message.length;
+			delta = Math.max(delta, maxAbsDifference(floatMessage, saved, offset));
+			offset += floatMessage.length;
+		}
+		record(delta);
+		DimpleEnvironment.doubleArrayCache.release(saved);
+	}
+
+	/**
+	 * Returns copy of {@code message} in an array allocated from {@link DimpleEnvironment#doubleArrayCache}.
+	 * <p>
+	 * The array should be passed to {@link #record(double[], double[])} after updating the message.
+	 */
+	public double[] save(double[] message)
+	{
+		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(message.length);
+		System.arraycopy(message, 0, saved, 0, message.length);
+		return saved;
+	}
+
+	/**
+	 * Returns concatenated copy of {@code messages} in an array allocated from
+	 * {@link DimpleEnvironment#doubleArrayCache}.
+	 * <p>
+	 * The array should be passed to {@link #record(double[][], double[])} after updating the messages.
+	 */
+	public double[] save(double[][] messages)
+	{
+		int size = 0;
+		for (double[] message : messages)
+		{
+			size += message.length;
+		}
+
+		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(size);
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			System.arraycopy(message, 0, saved, offset, message.length);
+			offset += message.length;
+		}
+		return saved;
+	}
+
+	/**
+	 * Returns double precision copy of single precision {@code message} in an array allocated from
+	 * {@link DimpleEnvironment#doubleArrayCache}.
+	 * <p>
+	 * The array should be passed to {@link #record(float[], double[])} after updating the message.
+	 */
+	public double[] save(float[] message)
+	{
+		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(message.length);
+		for (int i = message.length; --i>=0;)
+		{
+			saved[i] = message[i];
+		}
+		return saved;
+	}
+
+	/**
+	 * Returns concatenated copy of messages held in either {@code messages} or {@code floatMessages}
+	 * in an array allocated from {@link DimpleEnvironment#doubleArrayCache}.
+	 * <p>
+	 * The array should be passed to {@link #record(double[][], float[][], double[])} after updating the messages.
+	 */
+	public double[] save(double[][] messages, float[][] floatMessages)
+	{
+		int size = 0;
+		for (int i = 0, n = messages.length; i < n; ++i)
+		{
+			size += messages[i].length + floatMessages[i].length;
+		}
+
+		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(size);
+		for (int i = 0, offset = 0, n = messages.length; i < n; ++i)
+		{
+			final double[] message = messages[i];
+			System.arraycopy(message, 0, saved, offset, message.length);
+			offset += message.length;
+			final float[] floatMessage = floatMessages[i];
+			for (int j = 0, m = floatMessage.length; j < m; ++j)
+			{
+				saved[offset++] = floatMessage[j];
+			}
+		}
+		return saved;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static double maxAbsDifference(double[] message, double[] saved, int offset)
+	{
+		double delta = 0.0;
+		for (int i = message.length; --i>=0;)
+		{
+			final double oldValue = saved[offset + i], newValue = message[i];
+			if (oldValue != newValue)
+			{
+				// Check for equality first to avoid NaN from subtracting identical infinite energies.
+				delta = Math.max(delta, Math.abs(newValue - oldValue));
+			}
+		}
+		return delta;
+	}
+	
+	private static double maxAbsDifference(float[] message, double[] saved, int offset)
+	{
+		double delta = 0.0;
+		for (int i = message.length; --i>=0;)
+		{
+			final double oldValue = saved[offset + i], newValue = message[i];
+			if (oldValue != newValue)
+			{
+				delta = Math.max(delta, Math.abs(newValue - oldValue));
+			}
+		}
+		return delta;
+	}
+}
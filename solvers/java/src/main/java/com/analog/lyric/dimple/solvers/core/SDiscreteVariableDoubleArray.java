@@ -48,14 +48,16 @@ public abstract class SDiscreteVariableDoubleArray extends SDiscreteVariableBase
 	@Override
 	public Object getInputMsg(int portIndex)
 	{
-		return getSiblingEdgeState(portIndex).factorToVarMsg.representation();
+		final DiscreteMessage message = getSiblingEdgeState(portIndex).factorToVarMsg;
+		return message.isSinglePrecision() ? message.getWeights() : message.representation();
 	}
 
 	@Deprecated
 	@Override
 	public Object getOutputMsg(int portIndex)
 	{
-		return getSiblingEdgeState(portIndex).varToFactorMsg.representation();
+		final DiscreteMessage message = getSiblingEdgeState(portIndex).varToFactorMsg;
+		return message.isSinglePrecision() ? message.getWeights() : message.representation();
 	}
 
 	/**
@@ -77,6 +79,10 @@ public abstract class SDiscreteVariableDoubleArray extends SDiscreteVariableBase
 		{
 			message.setFrom((DiscreteMessage)obj);
 		}
+		else if (message.isSinglePrecision())
+		{
+			message.setWeights((double[])obj);
+		}
 		else
 		{
 			double[] target  = message.representation();
@@ -94,6 +100,10 @@ public abstract class SDiscreteVariableDoubleArray extends SDiscreteVariableBase
 		{
 			message.setFrom((DiscreteMessage)obj);
 		}
+		else if (message.isSinglePrecision())
+		{
+			message.setWeights((double[])obj);
+		}
 		else
 		{
 			double[] target  = message.representation();
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -54,6 +55,7 @@ import com.analog.lyric.dimple.options.SolverOptions;
 import com.analog.lyric.dimple.schedulers.EmptyScheduler;
 import com.analog.lyric.dimple.schedulers.IScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.IAdaptiveSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ScheduleValidationException;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.BlockScheduleEntry;
@@ -108,6 +110,25 @@ public abstract class SFactorGraphBase
 	private @Nullable MultiThreadingManager _multithreader; // = new MultiThreadingManager();
 	protected boolean _useMultithreading = false;
 	
+	/**
+	 * Set from {@link BPOptions#convergenceTolerance} and {@link BPOptions#maxIterations} during initialize.
+	 */
+	private double _convergenceTolerance = 0.0;
+	private int _maxIterations = 0;
+	
+	/**
+	 * Non-null on root graph when {@link #_convergenceTolerance} is positive and every
+	 * node in the graph has registered to report its message deltas.
+	 */
+	private @Nullable MessageDeltaTracker _messageDeltaTracker = null;
+	private int _iterationsUsed = 0;
+	private double _finalResidual = Double.NaN;
+	
+	/**
+	 * On the root graph, incremented whenever a solver edge anywhere in the graph tree is removed.
+	 */
+	private long _solverEdgeVersion = 0;
+	
 	/**
 	 * Solver factors belonging to {@link this} indexed by {@link Factor}s local index.
 	 */
@@ -459,6 +480,75 @@ public abstract class SFactorGraphBase
 
 	@Override
 	public void moveMessages(ISolverNode other)
+	{
+		final ArrayList<ISolverEdgeState> thisEdges = new ArrayList<>(), otherEdges = new ArrayList<>();
+		final ArrayList<ISolverVariable> thisVariables = new ArrayList<>(), otherVariables = new ArrayList<>();
+		final ArrayList<ISolverFactorGraph> thisSubgraphs = new ArrayList<>(), otherSubgraphs = new ArrayList<>();
+		
+		collectMessageState(other, thisEdges, otherEdges, thisVariables, otherVariables, thisSubgraphs, otherSubgraphs);
+		
+		for (int i = 0, n = thisEdges.size(); i < n; ++i)
+		{
+			final ISolverEdgeState thatEdge = otherEdges.get(i);
+			thisEdges.get(i).setFrom(thatEdge);
+			thatEdge.reset();
+		}
+		
+		for (int i = 0, n = thisVariables.size(); i < n; ++i)
+		{
+			thisVariables.get(i).moveNonEdgeSpecificState(otherVariables.get(i));
+		}
+		
+		for (int i = 0, n = thisSubgraphs.size(); i < n; ++i)
+		{
+			thisSubgraphs.get(i).moveMessages(otherSubgraphs.get(i));
+		}
+	}
+
+	/**
+	 * Collects the solver state that {@link #moveMessages(ISolverNode)} would move from {@code other}
+	 * into this graph.
+	 * <p>
+	 * For each solver edge and solver variable in this graph and its subgraphs, appends it to
+	 * {@code thisEdges} or {@code thisVariables}, and appends the corresponding object from {@code other}
+	 * to {@code otherEdges} or {@code otherVariables}. Because the edges and variables of a given graph are
+	 * always visited in the same order, this allows callers that repeatedly move messages between copies
+	 * of the same graph to do so directly, without traversing and looking up nodes in the graphs each time.
+	 * <p>
+	 * @param other is the solver graph for a copy of this graph using the same solver.
+	 * @return false if this graph does not support moving its state in this way, in which case
+	 * {@link #moveMessages} should be used instead and the contents of the lists should be ignored.
+	 * @since 0.08
+	 */
+	public final boolean collectMessageState(ISolverNode other,
+		List<ISolverEdgeState> thisEdges, List<ISolverEdgeState> otherEdges,
+		List<ISolverVariable> thisVariables, List<ISolverVariable> otherVariables)
+	{
+		return supportsMessageStateCollection() &&
+			collectMessageState(other, thisEdges, otherEdges, thisVariables, otherVariables, null, null);
+	}
+	
+	/**
+	 * Indicates whether {@link #collectMessageState} can collect the state of this graph.
+	 * <p>
+	 * Returns true by default. Subclasses that override {@link #moveMessages} should override this to
+	 * return false.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected boolean supportsMessageStateCollection()
+	{
+		return true;
+	}
+	
+	/*
+	 * Implements collectMessageState. If the subgraph lists are non-null, subgraphs whose state cannot
+	 * be collected are appended to them instead of returning false.
+	 */
+	private boolean collectMessageState(ISolverNode other,
+		List<ISolverEdgeState> thisEdges, List<ISolverEdgeState> otherEdges,
+		List<ISolverVariable> thisVariables, List<ISolverVariable> otherVariables,
+		@Nullable List<ISolverFactorGraph> thisSubgraphs, @Nullable List<ISolverFactorGraph> otherSubgraphs)
 	{
 		@SuppressWarnings("unchecked")
 		SFactorGraphBase<SFactor,SVariable,SEdge,SBlock> sother =
@@ -471,9 +561,8 @@ public abstract class SFactorGraphBase
 			SEdge thisEdge = edges.get(i);
 			if (thisEdge != null)
 			{
-				SEdge thatEdge = requireNonNull(sother.getSolverEdge(i));
-				thisEdge.setFrom(thatEdge);
-				thatEdge.reset();
+				thisEdges.add(thisEdge);
+				otherEdges.add(requireNonNull(sother.getSolverEdge(i)));
 			}
 		}
 		
@@ -481,8 +570,8 @@ public abstract class SFactorGraphBase
 		{
 			final int localId = svar.getModelObject().getLocalId();
 			final Variable thatVar = requireNonNull(otherGraph.getVariableByLocalId(localId));
-			SVariable thatSVar = requireNonNull(sother.getSolverVariable(thatVar, true));
-			svar.moveNonEdgeSpecificState(thatSVar);
+			thisVariables.add(svar);
+			otherVariables.add(requireNonNull(sother.getSolverVariable(thatVar, true)));
 		}
 		
 		for (ISolverFactorGraph ssubgraph : getSolverSubgraphs())
@@ -490,14 +579,56 @@ public abstract class SFactorGraphBase
 			final int localId = ssubgraph.getModelObject().getLocalId();
 			final FactorGraph subgraph2 = requireNonNull(otherGraph.getGraphByLocalId(localId));
 			ISolverFactorGraph ssubgraph2 = requireNonNull(sother.getSolverSubgraph(subgraph2, true));
-			ssubgraph.moveMessages(ssubgraph2);
+			if (ssubgraph instanceof SFactorGraphBase &&
+				((SFactorGraphBase<?,?,?,?>)ssubgraph).supportsMessageStateCollection())
+			{
+				if (!((SFactorGraphBase<?,?,?,?>)ssubgraph).collectMessageState(ssubgraph2,
+					thisEdges, otherEdges, thisVariables, otherVariables, thisSubgraphs, otherSubgraphs))
+				{
+					return false;
+				}
+			}
+			else if (thisSubgraphs != null && otherSubgraphs != null)
+			{
+				thisSubgraphs.add(ssubgraph);
+				otherSubgraphs.add(ssubgraph2);
+			}
+			else
+			{
+				return false;
+			}
 		}
+		
+		return true;
 	}
 
 	@Override
 	public final void removeSolverEdge(int edgeIndex)
 	{
 		_edges.set(edgeIndex, null);
+		
+		final ISolverFactorGraph root = getRootSolverGraph();
+		if (root instanceof SFactorGraphBase)
+		{
+			++((SFactorGraphBase<?,?,?,?>)root)._solverEdgeVersion;
+		}
+	}
+	
+	/**
+	 * Version number that changes whenever a solver edge anywhere in the graph tree is removed.
+	 * <p>
+	 * Removed edges are replaced by new objects when next needed, for example when the solver is
+	 * {@linkplain #initializeSolverEdges() initialized} after a change to options that affect the
+	 * representation of the edge state. Callers that hold on to solver edges, such as those collected by
+	 * {@link #collectMessageState}, can compare this value to determine whether they need to collect them
+	 * again.
+	 * <p>
+	 * @since 0.08
+	 */
+	public long solverEdgeVersion()
+	{
+		final ISolverFactorGraph root = getRootSolverGraph();
+		return root instanceof SFactorGraphBase ? ((SFactorGraphBase<?,?,?,?>)root)._solverEdgeVersion : _solverEdgeVersion;
 	}
 	
 	@Override
@@ -670,14 +801,70 @@ public abstract class SFactorGraphBase
 		return _numIterations;
 	}
 
+	/**
+	 * Number of iterations actually performed since the graph was last {@linkplain #initialize initialized}.
+	 * <p>
+	 * This may be less than {@link #getNumIterations()} if iteration was stopped early because
+	 * messages converged to within {@link BPOptions#convergenceTolerance}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public int getIterationsUsed()
+	{
+		return _iterationsUsed;
+	}
+	
+	/**
+	 * The largest change to any tracked message during the most recent iteration.
+	 * <p>
+	 * This is only computed when {@link BPOptions#convergenceTolerance} is positive and
+	 * every variable and factor in the graph reports its message changes, and will otherwise be NaN.
+	 * <p>
+	 * @since 0.08
+	 * @see #getMessageDeltaTracker()
+	 */
+	public double getFinalResidual()
+	{
+		return _finalResidual;
+	}
+	
+	/**
+	 * Tracker to be used by solver nodes to report changes to their outgoing messages.
+	 * <p>
+	 * This is only non-null for the root graph when {@link BPOptions#convergenceTolerance} is positive.
+	 * Nodes should {@linkplain MessageDeltaTracker#register register} with the tracker of the
+	 * {@linkplain #getRootSolverGraph() root graph} during their {@linkplain ISolverNode#initialize() initialization}.
+	 * If any variable or factor in the graph has not done so by the end of initialization, this will be reset
+	 * to null and iteration will not stop early, since the tracker cannot reflect changes to that node's messages.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable MessageDeltaTracker getMessageDeltaTracker()
+	{
+		return _messageDeltaTracker;
+	}
+
 	@Override
 	public void update()
 	{
-		for (IScheduleEntry entry : getSchedule())
+		final ISchedule schedule = getSchedule();
+		
+		if (schedule instanceof IAdaptiveSchedule)
 		{
-			runScheduleEntry(entry);
+			// Adaptive schedules decide what to run next based on the result of the previous entry.
+			final Iterator<IScheduleEntry> entries = ((IAdaptiveSchedule)schedule).adaptiveIterator();
+			while (entries.hasNext())
+			{
+				runScheduleEntry(entries.next());
+			}
+		}
+		else
+		{
+			for (IScheduleEntry entry : schedule)
+			{
+				runScheduleEntry(entry);
+			}
 		}
-
 	}
 	@Override
 	public void updateEdge(int outPortNum)
@@ -696,29 +883,65 @@ public abstract class SFactorGraphBase
 	public void iterate(int numIters)
 	{
 		final MultiThreadingManager multithreader = _multithreader;
+		final MessageDeltaTracker tracker = _messageDeltaTracker;
 		if (multithreader == null || ! _useMultithreading)
 		{
 			// *** Single thread
 			for (int iterNum = 0; iterNum < numIters; iterNum++)
 			{
+				if (tracker != null)
+				{
+					tracker.reset();
+				}
+				
 				update();
+				++_iterationsUsed;
+				
+				if (tracker != null && converged(tracker))
+					return;
 				
 				// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between iterations, not within a single iteration
 				if (Thread.interrupted())
 					return;
 			}
 		}
-		else
+		else if (tracker == null)
 		{
 			// *** Multiple threads
 			multithreader.iterate(numIters);
+			_iterationsUsed += numIters;
+		}
+		else
+		{
+			// *** Multiple threads, checking for convergence between iterations
+			for (int iterNum = 0; iterNum < numIters; iterNum++)
+			{
+				tracker.reset();
+				multithreader.iterate(1);
+				++_iterationsUsed;
+				
+				if (converged(tracker))
+					return;
+			}
 		}
 	}
 	
+	/**
+	 * Runs {@link #iterate(int)}.
+	 * <p>
+	 * The number of iterations is {@link #getNumIterations()} unless {@link BPOptions#convergenceTolerance}
+	 * is positive and {@link BPOptions#maxIterations} is non-zero, in which case the latter will be used.
+	 */
 	@Override
 	public void solveOneStep()
 	{
-		iterate(_numIterations);
+		iterate(_messageDeltaTracker != null && _maxIterations > 0 ? _maxIterations : _numIterations);
+	}
+	
+	private boolean converged(MessageDeltaTracker tracker)
+	{
+		final double residual = _finalResidual = tracker.getMaxDelta();
+		return residual <= _convergenceTolerance;
 	}
 	
 	
@@ -972,7 +1195,7 @@ public abstract class SFactorGraphBase
 	@Override
 	public void useMultithreading(boolean use)
 	{
-		if (_multithreader == null)
+		if (multithreader() == null)
 			throw new DimpleException("Multithreading is not currently supported by this solver.");
 		else
 			_useMultithreading = use;
@@ -988,7 +1211,7 @@ public abstract class SFactorGraphBase
 	@Matlab
 	public MultiThreadingManager getMultithreadingManager()
 	{
-		final MultiThreadingManager multithreader = _multithreader;
+		final MultiThreadingManager multithreader = multithreader();
 		if (multithreader == null)
 			throw new DimpleException("Multithreading is not currently supported by this solver.");
 		else
@@ -999,6 +1222,30 @@ public abstract class SFactorGraphBase
 	{
 		_multithreader = manager;
 	}
+	
+	/**
+	 * Creates {@link MultiThreadingManager} the first time it is needed if one has not been
+	 * {@linkplain #setMultithreadingManager set}.
+	 * <p>
+	 * Solvers that support multithreading but only use it for some graphs may override this instead of
+	 * setting the manager on construction. The default implementation returns null, indicating
+	 * that multithreading is not supported.
+	 * @since 0.08
+	 */
+	protected @Nullable MultiThreadingManager createMultithreadingManager()
+	{
+		return null;
+	}
+	
+	private @Nullable MultiThreadingManager multithreader()
+	{
+		MultiThreadingManager multithreader = _multithreader;
+		if (multithreader == null)
+		{
+			_multithreader = multithreader = createMultithreadingManager();
+		}
+		return multithreader;
+	}
 
 	/***********************************************
 	 * 
@@ -1011,8 +1258,10 @@ public abstract class SFactorGraphBase
 	 * <p>
 	 * Default implementation does the following:
 	 * <ul>
-	 * <li>Initializes {@linkplain #getNumIterations() iterations} and multithreading from options.
-	 * <li>Builds and {@linkplain #validateSchedule(ISchedule) validates} the schedule.
+	 * <li>Initializes {@linkplain #getNumIterations() iterations}, multithreading and convergence
+	 * checking from options.
+	 * <li>Builds and {@linkplain #validateSchedule(ISchedule) validates} the schedule, and
+	 * {@linkplain IAdaptiveSchedule#reset() resets} it if it is adaptive.
 	 * <li>{@linkplain #initializeSolverEdges() Initializes solver edge state}.
 	 * <li>Invokes {@linkplain ISolverNode#initialize() initialize} on contents of graph in this order
 	 * <ol>
@@ -1029,8 +1278,18 @@ public abstract class SFactorGraphBase
 	{
 		_numIterations = getOptionOrDefault(BPOptions.iterations);
 		_useMultithreading = getOptionOrDefault(SolverOptions.enableMultithreading);
+		_convergenceTolerance = getOptionOrDefault(BPOptions.convergenceTolerance);
+		_maxIterations = getOptionOrDefault(BPOptions.maxIterations);
+		_messageDeltaTracker = _convergenceTolerance > 0 && _parent == null ? new MessageDeltaTracker() : null;
+		_iterationsUsed = 0;
+		_finalResidual = Double.NaN;
 
-		validateSchedule(getSchedule());
+		final ISchedule schedule = getSchedule();
+		validateSchedule(schedule);
+		if (schedule instanceof IAdaptiveSchedule)
+		{
+			((IAdaptiveSchedule)schedule).reset();
+		}
 		
 		initializeSolverEdges();
 		
@@ -1062,6 +1321,42 @@ public abstract class SFactorGraphBase
 		{
 			requireNonNull(getSolverSubgraph(g, true)).initialize();
 		}
+		
+		final MessageDeltaTracker tracker = _messageDeltaTracker;
+		if (tracker != null)
+		{
+			final ISolverNode unregistered = findUnregisteredNode(tracker);
+			if (unregistered != null)
+			{
+				// Convergence cannot be determined from a subset of the messages.
+				DimpleEnvironment.logWarning("Ignoring %s for %s: %s does not report message changes\n",
+					BPOptions.convergenceTolerance.name(), this, unregistered);
+				_messageDeltaTracker = null;
+			}
+		}
+	}
+	
+	/**
+	 * Returns a solver variable or factor in this graph or its subgraphs that has not been
+	 * {@linkplain MessageDeltaTracker#register registered} with {@code tracker}, or null if all of them have.
+	 */
+	private @Nullable ISolverNode findUnregisteredNode(MessageDeltaTracker tracker)
+	{
+		for (ISolverVariable svar : getSolverVariablesRecursive())
+		{
+			if (!tracker.isRegistered(svar))
+			{
+				return svar;
+			}
+		}
+		for (ISolverFactor sfactor : getSolverFactorsRecursive())
+		{
+			if (!tracker.isRegistered(sfactor))
+			{
+				return sfactor;
+			}
+		}
+		return null;
 	}
 	
 	/***********************************************
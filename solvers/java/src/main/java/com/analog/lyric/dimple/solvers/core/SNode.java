@@ -55,6 +55,15 @@ public abstract class SNode<MNode extends Node> extends SChild<MNode> implements
 	
 	protected static final int EVENT_MASK = MESSAGE_EVENT_MASK;
 	
+	/*-------
+	 * State
+	 */
+	
+	/**
+	 * Tracker with which changes to outgoing messages are recorded, if any.
+	 */
+	private @Nullable MessageDeltaTracker _messageDeltaTracker = null;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -149,51 +158,55 @@ public abstract class SNode<MNode extends Node> extends SChild<MNode> implements
 	@Override
 	public void update()
 	{
-		if (raiseMessageEvents())
+		final MessageDeltaTracker tracker = _messageDeltaTracker;
+		if (tracker != null)
 		{
-			final IParameterizedMessage[] oldMessages = cloneMessages();
-			
-			doUpdate();
-			
-			final IParameterizedMessage[] newMessages = cloneMessages();
-			if (newMessages != null)
+			final double[][] messages = outputMessageValues();
+			final float[][] floatMessages = floatOutputMessageValues();
+			if (floatMessages != null)
 			{
-				for (int edge = 0, nEdges = newMessages.length; edge < nEdges; ++edge)
-				{
-					final IParameterizedMessage oldMessage = oldMessages != null ? oldMessages[edge] : null;
-					final IParameterizedMessage newMessage = newMessages[edge];
-
-					if (newMessage != null)
-					{
-						raiseEvent(createMessageEvent(edge, oldMessage, newMessage));
-					}
-				}
+				final double[] saved = tracker.save(messages, floatMessages);
+				updateAndRaiseEvents();
+				tracker.record(messages, floatMessages, saved);
+			}
+			else
+			{
+				final double[] saved = tracker.save(messages);
+				updateAndRaiseEvents();
+				tracker.record(messages, saved);
 			}
 		}
 		else
 		{
-			doUpdate();
+			updateAndRaiseEvents();
 		}
 	}
 
 	@Override
 	public void updateEdge(int edge)
 	{
-		if (raiseMessageEvents())
+		final MessageDeltaTracker tracker = _messageDeltaTracker;
+		if (tracker != null)
 		{
-			final IParameterizedMessage oldMessage = cloneMessage(edge);
-			
-			doUpdateEdge(edge);
-			
-			final IParameterizedMessage newMessage = cloneMessage(edge);
-			if (newMessage != null)
+			final float[][] floatMessages = floatOutputMessageValues();
+			final float[] floatMessage = floatMessages != null ? floatMessages[edge] : null;
+			if (floatMessage != null && floatMessage.length > 0)
 			{
-				raiseEvent(createMessageEvent(edge, oldMessage, newMessage));
+				final double[] saved = tracker.save(floatMessage);
+				updateEdgeAndRaiseEvents(edge);
+				tracker.record(floatMessage, saved);
+			}
+			else
+			{
+				final double[] message = outputMessageValues()[edge];
+				final double[] saved = tracker.save(message);
+				updateEdgeAndRaiseEvents(edge);
+				tracker.record(message, saved);
 			}
 		}
 		else
 		{
-			doUpdateEdge(edge);
+			updateEdgeAndRaiseEvents(edge);
 		}
 	}
 
@@ -287,6 +300,49 @@ public abstract class SNode<MNode extends Node> extends SChild<MNode> implements
 		return requireParentGraph().getSolverEdge(_model.getSiblingEdgeIndex(siblingIndex));
 	}
 	
+	/**
+	 * Values of the outgoing message for each edge, for recording message deltas with a
+	 * {@link MessageDeltaTracker}.
+	 * <p>
+	 * Must be overridden by subclasses that invoke {@link #registerMessageDeltaTracker()}. Entries
+	 * for edges whose messages are held in {@link #floatOutputMessageValues()} should be empty.
+	 * The default implementation throws an {@link UnsupportedOperationException}.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected double[][] outputMessageValues()
+	{
+		throw new UnsupportedOperationException(String.format("%s.outputMessageValues", getClass().getSimpleName()));
+	}
+	
+	/**
+	 * Values of single precision outgoing messages for each edge, or null if this node does not
+	 * use single precision messages.
+	 * <p>
+	 * Entries for edges whose messages are held in {@link #outputMessageValues()} should be empty.
+	 * The default implementation returns null.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected @Nullable float[][] floatOutputMessageValues()
+	{
+		return null;
+	}
+	
+	/**
+	 * Registers this node with the {@link MessageDeltaTracker} of its root solver graph, if any, so that
+	 * {@link #update()} and {@link #updateEdge(int)} record changes to the
+	 * {@linkplain #outputMessageValues() outgoing messages}.
+	 * <p>
+	 * To be invoked from {@link #initialize()} by subclasses that support convergence checking.
+	 * <p>
+	 * @since 0.08
+	 */
+	protected final void registerMessageDeltaTracker()
+	{
+		_messageDeltaTracker = MessageDeltaTracker.register(this);
+	}
+	
 	/**
 	 * If {@link #supportsMessageEvents()}, this returns the base type for all message
 	 * events that can be created by this object. Default implementation returns null.
@@ -323,6 +379,55 @@ public abstract class SNode<MNode extends Node> extends SChild<MNode> implements
 	 * Private methods
 	 */
 
+	private void updateAndRaiseEvents()
+	{
+		if (raiseMessageEvents())
+		{
+			final IParameterizedMessage[] oldMessages = cloneMessages();
+			
+			doUpdate();
+			
+			final IParameterizedMessage[] newMessages = cloneMessages();
+			if (newMessages != null)
+			{
+				for (int edge = 0, nEdges = newMessages.length; edge < nEdges; ++edge)
+				{
+					final IParameterizedMessage oldMessage = oldMessages != null ? oldMessages[edge] : null;
+					final IParameterizedMessage newMessage = newMessages[edge];
+
+					if (newMessage != null)
+					{
+						raiseEvent(createMessageEvent(edge, oldMessage, newMessage));
+					}
+				}
+			}
+		}
+		else
+		{
+			doUpdate();
+		}
+	}
+
+	private void updateEdgeAndRaiseEvents(int edge)
+	{
+		if (raiseMessageEvents())
+		{
+			final IParameterizedMessage oldMessage = cloneMessage(edge);
+			
+			doUpdateEdge(edge);
+			
+			final IParameterizedMessage newMessage = cloneMessage(edge);
+			if (newMessage != null)
+			{
+				raiseEvent(createMessageEvent(edge, oldMessage, newMessage));
+			}
+		}
+		else
+		{
+			doUpdateEdge(edge);
+		}
+	}
+
 	/**
 	 * Indicates whether to generate {@link IMessageUpdateEvent}s.
 	 * @since 0.06
@@ -31,14 +31,16 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 	@Override
 	public Object getInputMsg(int portIndex)
 	{
-		return getSiblingEdgeState(portIndex).varToFactorMsg.representation();
+		final DiscreteMessage message = getSiblingEdgeState(portIndex).varToFactorMsg;
+		return message.isSinglePrecision() ? message.getWeights() : message.representation();
 	}
 
 	@Deprecated
 	@Override
 	public Object getOutputMsg(int portIndex)
 	{
-		return getSiblingEdgeState(portIndex).factorToVarMsg.representation();
+		final DiscreteMessage message = getSiblingEdgeState(portIndex).factorToVarMsg;
+		return message.isSinglePrecision() ? message.getWeights() : message.representation();
 	}
 
 	@Override
@@ -50,6 +52,10 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 		{
 			message.setFrom((DiscreteMessage)obj);
 		}
+		else if (message.isSinglePrecision())
+		{
+			message.setWeights((double[])obj);
+		}
 		else
 		{
 			double[] target  = message.representation();
@@ -66,6 +72,10 @@ public abstract class STableFactorDoubleArray extends STableFactorBase
 		{
 			message.setFrom((DiscreteMessage)obj);
 		}
+		else if (message.isSinglePrecision())
+		{
+			message.setWeights((double[])obj);
+		}
 		else
 		{
 			double[] target  = message.representation();
@@ -26,6 +26,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.FactorGraph;
 import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PersistentPhaseMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PhaseMultithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.core.multithreading.singlequeuealgorithm.SingleQueueMutlithreadingAlgorithm;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
@@ -54,6 +55,7 @@ public class MultiThreadingManager
 		setNumWorkersToDefault();
 		_mode2alg.put(MultithreadingMode.Phase,new PhaseMultithreadingAlgorithm(this));
 		_mode2alg.put(MultithreadingMode.SingleQueue,new SingleQueueMutlithreadingAlgorithm(this));
+		_mode2alg.put(MultithreadingMode.PersistentPhase,new PersistentPhaseMultithreadingAlgorithm(this));
 	}
 
 	
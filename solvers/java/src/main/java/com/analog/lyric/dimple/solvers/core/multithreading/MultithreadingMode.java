@@ -17,12 +17,20 @@
 package com.analog.lyric.dimple.solvers.core.multithreading;
 
 /**
- * Provides two multithreading options.
+ * Provides the available multithreading options.
+ * <ul>
+ * <li>{@link #Phase}: runs the phases of the dependency graph in order, submitting a set of tasks
+ * for each phase to the executor service.
+ * <li>{@link #SingleQueue}: runs schedule entries from a single shared queue as their dependencies
+ * are satisfied.
+ * <li>{@link #PersistentPhase}: like {@link #Phase}, but uses a persistent set of worker threads that
+ * advance through the phases together (since 0.08).
+ * </ul>
  * 
  * @author shershey
  *
  */
 public enum MultithreadingMode 
 {
-	Phase, SingleQueue;	
+	Phase, SingleQueue, PersistentPhase;	
 }
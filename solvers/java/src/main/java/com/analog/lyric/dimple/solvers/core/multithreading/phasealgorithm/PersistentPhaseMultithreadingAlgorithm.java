@@ -0,0 +1,518 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm;
+
+import java.util.ArrayList;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleThreadFactory;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.schedulers.dependencyGraph.StaticDependencyGraph;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingAlgorithm;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+
+/**
+ * Phase based multithreading using a persistent set of worker threads.
+ * <p>
+ * Like {@link PhaseMultithreadingAlgorithm}, this runs the phases of the
+ * {@linkplain MultiThreadingManager#getDependencyGraph() dependency graph} in order, updating
+ * the entries within a phase concurrently. However, instead of submitting a new set of tasks to the
+ * manager's executor service for every phase, this keeps its own worker threads alive between phases
+ * and iterations and uses a {@link Phaser} to advance them from one phase to the next. The calling
+ * thread participates as one of the {@linkplain MultiThreadingManager#getNumWorkers() workers}.
+ * <p>
+ * The entries of each phase are partitioned among the workers once per dependency graph and kept in
+ * preallocated arrays. Each worker claims entries from its own partition by atomically advancing a
+ * cursor, and when that is exhausted steals entries from the other partitions in the same way. The cursors
+ * of a phase are reset by the last worker to finish it, before the other workers are released from the
+ * phase barrier, so that no worker can observe a cursor from a previous run of the phase.
+ * <p>
+ * The workers can also run an explicitly specified sequence of phases using {@link #iterate(IScheduleEntry[][], int)},
+ * which is used by solvers whose concurrent updates are not described by the dependency graph.
+ * <p>
+ * The worker threads exit after they have been idle for {@link #IDLE_TIMEOUT_MILLIS}, so that threads
+ * are not leaked when the graph is no longer being solved.
+ * <p>
+ * @since 0.08
+ */
+public class PersistentPhaseMultithreadingAlgorithm extends MultithreadingAlgorithm
+{
+	/**
+	 * Number of milliseconds worker threads will wait for another iteration before exiting.
+	 * @since 0.08
+	 */
+	public static final long IDLE_TIMEOUT_MILLIS = 1000;
+
+	/*-------
+	 * State
+	 */
+
+	private @Nullable Plan _plan = null;
+
+	@GuardedBy("this")
+	private @Nullable Crew _crew = null;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public PersistentPhaseMultithreadingAlgorithm(MultiThreadingManager manager)
+	{
+		super(manager);
+	}
+
+	/*---------------------------------
+	 * MultithreadingAlgorithm methods
+	 */
+
+	@Override
+	public void iterate(int numIters)
+	{
+		if (numIters <= 0)
+		{
+			return;
+		}
+
+		final MultiThreadingManager manager = getManager();
+		final StaticDependencyGraph graph = manager.getDependencyGraph();
+		final int nWorkers = manager.getNumWorkers();
+
+		Plan plan = _plan;
+		if (plan == null || plan._key != graph || plan._nWorkers != nWorkers)
+		{
+			_plan = plan = new Plan(manager.getSolverGraph(), graph, phasesOf(graph), nWorkers);
+		}
+
+		run(plan, numIters);
+	}
+
+	/*------------------------------------------------
+	 * PersistentPhaseMultithreadingAlgorithm methods
+	 */
+
+	/**
+	 * Runs {@code numIters} iterations of the given {@code phases} in order, using the workers to update the
+	 * entries within each phase concurrently.
+	 * <p>
+	 * The entries of each phase must be safe to update concurrently. They are run using
+	 * {@link ISolverFactorGraph#runScheduleEntry} on the manager's solver graph. The partitioning of the
+	 * phases among the workers is cached until this is invoked with a different {@code phases} array, so the
+	 * contents of the array should not be modified between calls.
+	 * @since 0.08
+	 */
+	public void iterate(IScheduleEntry[][] phases, int numIters)
+	{
+		if (numIters <= 0)
+		{
+			return;
+		}
+
+		final MultiThreadingManager manager = getManager();
+		final int nWorkers = manager.getNumWorkers();
+
+		Plan plan = _plan;
+		if (plan == null || plan._key != phases || plan._nWorkers != nWorkers)
+		{
+			_plan = plan = new Plan(manager.getSolverGraph(), phases, phases, nWorkers);
+		}
+
+		run(plan, numIters);
+	}
+
+	/**
+	 * Tells any currently running worker threads to exit once they are idle.
+	 * <p>
+	 * Threads will be started again on the next call to {@link #iterate}.
+	 * @since 0.08
+	 */
+	public synchronized void shutdown()
+	{
+		final Crew crew = _crew;
+		if (crew != null)
+		{
+			_crew = null;
+			crew.retire();
+		}
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static IScheduleEntry[][] phasesOf(StaticDependencyGraph graph)
+	{
+		final ArrayList<ArrayList<IScheduleEntry>> phases = graph.getPhases();
+		final IScheduleEntry[][] result = new IScheduleEntry[phases.size()][];
+		for (int p = 0; p < result.length; ++p)
+		{
+			result[p] = phases.get(p).toArray(new IScheduleEntry[0]);
+		}
+		return result;
+	}
+
+	private void run(Plan plan, int numIters)
+	{
+		if (plan._nWorkers == 1)
+		{
+			// No need for any other threads
+			final ISolverFactorGraph sgraph = plan._sgraph;
+			for (int i = 0; i < numIters; ++i)
+			{
+				for (IScheduleEntry[] phase : plan._phases)
+				{
+					for (IScheduleEntry entry : phase)
+					{
+						sgraph.runScheduleEntry(entry);
+					}
+				}
+			}
+			return;
+		}
+
+		final Crew crew = startCrew(plan, numIters);
+		crew.runIterations(0, plan, numIters);
+
+		final Throwable error = crew._error.getAndSet(null);
+		if (error instanceof RuntimeException)
+		{
+			throw (RuntimeException)error;
+		}
+		else if (error instanceof Error)
+		{
+			throw (Error)error;
+		}
+		else if (error != null)
+		{
+			throw new DimpleException((Exception)error);
+		}
+	}
+
+	/**
+	 * Returns crew of worker threads that has been signaled to run given number of iterations
+	 * of {@code plan}, starting a new one if necessary.
+	 */
+	private synchronized Crew startCrew(Plan plan, int numIters)
+	{
+		Crew crew = _crew;
+
+		if (crew != null && crew._nWorkers != plan._nWorkers)
+		{
+			crew.retire();
+			crew = null;
+		}
+
+		if (crew == null || !crew.start(plan, numIters))
+		{
+			_crew = crew = new Crew(plan._nWorkers);
+			crew.start(plan, numIters);
+		}
+
+		return crew;
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	/**
+	 * Schedule entries of each phase partitioned among a fixed number of workers.
+	 */
+	@ThreadSafe
+	private static final class Plan
+	{
+		private final ISolverFactorGraph _sgraph;
+
+		/**
+		 * The dependency graph or array of phases from which this was built.
+		 */
+		private final Object _key;
+		private final int _nWorkers;
+
+		/**
+		 * Schedule entries for each phase.
+		 */
+		private final IScheduleEntry[][] _phases;
+
+		/**
+		 * For phase {@code p}, the entries owned by worker {@code k} are in the range
+		 * {@code [_bounds[p][k], _bounds[p][k+1])}.
+		 */
+		private final int[][] _bounds;
+
+		/**
+		 * The next unclaimed entry for phase {@code p} owned by worker {@code k} is at
+		 * index {@code p * _nWorkers + k}. Initially the start of each worker's partition.
+		 */
+		private final AtomicIntegerArray _cursors;
+
+		private Plan(ISolverFactorGraph sgraph, Object key, IScheduleEntry[][] phases, int nWorkers)
+		{
+			final int nPhases = phases.length;
+
+			_sgraph = sgraph;
+			_key = key;
+			_nWorkers = nWorkers;
+			_phases = phases;
+			_bounds = new int[nPhases][];
+			_cursors = new AtomicIntegerArray(nPhases * nWorkers);
+
+			for (int p = 0; p < nPhases; ++p)
+			{
+				final IScheduleEntry[] entries = phases[p];
+				final int size = entries.length;
+				final int[] bounds = _bounds[p] = new int[nWorkers + 1];
+				for (int k = 0; k <= nWorkers; ++k)
+				{
+					bounds[k] = (int)((long)size * k / nWorkers);
+				}
+				resetPhase(p);
+			}
+		}
+
+		/**
+		 * Resets cursors for phase {@code p} to the start of each worker's partition.
+		 * <p>
+		 * Must not be invoked while any worker is running the phase.
+		 */
+		private void resetPhase(int p)
+		{
+			final int[] bounds = _bounds[p];
+			final AtomicIntegerArray cursors = _cursors;
+			final int nWorkers = _nWorkers;
+			final int base = p * nWorkers;
+			for (int k = 0; k < nWorkers; ++k)
+			{
+				cursors.set(base + k, bounds[k]);
+			}
+		}
+
+		/**
+		 * Runs phase {@code p} from the perspective of worker {@code k}.
+		 */
+		private void runPhase(int p, int k)
+		{
+			final ISolverFactorGraph sgraph = _sgraph;
+			final IScheduleEntry[] entries = _phases[p];
+			final int[] bounds = _bounds[p];
+			final AtomicIntegerArray cursors = _cursors;
+			final int nWorkers = _nWorkers;
+			final int base = p * nWorkers;
+
+			for (int i = 0; i < nWorkers; ++i)
+			{
+				// Start with own partition, then try to steal from the others.
+				final int victim = (k + i) % nWorkers;
+				final int end = bounds[victim + 1];
+				for (int j; (j = cursors.getAndIncrement(base + victim)) < end;)
+				{
+					sgraph.runScheduleEntry(entries[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A set of worker threads that run together.
+	 */
+	private static final class Crew
+	{
+		private final int _nWorkers;
+		private final Phaser _phaser;
+		private final AtomicReference<Throwable> _error = new AtomicReference<>();
+
+		@GuardedBy("this")
+		private int _generation = 0;
+		@GuardedBy("this")
+		private boolean _retired = false;
+		@GuardedBy("this")
+		private @Nullable Plan _plan = null;
+		@GuardedBy("this")
+		private int _numIters = 0;
+
+		/**
+		 * Plan of the current run and index of the phase currently being run. Set by {@link #start} before
+		 * any worker runs, and thereafter only accessed by {@link #phaseCompleted} while the other workers
+		 * are waiting on the phaser.
+		 */
+		private @Nullable Plan _runningPlan = null;
+		private int _currentPhase = 0;
+
+		private Crew(int nWorkers)
+		{
+			_nWorkers = nWorkers;
+			_phaser = new Phaser(nWorkers) {
+				@Override
+				protected boolean onAdvance(int phase, int registeredParties)
+				{
+					phaseCompleted();
+					return false;
+				}
+			};
+
+			final DimpleThreadFactory factory = new DimpleThreadFactory();
+			for (int k = 1; k < nWorkers; ++k)
+			{
+				final int which = k;
+				final Thread thread = factory.newThread(new Runnable() {
+					@Override
+					public void run()
+					{
+						work(which);
+					}
+				});
+				thread.setName("Dimple phase worker " + k);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		/**
+		 * Signals worker threads to run {@code numIters} iterations of {@code plan}.
+		 * <p>
+		 * Returns false if the crew has already retired.
+		 */
+		private synchronized boolean start(Plan plan, int numIters)
+		{
+			if (_retired)
+			{
+				return false;
+			}
+
+			_plan = plan;
+			_numIters = numIters;
+			_runningPlan = plan;
+			_currentPhase = 0;
+			++_generation;
+			notifyAll();
+			return true;
+		}
+
+		private synchronized void retire()
+		{
+			_retired = true;
+			notifyAll();
+		}
+
+		/**
+		 * Invoked by the last worker to arrive at the end of a phase, before any are released.
+		 */
+		private void phaseCompleted()
+		{
+			final Plan plan = _runningPlan;
+			if (plan != null)
+			{
+				final int p = _currentPhase;
+				plan.resetPhase(p);
+				_currentPhase = p + 1 < plan._phases.length ? p + 1 : 0;
+			}
+		}
+
+		/**
+		 * Body of worker thread {@code k}.
+		 */
+		private void work(int k)
+		{
+			int generation = 0;
+
+			while (true)
+			{
+				final Plan plan;
+				final int numIters;
+
+				synchronized (this)
+				{
+					long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS);
+					while (_generation == generation && !_retired)
+					{
+						final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+						if (remaining <= 0)
+						{
+							// Idle for too long. Once retired, the crew will not be started again, so
+							// all of the workers will exit.
+							_retired = true;
+							notifyAll();
+							break;
+						}
+						try
+						{
+							wait(remaining);
+						}
+						catch (InterruptedException ex)
+						{
+							// Ignore: worker threads only exit by retiring.
+						}
+					}
+
+					if (_generation == generation)
+					{
+						return;
+					}
+
+					generation = _generation;
+					plan = _plan;
+					numIters = _numIters;
+				}
+
+				if (plan != null)
+				{
+					runIterations(k, plan, numIters);
+				}
+			}
+		}
+
+		/**
+		 * Runs {@code numIters} iterations of {@code plan} as worker {@code k}, where worker zero
+		 * is the calling thread.
+		 */
+		private void runIterations(int k, Plan plan, int numIters)
+		{
+			final Phaser phaser = _phaser;
+			final int nPhases = plan._phases.length;
+
+			for (int i = 0; i < numIters; ++i)
+			{
+				for (int p = 0; p < nPhases; ++p)
+				{
+					if (_error.get() == null)
+					{
+						try
+						{
+							plan.runPhase(p, k);
+						}
+						catch (Throwable ex)
+						{
+							_error.compareAndSet(null, ex);
+						}
+					}
+
+					// Wait for the other workers to finish this phase, even if there was an error.
+					phaser.arriveAndAwaitAdvance();
+				}
+			}
+		}
+	}
+}
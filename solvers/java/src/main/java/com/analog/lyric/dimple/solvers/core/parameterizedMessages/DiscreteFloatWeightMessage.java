@@ -0,0 +1,333 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.core.parameterizedMessages;
+
+import static com.analog.lyric.math.Utilities.*;
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.exceptions.NormalizationException;
+
+/**
+ * Discrete weight message that stores its weights in single precision.
+ * <p>
+ * This uses half the memory of {@link DiscreteWeightMessage}, at the cost of precision of the stored values,
+ * which is adequate for most belief propagation messages.
+ * <p>
+ * Arithmetic on the values is still done in double precision, and values are only rounded when they are
+ * stored. Because this class does not have a double precision {@link #representation()}, solver update
+ * kernels that need direct access to the values should use {@link #floatRepresentation()} instead.
+ * <p>
+ * @since 0.08
+ */
+public class DiscreteFloatWeightMessage extends DiscreteWeightMessage
+{
+	private static final long serialVersionUID = 1L;
+
+	/*-------
+	 * State
+	 */
+
+	private final float[] _weights;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Create message with specified initial weights.
+	 */
+	public DiscreteFloatWeightMessage(double[] weights)
+	{
+		this(new float[weights.length]);
+		setWeights(weights);
+	}
+
+	/**
+	 * Create message with specified {@code size} with uniform weights.
+	 */
+	public DiscreteFloatWeightMessage(int size)
+	{
+		this(new float[size]);
+		setUniform();
+	}
+
+	public DiscreteFloatWeightMessage(DiscreteMessage other)
+	{
+		this(new float[other.size()]);
+		setFrom(other);
+	}
+	
+	private DiscreteFloatWeightMessage(float[] weights)
+	{
+		super(weights);
+		_weights = weights;
+	}
+
+	@Override
+	public DiscreteFloatWeightMessage clone()
+	{
+		return new DiscreteFloatWeightMessage(this);
+	}
+
+	/*----------------
+	 * Object methods
+	 */
+
+	@Override
+	public boolean objectEquals(@Nullable Object other)
+	{
+		return super.objectEquals(other) &&
+			Arrays.equals(_weights, ((DiscreteFloatWeightMessage)requireNonNull(other))._weights);
+	}
+
+	/*-------------------------------
+	 * IParameterizedMessage methods
+	 */
+
+	@Override
+	public boolean isNull()
+	{
+		for (int i = size(); --i>=0;)
+			if (get(i) != 1.0)
+				return false;
+		return true;
+	}
+
+	@Override
+	public void setNull()
+	{
+		fill(1.0);
+		_normalizationEnergy = weightToEnergy(size());
+	}
+
+	@Override
+	public void setUniform()
+	{
+		fill(1.0 / size());
+		_normalizationEnergy = 0.0;
+	}
+
+	/*-------------------------
+	 * DiscreteMessage methods
+	 */
+
+	/**
+	 * True.
+	 */
+	@Override
+	public boolean isSinglePrecision()
+	{
+		return true;
+	}
+
+	@Override
+	public void addWeightsFrom(DiscreteMessage other)
+	{
+		assertSameSize(other.size());
+
+		for (int i = size(); --i >= 0; )
+		{
+			set(i, get(i) + other.getWeight(i));
+		}
+
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public double[] getEnergies(double[] energies)
+	{
+		for (int i = size(); --i>=0;)
+			energies[i] = weightToEnergy(get(i));
+		return energies;
+	}
+
+	@Override
+	public double[] getWeights(double[] weights)
+	{
+		final float[] values = _weights;
+		for (int i = values.length; --i>=0;)
+			weights[i] = values[i];
+		return weights;
+	}
+
+	@Override
+	public double getWeight(int i)
+	{
+		return get(i);
+	}
+
+	@Override
+	public void setWeight(int i, double weight)
+	{
+		set(i, weight);
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public void setWeights(double... weights)
+	{
+		final int length = weights.length;
+		assertSameSize(length);
+
+		final float[] values = _weights;
+		for (int i = length; --i>=0;)
+			values[i] = (float)weights[i];
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public double getEnergy(int i)
+	{
+		return weightToEnergy(get(i));
+	}
+
+	@Override
+	public void setEnergy(int i, double energy)
+	{
+		set(i, energyToWeight(energy));
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public void setEnergies(double... energies)
+	{
+		final int length = energies.length;
+		assertSameSize(length);
+
+		for (int i = 0; i < length; ++i)
+		{
+			set(i, energyToWeight(energies[i]));
+		}
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public boolean hasZeroWeight(int i)
+	{
+		return get(i) == 0.0;
+	}
+
+	@Override
+	public double sumOfWeights()
+	{
+		double sum = 0.0;
+		for (int i = size(); --i>=0;)
+			sum += get(i);
+		return sum;
+	}
+
+	@Override
+	public void normalize()
+	{
+		final int size = size();
+
+		double sum = 0.0;
+		for (int i = 0; i < size; ++i)
+		{
+			final double w = get(i);
+			if (w < 0)
+			{
+				throw new NormalizationException("Cannot normalize message because it contains a negative weight");
+			}
+			sum += w;
+		}
+		if (sum == 0.0)
+		{
+			throw weightsAddUpToZero();
+		}
+
+		for (int i = size; --i >=0;)
+			set(i, get(i) / sum);
+
+		final double normalizer = weightToEnergy(sum);
+		if (_normalizationEnergy != _normalizationEnergy) // NaN
+		{
+			_normalizationEnergy = 0.0;
+		}
+		else
+		{
+			_normalizationEnergy += normalizer;
+		}
+	}
+
+	@Override
+	public void setWeightsToZero()
+	{
+		fill(0.0);
+		forgetNormalizationEnergy();
+	}
+
+	@Override
+	public int toDeterministicValueIndex()
+	{
+		int index = -1;
+		for (int i = size(); --i>=0;)
+		{
+			if (get(i) != 0)
+			{
+				if (index >= 0)
+				{
+					index = -1;
+					break;
+				}
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/*------------------------------------
+	 * DiscreteFloatWeightMessage methods
+	 */
+
+	/**
+	 * Returns underlying single precision representation of the weights.
+	 * <p>
+	 * This may be used by solver update kernels to read and write the weights directly. Callers that
+	 * modify the weights are responsible for updating the {@linkplain #getNormalizationEnergy()
+	 * normalization energy}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public final float[] floatRepresentation()
+	{
+		return _weights;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private double get(int i)
+	{
+		return _weights[i];
+	}
+
+	private void set(int i, double weight)
+	{
+		_weights[i] = (float)weight;
+	}
+
+	private void fill(double weight)
+	{
+		Arrays.fill(_weights, (float)weight);
+	}
+}
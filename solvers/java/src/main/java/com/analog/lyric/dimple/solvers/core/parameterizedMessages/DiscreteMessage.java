@@ -24,6 +24,7 @@ import java.util.Arrays;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.data.IDatum;
 import com.analog.lyric.dimple.exceptions.NormalizationException;
 import com.analog.lyric.dimple.factorfunctions.core.IUnaryFactorFunction;
@@ -48,8 +49,14 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	 * State
 	 */
 	
+	/**
+	 * The message values, or an empty array for messages that do not use double precision
+	 * storage (see {@link #isSinglePrecision()}).
+	 */
 	protected final double[] _message;
 	
+	private final int _size;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -57,12 +64,23 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	DiscreteMessage(double[] message)
 	{
 		_message = message.clone();
+		_size = message.length;
 	}
 	
 	DiscreteMessage(DiscreteMessage other)
 	{
 		super(other);
-		_message = other._message.clone();
+		_message = other.isSinglePrecision() ? other.getWeights() : other._message.clone();
+		_size = other._size;
+	}
+	
+	/**
+	 * Constructor for subclasses that do not store their values in {@link #_message}.
+	 */
+	DiscreteMessage(int size)
+	{
+		_message = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+		_size = size;
 	}
 	
 	/*----------------
@@ -103,7 +121,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 		{
 			out.print(storesWeights() ? "weights" : "energies");
 			out.print('(');
-			for (int i = 0, end = _message.length; i < end; ++i)
+			for (int i = 0, end = size(); i < end; ++i)
 			{
 				if (i > 0)
 				{
@@ -117,7 +135,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 				{
 					out.format("%d=", i);
 				}
-				out.format("%g", _message[i]);
+				out.format("%g", storesWeights() ? getWeight(i) : getEnergy(i));
 			}
 			out.print(')');
 			
@@ -260,7 +278,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	 */
 	public final int size()
 	{
-		return _message.length;
+		return _size;
 	}
 	
 	/**
@@ -271,7 +289,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	{
 		assertSameSize(other.size());
 		
-		for (int i = _message.length; --i>=0;)
+		for (int i = size(); --i>=0;)
 		{
 			setEnergy(i, getEnergy(i) + other.getEnergy(i));
 		}
@@ -281,7 +299,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	{
 		assertSameSize(other.size());
 		
-		for (int i = _message.length; --i>=0;)
+		for (int i = size(); --i>=0;)
 		{
 			setWeight(i, getWeight(i) + other.getWeight(i));
 		}
@@ -293,7 +311,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	 */
 	public final double[] getEnergies()
 	{
-		return getEnergies(new double[_message.length]);
+		return getEnergies(new double[size()]);
 	}
 	
 
@@ -310,7 +328,7 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	 */
 	public final double[] getWeights()
 	{
-		return getWeights(new double[_message.length]);
+		return getWeights(new double[size()]);
 	}
 	
 	/**
@@ -385,15 +403,17 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	 */
 	public void setFrom(DiscreteMessage other)
 	{
-		final double[] otherRep = other.representation();
-		
-		if (other.storesWeights())
+		if (other.isSinglePrecision())
+		{
+			setWeights(other.getWeights());
+		}
+		else if (other.storesWeights())
 		{
-			setWeights(otherRep);
+			setWeights(other.representation());
 		}
 		else
 		{
-			setEnergies(otherRep);
+			setEnergies(other.representation());
 		}
 		
 		_normalizationEnergy = other._normalizationEnergy;
@@ -440,6 +460,8 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 	
 	/**
 	 * Returns underlying message representation.
+	 * <p>
+	 * This is an empty array for messages that are {@linkplain #isSinglePrecision() single precision}.
 	 * @since 0.08
 	 */
 	public final double[] representation()
@@ -447,6 +469,20 @@ public abstract class DiscreteMessage extends ParameterizedMessageBase
 		return _message;
 	}
 	
+	/**
+	 * True if underlying representation stores values in single precision.
+	 * <p>
+	 * Such messages have an empty {@link #representation()}, so their values must either be accessed
+	 * using the other methods of this class, or directly using {@link DiscreteFloatWeightMessage#floatRepresentation()}.
+	 * <p>
+	 * @since 0.08
+	 * @see DiscreteFloatWeightMessage
+	 */
+	public boolean isSinglePrecision()
+	{
+		return false;
+	}
+	
 	/**
 	 * True if underlying representation uses weights, false if it uses energies.
 	 * @since 0.06
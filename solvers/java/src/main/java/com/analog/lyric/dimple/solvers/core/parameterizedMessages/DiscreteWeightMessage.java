@@ -66,6 +66,15 @@ public class DiscreteWeightMessage extends DiscreteMessage
 		super(other);
 	}
 	
+	/**
+	 * Constructor for {@link DiscreteFloatWeightMessage}, which stores its values in {@code weights}
+	 * instead of {@link #_message}.
+	 */
+	DiscreteWeightMessage(float[] weights)
+	{
+		super(weights.length);
+	}
+	
 	/**
 	 * Copies values from another message.
 	 * @since 0.08
@@ -145,7 +154,7 @@ public class DiscreteWeightMessage extends DiscreteMessage
 		
 		final double[] message = _message;
 		
-		if (other.storesWeights())
+		if (other.storesWeights() && !other.isSinglePrecision())
 		{
 			final double[] otherMessage = other._message;
 			for (int i = _message.length; --i >= 0; )
@@ -229,7 +238,7 @@ public class DiscreteWeightMessage extends DiscreteMessage
 	}
 	
 	@Override
-	public final boolean hasZeroWeight(int i)
+	public boolean hasZeroWeight(int i)
 	{
 		return _message[i] == 0.0;
 	}
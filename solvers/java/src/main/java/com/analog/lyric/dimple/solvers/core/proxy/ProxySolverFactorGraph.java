@@ -204,6 +204,17 @@ public abstract class ProxySolverFactorGraph<SFactor extends ISolverFactor, SVar
 		requireDelegate("moveMessages").moveMessages(other);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Proxy graphs move messages through their delegate, so this returns false.
+	 */
+	@Override
+	protected boolean supportsMessageStateCollection()
+	{
+		return false;
+	}
+
 	@Override
 	public void solve()
 	{
@@ -0,0 +1,290 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.environment.DimpleThread;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PersistentPhaseMultithreadingAlgorithm;
+import com.analog.lyric.math.DimpleRandom;
+
+/**
+ * Runs full scans of a {@link GibbsChromaticSchedule}, updating the variables of each color
+ * concurrently.
+ * <p>
+ * The concurrent entries of each color are divided into fixed {@linkplain Block blocks} of
+ * {@link #ENTRIES_PER_STREAM} consecutive entries, each of which has its own {@link DimpleRandom} stream that
+ * is installed as the {@linkplain DimpleEnvironment#setThreadRandom thread random} while its entries are
+ * updated. Entries that are not single variable updates, or whose variables have deterministic dependents
+ * (which are updated through shared solver graph state), are put in a single block of their own, which
+ * is run before the concurrent entries of the same color. Each of these becomes a phase of a
+ * {@link PersistentPhaseMultithreadingAlgorithm}, whose long-lived workers run the blocks of each phase
+ * concurrently and wait for each other at the end of the phase.
+ * <p>
+ * The streams are {@linkplain DimpleRandom#split split} by block index from a root drawn from
+ * {@link DimpleEnvironment#activeRandom()} when this object is created, so results are reproducible for a
+ * given seed regardless of the number of workers or of which worker runs each block.
+ * <p>
+ * When invoked from a {@link DimpleThread}, such as when the solver graph is a chain of
+ * {@linkplain GibbsOptions#concurrentRestarts concurrent restarts} running on the thread pool, all blocks are
+ * run on the calling thread, to avoid oversubscribing the processors. The same random streams are used, so
+ * the results are unchanged.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+final class GibbsChromaticUpdater
+{
+	/**
+	 * Number of consecutive concurrent entries of a color that share a random stream.
+	 */
+	static final int ENTRIES_PER_STREAM = 16;
+
+	/*-------
+	 * State
+	 */
+
+	private final GibbsChromaticSchedule _schedule;
+	private final long _scheduleVersion;
+	private final int _nWorkers;
+	private final PersistentPhaseMultithreadingAlgorithm _algorithm;
+
+	/**
+	 * Blocks to run for each phase of a scan. There are one or two phases per color.
+	 */
+	private final IScheduleEntry[][] _phases;
+
+	/*--------------
+	 * Construction
+	 */
+
+	GibbsChromaticUpdater(GibbsSolverGraph sgraph, GibbsChromaticSchedule schedule, MultiThreadingManager manager)
+	{
+		_schedule = schedule;
+		_scheduleVersion = schedule.scheduleVersion();
+		_nWorkers = manager.getNumWorkers();
+		_algorithm = new PersistentPhaseMultithreadingAlgorithm(manager);
+
+		final DimpleRandom streams = forkActiveRandom();
+		// Blocks with the same index in different colors share the same stream. The blocks of entries that
+		// must be run sequentially share a stream with a negative index.
+		final List<DimpleRandom> blockRandoms = new ArrayList<>();
+		final DimpleRandom serialRandom = streams.split(~0L);
+
+		final List<IScheduleEntry[]> phases = new ArrayList<>();
+		for (int color = 0, nColors = schedule.getColorCount(); color < nColors; ++color)
+		{
+			final IScheduleEntry[] entries = schedule.getColor(color);
+			final ArrayList<IScheduleEntry> serial = new ArrayList<>();
+			final ArrayList<IScheduleEntry> concurrent = new ArrayList<>(entries.length);
+			for (IScheduleEntry entry : entries)
+			{
+				(canRunConcurrently(entry) ? concurrent : serial).add(entry);
+			}
+
+			if (!serial.isEmpty())
+			{
+				final IScheduleEntry[] serialEntries = serial.toArray(new IScheduleEntry[serial.size()]);
+				phases.add(new IScheduleEntry[] { new Block(sgraph, serialEntries, 0, serialEntries.length, serialRandom) });
+			}
+
+			final int size = concurrent.size();
+			if (size > 0)
+			{
+				final IScheduleEntry[] concurrentEntries = concurrent.toArray(new IScheduleEntry[size]);
+				final IScheduleEntry[] blocks = new IScheduleEntry[(size + ENTRIES_PER_STREAM - 1) / ENTRIES_PER_STREAM];
+				for (int block = 0; block < blocks.length; ++block)
+				{
+					if (block == blockRandoms.size())
+					{
+						blockRandoms.add(streams.split(block));
+					}
+					final int start = block * ENTRIES_PER_STREAM;
+					blocks[block] = new Block(sgraph, concurrentEntries, start, Math.min(start + ENTRIES_PER_STREAM, size),
+						blockRandoms.get(block));
+				}
+				phases.add(blocks);
+			}
+		}
+		_phases = phases.toArray(new IScheduleEntry[phases.size()][]);
+	}
+
+	/*-------------------------------
+	 * GibbsChromaticUpdater methods
+	 */
+
+	/**
+	 * True if this is still valid for given schedule and number of workers.
+	 */
+	boolean isValidFor(GibbsChromaticSchedule schedule, int nWorkers)
+	{
+		return _schedule == schedule && _scheduleVersion == schedule.scheduleVersion() && _nWorkers == nWorkers;
+	}
+
+	/**
+	 * Runs {@code nScans} full scans over the schedule.
+	 */
+	void scan(int nScans)
+	{
+		if (_nWorkers > 1 && !(Thread.currentThread() instanceof DimpleThread))
+		{
+			_algorithm.iterate(_phases, nScans);
+			return;
+		}
+
+		// Not worth the overhead of using other threads, or may already be running on the pool.
+		for (int scan = 0; scan < nScans; ++scan)
+		{
+			for (IScheduleEntry[] phase : _phases)
+			{
+				for (IScheduleEntry block : phase)
+				{
+					((Block)block).run();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells the worker threads to exit once they are idle. To be invoked when this is no longer needed.
+	 */
+	void shutdown()
+	{
+		_algorithm.shutdown();
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static boolean canRunConcurrently(IScheduleEntry entry)
+	{
+		if (entry instanceof NodeScheduleEntry)
+		{
+			final INode node = ((NodeScheduleEntry)entry).getNode();
+			return node instanceof Variable && !((Variable)node).isDeterministicInput();
+		}
+
+		return false;
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	/**
+	 * Custom schedule entry that runs a range of entries of a single color using a given random stream.
+	 * <p>
+	 * Run by {@link GibbsSolverGraph#runCustomScheduleEntry}.
+	 */
+	static final class Block implements IScheduleEntry
+	{
+		private final GibbsSolverGraph _sgraph;
+		private final IScheduleEntry[] _entries;
+		private final int _start;
+		private final int _end;
+		private final DimpleRandom _random;
+
+		private Block(GibbsSolverGraph sgraph, IScheduleEntry[] entries, int start, int end, DimpleRandom random)
+		{
+			_sgraph = sgraph;
+			_entries = entries;
+			_start = start;
+			_end = end;
+			_random = random;
+		}
+
+		/*------------------------
+		 * IScheduleEntry methods
+		 */
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * Returns null: blocks are only used internally by the updater that created them.
+		 */
+		@Override
+		public @Nullable IScheduleEntry copy(Map<Object, Object> old2new, boolean copyToRoot)
+		{
+			return null;
+		}
+
+		@Override
+		public FactorGraph getParentGraph()
+		{
+			return _sgraph.getModelObject();
+		}
+
+		@Override
+		public Iterable<? extends INode> getNodes()
+		{
+			final List<INode> nodes = new ArrayList<>();
+			for (int i = _start; i < _end; ++i)
+			{
+				for (INode node : _entries[i].getNodes())
+				{
+					nodes.add(node);
+				}
+			}
+			return nodes;
+		}
+
+		@Override
+		public Type type()
+		{
+			return Type.CUSTOM;
+		}
+
+		/*---------------
+		 * Block methods
+		 */
+
+		void run()
+		{
+			final GibbsSolverGraph sgraph = _sgraph;
+			final IScheduleEntry[] entries = _entries;
+			final DimpleRandom prevRandom = DimpleEnvironment.setThreadRandom(_random);
+			try
+			{
+				for (int i = _start, end = _end; i < end; ++i)
+				{
+					sgraph.runScheduleEntry(entries[i]);
+				}
+			}
+			finally
+			{
+				DimpleEnvironment.setThreadRandom(prevRandom);
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
+import static java.util.Objects.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.Node;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.options.IOption;
+import com.analog.lyric.options.IOptionHolder;
+import com.analog.lyric.options.IOptionKey;
+
+/**
+ * Runs the random restarts of {@link GibbsSolverGraph#solveOneStep()} concurrently.
+ * <p>
+ * The restarts are divided into contiguous groups, one per chain. The first chain runs on the
+ * original graph and each of the others runs on its own {@linkplain FactorGraph#copyRoot(Map) copy}
+ * of the graph, which is made on the calling thread with the same options and scheduler. The copies are
+ * made when this object is created and are reused by each {@link #run}, which reinitializes them. Each
+ * restart uses its own {@link DimpleRandom} stream, as described in
+ * {@link GibbsSolverGraph#runRestarts(DimpleRandom, int, int)}. The streams are
+ * {@linkplain DimpleRandom#split split} from a root drawn from {@link DimpleEnvironment#activeRandom()}
+ * at the start of each run, so the random values used by each restart depend only on the seed and not on
+ * the number of chains or on which chain runs it.
+ * <p>
+ * When all chains have finished, the sample statistics of the copies are merged into the original
+ * graph in chain order, so that saved samples and scores appear in the same order as the restarts.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+final class GibbsConcurrentRestarts
+{
+	/*-------
+	 * State
+	 */
+
+	private final GibbsSolverGraph _sgraph;
+	private final List<Chain> _chains;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Sets up {@code nChains} chains to run restarts {@code 0} through {@code numRandomRestarts}.
+	 * <p>
+	 * @param nChains must be in the range [1, {@code numRandomRestarts} + 1].
+	 */
+	GibbsConcurrentRestarts(GibbsSolverGraph sgraph, int numRandomRestarts, int nChains)
+	{
+		_sgraph = sgraph;
+
+		final int nRestarts = numRandomRestarts + 1;
+		_chains = new ArrayList<>(nChains);
+		for (int i = 0; i < nChains; ++i)
+		{
+			final int first = (int)((long)nRestarts * i / nChains);
+			final int end = (int)((long)nRestarts * (i + 1) / nChains);
+			final Map<Object,Object> old2new = new HashMap<>();
+			final GibbsSolverGraph chainGraph = i == 0 ? sgraph : copySolverGraph(sgraph, old2new);
+			_chains.add(new Chain(chainGraph, old2new, first, end - 1));
+		}
+	}
+
+	/*---------------------------------
+	 * GibbsConcurrentRestarts methods
+	 */
+
+	/**
+	 * Runs all of the chains and merges their statistics into the original solver graph.
+	 */
+	void run()
+	{
+		final DimpleRandom streams = forkActiveRandom();
+		for (Chain chain : _chains)
+		{
+			chain._streams = streams;
+		}
+		
+		try
+		{
+			for (Future<Object> future : _sgraph.getMultithreadingManager().getService().invokeAll(_chains))
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			throw new DimpleException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			final Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException)cause;
+			}
+			else if (cause instanceof Error)
+			{
+				throw (Error)cause;
+			}
+			throw new DimpleException(ex);
+		}
+
+		final GibbsSolverGraph sgraph = _sgraph;
+		for (int i = 1, n = _chains.size(); i < n; ++i)
+		{
+			final Chain chain = _chains.get(i);
+			sgraph.mergeSampleStatistics(chain._sgraph, chain._old2new);
+			// The copy is no longer needed, so release any file used for its saved samples.
+			chain._sgraph.closeSampleStore();
+		}
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Makes a copy of the model for {@code sgraph} with the same options and returns its
+	 * Gibbs solver graph.
+	 * <p>
+	 * @param old2new will be filled in with mapping from original to copied objects.
+	 */
+	private static GibbsSolverGraph copySolverGraph(GibbsSolverGraph sgraph, Map<Object,Object> old2new)
+	{
+		final FactorGraph model = sgraph.getModelObject();
+		final FactorGraph copy = model.copyRoot(old2new);
+
+		// Options set directly on the solver objects take precedence over those on the model.
+		copyLocalOptions(model, copy);
+		copyLocalOptions(sgraph, copy);
+		for (Map.Entry<Object,Object> entry : old2new.entrySet())
+		{
+			if (entry.getKey() instanceof Node && entry.getValue() instanceof Node)
+			{
+				final ISolverNode snode = ((Node)entry.getKey()).getSolver();
+				if (snode != null)
+				{
+					copyLocalOptions(snode, (Node)entry.getValue());
+				}
+			}
+		}
+
+		// The seed is only used to initialize the original graph. Each chain has its own random stream.
+		copy.unsetOption(DimpleOptions.randomSeed);
+		copy.setOption(GibbsOptions.scheduler, sgraph.getScheduler().copy(old2new, true));
+
+		return requireNonNull(copy.setSolverFactory(new GibbsSolver()));
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void copyLocalOptions(IOptionHolder from, IOptionHolder to)
+	{
+		for (IOption<? extends Serializable> option : from.getLocalOptions())
+		{
+			final IOptionKey key = option.key();
+			if (key != GibbsOptions.scheduler)
+			{
+				to.setOption(key, option.value());
+			}
+		}
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	/**
+	 * Runs a contiguous range of restarts on a single solver graph.
+	 */
+	private static final class Chain implements Callable<Object>
+	{
+		private final GibbsSolverGraph _sgraph;
+		private final Map<Object,Object> _old2new;
+		private final int _firstRestart;
+		private final int _lastRestart;
+		/**
+		 * Root of the restart streams for the current {@link GibbsConcurrentRestarts#run}.
+		 */
+		private @Nullable DimpleRandom _streams = null;
+
+		private Chain(GibbsSolverGraph sgraph, Map<Object,Object> old2new, int firstRestart, int lastRestart)
+		{
+			_sgraph = sgraph;
+			_old2new = old2new;
+			_firstRestart = firstRestart;
+			_lastRestart = lastRestart;
+		}
+
+		@Override
+		public @Nullable Object call()
+		{
+			final GibbsSolverGraph sgraph = _sgraph;
+			final DimpleRandom streams = requireNonNull(_streams);
+			if (_firstRestart > 0)
+			{
+				// Copies are reinitialized on this thread so that any random initialization uses a
+				// stream belonging to this chain.
+				final DimpleRandom prevRandom = DimpleEnvironment.setThreadRandom(streams.split(~_firstRestart));
+				try
+				{
+					sgraph.getModelObject().initialize();
+				}
+				finally
+				{
+					DimpleEnvironment.setThreadRandom(prevRandom);
+				}
+			}
+			sgraph.runRestarts(streams, _firstRestart, _lastRestart);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,802 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.model.variables.Variable;
+
+/**
+ * Convergence diagnostics computed incrementally from the samples generated by the Gibbs solver.
+ * <p>
+ * Diagnostics are computed for the {@linkplain GibbsSolverGraph#getSampleScore() sample score} and
+ * for each {@link GibbsDiscrete} and {@link GibbsReal} variable in the graph. Discrete variables are
+ * monitored using their sample index, which is most meaningful for binary or ordered domains.
+ * <p>
+ * Each random restart is treated as a separate chain. The samples of the current chain are divided
+ * into equal-sized batches. There are always between {@link #MIN_BATCHES} and twice that many full
+ * batches; when the limit is reached, adjacent batches are merged and the batch size doubles. Only
+ * the mean and sum of squared deviations of each batch are kept, so memory use does not depend on
+ * the number of samples. From these the following are computed:
+ * <ul>
+ * <li>The batch-means estimate of the <em>effective sample size</em>, which is the number of samples
+ * times the ratio of the sample variance to the variance of the batch means scaled by the batch size.
+ * <li>The <em>split-R-hat</em> potential scale reduction factor of Gelman et al., which compares the
+ * variance within and between the first and second halves of every chain. Values close to one
+ * indicate that the chains have mixed.
+ * </ul>
+ * The autocorrelation of each quantity is also computed at lags up to {@link #getMaxLag()}.
+ * <p>
+ * When a chain ends, its summary is retained, so the overall diagnostics combine all of the chains
+ * run since the graph was initialized, including those run concurrently on copies of the graph
+ * (see {@link GibbsOptions#concurrentRestarts}). The effective sample size is summed over chains
+ * and the autocorrelation is averaged over chains weighted by their length.
+ * <p>
+ * A sample whose score is infinite discards the current chain, which then starts again with the next sample.
+ * <p>
+ * @since 0.08
+ * @see GibbsSolverGraph#getConvergenceDiagnostics()
+ * @see GibbsOptions#computeConvergenceDiagnostics
+ */
+@NotThreadSafe
+public class GibbsConvergenceDiagnostics
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * Default value for {@link #getMaxLag()}.
+	 */
+	public static final int DEFAULT_MAX_LAG = 10;
+
+	/**
+	 * Minimum number of full batches kept for the current chain once it has at least that many samples.
+	 */
+	public static final int MIN_BATCHES = 16;
+
+	/**
+	 * Minimum number of samples in the current chain before it can be considered to have converged.
+	 * @see #isChainConverged(double, double)
+	 */
+	public static final int MIN_CONVERGENCE_SAMPLES = 4 * MIN_BATCHES;
+
+	private static final int MAX_BATCHES = 2 * MIN_BATCHES;
+
+	/*-------
+	 * State
+	 */
+
+	private final ISolverVariableGibbs[] _variables;
+	private final Map<Variable,Integer> _quantityIndex;
+	private final int _nQuantities;
+	private final int _maxLag;
+
+	// Current chain
+
+	private long _chainSamples = 0;
+	private int _batchSize = 1;
+	private int _batchCount = 0;
+	private int _partialCount = 0;
+	private final double[] _batchMean;
+	private final double[] _batchM2;
+	private final double[] _partialMean;
+	private final double[] _partialM2;
+
+	/**
+	 * Values are shifted by the first value of the chain to limit loss of precision in the sums
+	 * used for the autocorrelation.
+	 */
+	private final double[] _origin;
+	private final double[] _sum;
+	private final double[] _sumSquares;
+	private final double[] _lagProducts;
+	private final double[] _head;
+	private final double[] _recent;
+
+	private boolean _chainStatsValid = false;
+	private @Nullable ChainSummary _chainSummary = null;
+	private double _chainMinEss = Double.NaN;
+	private double _chainMaxRHat = Double.NaN;
+
+	// Completed chains
+
+	private final ArrayList<ChainSummary> _completedChains = new ArrayList<>();
+	private long _completedSamples = 0;
+	private int _completedChainCount = 0;
+
+	/**
+	 * Statistics retained for each chain.
+	 */
+	private static final class ChainSummary
+	{
+		private final long _samples;
+		private final long _halfSamples;
+		private final double[] _firstMean;
+		private final double[] _firstVariance;
+		private final double[] _secondMean;
+		private final double[] _secondVariance;
+		private final double[] _ess;
+		private final double[] _autocorrelation;
+
+		private ChainSummary(long samples, long halfSamples, int nQuantities, int maxLag)
+		{
+			_samples = samples;
+			_halfSamples = halfSamples;
+			_firstMean = new double[nQuantities];
+			_firstVariance = new double[nQuantities];
+			_secondMean = new double[nQuantities];
+			_secondVariance = new double[nQuantities];
+			_ess = new double[nQuantities];
+			_autocorrelation = new double[nQuantities * maxLag];
+		}
+
+		/**
+		 * Copy of {@code other} with quantities reordered so that quantity {@code i} of the copy
+		 * is quantity {@code map[i]} of {@code other}.
+		 */
+		private ChainSummary(ChainSummary other, int[] map, int maxLag)
+		{
+			this(other._samples, other._halfSamples, map.length, maxLag);
+			for (int i = 0; i < map.length; ++i)
+			{
+				final int j = map[i];
+				_firstMean[i] = other._firstMean[j];
+				_firstVariance[i] = other._firstVariance[j];
+				_secondMean[i] = other._secondMean[j];
+				_secondVariance[i] = other._secondVariance[j];
+				_ess[i] = other._ess[j];
+				System.arraycopy(other._autocorrelation, j * maxLag, _autocorrelation, i * maxLag, maxLag);
+			}
+		}
+	}
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs diagnostics for the variables of {@code sgraph}'s model, including those in subgraphs,
+	 * with autocorrelation computed up to {@code maxLag}.
+	 */
+	GibbsConvergenceDiagnostics(GibbsSolverGraph sgraph, int maxLag)
+	{
+		final ArrayList<ISolverVariableGibbs> variables = new ArrayList<>();
+		_quantityIndex = new HashMap<>();
+		for (Variable var : sgraph.getModelObject().getVariables())
+		{
+			final ISolverVariableGibbs svar = sgraph.getSolverVariable(var);
+			if (svar instanceof GibbsDiscrete || svar instanceof GibbsReal)
+			{
+				variables.add(svar);
+				_quantityIndex.put(var, variables.size());
+			}
+		}
+		_variables = variables.toArray(new ISolverVariableGibbs[variables.size()]);
+
+		final int nq = _nQuantities = _variables.length + 1;
+		_maxLag = maxLag;
+		_batchMean = new double[nq * MAX_BATCHES];
+		_batchM2 = new double[nq * MAX_BATCHES];
+		_partialMean = new double[nq];
+		_partialM2 = new double[nq];
+		_origin = new double[nq];
+		_sum = new double[nq];
+		_sumSquares = new double[nq];
+		_lagProducts = new double[nq * maxLag];
+		_head = new double[nq * maxLag];
+		_recent = new double[nq * maxLag];
+	}
+
+	/*---------
+	 * Queries
+	 */
+
+	/**
+	 * The number of chains that have contributed samples, including the current one.
+	 */
+	public int getChainCount()
+	{
+		return _completedChainCount + (_chainSamples > 0 ? 1 : 0);
+	}
+
+	/**
+	 * The maximum lag for which autocorrelation is computed.
+	 * @see #getAutocorrelation(Variable, int)
+	 */
+	public int getMaxLag()
+	{
+		return _maxLag;
+	}
+
+	/**
+	 * The total number of samples in all chains.
+	 */
+	public long getSampleCount()
+	{
+		return _completedSamples + _chainSamples;
+	}
+
+	/**
+	 * The number of samples in the current chain.
+	 */
+	public long getChainSampleCount()
+	{
+		return _chainSamples;
+	}
+
+	/**
+	 * The effective sample size for {@code variable}, summed over all chains.
+	 * <p>
+	 * This is NaN if no chain has at least two full batches of samples.
+	 * <p>
+	 * @throws IllegalArgumentException if {@code variable} is not monitored by this object.
+	 */
+	public double getEffectiveSampleSize(Variable variable)
+	{
+		return effectiveSampleSize(quantityIndex(variable));
+	}
+
+	/**
+	 * The split-R-hat value for {@code variable} across all chains.
+	 * <p>
+	 * This is NaN if no chain has at least two full batches of samples.
+	 * <p>
+	 * @throws IllegalArgumentException if {@code variable} is not monitored by this object.
+	 */
+	public double getRHat(Variable variable)
+	{
+		return rHat(quantityIndex(variable));
+	}
+
+	/**
+	 * The autocorrelation of the samples of {@code variable} at given {@code lag}, averaged
+	 * over all chains.
+	 * <p>
+	 * @param lag must be in the range [1, {@link #getMaxLag()}].
+	 * @throws IllegalArgumentException if {@code variable} is not monitored by this object.
+	 * @throws IndexOutOfBoundsException if {@code lag} is out of range.
+	 */
+	public double getAutocorrelation(Variable variable, int lag)
+	{
+		return autocorrelation(quantityIndex(variable), lag);
+	}
+
+	/**
+	 * The effective sample size for the sample score, summed over all chains.
+	 * @see #getEffectiveSampleSize(Variable)
+	 */
+	public double getScoreEffectiveSampleSize()
+	{
+		return effectiveSampleSize(0);
+	}
+
+	/**
+	 * The split-R-hat value for the sample score across all chains.
+	 * @see #getRHat(Variable)
+	 */
+	public double getScoreRHat()
+	{
+		return rHat(0);
+	}
+
+	/**
+	 * The autocorrelation of the sample score at given {@code lag}, averaged over all chains.
+	 * @see #getAutocorrelation(Variable, int)
+	 */
+	public double getScoreAutocorrelation(int lag)
+	{
+		return autocorrelation(0, lag);
+	}
+
+	/**
+	 * The smallest effective sample size of the score and any monitored variable.
+	 */
+	public double getMinEffectiveSampleSize()
+	{
+		double min = Double.NaN;
+		for (int q = 0; q < _nQuantities; ++q)
+		{
+			min = nanMin(min, effectiveSampleSize(q));
+		}
+		return min;
+	}
+
+	/**
+	 * The largest split-R-hat value of the score and any monitored variable.
+	 */
+	public double getMaxRHat()
+	{
+		double max = Double.NaN;
+		for (int q = 0; q < _nQuantities; ++q)
+		{
+			max = nanMax(max, rHat(q));
+		}
+		return max;
+	}
+
+	/**
+	 * The smallest effective sample size of the score and any monitored variable in the current chain.
+	 * <p>
+	 * This is only recomputed when a batch of samples is completed.
+	 */
+	public double getChainMinEffectiveSampleSize()
+	{
+		updateChainStats();
+		return _chainMinEss;
+	}
+
+	/**
+	 * The largest split-R-hat value of the score and any monitored variable in the current chain.
+	 * <p>
+	 * This is only recomputed when a batch of samples is completed.
+	 */
+	public double getChainMaxRHat()
+	{
+		updateChainStats();
+		return _chainMaxRHat;
+	}
+
+	/**
+	 * True if the current chain has at least {@link #MIN_CONVERGENCE_SAMPLES} samples and its
+	 * {@linkplain #getChainMinEffectiveSampleSize() effective sample size} is at least {@code minEss}
+	 * and its {@linkplain #getChainMaxRHat() split-R-hat} is at most {@code maxRHat} for every monitored quantity.
+	 */
+	public boolean isChainConverged(double minEss, double maxRHat)
+	{
+		if (_chainSamples < MIN_CONVERGENCE_SAMPLES)
+		{
+			return false;
+		}
+		updateChainStats();
+		return _chainMinEss >= minEss && _chainMaxRHat <= maxRHat;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("GibbsConvergenceDiagnostics(chains=%d, samples=%d, minEss=%g, maxRHat=%g)",
+			getChainCount(), getSampleCount(), getMinEffectiveSampleSize(), getMaxRHat());
+	}
+
+	/*------------------
+	 * Package methods
+	 */
+
+	/**
+	 * Ends the current chain, if any, and starts a new one.
+	 */
+	void startChain()
+	{
+		final ChainSummary summary = chainSummary();
+		if (summary != null)
+		{
+			_completedChains.add(summary);
+		}
+		if (_chainSamples > 0)
+		{
+			_completedSamples += _chainSamples;
+			++_completedChainCount;
+		}
+		discardChain();
+	}
+
+	/**
+	 * Discards statistics for all chains.
+	 */
+	void reset()
+	{
+		discardChain();
+		_completedChains.clear();
+		_completedSamples = 0;
+		_completedChainCount = 0;
+	}
+
+	/**
+	 * Adds the current values of the monitored variables and given sample {@code score} to
+	 * the current chain.
+	 */
+	void addSample(double score)
+	{
+		if (Double.isInfinite(score) || score != score)
+		{
+			discardChain();
+			return;
+		}
+
+		final ISolverVariableGibbs[] variables = _variables;
+		final long n = _chainSamples;
+		final int pc = _partialCount + 1;
+		for (int q = 0; q < _nQuantities; ++q)
+		{
+			final double x;
+			if (q == 0)
+			{
+				x = score;
+			}
+			else
+			{
+				final ISolverVariableGibbs svar = variables[q - 1];
+				x = svar instanceof GibbsDiscrete ?
+					((GibbsDiscrete)svar).getCurrentSampleIndex() : ((GibbsReal)svar).getCurrentSample();
+			}
+
+			if (n == 0)
+			{
+				_origin[q] = x;
+			}
+			final double y = x - _origin[q];
+
+			final double delta = y - _partialMean[q];
+			_partialMean[q] += delta / pc;
+			_partialM2[q] += delta * (y - _partialMean[q]);
+
+			_sum[q] += y;
+			_sumSquares[q] += y * y;
+
+			final int maxLag = _maxLag;
+			if (maxLag > 0)
+			{
+				final int base = q * maxLag;
+				for (int k = 1, end = (int)Math.min(maxLag, n); k <= end; ++k)
+				{
+					_lagProducts[base + k - 1] += y * _recent[base + (int)((n - k) % maxLag)];
+				}
+				_recent[base + (int)(n % maxLag)] = y;
+				if (n < maxLag)
+				{
+					_head[base + (int)n] = y;
+				}
+			}
+		}
+
+		_chainSamples = n + 1;
+		_partialCount = pc;
+		if (pc == _batchSize)
+		{
+			completeBatch();
+		}
+	}
+
+	/**
+	 * Adds the chains of {@code other}, which monitored a copy of the graph, to this object.
+	 * <p>
+	 * @param old2new maps variables monitored by this object to the corresponding variables monitored
+	 * by {@code other}.
+	 */
+	void merge(GibbsConvergenceDiagnostics other, Map<Object,Object> old2new)
+	{
+		other.startChain();
+
+		final int[] map = new int[_nQuantities];
+		for (Map.Entry<Variable,Integer> entry : _quantityIndex.entrySet())
+		{
+			final Variable otherVar = (Variable)requireNonNull(old2new.get(entry.getKey()));
+			map[entry.getValue()] = other.quantityIndex(otherVar);
+		}
+
+		for (ChainSummary summary : other._completedChains)
+		{
+			_completedChains.add(new ChainSummary(summary, map, _maxLag));
+		}
+		_completedSamples += other._completedSamples;
+		_completedChainCount += other._completedChainCount;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private int quantityIndex(Variable variable)
+	{
+		final Integer index = _quantityIndex.get(variable);
+		if (index == null)
+		{
+			throw new IllegalArgumentException(String.format("Variable '%s' is not monitored", variable));
+		}
+		return index;
+	}
+
+	private void discardChain()
+	{
+		_chainSamples = 0;
+		_batchSize = 1;
+		_batchCount = 0;
+		resetPartialBatch();
+		Arrays.fill(_sum, 0.0);
+		Arrays.fill(_sumSquares, 0.0);
+		Arrays.fill(_lagProducts, 0.0);
+		_chainStatsValid = false;
+	}
+
+	private void resetPartialBatch()
+	{
+		_partialCount = 0;
+		Arrays.fill(_partialMean, 0.0);
+		Arrays.fill(_partialM2, 0.0);
+	}
+
+	private void completeBatch()
+	{
+		final int nq = _nQuantities;
+		int count = _batchCount;
+		for (int q = 0; q < nq; ++q)
+		{
+			_batchMean[q * MAX_BATCHES + count] = _partialMean[q];
+			_batchM2[q * MAX_BATCHES + count] = _partialM2[q];
+		}
+		resetPartialBatch();
+		++count;
+
+		if (count == MAX_BATCHES)
+		{
+			// Merge adjacent batches, doubling the batch size
+			final double halfSize = _batchSize / 2.0;
+			for (int q = 0; q < nq; ++q)
+			{
+				final int base = q * MAX_BATCHES;
+				for (int j = 0; j < MIN_BATCHES; ++j)
+				{
+					final int a = base + 2 * j, b = a + 1;
+					final double meanA = _batchMean[a], meanB = _batchMean[b];
+					final double delta = meanB - meanA;
+					_batchMean[base + j] = (meanA + meanB) / 2;
+					_batchM2[base + j] = _batchM2[a] + _batchM2[b] + delta * delta * halfSize;
+				}
+			}
+			count = MIN_BATCHES;
+			_batchSize *= 2;
+		}
+
+		_batchCount = count;
+		_chainStatsValid = false;
+	}
+
+	private void updateChainStats()
+	{
+		if (!_chainStatsValid)
+		{
+			final ChainSummary summary = _chainSummary = computeChainSummary();
+			double minEss = Double.NaN, maxRHat = Double.NaN;
+			if (summary != null)
+			{
+				for (int q = 0; q < _nQuantities; ++q)
+				{
+					minEss = nanMin(minEss, summary._ess[q]);
+					maxRHat = nanMax(maxRHat, rHat(q, summary, null));
+				}
+			}
+			_chainMinEss = minEss;
+			_chainMaxRHat = maxRHat;
+			_chainStatsValid = true;
+		}
+	}
+
+	/**
+	 * Summary of current chain, or null if it has fewer than two full batches.
+	 */
+	private @Nullable ChainSummary chainSummary()
+	{
+		updateChainStats();
+		return _chainSummary;
+	}
+
+	/**
+	 * Computes summary of current chain from its full batches, or null if there are fewer than two.
+	 */
+	private @Nullable ChainSummary computeChainSummary()
+	{
+		final int m = _batchCount;
+		if (m < 2)
+		{
+			return null;
+		}
+
+		final int nq = _nQuantities, maxLag = _maxLag;
+		final double b = _batchSize;
+		final int h = m / 2;
+		final double n = _chainSamples;
+		final ChainSummary summary = new ChainSummary(_chainSamples, h * _batchSize, nq, maxLag);
+
+		for (int q = 0; q < nq; ++q)
+		{
+			final int base = q * MAX_BATCHES;
+
+			// Effective sample size from the full batches
+			double mean = 0;
+			for (int j = 0; j < m; ++j)
+			{
+				mean += _batchMean[base + j];
+			}
+			mean /= m;
+			double withinM2 = 0, betweenSS = 0;
+			for (int j = 0; j < m; ++j)
+			{
+				final double delta = _batchMean[base + j] - mean;
+				betweenSS += delta * delta;
+				withinM2 += _batchM2[base + j];
+			}
+			final double variance = (withinM2 + b * betweenSS) / (m * b - 1);
+			final double batchMeansVariance = b * betweenSS / (m - 1);
+			summary._ess[q] = batchMeansVariance > 0 ? m * b * variance / batchMeansVariance : m * b;
+
+			// Split halves
+			summarizeHalf(base, 0, h, summary._firstMean, summary._firstVariance, q);
+			summarizeHalf(base, m - h, m, summary._secondMean, summary._secondVariance, q);
+
+			// Autocorrelation over all samples of the chain
+			final double chainMean = _sum[q] / n;
+			final double ss = _sumSquares[q] - n * chainMean * chainMean;
+			final int lbase = q * maxLag;
+			for (int k = 1; k <= maxLag; ++k)
+			{
+				double rho = Double.NaN;
+				if (k < n)
+				{
+					double headSum = 0, tailSum = 0;
+					for (int i = 0; i < k; ++i)
+					{
+						headSum += _head[lbase + i];
+						tailSum += _recent[lbase + (int)((_chainSamples - 1 - i) % maxLag)];
+					}
+					final double cross = _lagProducts[lbase + k - 1]
+						- chainMean * (2 * _sum[q] - headSum - tailSum)
+						+ (n - k) * chainMean * chainMean;
+					rho = ss > 0 ? cross / ss : 0.0;
+				}
+				summary._autocorrelation[lbase + k - 1] = rho;
+			}
+		}
+
+		return summary;
+	}
+
+	private void summarizeHalf(int base, int start, int end, double[] means, double[] variances, int q)
+	{
+		final int m = end - start;
+		final double b = _batchSize;
+		double mean = 0;
+		for (int j = start; j < end; ++j)
+		{
+			mean += _batchMean[base + j];
+		}
+		mean /= m;
+		double m2 = 0;
+		for (int j = start; j < end; ++j)
+		{
+			final double delta = _batchMean[base + j] - mean;
+			m2 += _batchM2[base + j] + b * delta * delta;
+		}
+		means[q] = mean + _origin[q];
+		variances[q] = m * b > 1 ? m2 / (m * b - 1) : 0.0;
+	}
+
+	private double effectiveSampleSize(int q)
+	{
+		double ess = Double.NaN;
+		for (ChainSummary summary : _completedChains)
+		{
+			ess = nanSum(ess, summary._ess[q]);
+		}
+		final ChainSummary current = chainSummary();
+		if (current != null)
+		{
+			ess = nanSum(ess, current._ess[q]);
+		}
+		return ess;
+	}
+
+	private double rHat(int q)
+	{
+		return rHat(q, chainSummary(), _completedChains);
+	}
+
+	/**
+	 * Computes split-R-hat for quantity {@code q} from the halves of {@code current} and {@code completed} chains.
+	 */
+	private double rHat(int q, @Nullable ChainSummary current, @Nullable ArrayList<ChainSummary> completed)
+	{
+		int nHalves = 0;
+		double halfSamples = 0, meanSum = 0, meanSquareSum = 0, varianceSum = 0;
+		final int nCompleted = completed != null ? completed.size() : 0;
+		for (int i = 0; i <= nCompleted; ++i)
+		{
+			final ChainSummary summary = i < nCompleted ? requireNonNull(completed).get(i) : current;
+			if (summary != null)
+			{
+				final double m1 = summary._firstMean[q], m2 = summary._secondMean[q];
+				nHalves += 2;
+				halfSamples += 2 * summary._halfSamples;
+				meanSum += m1 + m2;
+				meanSquareSum += m1 * m1 + m2 * m2;
+				varianceSum += summary._firstVariance[q] + summary._secondVariance[q];
+			}
+		}
+
+		if (nHalves < 2)
+		{
+			return Double.NaN;
+		}
+
+		final double n = halfSamples / nHalves;
+		final double grandMean = meanSum / nHalves;
+		final double betweenOverN = Math.max(0.0, (meanSquareSum - nHalves * grandMean * grandMean) / (nHalves - 1));
+		final double within = varianceSum / nHalves;
+		if (within <= 0)
+		{
+			return betweenOverN > 0 ? Double.POSITIVE_INFINITY : 1.0;
+		}
+		return Math.sqrt(((n - 1) / n * within + betweenOverN) / within);
+	}
+
+	private double autocorrelation(int q, int lag)
+	{
+		if (lag < 1 || lag > _maxLag)
+		{
+			throw new IndexOutOfBoundsException(String.format("Lag %d not in range [1,%d]", lag, _maxLag));
+		}
+
+		final int index = q * _maxLag + lag - 1;
+		double sum = 0, weight = 0;
+		final int nCompleted = _completedChains.size();
+		final ChainSummary current = chainSummary();
+		for (int i = 0; i <= nCompleted; ++i)
+		{
+			final ChainSummary summary = i < nCompleted ? _completedChains.get(i) : current;
+			if (summary != null)
+			{
+				final double rho = summary._autocorrelation[index];
+				if (rho == rho)
+				{
+					sum += summary._samples * rho;
+					weight += summary._samples;
+				}
+			}
+		}
+		return weight > 0 ? sum / weight : Double.NaN;
+	}
+
+	/**
+	 * Minimum of {@code x} and {@code y} ignoring NaN values.
+	 */
+	private static double nanMin(double x, double y)
+	{
+		return x != x || y < x ? y : x;
+	}
+
+	/**
+	 * Maximum of {@code x} and {@code y} ignoring NaN values.
+	 */
+	private static double nanMax(double x, double y)
+	{
+		return x != x || y > x ? y : x;
+	}
+
+	private static double nanSum(double x, double y)
+	{
+		return x == x ? x + y : y;
+	}
+}
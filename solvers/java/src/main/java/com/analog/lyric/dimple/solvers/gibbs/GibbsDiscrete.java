@@ -21,12 +21,15 @@ import static java.util.Objects.*;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.collect.PrimitiveIterator;
 import com.analog.lyric.collect.ReleasableIterator;
 import com.analog.lyric.dimple.data.IDatum;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
@@ -38,23 +41,25 @@ import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.solvers.core.SDiscreteVariableBase;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteEnergyMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.ISampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.CDFSampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteCachedSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteDirectSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteSamplerClient;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IGenericSampler;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IMCMCSampler;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
 import com.google.common.primitives.Doubles;
 
-import cern.colt.list.IntArrayList;
 
 
 /**
@@ -136,6 +141,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setFrom(value);
+			++_sampleVersion;
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -171,6 +177,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 
 			_value.setObject(obj);
+			++_sampleVersion;
 			
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents && !_value.valueEquals(requireNonNull(oldValue)))
@@ -191,6 +198,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			}
 			
 			_value.setIndex(index);
+			++_sampleVersion;
 					
 			// If this variable has deterministic dependents, then set their values
 			if (hasDeterministicDependents)
@@ -215,7 +223,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	
 	private @Nullable DiscreteEnergyMessage _input = null;
 	
-	private @Nullable IntArrayList _sampleIndexArray;
+	private @Nullable GibbsSampleStore.DiscreteColumn _sampleIndexArray;
 	private int _bestSampleIndex;
 	private @Nullable DiscreteValue _initialSampleValue = null;
 	private double _beta = 1;
@@ -230,6 +238,26 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	 * List of neighbors for sample scoring. Instantiated during initialization.
 	 */
 	private @Nullable GibbsNeighbors _neighbors = null;
+	
+	/**
+	 * Incremented whenever the value of the current sample changes.
+	 */
+	private long _sampleVersion = 0;
+	
+	/**
+	 * Variables whose values determine the conditional distribution of this variable when
+	 * {@link GibbsOptions#cacheDiscreteConditionals} is enabled. Null if the conditional is not cached.
+	 * Instantiated during initialization.
+	 */
+	private @Nullable GibbsDiscrete[] _conditionalNeighbors = null;
+	private double[] _cachedConditional = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private double _cachedMinEnergy = Double.POSITIVE_INFINITY;
+	/**
+	 * Sum of {@link #_sampleVersion} of {@link #_conditionalNeighbors} when {@link #_cachedConditional}
+	 * was computed. Because the versions never decrease, the sum only stays the same if none of them changed.
+	 */
+	private long _cachedConditionalStamp = -1;
+	private boolean _cachedConditionalValid = false;
 
 	/*--------------
 	 * Construction
@@ -295,13 +323,32 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 
 		final int messageLength = getDomain().size();
 		final int numPorts = model.getSiblingCount();
+		final int oldIndex = _currentSample.getIndex();
 		double minEnergy = Double.POSITIVE_INFINITY;
 		
+		// Reuse the conditional from the previous update if none of the variables it depends on have changed
+		final GibbsDiscrete[] conditionalNeighbors = _sampler instanceof IDiscreteDirectSampler ? _conditionalNeighbors : null;
+		long conditionalStamp = 0;
+		boolean useCachedConditional = false;
+		if (conditionalNeighbors != null)
+		{
+			for (GibbsDiscrete neighbor : conditionalNeighbors)
+			{
+				conditionalStamp += neighbor._sampleVersion;
+			}
+			useCachedConditional = _cachedConditionalValid && conditionalStamp == _cachedConditionalStamp;
+		}
+		
 		// Conditional probability in log domain
-		final double[] conditional = DimpleEnvironment.doubleArrayCache.allocateAtLeast(messageLength);
+		final double[] conditional = conditionalNeighbors != null ? _cachedConditional :
+			DimpleEnvironment.doubleArrayCache.allocateAtLeast(messageLength);
 
 		DiscreteEnergyMessage input = _input;
-		if (input != null)
+		if (useCachedConditional)
+		{
+			minEnergy = _cachedMinEnergy;
+		}
+		else if (input != null)
 		{
 			input.getEnergies(conditional);
 		}
@@ -311,7 +358,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		}
 		
 		// Compute the conditional probability
-		if (!model.isDeterministicInput())
+		if (useCachedConditional)
+		{
+			// Unchanged since last update
+		}
+		else if (!model.isDeterministicInput())
 		{
 			// Update all the neighboring factors
 			// If there are no deterministic dependents, then it should be faster to have
@@ -380,7 +431,14 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		
 		if (minEnergy < Double.POSITIVE_INFINITY)
 		{
-			if (_sampler instanceof IDiscreteDirectSampler)
+			if (useCachedConditional && !_samplerSpecificallySpecified && _sampler instanceof IDiscreteCachedSampler)
+			{
+				// The sampler still holds the state it built from this conditional, since it belongs to this
+				// variable alone and has not been used since.
+				((IDiscreteCachedSampler)Objects.requireNonNull(_sampler)).nextSampleFromCache(_currentSample,
+					conditional, minEnergy, this);
+			}
+			else if (_sampler instanceof IDiscreteDirectSampler)
 			{
 				((IDiscreteDirectSampler)Objects.requireNonNull(_sampler)).nextSample(_currentSample,
 					conditional, minEnergy, this);
@@ -396,7 +454,24 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			rejected = true;
 		}
 		
-		DimpleEnvironment.doubleArrayCache.release(conditional);
+		// The conditional energies of the old and new values differ by the change in the score of the
+		// whole graph, so use that to keep the graph's running score up-to-date.
+		final int newIndex = _currentSample.getIndex();
+		if (newIndex != oldIndex)
+		{
+			((GibbsSolverGraph)getRootSolverGraph()).addToSampleScore((conditional[newIndex] - conditional[oldIndex]) / _beta);
+		}
+		
+		if (conditionalNeighbors != null)
+		{
+			_cachedConditionalStamp = conditionalStamp;
+			_cachedMinEnergy = minEnergy;
+			_cachedConditionalValid = true;
+		}
+		else
+		{
+			DimpleEnvironment.doubleArrayCache.release(conditional);
+		}
 		
 		if (rejected) _rejectCount++;
 		
@@ -432,6 +507,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	public void updatePriorAndCondition()
 	{
 		_input = knownEnergyMessage();
+		_cachedConditionalValid = false;
 	}
 
 	/*--------------------------
@@ -472,6 +548,9 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 	@Override
 	public void randomRestart(int restartCount)
 	{
+		// The sampler may be used below to sample from the prior
+		_cachedConditionalValid = false;
+		
 		// If the sample value is being held, don't modify the value
 		if (_holdSampleValue) return;
 		
@@ -629,7 +708,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final void saveAllSamples()
     {
-    	_sampleIndexArray = new IntArrayList();
+    	_sampleIndexArray = newSampleColumn();
     	setOption(GibbsOptions.saveAllSamples, true);
     }
     
@@ -640,6 +719,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public void disableSavingAllSamples()
     {
+    	final GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray;
+    	if (sampleIndexArray != null)
+    	{
+    		sampleIndexArray.release();
+    	}
     	_sampleIndexArray = null;
     	setOption(GibbsOptions.saveAllSamples, false);
     }
@@ -647,7 +731,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final void saveCurrentSample()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
+    	final GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray;
     	if (sampleIndexArray != null)
     	{
     		sampleIndexArray.add(_currentSample.getIndex());
@@ -693,6 +777,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		_currentSample.setIndex(index);
     }
 	
+	private GibbsSampleStore.DiscreteColumn newSampleColumn()
+	{
+		return getParentGraph().getSampleStore().addDiscreteColumn(_model.getDomain().size());
+	}
+	
 	// Sets the sample regardless of whether the value is fixed or held
 	private final void setCurrentSampleIndexForce(int index)
 	{
@@ -727,7 +816,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final Object[] getAllSamples()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
+    	final GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray;
     	
 		if (sampleIndexArray == null)
 		{
@@ -736,22 +825,37 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		int length = sampleIndexArray.size();
     	DiscreteDomain domain = _model.getDiscreteDomain();
     	Object[] retval = new Object[length];
+    	PrimitiveIterator.OfInt indices = sampleIndexArray.iterator();
     	for (int i = 0; i < length; i++)
-    		retval[i] = domain.getElement(sampleIndexArray.get(i));
+    		retval[i] = domain.getElement(indices.nextInt());
     	return retval;
     }
     
     @Matlab
     public final int[] getAllSampleIndices()
     {
-    	final IntArrayList sampleIndexArray = _sampleIndexArray;
+    	final GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray;
 
     	if (sampleIndexArray == null)
     	{
     		return ArrayUtil.EMPTY_INT_ARRAY;
     	}
     	
-    	return Arrays.copyOf(sampleIndexArray.elements(), sampleIndexArray.size());
+    	return sampleIndexArray.toArray();
+    }
+    
+    /**
+     * The column holding the sample indices saved for this variable, or null if samples are not being saved.
+     * <p>
+     * Unlike {@link #getAllSampleIndices()}, this does not copy the samples, which may be read using the
+     * column's {@linkplain GibbsSampleStore.DiscreteColumn#iterator() iterator}. The column must not be modified.
+     * <p>
+     * @since 0.08
+     * @see GibbsOptions#saveAllSamples
+     */
+    public final @Nullable GibbsSampleStore.DiscreteColumn getSampleColumn()
+    {
+    	return _sampleIndexArray;
     }
     
 	@Override
@@ -787,6 +891,34 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		return _rejectCount;
 	}
 
+	@Override
+	public final void mergeSampleStatistics(ISolverVariableGibbs other, boolean takeBest)
+	{
+		final GibbsDiscrete ovar = (GibbsDiscrete)other;
+		
+		final long[] histogram = _beliefHistogram, otherHistogram = ovar._beliefHistogram;
+		if (histogram != null && otherHistogram != null)
+		{
+			for (int i = histogram.length; --i >= 0;)
+				histogram[i] += otherHistogram[i];
+		}
+		
+		final GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray, otherSampleIndexArray = ovar._sampleIndexArray;
+		if (sampleIndexArray != null && otherSampleIndexArray != null)
+		{
+			sampleIndexArray.addAll(otherSampleIndexArray);
+		}
+		
+		if (takeBest)
+		{
+			_bestSampleIndex = ovar._bestSampleIndex;
+		}
+		
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
+	}
+
 	public final void setAndHoldSampleValue(Object value)
 	{
 		releaseSampleValue();
@@ -841,7 +973,11 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     @Override
 	public final void setBeta(double beta)	// beta = 1/temperature
     {
-    	_beta = beta;
+		if (beta != _beta)
+		{
+			_beta = beta;
+			_cachedConditionalValid = false;
+		}
     }
 	
     // TODO move to bottom
@@ -881,6 +1017,7 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
     {
     	_sampler = (IGenericSampler)sampler;
     	_samplerSpecificallySpecified = true;
+    	_cachedConditionalValid = false;
     }
     
 	/**
@@ -1005,6 +1142,8 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		_samplerSpecificallySpecified = ovar._samplerSpecificallySpecified;
 		_input = ovar._input;
 		ovar._input = null;
+		_cachedConditionalValid = false;
+		ovar._cachedConditionalValid = false;
     }
 	
 	@Override
@@ -1020,19 +1159,23 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 		
 		// Clear out sample state
 		_bestSampleIndex = -1;
-		IntArrayList sampleIndexArray = null;
+		GibbsSampleStore.DiscreteColumn sampleIndexArray = _sampleIndexArray;
 		if (saveAllSamples)
 		{
-			sampleIndexArray = _sampleIndexArray;
 			if (sampleIndexArray == null)
 			{
-				sampleIndexArray = new IntArrayList();
+				sampleIndexArray = newSampleColumn();
 			}
 			else
 			{
 				sampleIndexArray.clear();
 			}
 		}
+		else if (sampleIndexArray != null)
+		{
+			sampleIndexArray.release();
+			sampleIndexArray = null;
+		}
 		_sampleIndexArray = sampleIndexArray;
 		
 		Arrays.fill(_beliefHistogram, 0);
@@ -1052,9 +1195,66 @@ public class GibbsDiscrete extends SDiscreteVariableBase implements ISolverVaria
 			sampler = _sampler = GibbsOptions.discreteSampler.instantiate(this);
 		}
 		sampler.initializeFromVariable(this);
+		
+		final GibbsDiscrete[] conditionalNeighbors = _conditionalNeighbors =
+			getOptionOrDefault(GibbsOptions.cacheDiscreteConditionals) ? conditionalNeighbors() : null;
+		if (conditionalNeighbors != null && _cachedConditional.length < getDomain().size())
+		{
+			_cachedConditional = new double[getDomain().size()];
+		}
+		_cachedConditionalValid = false;
 
 		resetRejectionRateStats();
 	}
+	
+	/**
+	 * Returns the variables that share a factor with this one if the conditional distribution of this
+	 * variable depends only on their values, otherwise null.
+	 * <p>
+	 * This requires all of the variable's factors to be non-deterministic table factors whose other
+	 * variables are all discrete and in which this variable appears only once.
+	 */
+	private @Nullable GibbsDiscrete[] conditionalNeighbors()
+	{
+		final Discrete model = _model;
+		if (model.isDeterministicInput() || model.isDeterministicOutput())
+		{
+			return null;
+		}
+		
+		final Set<GibbsDiscrete> neighbors = new LinkedHashSet<>();
+		for (int i = 0, n = model.getSiblingCount(); i < n; ++i)
+		{
+			final Factor factor = model.getSibling(i);
+			if (!(factor.getSolver() instanceof GibbsTableFactor))
+			{
+				return null;
+			}
+			int selfCount = 0;
+			for (int j = 0, m = factor.getSiblingCount(); j < m; ++j)
+			{
+				final Variable var = factor.getSibling(j);
+				final ISolverVariable svar = var.getSolver();
+				if (!(svar instanceof GibbsDiscrete))
+				{
+					return null;
+				}
+				if (var == model)
+				{
+					if (++selfCount > 1)
+					{
+						return null;
+					}
+				}
+				else
+				{
+					neighbors.add((GibbsDiscrete)svar);
+				}
+			}
+		}
+		
+		return neighbors.toArray(new GibbsDiscrete[neighbors.size()]);
+	}
 
 	@SuppressWarnings("null")
 	@Override
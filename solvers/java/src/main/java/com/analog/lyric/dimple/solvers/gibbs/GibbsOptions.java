@@ -28,6 +28,7 @@ import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.SliceSampler;
 import com.analog.lyric.options.BooleanOptionKey;
 import com.analog.lyric.options.DoubleOptionKey;
 import com.analog.lyric.options.IntegerOptionKey;
+import com.analog.lyric.options.LongOptionKey;
 
 /**
  * Options for Gibbs solver.
@@ -96,6 +97,104 @@ public class GibbsOptions extends SolverOptions
 	public static final IntegerOptionKey numRandomRestarts =
 		new IntegerOptionKey(GibbsOptions.class, "numRandomRestarts", 0, 0, Integer.MAX_VALUE);
 	
+	/**
+	 * Maximum number of random restarts to run concurrently in Gibbs solver.
+	 * <p>
+	 * When this is greater than one and {@link #numRandomRestarts} is non-zero, the restarts performed
+	 * by {@linkplain GibbsSolverGraph#solveOneStep() solveOneStep} will be divided into this many
+	 * contiguous groups (or fewer if there are not enough restarts), which will be run concurrently, each
+	 * on its own copy of the graph. The belief statistics,
+	 * saved samples and scores, best sample and rejection statistics from each copy are then merged into
+	 * the original graph in restart order. The copies are made once per solve.
+	 * <p>
+	 * Whenever {@link #numRandomRestarts} is non-zero, each restart uses its own random number stream derived
+	 * from the seed and the restart index, whether or not the restarts are run concurrently, so the samples
+	 * do not depend on this option.
+	 * <p>
+	 * Concurrent restarts are only supported when solving a root graph without
+	 * {@linkplain com.analog.lyric.dimple.model.core.FactorGraph#getFactorGraphStreams() streams}. Otherwise,
+	 * the restarts will be run sequentially. A root graph that contains nested graphs is supported: each copy
+	 * includes the entire graph tree.
+	 * <p>
+	 * The chains run on the shared thread pool. If {@link SolverOptions#enableMultithreading}
+	 * is also enabled, the concurrent updates of a chromatic schedule within each chain are run on the chain's own thread.
+	 * <p>
+	 * Must be a positive integer. The default is one, which runs all restarts sequentially.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey concurrentRestarts =
+		new IntegerOptionKey(GibbsOptions.class, "concurrentRestarts", 1, 1, Integer.MAX_VALUE);
+
+	/**
+	 * Specifies whether to compute convergence diagnostics from the samples generated by Gibbs solver.
+	 * <p>
+	 * When enabled, the effective sample size, split-R-hat and autocorrelation of the sample score and of
+	 * each discrete and real variable are computed incrementally as samples are generated, and can
+	 * be obtained from {@link GibbsSolverGraph#getConvergenceDiagnostics()} and from
+	 * {@link GibbsSampleStatisticsEvent}. This adds a small cost per variable to each sample.
+	 * <p>
+	 * This is only looked up on the root graph. It is implicitly enabled by {@link #stopWhenConverged}.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey computeConvergenceDiagnostics =
+		new BooleanOptionKey(GibbsOptions.class, "computeConvergenceDiagnostics", false);
+
+	/**
+	 * Specifies whether to end burn-in and sampling early once the chain has converged in Gibbs solver.
+	 * <p>
+	 * When enabled, {@link #burnInScans} and {@link #numSamples} specify the maximum length of the burn-in
+	 * and sampling phases of each restart:
+	 * <ul>
+	 * <li>Burn-in ends once the split-R-hat of the score and of every discrete and real variable over
+	 * the burn-in so far, computed every sample's worth of updates, is no more than {@link #convergenceRHat}.
+	 * <li>Sampling ends once in addition the effective sample size of the restart is at least
+	 * {@link #convergenceEffectiveSampleSize} for all of them.
+	 * </ul>
+	 * Neither phase ends before {@link GibbsConvergenceDiagnostics#MIN_CONVERGENCE_SAMPLES} steps. Because the
+	 * criteria must be met by every variable, large graphs are less likely to stop early.
+	 * <p>
+	 * Each restart decides when to stop using only its own samples: the split-R-hat compares the halves of
+	 * the current chain, not the chains of different restarts. This keeps the results the same whether the
+	 * restarts are run sequentially or {@linkplain #concurrentRestarts concurrently}, but it will not detect
+	 * restarts that have settled in different modes. The cross-chain {@link GibbsConvergenceDiagnostics#getMaxRHat()}
+	 * can be checked for that after solving.
+	 * <p>
+	 * This is only looked up on the root graph.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 * @see #computeConvergenceDiagnostics
+	 */
+	public static final BooleanOptionKey stopWhenConverged =
+		new BooleanOptionKey(GibbsOptions.class, "stopWhenConverged", false);
+
+	/**
+	 * Maximum split-R-hat value for the chain to be considered converged by {@link #stopWhenConverged}.
+	 * <p>
+	 * This is compared against the within-chain split-R-hat of the current restart only.
+	 * <p>
+	 * Must be at least one. The default is 1.05.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey convergenceRHat =
+		new DoubleOptionKey(GibbsOptions.class, "convergenceRHat", 1.05, 1.0, Double.MAX_VALUE);
+
+	/**
+	 * Minimum effective sample size per restart for sampling to end when {@link #stopWhenConverged} is enabled.
+	 * <p>
+	 * Must be non-negative. The default is 400.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final DoubleOptionKey convergenceEffectiveSampleSize =
+		new DoubleOptionKey(GibbsOptions.class, "convergenceEffectiveSampleSize", 400.0, 0.0, Double.MAX_VALUE);
+
 	/**
 	 * Specifies whether to save sample values for variables in Gibbs solver.
 	 * <p>
@@ -106,6 +205,39 @@ public class GibbsOptions extends SolverOptions
 	public static final BooleanOptionKey saveAllSamples =
 		new BooleanOptionKey(GibbsOptions.class, "saveAllSamples", false);
 	
+	/**
+	 * Number of samples per chunk in the {@linkplain GibbsSolverGraph#getSampleStore() sample store} used
+	 * to hold samples and scores saved by the Gibbs solver.
+	 * <p>
+	 * This is only looked up on the root graph.
+	 * <p>
+	 * Defaults to {@link GibbsSampleStore#DEFAULT_CHUNK_SIZE}.
+	 * <p>
+	 * @since 0.08
+	 * @see #saveAllSamples
+	 * @see #saveAllScores
+	 */
+	public static final IntegerOptionKey sampleChunkSize =
+		new IntegerOptionKey(GibbsOptions.class, "sampleChunkSize", GibbsSampleStore.DEFAULT_CHUNK_SIZE, 1, 1 << 24);
+	
+	/**
+	 * Maximum number of bytes of saved samples and scores to keep on the Java heap in Gibbs solver.
+	 * <p>
+	 * When the chunks in the {@linkplain GibbsSolverGraph#getSampleStore() sample store} exceed
+	 * this size, full chunks are moved to a temporary memory-mapped file, so that the heap used by
+	 * saved samples stays bounded regardless of the number of samples.
+	 * <p>
+	 * This is only looked up on the root graph.
+	 * <p>
+	 * Defaults to {@link Long#MAX_VALUE}, which means that samples are never spilled.
+	 * <p>
+	 * @since 0.08
+	 * @see #saveAllSamples
+	 * @see #saveAllScores
+	 */
+	public static final LongOptionKey sampleMemoryLimit =
+		new LongOptionKey(GibbsOptions.class, "sampleMemoryLimit", Long.MAX_VALUE, 0, Long.MAX_VALUE);
+	
 	/**
 	 * Specifies whether to save sample scores in Gibbs solver.
 	 * <p>
@@ -119,6 +251,27 @@ public class GibbsOptions extends SolverOptions
 	public static final BooleanOptionKey saveAllScores =
 		new BooleanOptionKey(GibbsOptions.class, "saveAllScores", false);
 	
+	/**
+	 * Number of samples between full recomputations of the sample score in Gibbs solver.
+	 * <p>
+	 * The total score of the graph is needed for every sample in order to keep track of the best sample
+	 * and to {@linkplain #saveAllScores save all scores}. Rather than recomputing the score over the
+	 * entire graph for each sample, the solver keeps a running total that is adjusted as each discrete
+	 * variable is updated, using the conditional energies already computed for that update. Every this
+	 * many samples, the running total is replaced by a full computation of the score in order to avoid
+	 * accumulating numerical error.
+	 * <p>
+	 * The score is also fully recomputed after any updates that do not report a change in score, such as
+	 * updates of real variables or blocks, or concurrent updates. Setting this to one disables the
+	 * incremental computation.
+	 * <p>
+	 * Must be a positive integer. The default is 100.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final IntegerOptionKey scoreRecomputeInterval =
+		new IntegerOptionKey(GibbsOptions.class, "scoreRecomputeInterval", 100, 1, Integer.MAX_VALUE);
+	
 	/**
 	 * Specifies which sampler to use for discrete variables in Gibbs solver.
 	 * <p>
@@ -126,7 +279,30 @@ public class GibbsOptions extends SolverOptions
 	 */
 	public static final GenericSamplerOptionKey discreteSampler =
 		new GenericSamplerOptionKey(GibbsOptions.class, "discreteSampler", CDFSampler.class);
-	
+
+	/**
+	 * Specifies whether discrete variables should reuse their conditional distribution when it has not changed
+	 * since their previous update in Gibbs solver.
+	 * <p>
+	 * When enabled, each discrete variable whose factors are all discrete table factors keeps a copy of its most
+	 * recent conditional energies along with a stamp computed from the change counts of the variables it shares
+	 * factors with. If none of those variables have changed since the last update, the conditional is reused
+	 * without recomputing the factor slices, and if the variable's sampler implements
+	 * {@link com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteCachedSampler IDiscreteCachedSampler},
+	 * the sample is drawn from the state the sampler built for that conditional. This is most effective
+	 * for variables with large domains combined with the
+	 * {@link com.analog.lyric.dimple.solvers.gibbs.samplers.generic.AliasSampler AliasSampler}.
+	 * <p>
+	 * The cache is not used for variables with deterministic dependents, and it uses memory proportional to the
+	 * domain size for each variable. Changes to the model or its factor tables require the graph to be reinitialized.
+	 * <p>
+	 * Defaults to false.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static final BooleanOptionKey cacheDiscreteConditionals =
+		new BooleanOptionKey(GibbsOptions.class, "cacheDiscreteConditionals", false);
+
 	/**
 	 * Specifies which sampler to use for real variables in Gibbs solver.
 	 * <p>
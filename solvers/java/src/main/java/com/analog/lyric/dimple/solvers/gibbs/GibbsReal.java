@@ -20,7 +20,6 @@ import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
 import static com.analog.lyric.dimple.solvers.gibbs.GibbsSolverVariableEvent.*;
 import static java.util.Objects.*;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -69,7 +68,6 @@ import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
 import com.google.common.primitives.Doubles;
 
-import cern.colt.list.DoubleArrayList;
 
 /*
  * WARNING: Whenever editing this class, also make the corresponding edit to SRealJointVariable.
@@ -170,7 +168,7 @@ public class GibbsReal extends SRealVariableBase
 	private @Nullable IMCMCSampler _sampler = null;
 	private @Nullable IRealConjugateSampler _conjugateSampler = null;
 	private boolean _samplerSpecificallySpecified = false;
-	private @Nullable DoubleArrayList _sampleArray;
+	private @Nullable GibbsSampleStore.RealColumn _sampleArray;
 	private double _sampleSum;
 	private double _sampleSumSquare;
 	private long _sampleCount;
@@ -236,6 +234,9 @@ public class GibbsReal extends SRealVariableBase
 		// Also return if the variable is set to a fixed value
 		if (model.hasFixedValue()) return;
 
+		// The samplers do not compute the change in the graph's sample score.
+		((GibbsSolverGraph)getRootSolverGraph()).invalidateSampleScore();
+
 		final int updateEventFlags = GibbsSolverVariableEvent.getVariableUpdateEventFlags(this);
 		Value oldValue = null;
 		double oldSampleScore = 0.0;
@@ -594,7 +595,7 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final void saveAllSamples()
 	{
-		_sampleArray = new DoubleArrayList();
+		_sampleArray = newSampleColumn();
 		setOption(GibbsOptions.saveAllSamples, true);
 	}
 
@@ -605,6 +606,11 @@ public class GibbsReal extends SRealVariableBase
     @Override
 	public void disableSavingAllSamples()
     {
+    	final GibbsSampleStore.RealColumn sampleArray = _sampleArray;
+    	if (sampleArray != null)
+    	{
+    		sampleArray.release();
+    	}
     	_sampleArray = null;
 		setOption(GibbsOptions.saveAllSamples, false);
     }
@@ -612,7 +618,7 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final void saveCurrentSample()
 	{
-		final DoubleArrayList sampleArray = _sampleArray;
+		final GibbsSampleStore.RealColumn sampleArray = _sampleArray;
 		if (sampleArray != null)
 			sampleArray.add(_currentSample.getDouble());
 	}
@@ -656,6 +662,11 @@ public class GibbsReal extends SRealVariableBase
 		_currentSample.setDouble(value);
 	}
 	
+	private GibbsSampleStore.RealColumn newSampleColumn()
+	{
+		return getParentGraph().getSampleStore().addRealColumn();
+	}
+	
 	// Sets the sample regardless of whether the value is fixed or held
 	private final void setCurrentSampleForce(double value)
 	{
@@ -678,13 +689,27 @@ public class GibbsReal extends SRealVariableBase
 	@Override
 	public final double[] getAllSamples()
 	{
-		final DoubleArrayList sampleArray = _sampleArray;
+		final GibbsSampleStore.RealColumn sampleArray = _sampleArray;
 		if (sampleArray == null)
 		{
 			return ArrayUtil.EMPTY_DOUBLE_ARRAY;
 		}
 		
-		return Arrays.copyOf(sampleArray.elements(), sampleArray.size());
+		return sampleArray.toArray();
+	}
+	
+	/**
+	 * The column holding the samples saved for this variable, or null if samples are not being saved.
+	 * <p>
+	 * Unlike {@link #getAllSamples()}, this does not copy the samples, which may be read using the
+	 * column's {@linkplain GibbsSampleStore.RealColumn#iterator() iterator}. The column must not be modified.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsOptions#saveAllSamples
+	 */
+	public final @Nullable GibbsSampleStore.RealColumn getSampleColumn()
+	{
+		return _sampleArray;
 	}
 	
 	@Override
@@ -719,11 +744,29 @@ public class GibbsReal extends SRealVariableBase
 		return _rejectCount;
 	}
 
-	// This is meant for internal use, not as a user accessible method
-	@Internal
-	public final @Nullable DoubleArrayList _getSampleArrayUnsafe()
+	@Override
+	public final void mergeSampleStatistics(ISolverVariableGibbs other, boolean takeBest)
 	{
-		return _sampleArray;
+		final GibbsReal ovar = (GibbsReal)other;
+		
+		_sampleSum += ovar._sampleSum;
+		_sampleSumSquare += ovar._sampleSumSquare;
+		_sampleCount += ovar._sampleCount;
+		
+		final GibbsSampleStore.RealColumn sampleArray = _sampleArray, otherSampleArray = ovar._sampleArray;
+		if (sampleArray != null && otherSampleArray != null)
+		{
+			sampleArray.addAll(otherSampleArray);
+		}
+		
+		if (takeBest)
+		{
+			_bestSampleValue = ovar._bestSampleValue;
+		}
+		
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
 	}
 
 	public final void setAndHoldSampleValue(double value)
@@ -958,19 +1001,23 @@ public class GibbsReal extends SRealVariableBase
 		
 		// Clear out sample state
 		_bestSampleValue = _currentSample.getDouble();
-		DoubleArrayList sampleArray = null;
+		GibbsSampleStore.RealColumn sampleArray = _sampleArray;
 		if (saveAllSamples)
 		{
-			sampleArray = _sampleArray;
 			if (sampleArray == null)
 			{
-				sampleArray = new DoubleArrayList();
+				sampleArray = newSampleColumn();
 			}
 			else
 			{
 				sampleArray.clear();
 			}
 		}
+		else if (sampleArray != null)
+		{
+			sampleArray.release();
+			sampleArray = null;
+		}
 		_sampleArray = sampleArray;
 		
 		// Clear out the Belief statistics
@@ -257,6 +257,9 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		// Also return if the variable is set to a fixed value
 		if (model.hasFixedValue()) return;
 
+		// The samplers do not compute the change in the graph's sample score.
+		((GibbsSolverGraph)getRootSolverGraph()).invalidateSampleScore();
+
 		final int updateEventFlags = GibbsSolverVariableEvent.getVariableUpdateEventFlags(this);
 		Value oldValue = null;
 		double oldSampleScore = 0.0;
@@ -874,6 +877,40 @@ public class GibbsRealJoint extends SRealJointVariableBase
 		return _rejectCount;
 	}
 
+	@Override
+	public final void mergeSampleStatistics(ISolverVariableGibbs other, boolean takeBest)
+	{
+		final GibbsRealJoint ovar = (GibbsRealJoint)other;
+		
+		final double[] sampleSum = _sampleSum, otherSampleSum = ovar._sampleSum;
+		final double[][] sampleSumSquare = _sampleSumSquare, otherSampleSumSquare = ovar._sampleSumSquare;
+		if (sampleSum != null && otherSampleSum != null && sampleSumSquare != null && otherSampleSumSquare != null)
+		{
+			for (int i = 0; i < _numRealVars; i++)
+			{
+				sampleSum[i] += otherSampleSum[i];
+				for (int j = i; j < _numRealVars; j++)
+					sampleSumSquare[i][j] += otherSampleSumSquare[i][j];
+			}
+		}
+		_sampleCount += ovar._sampleCount;
+		
+		final ArrayList<double[]> sampleArray = _sampleArray, otherSampleArray = ovar._sampleArray;
+		if (sampleArray != null && otherSampleArray != null)
+		{
+			sampleArray.addAll(otherSampleArray);
+		}
+		
+		if (takeBest)
+		{
+			_bestSampleValue = ovar._bestSampleValue.clone();
+		}
+		
+		_updateCount += ovar._updateCount;
+		_rejectCount += ovar._rejectCount;
+		_scoreCount += ovar._scoreCount;
+	}
+
 	// This is meant for internal use, not as a user accessible method
 	public final @Nullable List<double[]> _getSampleArrayUnsafe()
 	{
@@ -38,6 +38,8 @@ public class GibbsSampleStatisticsEvent extends GibbsSolverGraphEvent
 	final boolean _wasBest;
 	final double _oldTemperature;
 	final double _newTemperature;
+	final double _effectiveSampleSize;
+	final double _rHat;
 	
 	/*--------------
 	 * Construction
@@ -48,13 +50,17 @@ public class GibbsSampleStatisticsEvent extends GibbsSolverGraphEvent
 		double sampleScore,
 		boolean wasBest,
 		double oldTemperature,
-		double newTemperature)
+		double newTemperature,
+		double effectiveSampleSize,
+		double rHat)
 	{
 		super(source);
 		_sampleScore = sampleScore;
 		_wasBest = wasBest;
 		_oldTemperature = oldTemperature;
 		_newTemperature = newTemperature;
+		_effectiveSampleSize = effectiveSampleSize;
+		_rHat = rHat;
 	}
 
 	/*---------------------
@@ -73,12 +79,30 @@ public class GibbsSampleStatisticsEvent extends GibbsSolverGraphEvent
 		{
 			out.format("\ntemperature %g => %g", _oldTemperature, _newTemperature);
 		}
+		if (verbosity > 0 && _effectiveSampleSize == _effectiveSampleSize)
+		{
+			out.format("\neffective sample size %g, R-hat %g", _effectiveSampleSize, _rHat);
+		}
 	}
 
 	/*------------------------------------
 	 * GibbsSampleStatisticsEvent methods
 	 */
 	
+	/**
+	 * The smallest effective sample size of the score and of any discrete or real variable in the current chain.
+	 * <p>
+	 * This will be NaN if convergence diagnostics are not enabled or the chain does not yet have enough samples.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsConvergenceDiagnostics#getChainMinEffectiveSampleSize()
+	 * @see GibbsOptions#computeConvergenceDiagnostics
+	 */
+	public double effectiveSampleSize()
+	{
+		return _effectiveSampleSize;
+	}
+	
 	/**
 	 * If annealing is enabled for the graph, this is the new temperature value.
 	 * <p>
@@ -107,6 +131,20 @@ public class GibbsSampleStatisticsEvent extends GibbsSolverGraphEvent
 		return _oldTemperature;
 	}
 	
+	/**
+	 * The largest split-R-hat value of the score and of any discrete or real variable in the current chain.
+	 * <p>
+	 * This will be NaN if convergence diagnostics are not enabled or the chain does not yet have enough samples.
+	 * <p>
+	 * @since 0.08
+	 * @see GibbsConvergenceDiagnostics#getChainMaxRHat()
+	 * @see GibbsOptions#computeConvergenceDiagnostics
+	 */
+	public double rHat()
+	{
+		return _rHat;
+	}
+	
 	/**
 	 * The value of {@link GibbsSolverGraph#getSampleScore()} for the current sample values.
 	 * @since 0.08
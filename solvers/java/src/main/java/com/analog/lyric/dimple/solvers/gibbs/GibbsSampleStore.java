@@ -0,0 +1,886 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.PrimitiveIterator;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+
+/**
+ * Storage for samples saved by the Gibbs solver.
+ * <p>
+ * When {@link GibbsOptions#saveAllSamples} is enabled, each variable saves its samples in its own
+ * {@link Column} of the store belonging to the root {@link GibbsSolverGraph}. Likewise, scores saved
+ * when {@link GibbsOptions#saveAllScores} is enabled are kept in a {@link RealColumn} of the store.
+ * <p>
+ * Each column stores its samples in fixed-size chunks of {@link #getChunkSize()} samples, so
+ * that adding a sample never requires copying more than one chunk's worth of previous samples.
+ * Discrete sample indices are stored using one, two or four bytes per sample, depending on the
+ * size of the domain.
+ * <p>
+ * Once the memory used by chunks on the Java heap exceeds {@link #getMemoryLimit()}, the oldest full
+ * chunks are moved to a temporary file that is memory-mapped, so heap usage stays bounded regardless
+ * of the number of samples. The operating system pages the mapped chunks in and out as needed.
+ * The file is deleted when the store is {@linkplain #close() closed} or when the JVM exits.
+ * <p>
+ * Samples can be read either by index or using the columns' primitive iterators, which walk
+ * the chunks in order without copying them.
+ * <p>
+ * @since 0.08
+ * @see GibbsSolverGraph#getSampleStore()
+ */
+@NotThreadSafe
+public class GibbsSampleStore implements Closeable
+{
+	/*-----------
+	 * Constants
+	 */
+
+	/**
+	 * Default value for {@link #getChunkSize()}.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/**
+	 * Number of samples allocated for a new chunk. The last chunk of a column grows geometrically
+	 * up to the full chunk size, so that columns with few samples do not use a full chunk.
+	 */
+	static final int INITIAL_CHUNK_CAPACITY = 16;
+
+	/**
+	 * Minimum size of each memory-mapped region of the spill file.
+	 */
+	static final long SPILL_WINDOW_BYTES = 1L << 26;
+
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * A full chunk that has not yet been spilled.
+	 */
+	private static final class ChunkRef
+	{
+		private final Column _column;
+		private final int _index;
+		private final ByteBuffer _buffer;
+
+		private ChunkRef(Column column, int index, ByteBuffer buffer)
+		{
+			_column = column;
+			_index = index;
+			_buffer = buffer;
+		}
+	}
+
+	private int _chunkSize;
+	private long _memoryLimit;
+
+	private final ArrayList<Column> _columns = new ArrayList<>();
+
+	/**
+	 * Full chunks on the heap in the order they were filled. May contain chunks that have since
+	 * been discarded by {@link Column#clear()}.
+	 */
+	private final ArrayDeque<ChunkRef> _fullHeapChunks = new ArrayDeque<>();
+
+	private long _heapBytes = 0;
+	private long _spilledBytes = 0;
+
+	private @Nullable File _spillDirectory = null;
+	private @Nullable File _spillFile = null;
+	private @Nullable RandomAccessFile _spillStream = null;
+	private final ArrayList<ByteBuffer> _spillWindows = new ArrayList<>();
+	private int _spillWindowIndex = 0;
+	private long _spillFileSize = 0;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Constructs store with {@link #DEFAULT_CHUNK_SIZE} and no memory limit.
+	 */
+	public GibbsSampleStore()
+	{
+		this(DEFAULT_CHUNK_SIZE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Constructs store with given chunk size and memory limit.
+	 * <p>
+	 * @param chunkSize is the number of samples per chunk. Must be positive.
+	 * @param memoryLimit is the maximum number of bytes of chunks to keep on the heap before
+	 * spilling them to a file. Must be non-negative.
+	 */
+	public GibbsSampleStore(int chunkSize, long memoryLimit)
+	{
+		reset(chunkSize, memoryLimit);
+	}
+
+	/*-------------------
+	 * Closeable methods
+	 */
+
+	/**
+	 * Clears all columns and deletes the spill file, if any.
+	 * <p>
+	 * The store may continue to be used after it has been closed.
+	 */
+	@Override
+	public void close()
+	{
+		clear();
+
+		_spillWindows.clear();
+		_spillWindowIndex = 0;
+		_spillFileSize = 0;
+
+		final RandomAccessFile stream = _spillStream;
+		if (stream != null)
+		{
+			_spillStream = null;
+			try
+			{
+				stream.close();
+			}
+			catch (IOException ex)
+			{
+				// Ignore - nothing useful can be done about this.
+			}
+		}
+
+		final File file = _spillFile;
+		if (file != null)
+		{
+			_spillFile = null;
+			// Deletion may fail on some platforms while chunks are still mapped, in which case the file
+			// will be deleted on exit.
+			file.delete();
+		}
+	}
+
+	/*--------------------------
+	 * GibbsSampleStore methods
+	 */
+
+	/**
+	 * Removes all samples from all columns in the store.
+	 * <p>
+	 * Space in the spill file is reused for subsequent samples.
+	 */
+	public void clear()
+	{
+		for (Column column : _columns)
+		{
+			column.clear();
+		}
+		_fullHeapChunks.clear();
+		_heapBytes = 0;
+		_spilledBytes = 0;
+		_spillWindowIndex = 0;
+		for (ByteBuffer window : _spillWindows)
+		{
+			window.clear();
+		}
+	}
+
+	/**
+	 * Clears store and sets new chunk size and memory limit.
+	 * <p>
+	 * @see #GibbsSampleStore(int, long)
+	 */
+	public void reset(int chunkSize, long memoryLimit)
+	{
+		if (chunkSize <= 0)
+		{
+			throw new IllegalArgumentException(String.format("Non-positive chunk size %d", chunkSize));
+		}
+		if (memoryLimit < 0)
+		{
+			throw new IllegalArgumentException(String.format("Negative memory limit %d", memoryLimit));
+		}
+
+		clear();
+		_chunkSize = chunkSize;
+		_memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Creates a new column for samples from a discrete domain with given size.
+	 */
+	public DiscreteColumn addDiscreteColumn(int domainSize)
+	{
+		final DiscreteColumn column = new DiscreteColumn(this, domainSize);
+		_columns.add(column);
+		return column;
+	}
+
+	/**
+	 * Creates a new column for real-valued samples.
+	 */
+	public RealColumn addRealColumn()
+	{
+		final RealColumn column = new RealColumn(this);
+		_columns.add(column);
+		return column;
+	}
+
+	/**
+	 * The number of samples in each chunk.
+	 * @see #reset(int, long)
+	 */
+	public int getChunkSize()
+	{
+		return _chunkSize;
+	}
+
+	/**
+	 * The number of columns currently in the store.
+	 */
+	public int getColumnCount()
+	{
+		return _columns.size();
+	}
+
+	/**
+	 * The number of bytes of chunks currently held on the Java heap.
+	 * <p>
+	 * This includes partially filled chunks, which are never spilled.
+	 */
+	public long getHeapBytes()
+	{
+		return _heapBytes;
+	}
+
+	/**
+	 * The maximum number of bytes of full chunks to keep on the Java heap before spilling them.
+	 * <p>
+	 * A value of {@link Long#MAX_VALUE} means that chunks will never be spilled.
+	 * @see #reset(int, long)
+	 */
+	public long getMemoryLimit()
+	{
+		return _memoryLimit;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of full chunks to keep on the Java heap.
+	 * <p>
+	 * If the new limit is lower than {@link #getHeapBytes()}, full chunks will be spilled immediately.
+	 */
+	public void setMemoryLimit(long memoryLimit)
+	{
+		if (memoryLimit < 0)
+		{
+			throw new IllegalArgumentException(String.format("Negative memory limit %d", memoryLimit));
+		}
+		_memoryLimit = memoryLimit;
+		spillIfNeeded();
+	}
+
+	/**
+	 * The number of bytes of chunks that have been spilled to the memory-mapped file.
+	 */
+	public long getSpilledBytes()
+	{
+		return _spilledBytes;
+	}
+
+	/**
+	 * Directory in which the spill file will be created, or null to use the system default temporary directory.
+	 */
+	public @Nullable File getSpillDirectory()
+	{
+		return _spillDirectory;
+	}
+
+	/**
+	 * Sets directory in which spill file will be created.
+	 * <p>
+	 * Only affects files created after this call.
+	 * @see #getSpillDirectory()
+	 */
+	public void setSpillDirectory(@Nullable File directory)
+	{
+		_spillDirectory = directory;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("GibbsSampleStore[columns=%d, heapBytes=%d, spilledBytes=%d]",
+			getColumnCount(), getHeapBytes(), getSpilledBytes());
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Allocates new chunk for {@code column} or, if {@code prevChunk} is non-null, a larger copy of it.
+	 */
+	private ByteBuffer allocateChunk(Column column, @Nullable ByteBuffer prevChunk)
+	{
+		final int bytesPerSample = column.bytesPerSample();
+		final int samples = prevChunk == null ?
+			Math.min(INITIAL_CHUNK_CAPACITY, _chunkSize) :
+			(int)Math.min(2L * prevChunk.capacity() / bytesPerSample, _chunkSize);
+		final ByteBuffer chunk = ByteBuffer.allocate(samples * bytesPerSample);
+		_heapBytes += chunk.capacity();
+		
+		if (prevChunk != null)
+		{
+			final ByteBuffer source = prevChunk.duplicate();
+			source.clear();
+			chunk.duplicate().put(source);
+			_heapBytes -= prevChunk.capacity();
+		}
+		
+		return chunk;
+	}
+
+	private void chunkFilled(Column column, int index, ByteBuffer chunk)
+	{
+		_fullHeapChunks.add(new ChunkRef(column, index, chunk));
+		spillIfNeeded();
+	}
+
+	private void chunkDiscarded(ByteBuffer chunk)
+	{
+		if (chunk.isDirect())
+		{
+			_spilledBytes -= chunk.limit();
+		}
+		else
+		{
+			_heapBytes -= chunk.capacity();
+		}
+	}
+
+	private void spillIfNeeded()
+	{
+		while (_heapBytes > _memoryLimit)
+		{
+			final ChunkRef ref = _fullHeapChunks.poll();
+			if (ref == null)
+			{
+				break;
+			}
+
+			final ArrayList<ByteBuffer> chunks = ref._column._chunks;
+			if (ref._index < chunks.size() && chunks.get(ref._index) == ref._buffer)
+			{
+				final ByteBuffer heapChunk = ref._buffer;
+				final int bytes = heapChunk.capacity();
+				final ByteBuffer mappedChunk = allocateSpill(bytes);
+				final ByteBuffer source = heapChunk.duplicate();
+				source.clear();
+				mappedChunk.duplicate().put(source);
+				chunks.set(ref._index, mappedChunk);
+				_heapBytes -= bytes;
+				_spilledBytes += bytes;
+			}
+		}
+	}
+
+	/**
+	 * Returns a buffer with limit {@code bytes} in the spill file.
+	 */
+	private ByteBuffer allocateSpill(int bytes)
+	{
+		ByteBuffer window = null;
+
+		while (_spillWindowIndex < _spillWindows.size())
+		{
+			final ByteBuffer candidate = _spillWindows.get(_spillWindowIndex);
+			if (candidate.remaining() >= bytes)
+			{
+				window = candidate;
+				break;
+			}
+			++_spillWindowIndex;
+		}
+
+		if (window == null)
+		{
+			window = mapSpillWindow(Math.max(SPILL_WINDOW_BYTES, bytes));
+			_spillWindows.add(window);
+			_spillWindowIndex = _spillWindows.size() - 1;
+		}
+
+		final ByteBuffer chunk = window.slice();
+		chunk.limit(bytes);
+		window.position(window.position() + bytes);
+		return chunk;
+	}
+
+	private ByteBuffer mapSpillWindow(long bytes)
+	{
+		try
+		{
+			RandomAccessFile stream = _spillStream;
+			if (stream == null)
+			{
+				final File file = File.createTempFile("dimple-samples", ".bin", _spillDirectory);
+				file.deleteOnExit();
+				_spillFile = file;
+				_spillStream = stream = new RandomAccessFile(file, "rw");
+			}
+
+			final ByteBuffer window = stream.getChannel().map(FileChannel.MapMode.READ_WRITE, _spillFileSize, bytes);
+			_spillFileSize += bytes;
+			return window;
+		}
+		catch (IOException ex)
+		{
+			throw new DimpleException(ex);
+		}
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	/**
+	 * Base class for columns of samples in a {@link GibbsSampleStore}.
+	 */
+	@NotThreadSafe
+	public static abstract class Column
+	{
+		private final GibbsSampleStore _store;
+		private final int _bytesPerSample;
+
+		private final ArrayList<ByteBuffer> _chunks = new ArrayList<>();
+		private @Nullable ByteBuffer _writeChunk = null;
+		private int _writeOffset = 0;
+		private int _size = 0;
+
+		private Column(GibbsSampleStore store, int bytesPerSample)
+		{
+			_store = store;
+			_bytesPerSample = bytesPerSample;
+		}
+
+		/**
+		 * The number of bytes used to store each sample.
+		 */
+		public final int bytesPerSample()
+		{
+			return _bytesPerSample;
+		}
+
+		/**
+		 * Removes all samples from the column.
+		 */
+		public final void clear()
+		{
+			for (ByteBuffer chunk : _chunks)
+			{
+				_store.chunkDiscarded(chunk);
+			}
+			_chunks.clear();
+			_writeChunk = null;
+			_writeOffset = 0;
+			_size = 0;
+		}
+
+		/**
+		 * The number of chunks used by the column.
+		 */
+		public final int getChunkCount()
+		{
+			return _chunks.size();
+		}
+
+		/**
+		 * The store that contains this column.
+		 */
+		public final GibbsSampleStore getStore()
+		{
+			return _store;
+		}
+
+		/**
+		 * Removes all samples and removes the column from its store.
+		 * <p>
+		 * The column should not be used after this is called.
+		 */
+		public final void release()
+		{
+			clear();
+			_store._columns.remove(this);
+		}
+
+		/**
+		 * The number of samples in the column.
+		 */
+		public final int size()
+		{
+			return _size;
+		}
+
+		/**
+		 * Returns the chunk to which the next sample should be written at {@link #writeOffset()}.
+		 */
+		final ByteBuffer writeChunk()
+		{
+			ByteBuffer chunk = _writeChunk;
+			if (chunk == null)
+			{
+				_writeChunk = chunk = _store.allocateChunk(this, null);
+				_writeOffset = 0;
+				_chunks.add(chunk);
+			}
+			else if (_writeOffset * _bytesPerSample == chunk.capacity())
+			{
+				_writeChunk = chunk = _store.allocateChunk(this, chunk);
+				_chunks.set(_chunks.size() - 1, chunk);
+			}
+			return chunk;
+		}
+
+		/**
+		 * Byte offset of next sample in {@link #writeChunk()}.
+		 */
+		final int writeOffset()
+		{
+			return _writeOffset * _bytesPerSample;
+		}
+
+		/**
+		 * Must be invoked after writing a sample.
+		 */
+		final void advance()
+		{
+			++_size;
+			if (++_writeOffset == _store._chunkSize)
+			{
+				final ByteBuffer chunk = _writeChunk;
+				_writeChunk = null;
+				if (chunk != null)
+				{
+					_store.chunkFilled(this, _chunks.size() - 1, chunk);
+				}
+			}
+		}
+
+		/**
+		 * Returns chunk containing given sample.
+		 */
+		final ByteBuffer readChunk(int sample)
+		{
+			if (sample < 0 || sample >= _size)
+			{
+				throw new IndexOutOfBoundsException(String.format("Sample index %d out of range [0,%d)", sample, _size));
+			}
+			return _chunks.get(sample / _store._chunkSize);
+		}
+
+		/**
+		 * Byte offset of given sample within its chunk.
+		 */
+		final int readOffset(int sample)
+		{
+			return (sample % _store._chunkSize) * _bytesPerSample;
+		}
+	}
+
+	/**
+	 * Column of discrete sample indices.
+	 */
+	@NotThreadSafe
+	public static final class DiscreteColumn extends Column
+	{
+		private final int _domainSize;
+
+		private DiscreteColumn(GibbsSampleStore store, int domainSize)
+		{
+			super(store, domainSize <= 0x100 ? 1 : domainSize <= 0x10000 ? 2 : 4);
+			_domainSize = domainSize;
+		}
+
+		/**
+		 * Appends sample index, which must be in the range [0, {@link #getDomainSize()}).
+		 */
+		public void add(int index)
+		{
+			final ByteBuffer chunk = writeChunk();
+			final int offset = writeOffset();
+			switch (bytesPerSample())
+			{
+			case 1:
+				chunk.put(offset, (byte)index);
+				break;
+			case 2:
+				chunk.putChar(offset, (char)index);
+				break;
+			default:
+				chunk.putInt(offset, index);
+				break;
+			}
+			advance();
+		}
+
+		/**
+		 * Appends all of the samples in {@code other} to this column.
+		 */
+		public void addAll(DiscreteColumn other)
+		{
+			for (PrimitiveIterator.OfInt iter = other.iterator(); iter.hasNext();)
+			{
+				add(iter.nextInt());
+			}
+		}
+
+		/**
+		 * Returns the sample index at given position in the column.
+		 */
+		public int get(int sample)
+		{
+			return read(readChunk(sample), readOffset(sample));
+		}
+
+		/**
+		 * The size of the domain of the sample indices.
+		 */
+		public int getDomainSize()
+		{
+			return _domainSize;
+		}
+
+		/**
+		 * Iterates over the sample indices in the column in order.
+		 * <p>
+		 * The iterator will not visit samples added after it was created, and its behavior
+		 * is undefined if the column is cleared during iteration.
+		 */
+		public PrimitiveIterator.OfInt iterator()
+		{
+			return new Iterator();
+		}
+
+		/**
+		 * Returns a newly allocated array containing all of the sample indices in the column.
+		 */
+		public int[] toArray()
+		{
+			final int[] array = new int[size()];
+			final PrimitiveIterator.OfInt iter = iterator();
+			for (int i = 0; i < array.length; ++i)
+			{
+				array[i] = iter.nextInt();
+			}
+			return array;
+		}
+
+		private int read(ByteBuffer chunk, int offset)
+		{
+			switch (bytesPerSample())
+			{
+			case 1:
+				return chunk.get(offset) & 0xFF;
+			case 2:
+				return chunk.getChar(offset);
+			default:
+				return chunk.getInt(offset);
+			}
+		}
+
+		private final class Iterator extends ColumnIterator<Integer> implements PrimitiveIterator.OfInt
+		{
+			private Iterator()
+			{
+				super(DiscreteColumn.this);
+			}
+
+			@Override
+			public Integer next()
+			{
+				return nextInt();
+			}
+
+			@Override
+			public int nextInt()
+			{
+				final int offset = nextOffset();
+				return read(chunk(), offset);
+			}
+		}
+	}
+
+	/**
+	 * Column of real-valued samples.
+	 */
+	@NotThreadSafe
+	public static final class RealColumn extends Column
+	{
+		private RealColumn(GibbsSampleStore store)
+		{
+			super(store, 8);
+		}
+
+		/**
+		 * Appends sample value.
+		 */
+		public void add(double value)
+		{
+			writeChunk().putDouble(writeOffset(), value);
+			advance();
+		}
+
+		/**
+		 * Appends all of the samples in {@code other} to this column.
+		 */
+		public void addAll(RealColumn other)
+		{
+			for (PrimitiveIterator.OfDouble iter = other.iterator(); iter.hasNext();)
+			{
+				add(iter.nextDouble());
+			}
+		}
+
+		/**
+		 * Returns the sample value at given position in the column.
+		 */
+		public double get(int sample)
+		{
+			return readChunk(sample).getDouble(readOffset(sample));
+		}
+
+		/**
+		 * Iterates over the sample values in the column in order.
+		 * <p>
+		 * The iterator will not visit samples added after it was created, and its behavior
+		 * is undefined if the column is cleared during iteration.
+		 */
+		public PrimitiveIterator.OfDouble iterator()
+		{
+			return new Iterator();
+		}
+
+		/**
+		 * Returns a newly allocated array containing all of the sample values in the column.
+		 */
+		public double[] toArray()
+		{
+			final double[] array = new double[size()];
+			final PrimitiveIterator.OfDouble iter = iterator();
+			for (int i = 0; i < array.length; ++i)
+			{
+				array[i] = iter.nextDouble();
+			}
+			return array;
+		}
+
+		private final class Iterator extends ColumnIterator<Double> implements PrimitiveIterator.OfDouble
+		{
+			private Iterator()
+			{
+				super(RealColumn.this);
+			}
+
+			@Override
+			public Double next()
+			{
+				return nextDouble();
+			}
+
+			@Override
+			public double nextDouble()
+			{
+				final int offset = nextOffset();
+				return chunk().getDouble(offset);
+			}
+		}
+	}
+
+	/**
+	 * Walks the chunks of a column in order.
+	 */
+	private static abstract class ColumnIterator<T> implements PrimitiveIterator<T>
+	{
+		private final Column _column;
+		private final int _size;
+		private final int _chunkSize;
+		private int _next = 0;
+		private int _chunkIndex = -1;
+		private int _chunkOffset;
+		private @Nullable ByteBuffer _chunk = null;
+
+		private ColumnIterator(Column column)
+		{
+			_column = column;
+			_size = column.size();
+			_chunkSize = column._store._chunkSize;
+			_chunkOffset = _chunkSize;
+		}
+
+		@Override
+		public final boolean hasNext()
+		{
+			return _next < _size;
+		}
+
+		@Override
+		public final void remove()
+		{
+			throw new UnsupportedOperationException("remove");
+		}
+
+		/**
+		 * Advances to next sample and returns its byte offset in {@link #chunk()}.
+		 */
+		final int nextOffset()
+		{
+			if (_next >= _size)
+			{
+				throw new NoSuchElementException();
+			}
+			++_next;
+			if (_chunkOffset == _chunkSize)
+			{
+				_chunk = _column._chunks.get(++_chunkIndex);
+				_chunkOffset = 0;
+			}
+			return _chunkOffset++ * _column._bytesPerSample;
+		}
+
+		final ByteBuffer chunk()
+		{
+			final ByteBuffer chunk = _chunk;
+			if (chunk == null)
+			{
+				throw new NoSuchElementException();
+			}
+			return chunk;
+		}
+	}
+}
@@ -20,7 +20,6 @@ import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
 import static java.util.Objects.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +30,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.collect.KeyedPriorityQueue;
 import com.analog.lyric.dimple.data.ValueDataLayer;
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.model.core.DirectedNodeSorter;
 import com.analog.lyric.dimple.model.core.EdgeState;
@@ -48,19 +48,26 @@ import com.analog.lyric.dimple.model.variables.RealJoint;
 import com.analog.lyric.dimple.model.variables.Variable;
 import com.analog.lyric.dimple.model.variables.VariableBlock;
 import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
 import com.analog.lyric.dimple.schedulers.SchedulerOptionKey;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.IGibbsSchedule;
 import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
 import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
 import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
 import com.analog.lyric.dimple.solvers.gibbs.samplers.block.IBlockInitializer;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverBlastFromThePastFactor;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverVariable;
 import com.analog.lyric.dimple.solvers.interfaces.SolverNodeMapping;
+import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.util.misc.Internal;
 import com.analog.lyric.util.misc.Matlab;
+import com.google.common.primitives.Doubles;
 
-import cern.colt.list.DoubleArrayList;
 
 /**
  * Solver-specific factor graph for Gibbs solver.
@@ -97,13 +104,51 @@ public class GibbsSolverGraph
 	private int _scansPerSample = 1;
 	private int _burnInScans = GibbsOptions.burnInScans.defaultIntValue();
 	private int _numRandomRestarts = GibbsOptions.numRandomRestarts.defaultIntValue();
+	private int _concurrentRestarts = GibbsOptions.concurrentRestarts.defaultIntValue();
 	private boolean _temper = false;
 	private double _initialTemperature;
 	private double _temperingDecayConstant;
 	private double _temperature;
 	private double _minPotential = Double.MAX_VALUE;
 	private boolean _firstSample = true;
-	private @Nullable DoubleArrayList _scoreArray;
+	private @Nullable GibbsSampleStore.RealColumn _scoreArray;
+	
+	/**
+	 * Holds saved samples and scores for the graph tree, if this is the root graph. Lazily created.
+	 */
+	private @Nullable GibbsSampleStore _sampleStore = null;
+	private int _sampleChunkSize = GibbsOptions.sampleChunkSize.defaultIntValue();
+	private long _sampleMemoryLimit = GibbsOptions.sampleMemoryLimit.defaultLongValue();
+	
+	/**
+	 * Diagnostics computed from the samples when {@link GibbsOptions#computeConvergenceDiagnostics}
+	 * or {@link GibbsOptions#stopWhenConverged} is enabled on the root graph.
+	 */
+	private @Nullable GibbsConvergenceDiagnostics _convergenceDiagnostics = null;
+	private @Nullable GibbsConvergenceDiagnostics _burnInDiagnostics = null;
+	private boolean _stopWhenConverged = false;
+	private double _convergenceRHat = GibbsOptions.convergenceRHat.defaultDoubleValue();
+	private double _convergenceEffectiveSampleSize = GibbsOptions.convergenceEffectiveSampleSize.defaultDoubleValue();
+	
+	/**
+	 * Running value of {@link #getSampleScore()}, which is updated incrementally as variables are
+	 * updated. NaN if it needs to be recomputed.
+	 */
+	private double _sampleScore = Double.NaN;
+	private int _scoreRecomputeInterval = GibbsOptions.scoreRecomputeInterval.defaultIntValue();
+	private int _samplesSinceScoreRecompute = 0;
+	
+	/**
+	 * Runs concurrent scans when using a {@link GibbsChromaticSchedule} with multithreading enabled.
+	 * Lazily created.
+	 */
+	private @Nullable GibbsChromaticUpdater _chromaticUpdater = null;
+	
+	/**
+	 * Runs random restarts concurrently on copies of the graph when {@link GibbsOptions#concurrentRestarts}
+	 * is greater than one. Lazily created and reused until the next {@link #initialize()}.
+	 */
+	private @Nullable GibbsConcurrentRestarts _restartChains = null;
 	
 	/**
 	 * Priority queue of deterministic factors whose outputs should be
@@ -284,12 +329,37 @@ public class GibbsSolverGraph
 	{
 		_numSamples = getOptionOrDefault(GibbsOptions.numSamples);
 		_numRandomRestarts = getOptionOrDefault(GibbsOptions.numRandomRestarts);
+		_concurrentRestarts = getOptionOrDefault(GibbsOptions.concurrentRestarts);
+		_scoreRecomputeInterval = getOptionOrDefault(GibbsOptions.scoreRecomputeInterval);
 		_scansPerSample = getOptionOrDefault(GibbsOptions.scansPerSample);
 		_burnInScans = getOptionOrDefault(GibbsOptions.burnInScans);
 		final boolean saveAllScores = getOptionOrDefault(GibbsOptions.saveAllScores);
 		_temper = getOptionOrDefault(GibbsOptions.enableAnnealing);
 		_initialTemperature = getOptionOrDefault(GibbsOptions.initialTemperature);
 		_temperingDecayConstant = 1 - LOG2/getOptionOrDefault(GibbsOptions.annealingHalfLife);
+		_useMultithreading = getOptionOrDefault(SolverOptions.enableMultithreading);
+		final GibbsChromaticUpdater chromaticUpdater = _chromaticUpdater;
+		if (chromaticUpdater != null)
+		{
+			// Rebuild with new random streams on the next scan.
+			chromaticUpdater.shutdown();
+			_chromaticUpdater = null;
+		}
+		_restartChains = null;
+		_sampleScore = Double.NaN;
+		_sampleChunkSize = getOptionOrDefault(GibbsOptions.sampleChunkSize);
+		_sampleMemoryLimit = getOptionOrDefault(GibbsOptions.sampleMemoryLimit);
+		_stopWhenConverged = getOptionOrDefault(GibbsOptions.stopWhenConverged);
+		_convergenceRHat = getOptionOrDefault(GibbsOptions.convergenceRHat);
+		_convergenceEffectiveSampleSize = getOptionOrDefault(GibbsOptions.convergenceEffectiveSampleSize);
+		final boolean computeDiagnostics = getOptionOrDefault(GibbsOptions.computeConvergenceDiagnostics);
+		
+		final GibbsSampleStore sampleStore = _sampleStore;
+		if (sampleStore != null)
+		{
+			// Clears the samples of all of the variables before they are initialized
+			sampleStore.reset(_sampleChunkSize, _sampleMemoryLimit);
+		}
 		
 		Long seed = getOption(DimpleOptions.randomSeed);
 		if (seed != null)
@@ -353,21 +423,38 @@ public class GibbsSolverGraph
 		
 		if (_temper) setTemperature(_initialTemperature);
 		
-		DoubleArrayList scoreArray = null;
+		GibbsSampleStore.RealColumn scoreArray = _scoreArray;
 		if (saveAllScores)
 		{
-			scoreArray = _scoreArray;
 			if (scoreArray == null)
 			{
-				scoreArray = new DoubleArrayList();
+				scoreArray = getSampleStore().addRealColumn();
 			}
 			else
 			{
 				scoreArray.clear();
 			}
 		}
+		else if (scoreArray != null)
+		{
+			scoreArray.release();
+			scoreArray = null;
+		}
 		_scoreArray = scoreArray;
 		
+		_convergenceDiagnostics = _burnInDiagnostics = null;
+		if (!fg.hasParentGraph())
+		{
+			if (computeDiagnostics || _stopWhenConverged)
+			{
+				_convergenceDiagnostics =
+					new GibbsConvergenceDiagnostics(this, GibbsConvergenceDiagnostics.DEFAULT_MAX_LAG);
+			}
+			if (_stopWhenConverged)
+			{
+				_burnInDiagnostics = new GibbsConvergenceDiagnostics(this, 0);
+			}
+		}
 	}
 		
 	/**
@@ -387,6 +474,14 @@ public class GibbsSolverGraph
 	 * </pre>
 	 * </blockquote>
 	 * </ol>
+	 * <p>
+	 * If {@link GibbsOptions#concurrentRestarts} is greater than one, the restarts may instead be run
+	 * concurrently on copies of the graph, whose statistics are then merged into this one.
+	 * <p>
+	 * If {@link GibbsOptions#stopWhenConverged} is enabled, the burn-in and sampling phases of each restart
+	 * may end early once the {@linkplain #getConvergenceDiagnostics() convergence diagnostics} meet the
+	 * thresholds specified by {@link GibbsOptions#convergenceRHat} and
+	 * {@link GibbsOptions#convergenceEffectiveSampleSize}. Each restart is judged only on its own chain.
 	 */
 	@Override
 	public void solveOneStep()
@@ -394,11 +489,98 @@ public class GibbsSolverGraph
 		_minPotential = Double.POSITIVE_INFINITY;
 		_firstSample = true;
 		
-		for (int restartCount = 0; restartCount <= _numRandomRestarts; restartCount++)
+		final int nChains = Math.min(_concurrentRestarts, _numRandomRestarts + 1);
+		if (nChains > 1 && _model.getParentGraph() == null && _model.getFactorGraphStreams().isEmpty())
+		{
+			GibbsConcurrentRestarts restartChains = _restartChains;
+			if (restartChains == null)
+			{
+				// Copy the graph once per solve rather than on every step.
+				_restartChains = restartChains = new GibbsConcurrentRestarts(this, _numRandomRestarts, nChains);
+			}
+			restartChains.run();
+		}
+		else
+		{
+			// Restarts use the same random streams as when run concurrently.
+			runRestarts(_numRandomRestarts > 0 ? forkActiveRandom() : null, 0, _numRandomRestarts);
+		}
+	}
+	
+	/**
+	 * Runs restarts {@code firstRestart} through {@code lastRestart} inclusive.
+	 * <p>
+	 * If {@code streams} is not null, each restart uses the stream {@linkplain DimpleRandom#split split}
+	 * from it by restart index as the {@linkplain DimpleEnvironment#setThreadRandom thread random} while it
+	 * runs, so that its random values do not depend on whether the restarts are run concurrently. Otherwise
+	 * the current {@linkplain DimpleEnvironment#activeRandom() active random} is used.
+	 */
+	void runRestarts(@Nullable DimpleRandom streams, int firstRestart, int lastRestart)
+	{
+		final DimpleRandom prevRandom = streams != null ? setThreadRandom(null) : null;
+		try
+		{
+			for (int restartCount = firstRestart; restartCount <= lastRestart; restartCount++)
+			{
+				if (streams != null)
+				{
+					setThreadRandom(streams.split(restartCount));
+				}
+				burnIn(restartCount);
+				final GibbsConvergenceDiagnostics diagnostics = _stopWhenConverged ? _convergenceDiagnostics : null;
+				for (int iter = 0; iter < _numSamples; iter++)
+				{
+					oneSample();
+					if (diagnostics != null && diagnostics.isChainConverged(_convergenceEffectiveSampleSize, _convergenceRHat))
+					{
+						break;
+					}
+				}
+			}
+		}
+		finally
+		{
+			if (streams != null)
+			{
+				setThreadRandom(prevRandom);
+			}
+		}
+	}
+	
+	/**
+	 * Merges sample statistics from {@code other}, which was produced by running restarts on a
+	 * copy of this graph, into this graph.
+	 * <p>
+	 * @param old2new maps objects in this graph's model to the corresponding objects in the model for {@code other}.
+	 * @see ISolverVariableGibbs#mergeSampleStatistics
+	 */
+	void mergeSampleStatistics(GibbsSolverGraph other, Map<Object,Object> old2new)
+	{
+		final boolean takeBest = !other._firstSample && (_firstSample || other._minPotential < _minPotential);
+		
+		for (Variable v : _model.getVariables())
+		{
+			final Variable otherVar = (Variable)requireNonNull(old2new.get(v));
+			getSolverVariable(v).mergeSampleStatistics(other.getSolverVariable(otherVar), takeBest);
+		}
+		
+		if (takeBest)
+		{
+			_minPotential = other._minPotential;
+			_firstSample = false;
+		}
+		
+		final GibbsSampleStore.RealColumn scoreArray = _scoreArray, otherScoreArray = other._scoreArray;
+		if (scoreArray != null && otherScoreArray != null)
+		{
+			scoreArray.addAll(otherScoreArray);
+		}
+		
+		final GibbsConvergenceDiagnostics diagnostics = _convergenceDiagnostics;
+		final GibbsConvergenceDiagnostics otherDiagnostics = other._convergenceDiagnostics;
+		if (diagnostics != null && otherDiagnostics != null)
 		{
-			burnIn(restartCount);
-			for (int iter = 0; iter < _numSamples; iter++)
-				oneSample();
+			diagnostics.merge(otherDiagnostics, old2new);
 		}
 	}
 	
@@ -423,13 +605,44 @@ public class GibbsSolverGraph
 	 * Burn-in is required for most graphs to ensure that the samples will be closer to the
 	 * real distribution.
 	 * <p>
+	 * If {@link GibbsOptions#stopWhenConverged} is enabled, the updates are run in steps of
+	 * {@link #getUpdatesPerSample()} and burn-in ends early once the split-R-hat of the sample values
+	 * over the steps so far is within {@link GibbsOptions#convergenceRHat}.
+	 * <p>
+	 * This also starts a new chain for the {@linkplain #getConvergenceDiagnostics() convergence diagnostics}.
+	 * <p>
 	 * @param restartCount is a non-negative number indicating which random restart is
 	 * executing. This will be zero for the initial burn-in phase.
 	 */
 	public final void burnIn(int restartCount)
 	{
 		randomRestart(restartCount);
-		iterate(_burnInUpdates);
+		
+		final GibbsConvergenceDiagnostics diagnostics = _convergenceDiagnostics;
+		if (diagnostics != null)
+		{
+			diagnostics.startChain();
+		}
+		
+		final GibbsConvergenceDiagnostics burnInDiagnostics = _burnInDiagnostics;
+		if (burnInDiagnostics != null)
+		{
+			burnInDiagnostics.reset();
+			final int step = Math.max(1, _updatesPerSample);
+			for (int remaining = _burnInUpdates; remaining > 0; remaining -= step)
+			{
+				iterate(Math.min(step, remaining));
+				burnInDiagnostics.addSample(currentSampleScore());
+				if (burnInDiagnostics.isChainConverged(0.0, _convergenceRHat))
+				{
+					break;
+				}
+			}
+		}
+		else
+		{
+			iterate(_burnInUpdates);
+		}
 		
 		if (GibbsSolverGraphEvent.raiseBurnInEvent(this))
 		{
@@ -459,6 +672,9 @@ public class GibbsSolverGraph
 	@Matlab
 	public void sample(int numSamples)
 	{
+		// Sample values may have been modified since the last sample.
+		invalidateSampleScore();
+		
 		for (int sample = 0; sample < numSamples; sample++)
 			oneSample();
 	}
@@ -470,7 +686,11 @@ public class GibbsSolverGraph
 	 * specified number of single-variable updates, regardless of other parameter settings.
 	 * The iterate() method behaves differently than for other solvers due to the fact that the
 	 * {@link #update()} method for Gibbs-specific schedules will update only a single variable.
-	 * Also, multithreaded operation for Gibbs is not supported
+	 * <p>
+	 * Multithreaded operation is only supported when using a {@link GibbsChromaticScheduler} and
+	 * {@link SolverOptions#enableMultithreading} is true. In that case, as many full scans as fit in
+	 * {@code numUpdates} will be run with the variables of each color updated concurrently, and any
+	 * remaining updates will be run sequentially.
 	 */
 	@Override
 	public void iterate(int numUpdates)
@@ -478,6 +698,20 @@ public class GibbsSolverGraph
 		Iterator<IScheduleEntry> scheduleIterator = Objects.requireNonNull(_scheduleIterator);
 		final ISchedule schedule = getSchedule();
 		
+		if (_useMultithreading && schedule instanceof GibbsChromaticSchedule)
+		{
+			final GibbsChromaticSchedule chromaticSchedule = (GibbsChromaticSchedule)schedule;
+			final int scanSize = chromaticSchedule.size();
+			final int numScans = scanSize > 0 ? numUpdates / scanSize : 0;
+			if (numScans > 0)
+			{
+				// Variables are updated concurrently, so the score cannot be tracked incrementally.
+				invalidateSampleScore();
+				chromaticUpdater(chromaticSchedule).scan(numScans);
+				numUpdates -= numScans * scanSize;
+			}
+		}
+		
 		for (int iterNum = 0; iterNum < numUpdates; iterNum++)
 		{
 			if (!scheduleIterator.hasNext())
@@ -486,7 +720,13 @@ public class GibbsSolverGraph
 				scheduleIterator = _scheduleIterator = schedule.iterator();
 			}
 
-			runScheduleEntry(scheduleIterator.next());
+			final IScheduleEntry entry = scheduleIterator.next();
+			if (!(entry instanceof NodeScheduleEntry))
+			{
+				// Only single variable updates keep track of changes to the sample score.
+				invalidateSampleScore();
+			}
+			runScheduleEntry(entry);
 		}
 		
 		// Allow interruption (if the solver is run as a thread); currently interruption is allowed only between
@@ -498,6 +738,21 @@ public class GibbsSolverGraph
 	}
 
 	
+	private GibbsChromaticUpdater chromaticUpdater(GibbsChromaticSchedule schedule)
+	{
+		final MultiThreadingManager manager = getMultithreadingManager();
+		GibbsChromaticUpdater updater = _chromaticUpdater;
+		if (updater == null || !updater.isValidFor(schedule, manager.getNumWorkers()))
+		{
+			if (updater != null)
+			{
+				updater.shutdown();
+			}
+			_chromaticUpdater = updater = new GibbsChromaticUpdater(this, schedule, manager);
+		}
+		return updater;
+	}
+	
 	@SuppressWarnings("null")
 	protected void oneSample()
 	{
@@ -510,7 +765,7 @@ public class GibbsSolverGraph
 		}
 		
 		// Save the best sample value seen so far
-		final double totalPotential = getSampleScore();
+		final double totalPotential = currentSampleScore();
 		final boolean wasMininum = totalPotential < _minPotential || _firstSample;
 		if (wasMininum)
 		{
@@ -521,12 +776,18 @@ public class GibbsSolverGraph
 		}
 		
 		// If requested save score value for each sample
-		final DoubleArrayList scoreArray = _scoreArray;
+		final GibbsSampleStore.RealColumn scoreArray = _scoreArray;
 		if (scoreArray != null)
 		{
 			scoreArray.add(totalPotential);
 		}
 		
+		final GibbsConvergenceDiagnostics diagnostics = _convergenceDiagnostics;
+		if (diagnostics != null)
+		{
+			diagnostics.addSample(totalPotential);
+		}
+		
 		// If tempering, reduce the temperature
 		double oldTemperature = Double.NaN, newTemperature = Double.NaN;
 		if (_temper)
@@ -538,7 +799,14 @@ public class GibbsSolverGraph
 
 		if (GibbsSolverGraphEvent.raiseSampleStatsEvent(this))
 		{
-			raiseEvent(new GibbsSampleStatisticsEvent(this, totalPotential, wasMininum, oldTemperature, newTemperature));
+			double ess = Double.NaN, rHat = Double.NaN;
+			if (diagnostics != null)
+			{
+				ess = diagnostics.getChainMinEffectiveSampleSize();
+				rHat = diagnostics.getChainMaxRHat();
+			}
+			raiseEvent(new GibbsSampleStatisticsEvent(this, totalPotential, wasMininum, oldTemperature, newTemperature,
+				ess, rHat));
 		}
 	}
 	
@@ -563,6 +831,7 @@ public class GibbsSolverGraph
 	@SuppressWarnings("null")
 	public void randomRestart(int restartCount)
 	{
+		invalidateSampleScore();
 		deferDeterministicUpdates();
 		
 		for (Variable v : _model.getVariables())
@@ -616,6 +885,59 @@ public class GibbsSolverGraph
 		return totalPotential;
 	}
 	
+	/**
+	 * Adds {@code delta} to the running value of the {@linkplain #getSampleScore() sample score}.
+	 * <p>
+	 * To be invoked on the {@linkplain #getRootSolverGraph() root graph} by variables when they update their
+	 * sample value, where {@code delta} is the resulting change in the total score of the graph, without any
+	 * tempering. The root graph owns the score, including for variables in nested graphs.
+	 * If {@code delta} is not finite, the score will be recomputed the next time it is needed.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Internal
+	public void addToSampleScore(double delta)
+	{
+		if (Doubles.isFinite(delta))
+		{
+			_sampleScore += delta;
+		}
+		else
+		{
+			_sampleScore = Double.NaN;
+		}
+	}
+	
+	/**
+	 * Forces the {@linkplain #getSampleScore() sample score} to be fully recomputed the next time it is
+	 * needed when generating a sample.
+	 * <p>
+	 * To be invoked on the {@linkplain #getRootSolverGraph() root graph} when sample values change in a way
+	 * that is not reported through {@link #addToSampleScore}.
+	 * <p>
+	 * @since 0.08
+	 */
+	@Internal
+	public void invalidateSampleScore()
+	{
+		_sampleScore = Double.NaN;
+	}
+	
+	/**
+	 * Returns the current value of {@link #getSampleScore()}, using the incrementally maintained value
+	 * unless it is invalid or has not been recomputed in {@link GibbsOptions#scoreRecomputeInterval} samples.
+	 */
+	private double currentSampleScore()
+	{
+		double score = _sampleScore;
+		if (Double.isNaN(score) || ++_samplesSinceScoreRecompute >= _scoreRecomputeInterval)
+		{
+			_sampleScore = score = getSampleScore();
+			_samplesSinceScoreRecompute = 0;
+		}
+		return score;
+	}
+	
 	/**
 	 * Returns the lowest value of {@link #getSampleScore()} discovered since initialization.
 	 * <p>
@@ -626,7 +948,21 @@ public class GibbsSolverGraph
 	{
 		return _minPotential;
 	}
-	
+
+	/**
+	 * Convergence diagnostics for the samples generated since the graph was initialized.
+	 * <p>
+	 * This is null unless {@link GibbsOptions#computeConvergenceDiagnostics} or {@link GibbsOptions#stopWhenConverged}
+	 * was enabled on this graph when it was initialized. It is replaced by a new object on each initialization.
+	 * Not supported on nested graphs, for which this always returns null.
+	 * <p>
+	 * @since 0.08
+	 */
+	public @Nullable GibbsConvergenceDiagnostics getConvergenceDiagnostics()
+	{
+		return _convergenceDiagnostics;
+	}
+
 	/**
 	 * @deprecated Instead set {@link GibbsOptions#saveAllSamples} to true using {@link #setOption}.
 	 */
@@ -653,7 +989,12 @@ public class GibbsSolverGraph
 	@Deprecated
 	public void saveAllScores()
 	{
-		_scoreArray = new DoubleArrayList();
+		final GibbsSampleStore.RealColumn scoreArray = _scoreArray;
+		if (scoreArray != null)
+		{
+			scoreArray.release();
+		}
+		_scoreArray = getSampleStore().addRealColumn();
 		setOption(GibbsOptions.saveAllScores, true);
 	}
 	
@@ -663,6 +1004,11 @@ public class GibbsSolverGraph
 	@Deprecated
 	public void disableSavingAllScores()
 	{
+		final GibbsSampleStore.RealColumn scoreArray = _scoreArray;
+		if (scoreArray != null)
+		{
+			scoreArray.release();
+		}
 		_scoreArray = null;
 		setOption(GibbsOptions.saveAllScores, false);
 	}
@@ -673,15 +1019,67 @@ public class GibbsSolverGraph
 	@Matlab
 	public final @Nullable double[] getAllScores()
 	{
-		final DoubleArrayList scoreArray = _scoreArray;
+		final GibbsSampleStore.RealColumn scoreArray = _scoreArray;
 		if (scoreArray != null)
 		{
-			return Arrays.copyOf(scoreArray.elements(), scoreArray.size());
+			return scoreArray.toArray();
 		}
 		else
 			return null;
 	}
 	
+	/**
+	 * If the score had been saved, returns the column holding the score values, otherwise null.
+	 * <p>
+	 * Unlike {@link #getAllScores()}, this does not copy the scores, which may be read using the
+	 * column's {@linkplain GibbsSampleStore.RealColumn#iterator() iterator}. The column must not be modified.
+	 * <p>
+	 * @since 0.08
+	 */
+	public final @Nullable GibbsSampleStore.RealColumn getScoreColumn()
+	{
+		return _scoreArray;
+	}
+	
+	/**
+	 * The store that holds samples and scores saved by this graph and its subgraphs.
+	 * <p>
+	 * There is only one store per graph tree, which belongs to the {@linkplain #getRootSolverGraph() root graph}.
+	 * It is created on demand and configured by the {@link GibbsOptions#sampleChunkSize} and
+	 * {@link GibbsOptions#sampleMemoryLimit} options of the root graph when it is initialized.
+	 * <p>
+	 * @since 0.08
+	 */
+	public GibbsSampleStore getSampleStore()
+	{
+		final ISolverFactorGraph root = getRootSolverGraph();
+		if (root != this && root instanceof GibbsSolverGraph)
+		{
+			return ((GibbsSolverGraph)root).getSampleStore();
+		}
+		
+		GibbsSampleStore store = _sampleStore;
+		if (store == null)
+		{
+			_sampleStore = store = new GibbsSampleStore(_sampleChunkSize, _sampleMemoryLimit);
+		}
+		return store;
+	}
+	
+	/**
+	 * Deletes any file used by the sample store of this graph, if it has one.
+	 * <p>
+	 * Invoked on copies of the graph that are no longer needed.
+	 */
+	void closeSampleStore()
+	{
+		final GibbsSampleStore store = _sampleStore;
+		if (store != null)
+		{
+			store.close();
+		}
+	}
+	
 	/**
 	 * Get the rejection rate of the sampler for variables and block entries for which it applies
 	 * @return rejection rate
@@ -1241,4 +1639,29 @@ public class GibbsSolverGraph
 	{
 		return "Gibbs";
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The Gibbs solver only uses the manager for {@linkplain GibbsChromaticSchedule chromatic} scans and
+	 * {@linkplain GibbsOptions#concurrentRestarts concurrent restarts}, so it is created on first use.
+	 */
+	@Override
+	protected MultiThreadingManager createMultithreadingManager()
+	{
+		return new MultiThreadingManager(this);
+	}
+	
+	@Override
+	protected void runCustomScheduleEntry(IScheduleEntry entry)
+	{
+		if (entry instanceof GibbsChromaticUpdater.Block)
+		{
+			((GibbsChromaticUpdater.Block)entry).run();
+		}
+		else
+		{
+			super.runCustomScheduleEntry(entry);
+		}
+	}
 }
@@ -24,6 +24,7 @@ import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.MappedTableFactorFunction;
 import com.analog.lyric.dimple.model.core.EdgeState;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
@@ -114,14 +115,19 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
 		final double[] outMessage = ((DiscreteMessage)solverEdge.factorToVarMsg).representation();
 
 		final IFactorTable factorTable = getFactorTableIfComputed();
+		final FactorFunction function = _model.getFactorFunction();
 		if (factorTable != null)
 		{
 			factorTable.getEnergySlice(outMessage, outPortNum, samplesForFactorTable());
 		}
+		else if (function instanceof MappedTableFactorFunction)
+		{
+			// Read directly from the mapped table, whose dimensions are the function arguments.
+			((MappedTableFactorFunction)function).getMappedTable().getEnergySlice(outMessage, outIndex, _currentSamples);
+		}
 		else
 		{
 			final Value changedValue = _currentSamples[outIndex];
-			final FactorFunction function = _model.getFactorFunction();
 			final int savedIndex = changedValue.getIndex();
 			final int sliceLength = outMessage.length;
 
@@ -259,6 +265,18 @@ public class GibbsTableFactor extends STableFactorBase implements ISolverFactorG
 	 * STableFactorBase methods
 	 */
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns false for a {@link MappedTableFactorFunction}, whose energies are read directly from the
+	 * mapped table.
+	 */
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return !(getFactor().getFactorFunction() instanceof MappedTableFactorFunction) && super.createFactorTableOnInit();
+	}
+	
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
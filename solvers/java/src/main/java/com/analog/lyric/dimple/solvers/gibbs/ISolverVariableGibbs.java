@@ -118,4 +118,17 @@ public interface ISolverVariableGibbs extends ISolverNodeGibbs, ISolverVariable,
 	public long getUpdateCount();
 	@Internal
 	public long getRejectionCount();
+	
+	/**
+	 * Adds the sample statistics accumulated by {@code other} to those of this variable.
+	 * <p>
+	 * {@code other} must be the corresponding variable in a copy of this variable's graph, and
+	 * must be the same type as this variable. Belief statistics and rejection statistics are added,
+	 * and any saved samples are appended to those of this variable.
+	 * <p>
+	 * @param takeBest if true, replaces this variable's best sample with that of {@code other}.
+	 * @since 0.08
+	 */
+	@Internal
+	public void mergeSampleStatistics(ISolverVariableGibbs other, boolean takeBest);
 }
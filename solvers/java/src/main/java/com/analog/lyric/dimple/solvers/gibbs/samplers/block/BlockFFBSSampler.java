@@ -0,0 +1,477 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.samplers.block;
+
+import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscreteEdge;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsTableFactor;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsVariableBlock;
+import com.analog.lyric.dimple.solvers.gibbs.ISolverVariableGibbs;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverVariableBlock;
+
+/**
+ * Exact block sampler for chain-structured blocks of discrete variables.
+ * <p>
+ * Draws a joint sample of all of the variables in the block from their conditional distribution
+ * given the current values of the rest of the graph using forward-filtering backward-sampling:
+ * sum-product messages are passed forward along the chain and the variables are then sampled
+ * in reverse order, each conditioned on the one that follows it. Unlike {@link BlockMHSampler}
+ * there is no proposal and no rejection, which makes this particularly effective for sequence
+ * models such as the state variables of a hidden Markov model.
+ * <p>
+ * The block must form a chain in the order in which its variables are listed: every factor
+ * connected to more than one variable of the block must connect exactly two that are adjacent
+ * in that order. Factors connected to only one variable of the block contribute to its local
+ * evidence. All of the factors must be non-deterministic table factors and all of the block
+ * variables must be discrete. The conditional energies are computed from the same factor table
+ * slices used by {@link GibbsTableFactor} for single-variable updates.
+ * <p>
+ * When the block does not satisfy these requirements, {@link #update} returns false, so the
+ * variables will be updated individually instead. Like {@link BlockMHSampler}, this sampler
+ * does not apply the tempering temperature.
+ * <p>
+ * @since 0.08
+ */
+public class BlockFFBSSampler implements IBlockSampler
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Energies for each variable in the block given the values of variables outside the block.
+	 */
+	private double[][] _evidence = new double[0][];
+
+	/**
+	 * Weights for each adjacent pair of variables in the block indexed by {@code [i][a * size(i+1) + b]}
+	 * where {@code a} and {@code b} are the value indexes of variables {@code i} and {@code i+1}.
+	 */
+	private double[][] _links = new double[0][];
+
+	/**
+	 * Normalized forward messages for each variable in the block.
+	 */
+	private double[][] _forward = new double[0][];
+
+	/*--------------
+	 * Construction
+	 */
+
+	public BlockFFBSSampler()
+	{
+	}
+
+	/*-----------------------
+	 * IBlockUpdater methods
+	 */
+
+	@Override
+	public BlockFFBSSampler copy(Map<Object,Object> old2newobjs)
+	{
+		return new BlockFFBSSampler();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only for use in Gibbs solver graphs. Will return false if {@code sblock} is not a {@link GibbsVariableBlock}
+	 * or if it does not meet the requirements described in the {@linkplain BlockFFBSSampler class documentation}.
+	 */
+	@Override
+	public boolean update(ISolverVariableBlock sblock)
+	{
+		if (!(sblock instanceof GibbsVariableBlock))
+		{
+			return false;
+		}
+
+		final GibbsVariableBlock block = (GibbsVariableBlock)sblock;
+		final List<ISolverVariableGibbs> svars = block.getSolverVariables();
+		final int nVars = svars.size();
+
+		final GibbsDiscrete[] vars = new GibbsDiscrete[nVars];
+		final Map<Variable,Integer> positions = new HashMap<>(nVars * 2);
+		for (int i = 0; i < nVars; ++i)
+		{
+			final ISolverVariableGibbs svar = svars.get(i);
+			if (!(svar instanceof GibbsDiscrete))
+			{
+				return false;
+			}
+			vars[i] = (GibbsDiscrete)svar;
+			positions.put(vars[i].getModelObject(), i);
+		}
+
+		// Classify the factors as evidence for a single variable or links between adjacent variables
+		final List<FactorEdge> evidenceEdges = new ArrayList<>();
+		final List<FactorEdge> linkEdges = new ArrayList<>();
+		final Set<Factor> visited = new HashSet<>();
+		for (GibbsDiscrete var : vars)
+		{
+			final Discrete model = var.getModelObject();
+			for (int port = 0, nPorts = model.getSiblingCount(); port < nPorts; ++port)
+			{
+				final Factor factor = model.getSibling(port);
+				if (!visited.add(factor))
+				{
+					continue;
+				}
+				if (!(factor.getSolver() instanceof GibbsTableFactor) ||
+					factor.getFactorFunction().isDeterministicDirected())
+				{
+					return false;
+				}
+
+				int firstPort = -1, secondPort = -1;
+				for (int factorPort = 0, n = factor.getSiblingCount(); factorPort < n; ++factorPort)
+				{
+					if (positions.containsKey(factor.getSibling(factorPort)))
+					{
+						if (firstPort < 0)
+						{
+							firstPort = factorPort;
+						}
+						else if (secondPort < 0)
+						{
+							secondPort = factorPort;
+						}
+						else
+						{
+							return false;
+						}
+					}
+				}
+
+				final GibbsTableFactor sfactor = (GibbsTableFactor)factor.getSolver();
+				final int first = positions.get(factor.getSibling(firstPort));
+				if (secondPort < 0)
+				{
+					evidenceEdges.add(new FactorEdge(sfactor, first, firstPort, -1));
+				}
+				else
+				{
+					final int second = positions.get(factor.getSibling(secondPort));
+					if (second == first + 1)
+					{
+						linkEdges.add(new FactorEdge(sfactor, first, firstPort, secondPort));
+					}
+					else if (first == second + 1)
+					{
+						linkEdges.add(new FactorEdge(sfactor, second, secondPort, firstPort));
+					}
+					else
+					{
+						return false;
+					}
+				}
+			}
+		}
+
+		final Value[] sampleValue = block.updateStart();
+
+		ensureCapacity(vars);
+		final double[][] evidence = _evidence;
+		final double[][] links = _links;
+		final double[][] forward = _forward;
+
+		// Evidence from priors. Variables whose values are fixed or held only allow the current value.
+		for (int i = 0; i < nVars; ++i)
+		{
+			final GibbsDiscrete var = vars[i];
+			final double[] energy = evidence[i];
+			final int currentIndex = var.getCurrentSampleIndex();
+			for (int k = 0, size = var.getDomain().size(); k < size; ++k)
+			{
+				var.setCurrentSampleIndex(k);
+				energy[k] = var.getCurrentSampleIndex() == k ? var.getPotential() : Double.POSITIVE_INFINITY;
+			}
+			var.setCurrentSampleIndex(currentIndex);
+		}
+
+		// Evidence from factors connected to only one variable in the block
+		for (FactorEdge edge : evidenceEdges)
+		{
+			final double[] slice = edge.slice(edge._port);
+			final double[] energy = evidence[edge._position];
+			for (int k = vars[edge._position].getDomain().size(); --k>=0;)
+			{
+				energy[k] += slice[k];
+			}
+		}
+
+		// Link energies between adjacent variables
+		for (int i = 0; i < nVars - 1; ++i)
+		{
+			final double[] link = links[i];
+			final int size = vars[i].getDomain().size() * vars[i+1].getDomain().size();
+			for (int j = 0; j < size; ++j)
+			{
+				link[j] = 0;
+			}
+		}
+		for (FactorEdge edge : linkEdges)
+		{
+			final GibbsDiscrete var = vars[edge._position];
+			final double[] link = links[edge._position];
+			final double[] energy = evidence[edge._position];
+			final int nextSize = vars[edge._position + 1].getDomain().size();
+			for (int a = 0, size = var.getDomain().size(); a < size; ++a)
+			{
+				if (energy[a] == Double.POSITIVE_INFINITY)
+				{
+					continue;
+				}
+				var.setCurrentSampleIndex(a);
+				final double[] slice = edge.slice(edge._nextPort);
+				for (int b = 0, offset = a * nextSize; b < nextSize; ++b)
+				{
+					link[offset + b] += slice[b];
+				}
+			}
+		}
+		for (int i = 0; i < nVars - 1; ++i)
+		{
+			toWeights(links[i], vars[i].getDomain().size() * vars[i+1].getDomain().size());
+		}
+
+		// Forward filtering
+		for (int i = 0; i < nVars; ++i)
+		{
+			final int size = vars[i].getDomain().size();
+			final double[] alpha = forward[i];
+			System.arraycopy(evidence[i], 0, alpha, 0, size);
+			toWeights(alpha, size);
+
+			if (i > 0)
+			{
+				final double[] previous = forward[i-1];
+				final double[] link = links[i-1];
+				for (int b = 0; b < size; ++b)
+				{
+					if (alpha[b] == 0)
+					{
+						continue;
+					}
+					double sum = 0;
+					for (int a = 0, prevSize = vars[i-1].getDomain().size(); a < prevSize; ++a)
+					{
+						sum += previous[a] * link[a * size + b];
+					}
+					alpha[b] *= sum;
+				}
+			}
+
+			normalize(alpha, size);
+		}
+
+		// Backward sampling
+		int next = sample(forward[nVars - 1], vars[nVars - 1].getDomain().size());
+		((DiscreteValue)sampleValue[nVars - 1]).setIndex(next);
+		for (int i = nVars - 1; --i>=0;)
+		{
+			final int size = vars[i].getDomain().size();
+			final int nextSize = vars[i+1].getDomain().size();
+			final double[] alpha = forward[i];
+			final double[] link = links[i];
+			final double[] conditional = evidence[i];
+			for (int a = 0; a < size; ++a)
+			{
+				conditional[a] = alpha[a] * link[a * nextSize + next];
+			}
+			next = sample(conditional, size);
+			((DiscreteValue)sampleValue[i]).setIndex(next);
+		}
+
+		block.updateFinish(sampleValue);
+
+		return true;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Describes the edges of a factor connected to one or two adjacent variables in the block.
+	 */
+	private static final class FactorEdge
+	{
+		private final GibbsTableFactor _sfactor;
+
+		/**
+		 * Position in block of variable connected to {@link #_port}.
+		 */
+		private final int _position;
+
+		/**
+		 * Factor sibling number of variable at {@link #_position}.
+		 */
+		private final int _port;
+
+		/**
+		 * Factor sibling number of variable following {@link #_position} or -1 if not connected.
+		 */
+		private final int _nextPort;
+
+		private FactorEdge(GibbsTableFactor sfactor, int position, int port, int nextPort)
+		{
+			_sfactor = sfactor;
+			_position = position;
+			_port = port;
+			_nextPort = nextPort;
+		}
+
+		/**
+		 * Computes energy slice of the factor for the variable at {@code factorPort} given the current
+		 * values of its other variables and returns the energies.
+		 */
+		private double[] slice(int factorPort)
+		{
+			final GibbsDiscreteEdge sedge = _sfactor.getSiblingEdgeState(factorPort);
+			_sfactor.updateEdgeMessage(_sfactor.getFactor().getSiblingEdgeState(factorPort), sedge);
+			return sedge.factorToVarMsg.representation();
+		}
+	}
+
+	private void ensureCapacity(GibbsDiscrete[] vars)
+	{
+		final int nVars = vars.length;
+		if (_evidence.length < nVars)
+		{
+			final int length = Math.max(nVars, _evidence.length * 2);
+			_evidence = resize(_evidence, length);
+			_links = resize(_links, length);
+			_forward = resize(_forward, length);
+		}
+
+		for (int i = 0; i < nVars; ++i)
+		{
+			final int size = vars[i].getDomain().size();
+			if (_evidence[i].length < size)
+			{
+				_evidence[i] = new double[size];
+				_forward[i] = new double[size];
+			}
+			if (i + 1 < nVars)
+			{
+				final int linkSize = size * vars[i+1].getDomain().size();
+				if (_links[i].length < linkSize)
+				{
+					_links[i] = new double[linkSize];
+				}
+			}
+		}
+	}
+
+	private static double[][] resize(double[][] arrays, int length)
+	{
+		final double[][] result = new double[length][];
+		System.arraycopy(arrays, 0, result, 0, arrays.length);
+		for (int i = arrays.length; i < length; ++i)
+		{
+			result[i] = new double[0];
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the first {@code length} energies in place to weights scaled so that the largest is one.
+	 */
+	private static void toWeights(double[] values, int length)
+	{
+		double minEnergy = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < length; ++i)
+		{
+			minEnergy = Math.min(minEnergy, values[i]);
+		}
+		if (minEnergy == Double.POSITIVE_INFINITY)
+		{
+			throw new DimpleException("The energy for all values of this block is infinite. This may indicate a state inconsistent with the model.");
+		}
+		for (int i = 0; i < length; ++i)
+		{
+			values[i] = Math.exp(minEnergy - values[i]);
+		}
+	}
+
+	private static void normalize(double[] weights, int length)
+	{
+		double sum = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			sum += weights[i];
+		}
+		if (!(sum > 0))
+		{
+			throw new DimpleException("The energy for all values of this block is infinite. This may indicate a state inconsistent with the model.");
+		}
+		for (int i = 0; i < length; ++i)
+		{
+			weights[i] /= sum;
+		}
+	}
+
+	/**
+	 * Samples an index in proportion to the first {@code length} unnormalized weights.
+	 */
+	private static int sample(double[] weights, int length)
+	{
+		double sum = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			sum += weights[i];
+		}
+		if (!(sum > 0))
+		{
+			throw new DimpleException("The energy for all values of this block is infinite. This may indicate a state inconsistent with the model.");
+		}
+
+		final double randomValue = sum * activeRandom().nextDouble();
+		double cumulative = 0;
+		int last = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			final double weight = weights[i];
+			if (weight > 0)
+			{
+				cumulative += weight;
+				last = i;
+				if (randomValue < cumulative)
+				{
+					return i;
+				}
+			}
+		}
+		return last;
+	}
+}
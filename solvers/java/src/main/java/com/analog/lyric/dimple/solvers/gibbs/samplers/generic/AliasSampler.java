@@ -0,0 +1,180 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.samplers.generic;
+
+import static com.analog.lyric.dimple.environment.DimpleEnvironment.*;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+
+/**
+ * Discrete sampler using Vose's alias method.
+ * <p>
+ * Each call to {@link #nextSample} builds an alias table from the energies in time linear in the
+ * size of the domain, and then draws a sample in constant time using a single random number.
+ * Further samples can be drawn from the same table in constant time using {@link #nextSampleFromCache},
+ * which makes this sampler most useful for variables with large domains when
+ * {@link com.analog.lyric.dimple.solvers.gibbs.GibbsOptions#cacheDiscreteConditionals} is enabled.
+ * <p>
+ * Unlike {@link CDFSampler}, this computes the probabilities using {@link Math#exp} rather than an
+ * approximation, so no rejection step is needed.
+ * <p>
+ * @since 0.08
+ */
+public class AliasSampler extends AbstractGenericSampler implements IDiscreteCachedSampler
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Probability of choosing each index rather than its alias, given that the index was chosen uniformly.
+	 */
+	protected double[] _probability = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	protected int[] _alias = ArrayUtil.EMPTY_INT_ARRAY;
+	protected int[] _worklist = ArrayUtil.EMPTY_INT_ARRAY;
+	protected int _tableLength = 0;
+
+	/*------------------------
+	 * IGenericSampler methods
+	 */
+
+	@Override
+	public void initialize(Domain variableDomain)
+	{
+		final int length = ((DiscreteDomain)variableDomain).size();
+		_probability = new double[length];
+		_alias = new int[length];
+		_worklist = new int[length];
+		_tableLength = 0;
+	}
+
+	/*--------------------------------
+	 * IDiscreteDirectSampler methods
+	 */
+
+	@Override
+	public void nextSample(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient)
+	{
+		buildTable(sampleValue.getDomain().size(), energy, minEnergy);
+		samplerClient.setNextSampleIndex(sampleFromTable());
+	}
+
+	/*--------------------------------
+	 * IDiscreteCachedSampler methods
+	 */
+
+	@Override
+	public void nextSampleFromCache(DiscreteValue sampleValue, double[] energy, double minEnergy,
+		IDiscreteSamplerClient samplerClient)
+	{
+		if (_tableLength != sampleValue.getDomain().size())
+		{
+			buildTable(sampleValue.getDomain().size(), energy, minEnergy);
+		}
+		samplerClient.setNextSampleIndex(sampleFromTable());
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Builds alias table for the first {@code length} energies using Vose's algorithm.
+	 */
+	private void buildTable(int length, double[] energy, double minEnergy)
+	{
+		if (_probability.length < length)
+		{
+			_probability = new double[length];
+			_alias = new int[length];
+			_worklist = new int[length];
+		}
+		final double[] probability = _probability;
+		final int[] alias = _alias;
+		final int[] worklist = _worklist;
+
+		double sum = 0;
+		for (int i = 0; i < length; ++i)
+		{
+			final double weight = Math.exp(minEnergy - energy[i]);
+			probability[i] = weight;
+			sum += weight;
+		}
+		if (!(sum > 0) || Double.isInfinite(sum))
+		{
+			throw new DimpleException("The energy for all values of this variable is infinite. This may indicate a state inconsistent with the model.");
+		}
+
+		// The worklist holds the indexes whose scaled probability is less than one at the front and
+		// the rest at the back.
+		final double scale = length / sum;
+		int nSmall = 0, largeStart = length;
+		for (int i = 0; i < length; ++i)
+		{
+			final double p = probability[i] *= scale;
+			alias[i] = i;
+			if (p < 1)
+			{
+				worklist[nSmall++] = i;
+			}
+			else
+			{
+				worklist[--largeStart] = i;
+			}
+		}
+
+		while (nSmall > 0 && largeStart < length)
+		{
+			final int small = worklist[--nSmall];
+			final int large = worklist[largeStart++];
+			alias[small] = large;
+			final double p = probability[large] = (probability[large] + probability[small]) - 1;
+			if (p < 1)
+			{
+				worklist[nSmall++] = large;
+			}
+			else
+			{
+				worklist[--largeStart] = large;
+			}
+		}
+
+		// Any remaining entries are equal to one up to rounding error
+		while (largeStart < length)
+		{
+			probability[worklist[largeStart++]] = 1;
+		}
+		while (nSmall > 0)
+		{
+			probability[worklist[--nSmall]] = 1;
+		}
+
+		_tableLength = length;
+	}
+
+	private int sampleFromTable()
+	{
+		final int length = _tableLength;
+		final double u = activeRandom().nextDouble() * length;
+		final int index = Math.min((int)u, length - 1);
+		return u - index < _probability[index] ? index : _alias[index];
+	}
+}
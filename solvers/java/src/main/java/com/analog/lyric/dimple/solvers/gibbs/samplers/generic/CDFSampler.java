@@ -27,9 +27,14 @@ import com.analog.lyric.dimple.model.domains.Domain;
 import com.analog.lyric.dimple.model.values.DiscreteValue;
 import com.analog.lyric.math.Utilities;
 
-public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirectSampler
+public class CDFSampler extends AbstractGenericSampler implements IDiscreteCachedSampler
 {
 	protected double[] _samplerScratch = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	/**
+	 * Sum of unnormalized probabilities whose cumulative values are in {@link #_samplerScratch}, or NaN
+	 * if not computed for the last sample.
+	 */
+	protected double _cumulativeSum = Double.NaN;
 	protected int _lengthRoundedUp = 0;
 	protected int _length = 0;
 
@@ -40,6 +45,7 @@ public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirec
 		_length = length;
 	    _lengthRoundedUp = Utilities.nextPow2(length);
 	    _samplerScratch = new double[_lengthRoundedUp];
+	    _cumulativeSum = Double.NaN;
 	}
 	
 	@Override
@@ -90,31 +96,59 @@ public class CDFSampler extends AbstractGenericSampler implements IDiscreteDirec
 			sum += expApprox(minEnergy-energy[length-1]);
 			for (int m = length; m < _lengthRoundedUp; m++)
 				samplerScratch[m] = Double.POSITIVE_INFINITY;
+			_cumulativeSum = sum;
 
-			final int half = _lengthRoundedUp >> 1;
-			while (true)
-			{
-				// Sample from the distribution using a binary search.
-				final double randomValue = sum * rand.nextDouble();
-				sampleIndex = 0;
-				for (int bitValue = half; bitValue > 0; bitValue >>= 1)
-				{
-					final int testIndex = sampleIndex | bitValue;
-					if (randomValue > samplerScratch[testIndex]) sampleIndex = testIndex;
-				}
-
-				// Rejection sampling, since the approximation of the exponential function is so coarse
-				final double logp = minEnergy-energy[sampleIndex];
-				if (Double.isNaN(logp))
-					throw new DimpleException("The energy for all values of this variable is infinite. This may indicate a state inconsistent with the model.");
-				if (rand.nextDouble()*expApprox(logp) <= Math.exp(logp)) break;
-			}
+			sampleIndex = sampleFromCumulative(energy, minEnergy, sum, rand);
 		}
 		}
 
 		samplerClient.setNextSampleIndex(sampleIndex);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * For domains with more than four elements, this reuses the cumulative distribution computed by the
+	 * previous call to {@link #nextSample}, so only the binary search is performed.
+	 */
+	@Override
+	public void nextSampleFromCache(DiscreteValue sampleValue, double[] energy, double minEnergy,
+		IDiscreteSamplerClient samplerClient)
+	{
+		final double sum = _cumulativeSum;
+		if (sum == sum && sampleValue.getDomain().size() == _length)
+		{
+			samplerClient.setNextSampleIndex(sampleFromCumulative(energy, minEnergy, sum, activeRandom()));
+		}
+		else
+		{
+			nextSample(sampleValue, energy, minEnergy, samplerClient);
+		}
+	}
+	
+	private int sampleFromCumulative(double[] energy, double minEnergy, double sum, RandomGenerator rand)
+	{
+		final double[] samplerScratch = _samplerScratch;
+		final int half = _lengthRoundedUp >> 1;
+		while (true)
+		{
+			// Sample from the distribution using a binary search.
+			final double randomValue = sum * rand.nextDouble();
+			int sampleIndex = 0;
+			for (int bitValue = half; bitValue > 0; bitValue >>= 1)
+			{
+				final int testIndex = sampleIndex | bitValue;
+				if (randomValue > samplerScratch[testIndex]) sampleIndex = testIndex;
+			}
+
+			// Rejection sampling, since the approximation of the exponential function is so coarse
+			final double logp = minEnergy-energy[sampleIndex];
+			if (Double.isNaN(logp))
+				throw new DimpleException("The energy for all values of this variable is infinite. This may indicate a state inconsistent with the model.");
+			if (rand.nextDouble()*expApprox(logp) <= Math.exp(logp)) return sampleIndex;
+		}
+	}
+	
 	
 	// This is an approximation to the exponential function; inputs must be non-positive
 	// To facilitate subsequent rejection sampling, the error versus the correct exponential function needs to be always positive
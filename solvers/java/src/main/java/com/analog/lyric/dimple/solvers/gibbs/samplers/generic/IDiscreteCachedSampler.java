@@ -0,0 +1,41 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.gibbs.samplers.generic;
+
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+
+/**
+ * Direct discrete sampler that can draw further samples from the same distribution without
+ * recomputing the state built from it.
+ * <p>
+ * When {@link com.analog.lyric.dimple.solvers.gibbs.GibbsOptions#cacheDiscreteConditionals} is enabled and
+ * a variable's conditional distribution has not changed since its last update, the variable will invoke
+ * {@link #nextSampleFromCache} instead of {@link #nextSample}.
+ * <p>
+ * @since 0.08
+ */
+public interface IDiscreteCachedSampler extends IDiscreteDirectSampler
+{
+	/**
+	 * Generates a sample from the same distribution as the most recent call to {@link #nextSample}.
+	 * <p>
+	 * The {@code energy} and {@code minEnergy} arguments will have the same values passed to that call.
+	 * The generated sample will have the same distribution as one generated by calling {@link #nextSample}
+	 * again with the same arguments.
+	 */
+	public void nextSampleFromCache(DiscreteValue sampleValue, double[] energy, double minEnergy, IDiscreteSamplerClient samplerClient);
+}
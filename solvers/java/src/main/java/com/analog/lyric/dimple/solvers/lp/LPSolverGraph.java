@@ -350,6 +350,12 @@ public class LPSolverGraph extends SFactorGraphBase<LPTableFactor, LPDiscrete, N
 		throw unsupported("moveMessages");
 	}
 
+	@Override
+	protected boolean supportsMessageStateCollection()
+	{
+		return false;
+	}
+
 	@Override
 	protected String getSolverName()
 	{
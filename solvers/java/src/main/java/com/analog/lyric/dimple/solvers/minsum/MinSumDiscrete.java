@@ -62,6 +62,7 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 	public void initialize()
 	{
 		super.initialize();
+		registerMessageDeltaTracker();
 
 		final int nEdges = _model.getSiblingCount();
 		if (nEdges != _inMsgs.length)
@@ -360,6 +361,12 @@ public class MinSumDiscrete extends SDiscreteVariableDoubleArray
 	 * SNode methods
 	 */
 	
+	@Override
+	protected double[][] outputMessageValues()
+	{
+		return _outMsgs;
+	}
+	
 	@Override
 	protected boolean supportsMessageEvents()
 	{
@@ -78,6 +78,7 @@ public class MinSumSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVariab
 	{
 		_damping = getOptionOrDefault(BPOptions.damping);
 		super.initialize();
+		assertNoSinglePrecisionMessages();
 		UpdateCostOptimizer optimizer = new UpdateCostOptimizer(_optimizedUpdateAdapter);
 		optimizer.optimize(this);
 		for (ISolverFactor sf : getSolverFactorsRecursive())
@@ -82,6 +82,7 @@ public class MinSumTableFactor extends STableFactorDoubleArray
 	public void initialize()
 	{
 		super.initialize();
+		registerMessageDeltaTracker();
 		configureDampingFromOptions();
 		updateK(getOptionOrDefault(BPOptions.maxMessageSize));
 
@@ -114,6 +115,12 @@ public class MinSumTableFactor extends STableFactorDoubleArray
 		}
 		else
 		{
+			final IFactorTable table = getFactorTableIfComputed();
+			if (table != null)
+			{
+				// Compute the index columns now rather than lazily during a possibly multithreaded update.
+				table.getIndexColumnsSparseUnsafe();
+			}
 			_tableFactorEngine = new TableFactorEngine(this);
 		}
 	}
@@ -206,7 +213,7 @@ public class MinSumTableFactor extends STableFactorDoubleArray
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
-		table.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY_WITH_INDICES);
+		table.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY);
 	}
 	
 	/*----------------------
@@ -310,6 +317,12 @@ public class MinSumTableFactor extends STableFactorDoubleArray
 		return getSiblingEdgeState(edge).factorToVarMsg.clone();
 	}
 	
+	@Override
+	protected double[][] outputMessageValues()
+	{
+		return _outputMessages;
+	}
+	
 	@Override
 	protected boolean supportsMessageEvents()
 	{
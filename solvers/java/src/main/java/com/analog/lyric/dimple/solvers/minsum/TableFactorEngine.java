@@ -21,6 +21,7 @@ import java.util.Arrays;
 import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.SparseIndexColumns;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.factors.Factor;
 
@@ -40,9 +41,8 @@ public class TableFactorEngine
 	
 	public void updateEdge(int outPortNum)
 	{
-	    final int[][] table = _tableFactor.getFactorTable().getIndicesSparseUnsafe();
+	    final SparseIndexColumns columns = _tableFactor.getFactorTable().getIndexColumnsSparseUnsafe();
 	    final double[] values = _tableFactor.getFactorTable().getEnergiesSparseUnsafe();
-	    final int tableLength = table.length;
 	    final int numPorts = _factor.getSiblingCount();
 
 
@@ -64,22 +64,20 @@ public class TableFactorEngine
 
         final double [][] inPortMsgs = _tableFactor.getInPortMsgs();
         
-	    // Run through each row of the function table
-        for (int tableIndex = tableLength; --tableIndex>=0;)
+        // Sum up the function value plus the messages on all other ports for each row of the table
+        final double[] sums = DimpleEnvironment.doubleArrayCache.allocateAtLeast(columns.size());
+        System.arraycopy(values, 0, sums, 0, columns.size());
+        for (int inPortNum = numPorts; --inPortNum>=0;)
         {
-        	double L = values[tableIndex];
-        	final int[] tableRow = table[tableIndex];
-        	final int outputIndex = tableRow[outPortNum];
-
-        	int inPortNum = numPorts;
-        	while (--inPortNum > outPortNum)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
-        	while (--inPortNum >= 0)
-        		L += inPortMsgs[inPortNum][tableRow[inPortNum]];
-        	
-        	if (L < outputMsgs[outputIndex])
-        		outputMsgs[outputIndex] = L;				// Use the minimum value
+        	if (inPortNum != outPortNum)
+        	{
+        		columns.addFrom(inPortNum, sums, inPortMsgs[inPortNum]);
+        	}
         }
+        
+        // Use the minimum value
+        columns.minInto(outPortNum, sums, null, outputMsgs);
+        DimpleEnvironment.doubleArrayCache.release(sums);
 
         // Damping
         if (_tableFactor._dampingInUse)
@@ -122,9 +120,8 @@ public class TableFactorEngine
 	{
 		final IFactorTable table = _tableFactor.getFactorTable();
 		final JointDomainIndexer indexer = table.getDomainIndexer();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
+	    final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
 	    final double[] values = table.getEnergiesSparseUnsafe();
-	    final int tableLength = tableIndices.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    double [][] outPortMsgs = _tableFactor.getOutPortMsgs();
 
@@ -164,25 +161,20 @@ public class TableFactorEngine
 	    final double [][] inPortMsgs = _tableFactor.getInPortMsgs();
 
 	    
-	    // Run through each row of the function table
-	    for (int tableIndex = tableLength; --tableIndex>=0;)
+	    // Sum up the function value plus the messages on all ports for each row of the table
+	    final double[] sums = DimpleEnvironment.doubleArrayCache.allocateAtLeast(columns.size());
+	    System.arraycopy(values, 0, sums, 0, columns.size());
+	    for (int port = numPorts; --port>=0;)
 	    {
-	    	final int[] tableRow = tableIndices[tableIndex];
-	    	
-	    	// Sum up the function value plus the messages on all ports
-	    	double L = values[tableIndex];
-	    	for (int port = numPorts; --port>=0;)
-	    		L += inPortMsgs[port][tableRow[port]];
+	    	columns.addFrom(port, sums, inPortMsgs[port]);
+	    }
 
-			// Run through each output port
-	    	for (int outPortNum = numPorts; --outPortNum>=0;)
-	    	{
-	    		final double[] outputMsgs = outPortMsgs[outPortNum];
-	    		final int outputIndex = tableRow[outPortNum];											// Index for the output value
-	    		final double LThisPort = L - inPortMsgs[outPortNum][outputIndex];			// Subtract out the message from this output port
-	    		outputMsgs[outputIndex] = Math.min(outputMsgs[outputIndex], LThisPort);
-	    	}
+	    // Run through each output port, subtracting out the message from that port
+	    for (int outPortNum = numPorts; --outPortNum>=0;)
+	    {
+	    	columns.minInto(outPortNum, sums, inPortMsgs[outPortNum], outPortMsgs[outPortNum]);
 	    }
+	    DimpleEnvironment.doubleArrayCache.release(sums);
 	   
 	    // Damping
 	    if (useDamping)
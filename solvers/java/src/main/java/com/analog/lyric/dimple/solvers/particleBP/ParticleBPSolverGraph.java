@@ -135,6 +135,7 @@ public class ParticleBPSolverGraph extends BPSolverGraph<ISolverFactor, IParticl
 		_temperingDecayConstant = 1 - LOG2/getOptionOrDefault(ParticleBPOptions.annealingHalfLife);
 		
 		super.initialize();
+		assertNoSinglePrecisionMessages();
 
 		if (_temper) setTemperature(_initialTemperature);
 		
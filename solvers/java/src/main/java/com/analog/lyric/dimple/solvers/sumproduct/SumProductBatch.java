@@ -0,0 +1,790 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.collect.ArrayUtil;
+import com.analog.lyric.dimple.data.DataLayer;
+import com.analog.lyric.dimple.data.IDatum;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.core.INode;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.schedule.IAdaptiveSchedule;
+import com.analog.lyric.dimple.schedulers.schedule.ISchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.EdgeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.SubgraphScheduleEntry;
+import com.analog.lyric.dimple.solvers.core.PriorAndCondition;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteEnergyMessage;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverNode;
+import com.google.common.primitives.Ints;
+
+/**
+ * Runs sum-product inference on a discrete graph for many sets of evidence at once.
+ * <p>
+ * Construction compiles the structure of the graph and the schedule of its
+ * {@link SumProductSolverGraph} into flat arrays. Each call to one of the {@code solve} methods then
+ * runs the schedule for {@link BPOptions#iterations} iterations on all of the evidence sets in the
+ * batch together and computes the beliefs of every variable for every set.
+ * <p>
+ * The messages for each edge are stored in a single block laid out as [domain][batch], so that each
+ * walk over the entries of a factor table is shared by the entire batch and the innermost loops
+ * run over contiguous arrays. Each evidence set is equivalent to a
+ * {@linkplain SumProductSolverGraph#setConditioningLayer conditioning layer} that is combined with
+ * the priors of the variables in the model.
+ * <p>
+ * The compiled form does not reflect subsequent changes to the model, the factor tables or the
+ * schedule. This only supports graphs in which all variables are {@link Discrete}, all factors have a
+ * {@linkplain Factor#getFactorTable() factor table} and damping is not used. The
+ * {@link BPOptions#convergenceTolerance} option is ignored.
+ * <p>
+ * @since 0.08
+ */
+@NotThreadSafe
+public class SumProductBatch
+{
+	/*-------
+	 * State
+	 */
+
+	private final Discrete[] _variables;
+	private final Map<Discrete,Integer> _variableIndex;
+	private final Factor[] _factors;
+
+	/**
+	 * Domain size of each variable.
+	 */
+	private final int[] _domainSizes;
+
+	/**
+	 * Offset of each variable's belief within a single row of {@link #_beliefs}.
+	 */
+	private final int[] _beliefOffsets;
+	private final int _beliefStride;
+
+	/**
+	 * For each variable, the index of the edge for each of its siblings.
+	 */
+	private final int[][] _variableEdges;
+
+	/**
+	 * For each factor, the index of the edge for each of its siblings.
+	 */
+	private final int[][] _factorEdges;
+
+	/**
+	 * For each factor, the sparse table indices in column-major form: [sibling][entry].
+	 */
+	private final int[][][] _factorIndices;
+	private final double[][] _factorWeights;
+
+	/**
+	 * Index of variable adjoining each edge.
+	 */
+	private final int[] _edgeVariables;
+
+	/**
+	 * Compiled schedule. Variables are encoded as their index and factors as the complement of
+	 * their index. The port is -1 for updates of all edges of the node.
+	 */
+	private final int[] _scheduleNodes;
+	private final int[] _schedulePorts;
+
+	private final int _numIterations;
+
+	private int _batchSize = 0;
+	private int[] _edgeOffsets = ArrayUtil.EMPTY_INT_ARRAY;
+	private int[] _inputOffsets = ArrayUtil.EMPTY_INT_ARRAY;
+
+	/**
+	 * Messages and inputs laid out as [edge or variable][domain][batch].
+	 */
+	private double[] _varToFactorMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private double[] _factorToVarMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private double[] _inputs = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+
+	/**
+	 * Fixed value index for each variable and evidence set, laid out as [variable][batch], or
+	 * -1 if not fixed.
+	 */
+	private int[] _fixedIndices = ArrayUtil.EMPTY_INT_ARRAY;
+
+	/**
+	 * Beliefs laid out as [batch][variable offset + domain].
+	 */
+	private double[] _beliefs = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+
+	private double[] _products = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+	private double[] _sums = ArrayUtil.EMPTY_DOUBLE_ARRAY;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Compiles batch representation of graph and schedule of {@code sgraph}.
+	 * <p>
+	 * @throws DimpleException if the graph contains variables that are not {@link Discrete}, factors
+	 * without a factor table, uses damping or has a schedule with entries other than node, edge or
+	 * subgraph updates.
+	 */
+	public SumProductBatch(SumProductSolverGraph sgraph)
+	{
+		final FactorGraph model = sgraph.getModelObject();
+
+		final List<Variable> variables = model.getVariables().values();
+		final int nVariables = variables.size();
+		_variables = new Discrete[nVariables];
+		_variableIndex = new HashMap<>(nVariables * 2);
+		_domainSizes = new int[nVariables];
+		_beliefOffsets = new int[nVariables];
+		int beliefOffset = 0;
+		for (int i = 0; i < nVariables; ++i)
+		{
+			final Variable variable = variables.get(i);
+			if (!(variable instanceof Discrete))
+			{
+				throw new DimpleException("Batch solve does not support non-discrete variable '%s'", variable);
+			}
+			checkNoDamping(sgraph.getSolverVariable(variable));
+			final Discrete discrete = _variables[i] = (Discrete)variable;
+			_variableIndex.put(discrete, i);
+			_domainSizes[i] = discrete.getDomain().size();
+			_beliefOffsets[i] = beliefOffset;
+			beliefOffset += _domainSizes[i];
+		}
+		_beliefStride = beliefOffset;
+
+		final List<Factor> factors = model.getFactors().values();
+		final int nFactors = factors.size();
+		final Map<Factor,Integer> factorIndex = new HashMap<>(nFactors * 2);
+		_factors = factors.toArray(new Factor[nFactors]);
+		_factorEdges = new int[nFactors][];
+		_factorIndices = new int[nFactors][][];
+		_factorWeights = new double[nFactors][];
+		int nEdges = 0;
+		for (int i = 0; i < nFactors; ++i)
+		{
+			final Factor factor = factors.get(i);
+			if (!factor.isDiscrete())
+			{
+				throw new DimpleException("Batch solve does not support factor '%s' with non-discrete variables", factor);
+			}
+			checkNoDamping(sgraph.getSolverFactor(factor));
+			factorIndex.put(factor, i);
+
+			final IFactorTable table = factor.getFactorTable();
+			final int[][] rows = table.getIndicesSparseUnsafe();
+			final int nSiblings = factor.getSiblingCount();
+			final int[][] columns = new int[nSiblings][rows.length];
+			for (int entry = rows.length; --entry>=0;)
+			{
+				final int[] row = rows[entry];
+				for (int sibling = nSiblings; --sibling>=0;)
+				{
+					columns[sibling][entry] = row[sibling];
+				}
+			}
+			_factorIndices[i] = columns;
+			_factorWeights[i] = table.getWeightsSparseUnsafe().clone();
+
+			final int[] edges = _factorEdges[i] = new int[nSiblings];
+			for (int sibling = 0; sibling < nSiblings; ++sibling)
+			{
+				edges[sibling] = nEdges++;
+			}
+		}
+
+		_edgeVariables = new int[nEdges];
+		_variableEdges = new int[nVariables][];
+		for (int i = 0; i < nVariables; ++i)
+		{
+			final Discrete variable = _variables[i];
+			final int nSiblings = variable.getSiblingCount();
+			final int[] edges = _variableEdges[i] = new int[nSiblings];
+			for (int sibling = 0; sibling < nSiblings; ++sibling)
+			{
+				final Factor factor = variable.getSibling(sibling);
+				final int edge =
+					_factorEdges[factorIndex.get(factor)][variable.getReverseSiblingNumber(sibling)];
+				edges[sibling] = edge;
+				_edgeVariables[edge] = i;
+			}
+		}
+
+		final List<Integer> scheduleNodes = new ArrayList<>();
+		final List<Integer> schedulePorts = new ArrayList<>();
+		compileSchedule(sgraph, sgraph.getSchedule(), factorIndex, scheduleNodes, schedulePorts);
+		_scheduleNodes = Ints.toArray(scheduleNodes);
+		_schedulePorts = Ints.toArray(schedulePorts);
+
+		_numIterations = sgraph.getOptionOrDefault(BPOptions.iterations);
+	}
+
+	/*-------------------------
+	 * SumProductBatch methods
+	 */
+
+	/**
+	 * The number of evidence sets in the most recent call to {@code solve}.
+	 */
+	public int getBatchSize()
+	{
+		return _batchSize;
+	}
+
+	/**
+	 * The variables in the graph, in the order used by {@link #getBeliefs()}.
+	 */
+	public List<Discrete> getVariables()
+	{
+		return Collections.unmodifiableList(Arrays.asList(_variables));
+	}
+
+	/**
+	 * Runs inference using each of the {@code layers} as a separate set of evidence.
+	 * <p>
+	 * The data for each variable in a layer is combined with the variable's prior in the model, just
+	 * as for a {@linkplain SumProductSolverGraph#setConditioningLayer conditioning layer}.
+	 */
+	public void solve(List<? extends DataLayer<? extends IDatum>> layers)
+	{
+		final int batchSize = layers.size();
+		resize(batchSize);
+
+		for (int i = 0, n = _variables.length; i < n; ++i)
+		{
+			final Discrete variable = _variables[i];
+			for (int b = 0; b < batchSize; ++b)
+			{
+				setInput(i, b, layers.get(b).get(variable));
+			}
+		}
+
+		run();
+	}
+
+	/**
+	 * Runs inference using rows of {@code inputs} as separate sets of evidence.
+	 * <p>
+	 * Each row of {@code inputs} specifies one set of evidence and consists of the input weights for
+	 * each of the {@code variables} concatenated in order. As with {@link Discrete#setInput(double...)},
+	 * the inputs replace the priors of those variables in the model. Variables not included in
+	 * {@code variables} use their priors.
+	 */
+	public void solve(Discrete[] variables, double[][] inputs)
+	{
+		final int batchSize = inputs.length;
+		resize(batchSize);
+
+		final boolean[] specified = new boolean[_variables.length];
+		int rowLength = 0;
+		for (Discrete variable : variables)
+		{
+			specified[indexOf(variable)] = true;
+			rowLength += variable.getDomain().size();
+		}
+
+		for (int i = 0, n = _variables.length; i < n; ++i)
+		{
+			if (!specified[i])
+			{
+				for (int b = 0; b < batchSize; ++b)
+				{
+					setInput(i, b, null);
+				}
+			}
+		}
+
+		for (int b = 0; b < batchSize; ++b)
+		{
+			final double[] row = inputs[b];
+			if (row.length != rowLength)
+			{
+				throw new DimpleException("Expected input row of length %d but got %d", rowLength, row.length);
+			}
+
+			for (int j = 0, offset = 0; j < variables.length; ++j)
+			{
+				final int i = indexOf(variables[j]);
+				final int size = _domainSizes[i];
+				final double[] input = _inputs;
+				_fixedIndices[i * batchSize + b] = -1;
+				for (int d = 0, k = _inputOffsets[i] + b; d < size; ++d, k += batchSize)
+				{
+					input[k] = row[offset + d];
+				}
+				offset += size;
+			}
+		}
+
+		run();
+	}
+
+	/**
+	 * Returns beliefs for all variables and evidence sets from most recent {@code solve} laid out
+	 * as [batch][variable][domain].
+	 * <p>
+	 * The belief for domain index {@code d} of variable {@code var} for evidence set {@code b} is at
+	 * index {@code b * }{@link #getBeliefStride()}{@code  + }{@link #getBeliefOffset}{@code (var) + d}.
+	 * The returned array is owned by this object and will be overwritten by the next call to {@code solve}.
+	 */
+	public double[] getBeliefs()
+	{
+		return _beliefs;
+	}
+
+	/**
+	 * Returns newly allocated array of beliefs of {@code variable} for each evidence set from
+	 * most recent {@code solve} laid out as [batch][domain].
+	 */
+	public double[] getBeliefs(Discrete variable)
+	{
+		final int i = indexOf(variable);
+		final int size = _domainSizes[i];
+		final double[] beliefs = new double[_batchSize * size];
+		for (int b = 0; b < _batchSize; ++b)
+		{
+			System.arraycopy(_beliefs, b * _beliefStride + _beliefOffsets[i], beliefs, b * size, size);
+		}
+		return beliefs;
+	}
+
+	/**
+	 * Returns newly allocated array with beliefs of {@code variable} for given evidence set.
+	 */
+	public double[] getBelief(Discrete variable, int batchIndex)
+	{
+		final int i = indexOf(variable);
+		final int offset = batchIndex * _beliefStride + _beliefOffsets[i];
+		return Arrays.copyOfRange(_beliefs, offset, offset + _domainSizes[i]);
+	}
+
+	/**
+	 * Offset of beliefs of {@code variable} within each row of {@link #getBeliefs()}.
+	 */
+	public int getBeliefOffset(Discrete variable)
+	{
+		return _beliefOffsets[indexOf(variable)];
+	}
+
+	/**
+	 * Length of each row of {@link #getBeliefs()}, which is the sum of the domain sizes of all
+	 * variables.
+	 */
+	public int getBeliefStride()
+	{
+		return _beliefStride;
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	private static void checkNoDamping(ISolverNode snode)
+	{
+		boolean damping = snode.getOptionOrDefault(BPOptions.damping) != 0.0;
+		for (double d : snode.getOptionOrDefault(BPOptions.nodeSpecificDamping).toPrimitiveArray())
+		{
+			damping |= d != 0.0;
+		}
+		if (damping)
+		{
+			throw new DimpleException("Batch solve does not support damping on '%s'", snode.getModelObject());
+		}
+	}
+
+	private void compileSchedule(SumProductSolverGraph sgraph, ISchedule schedule, Map<Factor,Integer> factorIndex,
+		List<Integer> nodes, List<Integer> ports)
+	{
+		if (schedule instanceof IAdaptiveSchedule)
+		{
+			throw new DimpleException("Batch solve does not support adaptive schedule '%s'", schedule);
+		}
+
+		for (IScheduleEntry entry : schedule)
+		{
+			switch (entry.type())
+			{
+			case NODE:
+				nodes.add(encodeNode(((NodeScheduleEntry)entry).getNode(), factorIndex));
+				ports.add(-1);
+				break;
+
+			case EDGE:
+				final EdgeScheduleEntry edgeEntry = (EdgeScheduleEntry)entry;
+				nodes.add(encodeNode(edgeEntry.getNode(), factorIndex));
+				ports.add(edgeEntry.getPortNum());
+				break;
+
+			case SUBGRAPH:
+				final FactorGraph subgraph = ((SubgraphScheduleEntry)entry).getSubgraph();
+				compileSchedule(sgraph, sgraph.getSolverSubgraph(subgraph).getSchedule(), factorIndex, nodes, ports);
+				break;
+
+			default:
+				throw new DimpleException("Batch solve does not support schedule entry '%s'", entry);
+			}
+		}
+	}
+
+	private int encodeNode(INode node, Map<Factor,Integer> factorIndex)
+	{
+		final Integer index = node instanceof Factor ? factorIndex.get(node) : _variableIndex.get(node);
+		if (index == null)
+		{
+			throw new DimpleException("Schedule node '%s' is not in graph", node);
+		}
+		return node instanceof Factor ? ~index : index;
+	}
+
+	private int indexOf(Discrete variable)
+	{
+		final Integer index = _variableIndex.get(variable);
+		if (index == null)
+		{
+			throw new DimpleException("'%s' is not in graph", variable);
+		}
+		return index;
+	}
+
+	/**
+	 * Allocates storage for given batch size.
+	 */
+	private void resize(int batchSize)
+	{
+		if (batchSize == _batchSize)
+		{
+			return;
+		}
+
+		_batchSize = batchSize;
+
+		final int nEdges = _edgeVariables.length;
+		_edgeOffsets = new int[nEdges];
+		int offset = 0;
+		for (int e = 0; e < nEdges; ++e)
+		{
+			_edgeOffsets[e] = offset;
+			offset += _domainSizes[_edgeVariables[e]] * batchSize;
+		}
+		_varToFactorMsgs = new double[offset];
+		_factorToVarMsgs = new double[offset];
+
+		final int nVariables = _variables.length;
+		_inputOffsets = new int[nVariables];
+		offset = 0;
+		for (int i = 0; i < nVariables; ++i)
+		{
+			_inputOffsets[i] = offset;
+			offset += _domainSizes[i] * batchSize;
+		}
+		_inputs = new double[offset];
+		_fixedIndices = new int[nVariables * batchSize];
+		_beliefs = new double[_beliefStride * batchSize];
+
+		_products = new double[batchSize];
+		_sums = new double[batchSize];
+	}
+
+	/**
+	 * Sets input of variable {@code i} for evidence set {@code b} from its prior combined with
+	 * {@code condition}.
+	 */
+	private void setInput(int i, int b, @Nullable IDatum condition)
+	{
+		final Discrete variable = _variables[i];
+		final int batchSize = _batchSize;
+		final int size = _domainSizes[i];
+		final double[] input = _inputs;
+		final int offset = _inputOffsets[i] + b;
+
+		final PriorAndCondition known = PriorAndCondition.create(variable.getPrior(), condition);
+		final Value value = known.value();
+		if (value != null)
+		{
+			final int index = value.getIndex();
+			_fixedIndices[i * batchSize + b] = index;
+			for (int d = 0, k = offset; d < size; ++d, k += batchSize)
+			{
+				input[k] = d == index ? 1.0 : 0.0;
+			}
+		}
+		else
+		{
+			_fixedIndices[i * batchSize + b] = -1;
+			final DiscreteEnergyMessage energies = DiscreteEnergyMessage.convertFrom(variable.getDomain(), known);
+			for (int d = 0, k = offset; d < size; ++d, k += batchSize)
+			{
+				input[k] = energies != null ? energies.getWeight(d) : 1.0;
+			}
+		}
+
+		known.release();
+	}
+
+	private void run()
+	{
+		final int batchSize = _batchSize;
+
+		// Initialize messages to uniform
+		for (int e = 0, n = _edgeVariables.length; e < n; ++e)
+		{
+			final int size = _domainSizes[_edgeVariables[e]];
+			final int start = _edgeOffsets[e], end = start + size * batchSize;
+			Arrays.fill(_varToFactorMsgs, start, end, 1.0 / size);
+			Arrays.fill(_factorToVarMsgs, start, end, 1.0 / size);
+		}
+
+		final int[] scheduleNodes = _scheduleNodes;
+		final int[] schedulePorts = _schedulePorts;
+		for (int iteration = 0; iteration < _numIterations; ++iteration)
+		{
+			for (int s = 0, n = scheduleNodes.length; s < n; ++s)
+			{
+				final int node = scheduleNodes[s];
+				final int port = schedulePorts[s];
+				if (node >= 0)
+				{
+					if (port >= 0)
+					{
+						updateVariableEdge(node, port);
+					}
+					else
+					{
+						for (int p = _variableEdges[node].length; --p>=0;)
+						{
+							updateVariableEdge(node, p);
+						}
+					}
+				}
+				else
+				{
+					if (port >= 0)
+					{
+						updateFactorEdge(~node, port);
+					}
+					else
+					{
+						for (int p = _factorEdges[~node].length; --p>=0;)
+						{
+							updateFactorEdge(~node, p);
+						}
+					}
+				}
+			}
+		}
+
+		for (int i = 0, n = _variables.length; i < n; ++i)
+		{
+			computeBeliefs(i);
+		}
+	}
+
+	/**
+	 * Computes the message from variable {@code i} to the factor on sibling {@code outPort} for all
+	 * evidence sets.
+	 */
+	private void updateVariableEdge(int i, int outPort)
+	{
+		final int batchSize = _batchSize;
+		final int size = _domainSizes[i];
+		final int[] edges = _variableEdges[i];
+		final double[] out = _varToFactorMsgs;
+		final double[] in = _factorToVarMsgs;
+		final int outOffset = _edgeOffsets[edges[outPort]];
+
+		System.arraycopy(_inputs, _inputOffsets[i], out, outOffset, size * batchSize);
+		for (int p = edges.length; --p>=0;)
+		{
+			if (p != outPort)
+			{
+				final int inOffset = _edgeOffsets[edges[p]];
+				for (int k = size * batchSize; --k>=0;)
+				{
+					out[outOffset + k] *= in[inOffset + k];
+				}
+			}
+		}
+
+		final int[] fixedIndices = _fixedIndices;
+		for (int b = 0, f = i * batchSize; b < batchSize; ++b, ++f)
+		{
+			final int index = fixedIndices[f];
+			if (index >= 0)
+			{
+				// Fixed values send a delta function regardless of incoming messages
+				for (int d = 0, k = outOffset + b; d < size; ++d, k += batchSize)
+				{
+					out[k] = d == index ? 1.0 : 0.0;
+				}
+			}
+		}
+
+		normalize(out, outOffset, size, _variables[i]);
+	}
+
+	/**
+	 * Computes the message from factor {@code f} to the variable on sibling {@code outPort} for all
+	 * evidence sets.
+	 */
+	private void updateFactorEdge(int f, int outPort)
+	{
+		final int batchSize = _batchSize;
+		final int[] edges = _factorEdges[f];
+		final int[][] columns = _factorIndices[f];
+		final double[] weights = _factorWeights[f];
+		final double[] out = _factorToVarMsgs;
+		final double[] in = _varToFactorMsgs;
+		final double[] products = _products;
+		final int outEdge = edges[outPort];
+		final int outOffset = _edgeOffsets[outEdge];
+		final int outSize = _domainSizes[_edgeVariables[outEdge]];
+		final int[] outColumn = columns[outPort];
+		final int nPorts = edges.length;
+
+		Arrays.fill(out, outOffset, outOffset + outSize * batchSize, 0.0);
+
+		for (int entry = 0, nEntries = weights.length; entry < nEntries; ++entry)
+		{
+			Arrays.fill(products, weights[entry]);
+			for (int p = 0; p < nPorts; ++p)
+			{
+				if (p != outPort)
+				{
+					final int inOffset = _edgeOffsets[edges[p]] + columns[p][entry] * batchSize;
+					for (int b = 0; b < batchSize; ++b)
+					{
+						products[b] *= in[inOffset + b];
+					}
+				}
+			}
+
+			final int offset = outOffset + outColumn[entry] * batchSize;
+			for (int b = 0; b < batchSize; ++b)
+			{
+				out[offset + b] += products[b];
+			}
+		}
+
+		normalize(out, outOffset, outSize, _factors[f]);
+	}
+
+	/**
+	 * Computes beliefs of variable {@code i} for all evidence sets.
+	 */
+	private void computeBeliefs(int i)
+	{
+		final int batchSize = _batchSize;
+		final int size = _domainSizes[i];
+		final int[] edges = _variableEdges[i];
+		final double[] in = _factorToVarMsgs;
+		final double[] products = _products;
+		final double[] beliefs = _beliefs;
+		final int[] fixedIndices = _fixedIndices;
+
+		final double[] sums = _sums;
+		Arrays.fill(sums, 0.0);
+		for (int d = 0; d < size; ++d)
+		{
+			System.arraycopy(_inputs, _inputOffsets[i] + d * batchSize, products, 0, batchSize);
+			for (int edge : edges)
+			{
+				final int inOffset = _edgeOffsets[edge] + d * batchSize;
+				for (int b = 0; b < batchSize; ++b)
+				{
+					products[b] *= in[inOffset + b];
+				}
+			}
+			for (int b = 0, k = _beliefOffsets[i] + d; b < batchSize; ++b, k += _beliefStride)
+			{
+				final int index = fixedIndices[i * batchSize + b];
+				final double value = index >= 0 ? (index == d ? 1.0 : 0.0) : products[b];
+				beliefs[k] = value;
+				sums[b] += value;
+			}
+		}
+
+		for (int b = 0; b < batchSize; ++b)
+		{
+			final double sum = sums[b];
+			if (sum == 0)
+			{
+				throw new DimpleException("Batch solve failed. All probabilities were zero for belief of '%s' in evidence set %d",
+					_variables[i], b);
+			}
+			for (int d = 0, k = b * _beliefStride + _beliefOffsets[i]; d < size; ++d, ++k)
+			{
+				beliefs[k] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * Normalizes each of the batch messages in the block starting at {@code offset}.
+	 */
+	private void normalize(double[] msgs, int offset, int size, Object node)
+	{
+		final int batchSize = _batchSize;
+		final double[] sums = _sums;
+
+		Arrays.fill(sums, 0.0);
+		for (int d = 0, k = offset; d < size; ++d)
+		{
+			for (int b = 0; b < batchSize; ++b, ++k)
+			{
+				sums[b] += msgs[k];
+			}
+		}
+
+		for (int b = 0; b < batchSize; ++b)
+		{
+			final double sum = sums[b];
+			if (sum == 0)
+			{
+				throw new DimpleException("Batch solve failed. All probabilities were zero when calculating message for '%s' in evidence set %d",
+					node, b);
+			}
+			sums[b] = 1 / sum;
+		}
+
+		for (int d = 0, k = offset; d < size; ++d)
+		{
+			for (int b = 0; b < batchSize; ++b, ++k)
+			{
+				msgs[k] *= sums[b];
+			}
+		}
+	}
+}
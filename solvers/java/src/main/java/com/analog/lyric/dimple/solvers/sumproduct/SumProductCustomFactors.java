@@ -34,6 +34,7 @@ import com.analog.lyric.dimple.factorfunctions.RealJointSubtract;
 import com.analog.lyric.dimple.factorfunctions.RealJointSum;
 import com.analog.lyric.dimple.factorfunctions.Subtract;
 import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.Xor;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.model.variables.VariablePredicates;
 import com.analog.lyric.dimple.solvers.core.CustomFactors;
@@ -41,6 +42,7 @@ import com.analog.lyric.dimple.solvers.core.ISolverFactorCreator;
 import com.analog.lyric.dimple.solvers.core.SolverFactorCreationException;
 import com.analog.lyric.dimple.solvers.interfaces.ISolverFactor;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomComplexGaussianPolynomial;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldAdd;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldConstantMult;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomFiniteFieldMult;
@@ -58,6 +60,7 @@ import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivaria
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateGaussianSum;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomMultivariateNormalConstantParameters;
 import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomNormalConstantParameters;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
 import com.analog.lyric.dimple.solvers.sumproduct.sampledfactor.SampledFactor;
 import com.google.common.collect.Iterables;
 
@@ -115,7 +118,10 @@ public class SumProductCustomFactors extends CustomFactors<ISolverFactor, SumPro
 		add(RealJointSubtract.class, CustomMultivariateGaussianSubtract.class);
 		add(RealJointSum.class, CustomMultivariateGaussianSum.class);
 		add(Subtract.class, CustomGaussianSubtract.class);
+		add(Subtract.class, CustomDiscreteSum.class);
 		add(Sum.class, CustomGaussianSum.class);
+		add(Sum.class, CustomDiscreteSum.class);
+		add(Xor.class, CustomXor.class);
 		
 		// Backwards compatibility
 		add("add", new ISolverFactorCreator<ISolverFactor, SumProductSolverGraph>() {
@@ -56,6 +56,14 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	protected double[][] _inMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	protected double[][] _outMsgs = ArrayUtil.EMPTY_DOUBLE_ARRAY_ARRAY;
 	
+	/**
+	 * Single precision messages for sibling edges that use them, indexed by sibling. Entries for
+	 * double precision edges are empty, as are the entries of {@link #_inMsgs} and {@link #_outMsgs}
+	 * for single precision edges.
+	 */
+	protected float[][] _inFloatMsgs = ArrayUtil.EMPTY_FLOAT_ARRAY_ARRAY;
+	protected float[][] _outFloatMsgs = ArrayUtil.EMPTY_FLOAT_ARRAY_ARRAY;
+	
     /*--------------
      * Construction
      */
@@ -69,18 +77,23 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	public void initialize()
 	{
 		super.initialize();
+		registerMessageDeltaTracker();
 
 		final int nEdges = _model.getSiblingCount();
 		if (nEdges != _inMsgs.length)
 		{
 			_inMsgs = new double[nEdges][];
 			_outMsgs = new double[nEdges][];
+			_inFloatMsgs = new float[nEdges][];
+			_outFloatMsgs = new float[nEdges][];
 		}
 		for (int i = 0; i < nEdges; ++i)
 		{
 			SumProductDiscreteEdge edge = getSiblingEdgeState(i);
 			_inMsgs[i] = edge.factorToVarMsg.representation();
 			_outMsgs[i] = edge.varToFactorMsg.representation();
+			_inFloatMsgs[i] = edge.factorToVarFloatRepresentation();
+			_outFloatMsgs[i] = edge.varToFactorFloatRepresentation();
 		}
 		
 		configureDampingFromOptions();
@@ -122,14 +135,14 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     @Override
 	protected void doUpdateEdge(int outPortNum)
     {
-		final double[] outMsgs = _outMsgs[outPortNum];
+		final float[] floatOutMsgs = _outFloatMsgs[outPortNum];
+		final boolean singlePrecision = floatOutMsgs.length > 0;
 
 		PriorAndCondition known = getPriorAndCondition();
 		final Value fixedValue = known.value();
 		if (fixedValue != null)
 		{
-			Arrays.fill(outMsgs, 0);
-			outMsgs[fixedValue.getIndex()] = 1.0;
+			setOutput(outPortNum, fixedValue.getIndex());
 			known.release();
 			return;
 		}
@@ -142,7 +155,9 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
         final int D = _model.getSiblingCount();
         double maxLog = Double.NEGATIVE_INFINITY;
 
-		final double[][] inMsgs = _inMsgs;
+        // For single precision messages, compute output in a double precision working array
+		final double[] outMsgs = singlePrecision ?
+			DimpleEnvironment.doubleArrayCache.allocateAtLeast(M) : _outMsgs[outPortNum];
 		final double[] dampingParams = _dampingParams;
 		final double damping = dampingParams != null ? dampingParams[outPortNum] : 0.0;
 
@@ -152,27 +167,34 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		{
 			// Save previous output for damping
 			final double[] savedOutMsgArray = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
-			System.arraycopy(outMsgs,  0, savedOutMsgArray, 0, M);
+			if (singlePrecision)
+			{
+				for (int m = M; --m>=0;)
+					savedOutMsgArray[m] = floatOutMsgs[m];
+			}
+			else
+			{
+				System.arraycopy(outMsgs,  0, savedOutMsgArray, 0, M);
+			}
  
 			// We do not assume that the prior is normalized
 			for (int m = M; --m>=0;)
 			{
 				double prior = priors != null ? priors.getEnergy(m) : 0;
-				double out = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
-
-				int d = D;
-				while (--d > outPortNum)
-				{
-					double tmp = inMsgs[d][m];
-					out += (tmp == 0) ? minLog : Math.log(tmp);
-				}
-				while (--d >= 0)
-				{
-					double tmp = inMsgs[d][m];
-					out += (tmp == 0) ? minLog : Math.log(tmp);
-				}
-				maxLog = Math.max(maxLog, out);
-				outMsgs[m] = out;
+				outMsgs[m] = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
+			}
+			int d = D;
+			while (--d > outPortNum)
+			{
+				addLogInput(d, outMsgs, M, minLog);
+			}
+			while (--d >= 0)
+			{
+				addLogInput(d, outMsgs, M, minLog);
+			}
+			for (int m = M; --m>=0;)
+			{
+				maxLog = Math.max(maxLog, outMsgs[m]);
 			}
 
 			// convert from log domain
@@ -197,6 +219,11 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     		
     		// Release temp array
     		DimpleEnvironment.doubleArrayCache.release(savedOutMsgArray);
+    		
+    		if (singlePrecision)
+    		{
+    			storeOutput(outMsgs, floatOutMsgs);
+    		}
 		}
 		else
 		{
@@ -217,21 +244,20 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 			for (int m = M; --m>=0;)
 			{
 				double prior = priors != null ? priors.getEnergy(m) : 0;
-				double out = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
-
-				int d = D;
-				while (--d > outPortNum)
-				{
-					double tmp = inMsgs[d][m];
-					out += (tmp == 0) ? minLog : Math.log(tmp);
-				}
-				while (--d >= 0)
-				{
-					double tmp = inMsgs[d][m];
-					out += (tmp == 0) ? minLog : Math.log(tmp);
-				}
-				maxLog = Math.max(maxLog, out);
-				outMsgs[m] = out;
+				outMsgs[m] = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
+			}
+			int d = D;
+			while (--d > outPortNum)
+			{
+				addLogInput(d, outMsgs, M, minLog);
+			}
+			while (--d >= 0)
+			{
+				addLogInput(d, outMsgs, M, minLog);
+			}
+			for (int m = M; --m>=0;)
+			{
+				maxLog = Math.max(maxLog, outMsgs[m]);
 			}
 
 			// Convert from log domain
@@ -240,6 +266,11 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 				double out = Math.exp(outMsgs[m] - maxLog);
 				outMsgs[m] = out;
 			}
+			
+			if (singlePrecision)
+			{
+				storeOutput(outMsgs, floatOutMsgs);
+			}
 
 			if (setNormalizationEnergy)
 			{
@@ -248,6 +279,11 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 
 			outMsg.normalize();
 		}
+		
+		if (singlePrecision)
+		{
+			DimpleEnvironment.doubleArrayCache.release(outMsgs);
+		}
 
 		if (_calculateDerivative)
         {
@@ -263,10 +299,9 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		if (fixedValue != null)
 		{
 			final int index = fixedValue.getIndex();
-			for (double[] outMsg : _outMsgs)
+			for (int d = _outMsgs.length; --d>=0;)
 			{
-				Arrays.fill(outMsg, 0);
-				outMsg[index] = 1.0;
+				setOutput(d, index);
 			}
 			known.release();
 			return;
@@ -279,7 +314,6 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
         final int D = _model.getSiblingCount();
         
         //Compute alphas
-        final double[][] inMsgs = _inMsgs;
         final double[] logInPortMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M*D);
         final double[] alphas = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
         
@@ -288,18 +322,37 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
         for (int m = M; --m>=0;)
         {
 			double prior = priors != null ? priors.getEnergy(m) : 0;
-			double alpha = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
-
-        	for (int d = 0, i = m; d < D; d++, i += M)
-	        {
-	        	double tmp = inMsgs[d][m];
-        		double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
-        		logInPortMsgs[i] = logtmp;
-        		alpha += logtmp;
-	        }
-	        alphas[m] = alpha;
+			alphas[m] = (prior == Double.POSITIVE_INFINITY) ? minLog : priorNormalizer - prior;
+        }
+        for (int d = 0, dm = 0; d < D; d++, dm += M)
+        {
+        	final float[] floatInMsg = _inFloatMsgs[d];
+        	if (floatInMsg.length > 0)
+        	{
+        		for (int m = M; --m>=0;)
+        		{
+        			final double tmp = floatInMsg[m];
+        			final double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
+        			logInPortMsgs[dm + m] = logtmp;
+        			alphas[m] += logtmp;
+        		}
+        	}
+        	else
+        	{
+        		final double[] inMsg = _inMsgs[d];
+        		for (int m = M; --m>=0;)
+        		{
+        			final double tmp = inMsg[m];
+        			final double logtmp = (tmp == 0) ? minLog : Math.log(tmp);
+        			logInPortMsgs[dm + m] = logtmp;
+        			alphas[m] += logtmp;
+        		}
+        	}
         }
         
+        // Outputs for single precision messages are computed in a double precision working array
+        final double[] workingOutMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(M);
+        
 		final double[] dampingParams = _dampingParams;
 		
 		if (dampingParams != null)
@@ -308,13 +361,23 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 			
 			for (int out_d = 0, dm = 0; out_d < D; out_d++, dm += M )
 			{
-				final double[] outMsgs = _outMsgs[out_d];
+				final float[] floatOutMsgs = _outFloatMsgs[out_d];
+				final boolean singlePrecision = floatOutMsgs.length > 0;
+				final double[] outMsgs = singlePrecision ? workingOutMsgs : _outMsgs[out_d];
 
 				final double damping = dampingParams[out_d];
 				
 				if (damping != 0)
 				{
-					System.arraycopy(outMsgs, 0, savedOutMsgArray, 0, M);
+					if (singlePrecision)
+					{
+						for (int m = M; --m>=0;)
+							savedOutMsgArray[m] = floatOutMsgs[m];
+					}
+					else
+					{
+						System.arraycopy(outMsgs, 0, savedOutMsgArray, 0, M);
+					}
 				}
 
 				double maxLog = Double.NEGATIVE_INFINITY;
@@ -351,7 +414,11 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 						outMsgs[m] = outMsgs[m]*inverseDamping + savedOutMsgArray[m]*damping;
 					}
 				}
-
+				
+				if (singlePrecision)
+				{
+					storeOutput(outMsgs, floatOutMsgs);
+				}
 			}
 
 			DimpleEnvironment.doubleArrayCache.release(savedOutMsgArray);
@@ -366,7 +433,9 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 
 			for (int out_d = 0, dm = 0; out_d < D; out_d++, dm += M )
 			{
-				final double[] outMsgs = _outMsgs[out_d];
+				final float[] floatOutMsgs = _outFloatMsgs[out_d];
+				final boolean singlePrecision = floatOutMsgs.length > 0;
+				final double[] outMsgs = singlePrecision ? workingOutMsgs : _outMsgs[out_d];
 
 				double maxLog = Double.NEGATIVE_INFINITY;
 
@@ -401,11 +470,17 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 				final double normalizationEnergy =
 					weightToEnergy(sum) - maxLog + incomingNormalizationEnergy - outEdge.factorToVarMsg.getNormalizationEnergy();
 				outEdge.varToFactorMsg.setNormalizationEnergy(normalizationEnergy);
+				
+				if (singlePrecision)
+				{
+					storeOutput(outMsgs, floatOutMsgs);
+				}
 			}
 		}
 		
 	    DimpleEnvironment.doubleArrayCache.release(logInPortMsgs);
 	    DimpleEnvironment.doubleArrayCache.release(alphas);
+	    DimpleEnvironment.doubleArrayCache.release(workingOutMsgs);
 	   
 	    if (_calculateDerivative)
 	    {
@@ -525,10 +600,10 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 		
 		for (int i = 0, n = getSiblingCount(); i < n; i++)
 		{
-			final double[] inMsg = getSiblingEdgeState(i).factorToVarMsg.representation();
+			final DiscreteMessage inMsg = getSiblingEdgeState(i).factorToVarMsg;
 			for (int j =  0; j < retval.length; j++)
 			{
-				retval[j] *= inMsg[j];
+				retval[j] *= inMsg.getWeight(j);
 		}
 		}
 		
@@ -825,6 +900,18 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
 	 * SNode methods
 	 */
 	
+	@Override
+	protected double[][] outputMessageValues()
+	{
+		return _outMsgs;
+	}
+	
+	@Override
+	protected float[][] floatOutputMessageValues()
+	{
+		return _outFloatMsgs;
+	}
+	
 	@Override
 	protected boolean supportsMessageEvents()
 	{
@@ -855,6 +942,59 @@ public class SumProductDiscrete extends SDiscreteVariableDoubleArray
     	}
     }
 
+	/**
+	 * Adds log of the weights of the input message for port {@code d} to the first {@code M} entries
+	 * of {@code values}, using {@code minLog} for zero weights.
+	 */
+	private void addLogInput(int d, double[] values, int M, double minLog)
+	{
+		final float[] floatInMsg = _inFloatMsgs[d];
+		if (floatInMsg.length > 0)
+		{
+			for (int m = M; --m>=0;)
+			{
+				final double tmp = floatInMsg[m];
+				values[m] += (tmp == 0) ? minLog : Math.log(tmp);
+			}
+		}
+		else
+		{
+			final double[] inMsg = _inMsgs[d];
+			for (int m = M; --m>=0;)
+			{
+				final double tmp = inMsg[m];
+				values[m] += (tmp == 0) ? minLog : Math.log(tmp);
+			}
+		}
+	}
+	
+	/**
+	 * Sets output message for port {@code d} to have all of its weight on {@code index}.
+	 */
+	private void setOutput(int d, int index)
+	{
+		final float[] floatOutMsg = _outFloatMsgs[d];
+		if (floatOutMsg.length > 0)
+		{
+			Arrays.fill(floatOutMsg, 0f);
+			floatOutMsg[index] = 1f;
+		}
+		else
+		{
+			final double[] outMsg = _outMsgs[d];
+			Arrays.fill(outMsg, 0);
+			outMsg[index] = 1.0;
+		}
+	}
+	
+	private static void storeOutput(double[] outMsgs, float[] floatOutMsgs)
+	{
+		for (int m = floatOutMsgs.length; --m>=0;)
+		{
+			floatOutMsgs[m] = (float)outMsgs[m];
+		}
+	}
+
     @Override
 	@SuppressWarnings("null")
 	public SumProductDiscreteEdge getSiblingEdgeState(int siblingIndex)
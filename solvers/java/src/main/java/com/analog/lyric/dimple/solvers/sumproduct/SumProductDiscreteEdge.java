@@ -16,8 +16,10 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct;
 
+import com.analog.lyric.collect.ArrayUtil;
 import com.analog.lyric.dimple.model.variables.Discrete;
 import com.analog.lyric.dimple.solvers.core.SDiscreteWeightEdge;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteFloatWeightMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteWeightMessage;
 
 
@@ -34,8 +36,62 @@ public class SumProductDiscreteEdge extends SDiscreteWeightEdge
 			new DiscreteWeightMessage(discrete.getDomain().size()));
 	}
 	
+	/**
+	 * Construct edge for given variable.
+	 * <p>
+	 * @param singlePrecision if true, the messages will be {@link DiscreteFloatWeightMessage}s.
+	 * @since 0.08
+	 * @see com.analog.lyric.dimple.options.BPOptions#singlePrecisionMessages
+	 */
+	public SumProductDiscreteEdge(Discrete discrete, boolean singlePrecision)
+	{
+		this(createMessage(discrete, singlePrecision), createMessage(discrete, singlePrecision));
+	}
+	
 	public SumProductDiscreteEdge(DiscreteWeightMessage varToFactorMsg, DiscreteWeightMessage factorToVarMsg)
 	{
 		super(varToFactorMsg, factorToVarMsg);
 	}
+	
+	/**
+	 * True if messages are stored in single precision.
+	 * @since 0.08
+	 * @see DiscreteFloatWeightMessage
+	 */
+	public boolean isSinglePrecision()
+	{
+		return varToFactorMsg.isSinglePrecision();
+	}
+	
+	/**
+	 * The {@linkplain DiscreteFloatWeightMessage#floatRepresentation() single precision representation}
+	 * of {@link #varToFactorMsg}, or an empty array if it is not {@linkplain #isSinglePrecision() single precision}.
+	 * @since 0.08
+	 */
+	public float[] varToFactorFloatRepresentation()
+	{
+		return floatRepresentation(varToFactorMsg);
+	}
+	
+	/**
+	 * The {@linkplain DiscreteFloatWeightMessage#floatRepresentation() single precision representation}
+	 * of {@link #factorToVarMsg}, or an empty array if it is not {@linkplain #isSinglePrecision() single precision}.
+	 * @since 0.08
+	 */
+	public float[] factorToVarFloatRepresentation()
+	{
+		return floatRepresentation(factorToVarMsg);
+	}
+	
+	private static float[] floatRepresentation(DiscreteWeightMessage message)
+	{
+		return message instanceof DiscreteFloatWeightMessage ?
+			((DiscreteFloatWeightMessage)message).floatRepresentation() : ArrayUtil.EMPTY_FLOAT_ARRAY;
+	}
+	
+	private static DiscreteWeightMessage createMessage(Discrete discrete, boolean singlePrecision)
+	{
+		final int size = discrete.getDomain().size();
+		return singlePrecision ? new DiscreteFloatWeightMessage(size) : new DiscreteWeightMessage(size);
+	}
 }
@@ -122,7 +122,7 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 		
 		if (var instanceof Discrete)
 		{
-			return new SumProductDiscreteEdge((Discrete)var);
+			return new SumProductDiscreteEdge((Discrete)var, useSinglePrecisionMessages(sfactor));
 		}
 		else if (var instanceof Real)
 		{
@@ -137,6 +137,34 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 		
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Discrete edges whose precision no longer matches the value of the
+	 * {@link BPOptions#singlePrecisionMessages} option on their factor will be recreated.
+	 */
+	@Override
+	public void initializeSolverEdges()
+	{
+		final FactorGraph fg = _model;
+		for (int i = 0, n = fg.getGraphEdgeStateMaxIndex() + 1; i < n; ++i)
+		{
+			final ISolverEdgeState sedge = getSolverEdge(i, false);
+			if (sedge instanceof SumProductDiscreteEdge)
+			{
+				final EdgeState edge = fg.getGraphEdgeState(i);
+				if (edge != null && edge.getFactorParent(fg) == fg &&
+					((SumProductDiscreteEdge)sedge).isSinglePrecision() !=
+					useSinglePrecisionMessages(getSolverFactor(edge.getFactor(fg))))
+				{
+					removeSolverEdge(edge);
+				}
+			}
+		}
+		
+		super.initializeSolverEdges();
+	}
+	
 	@SuppressWarnings("deprecation") // TODO remove when S* classes removed
 	@Override
 	public ISolverVariable createVariable(Variable var)
@@ -637,12 +665,6 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 			if (sf instanceof SumProductTableFactor)
 			{
 				SumProductTableFactor tf = (SumProductTableFactor)sf;
-				IFactorTable table = tf.getFactorTableIfComputed();
-				if (table != null)
-				{
-					tf.getFactorTable().getIndicesSparseUnsafe();
-					tf.getFactorTable().getWeightsSparseUnsafe();
-				}
 				tf.setupTableFactorEngine();
 			}
 		}
@@ -750,4 +772,20 @@ public class SumProductSolverGraph extends BPSolverGraph<ISolverFactor,ISolverVa
 	{
 		return "sum-product";
 	}
+
+	/*-----------------
+	 * Private methods
+	 */
+	
+	/**
+	 * True if discrete edges for {@code sfactor} should use single precision messages.
+	 * <p>
+	 * This is only supported for {@link SumProductTableFactor}s.
+	 * @see SumProductTableFactor#useSinglePrecisionMessages()
+	 */
+	private static boolean useSinglePrecisionMessages(ISolverFactor sfactor)
+	{
+		return sfactor instanceof SumProductTableFactor &&
+			((SumProductTableFactor)sfactor).useSinglePrecisionMessages();
+	}
 }
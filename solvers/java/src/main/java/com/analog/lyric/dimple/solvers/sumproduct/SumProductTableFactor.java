@@ -72,6 +72,19 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	protected boolean _updateDerivative = false;
 	protected boolean _dampingInUse = false;
 	
+	/**
+	 * Single precision messages for sibling edges that use them, indexed by sibling. Entries for
+	 * double precision edges are empty, as are the entries of {@link #_inputMessages} and
+	 * {@link #_outputMessages} for single precision edges.
+	 */
+	protected float[][] _floatInputMessages = ArrayUtil.EMPTY_FLOAT_ARRAY_ARRAY;
+	protected float[][] _floatOutputMessages = ArrayUtil.EMPTY_FLOAT_ARRAY_ARRAY;
+	
+	/**
+	 * True if sibling edges use single precision messages.
+	 */
+	protected boolean _singlePrecision = false;
+	
 	/*--------------
 	 * Construction
 	 */
@@ -95,6 +108,7 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	public void initialize()
 	{
 		super.initialize();
+		registerMessageDeltaTracker();
 		
 		configureDampingFromOptions();
 		updateK(getOptionOrDefault(BPOptions.maxMessageSize));
@@ -104,13 +118,19 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		{
 			_inputMessages = new double[nSiblings][];
 			_outputMessages = new double[nSiblings][];
+			_floatInputMessages = new float[nSiblings][];
+			_floatOutputMessages = new float[nSiblings][];
 		}
 		
+		_singlePrecision = false;
 		for (int i = 0; i < nSiblings; ++i)
 		{
 			final SumProductDiscreteEdge edge = getSiblingEdgeState(i);
 			_inputMessages[i] = edge.varToFactorMsg.representation();
 			_outputMessages[i] = edge.factorToVarMsg.representation();
+			_floatInputMessages[i] = edge.varToFactorFloatRepresentation();
+			_floatOutputMessages[i] = edge.factorToVarFloatRepresentation();
+			_singlePrecision |= edge.isSinglePrecision();
 		}
 	}
 	
@@ -123,13 +143,48 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		{
 			updatePlan = factorTableUpdateSettings.getOptimizedUpdatePlan();
 		}
-		if (updatePlan != null)
+		if (updatePlan != null && !_singlePrecision)
 		{
 			_tableFactorEngine = new TableFactorEngineOptimized(this, updatePlan);
+			final IFactorTable table = getFactorTableIfComputed();
+			if (table != null)
+			{
+				table.getWeightsSparseUnsafe();
+			}
+			return;
 		}
-		else
+		
+		// Build the table now, unless only the k-best engine will use it, so that the engine can
+		// be chosen based on its contents.
+		final IFactorTable table = _kIsSmallerThanDomain ? getFactorTableIfComputed() : getFactorTable();
+		TableFactorEngine engine = null;
+		if (table != null && !_singlePrecision)
 		{
-			_tableFactorEngine = new TableFactorEngine(this);
+			// Only the general engine reads and writes single precision messages.
+			if (TableFactorEngineEquality.supportsTable(table))
+			{
+				engine = new TableFactorEngineEquality(this);
+			}
+			else if (table.isDeterministicDirected())
+			{
+				engine = new TableFactorEngineDeterministic(this);
+			}
+		}
+		
+		if (engine == null)
+		{
+			engine = new TableFactorEngine(this);
+			if (table != null)
+			{
+				// Compute the index columns now rather than lazily during a possibly multithreaded update.
+				table.getIndexColumnsSparseUnsafe();
+			}
+		}
+		_tableFactorEngine = engine;
+		
+		if (table != null)
+		{
+			table.getWeightsSparseUnsafe();
 		}
 	}
 
@@ -149,7 +204,13 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	 * ISolverNode methods
 	 */
 	
-	private TableFactorEngine getTableFactorEngine()
+	/**
+	 * The engine chosen by {@link #setupTableFactorEngine()}.
+	 * @throws DimpleException if the solver has not been initialized.
+	 * @since 0.08
+	 */
+	@Internal
+	public TableFactorEngine getTableFactorEngine()
 	{
 		final TableFactorEngine tableFactorEngine = _tableFactorEngine;
 		if (tableFactorEngine != null)
@@ -226,6 +287,18 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 		return getSiblingEdgeState(edge).factorToVarMsg.clone();
 	}
 	
+	@Override
+	protected double[][] outputMessageValues()
+	{
+		return _outputMessages;
+	}
+	
+	@Override
+	protected float[][] floatOutputMessageValues()
+	{
+		return _floatOutputMessages;
+	}
+	
 	
 	/*--------------------------
 	 * STableFactorBase methods
@@ -234,7 +307,7 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	@Override
 	protected void setTableRepresentation(IFactorTable table)
 	{
-		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT_WITH_INDICES);
+		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
 	}
 	
 	@Override
@@ -376,6 +449,46 @@ public class SumProductTableFactor extends STableFactorDoubleArray
 	}
 
 
+	/**
+	 * True if sibling edges should use single precision messages.
+	 * <p>
+	 * True if {@link BPOptions#singlePrecisionMessages} is set for this factor and it
+	 * {@linkplain #supportsSinglePrecisionMessages() supports them}, unless
+	 * {@link BPOptions#maxMessageSize} is smaller than the domain of some sibling, since
+	 * the k-best update only supports double precision messages.
+	 */
+	boolean useSinglePrecisionMessages()
+	{
+		if (!supportsSinglePrecisionMessages() || !getOptionOrDefault(BPOptions.singlePrecisionMessages))
+		{
+			return false;
+		}
+		final int k = getOptionOrDefault(BPOptions.maxMessageSize);
+		for (Variable var : _model.getSiblings())
+		{
+			if (k < var.asDiscreteVariable().getDomain().size())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * True if updates of this factor support single precision messages.
+	 * <p>
+	 * The default implementation returns true. Subclasses that override the update methods to read
+	 * {@link #_inputMessages} or write {@link #_outputMessages} directly must override this to return
+	 * false, since those arrays are empty for single precision edges.
+	 * <p>
+	 * @since 0.08
+	 * @see BPOptions#singlePrecisionMessages
+	 */
+	protected boolean supportsSinglePrecisionMessages()
+	{
+		return true;
+	}
+	
 	public void setUpdateDerivative(boolean updateDer)
 	{
 		_updateDerivative = updateDer;
@@ -22,6 +22,7 @@ import com.analog.lyric.dimple.environment.DimpleEnvironment;
 import com.analog.lyric.dimple.exceptions.DimpleException;
 import com.analog.lyric.dimple.exceptions.NormalizationException;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.SparseIndexColumns;
 import com.analog.lyric.dimple.model.factors.Factor;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 
@@ -42,40 +43,38 @@ public class TableFactorEngine
 	public void updateEdge(int outPortNum)
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
-	    final int[][] table = tableFactor.getFactorTable().getIndicesSparseUnsafe();
-	    final double[] values = tableFactor.getFactorTable().getWeightsSparseUnsafe();
-	    final int tableLength = table.length;
 	    final int numPorts = _factor.getSiblingCount();
 	    
-        final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
-        final double [][] inputMsgs = tableFactor.getInPortMsgs();
+	    // For single precision messages, accumulate output in a double precision working array
+	    final float[] floatOutputMsgs = tableFactor._floatOutputMessages[outPortNum];
+	    final boolean singlePrecision = floatOutputMsgs.length > 0;
+	    final int outputMsgLength = singlePrecision ? floatOutputMsgs.length : tableFactor.getOutPortMsg(outPortNum).length;
+        final double[] outputMsgs = singlePrecision ?
+        	DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength) : tableFactor.getOutPortMsg(outPortNum);
         
-    	final int outputMsgLength = outputMsgs.length;
-
     	final double damping = tableFactor._dampingInUse ? tableFactor._dampingParams[outPortNum] : 0.0;
 
     	if (damping != 0.0)
     	{
     		final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(outputMsgLength);
-    		System.arraycopy(outputMsgs, 0, saved, 0, outputMsgLength);
+    		if (singlePrecision)
+    		{
+    			for (int i = outputMsgLength; --i>=0;)
+    			{
+    				saved[i] = floatOutputMsgs[i];
+    			}
+    		}
+    		else
+    		{
+    			System.arraycopy(outputMsgs, 0, saved, 0, outputMsgLength);
+    		}
         
-    		double sum = 0.0;
-    		Arrays.fill(outputMsgs, 0);
+    		computeOutput(outPortNum, outputMsgs);
 
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
+    		double sum = 0.0;
+    		for (int i = outputMsgLength; --i>=0;)
     		{
-    			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
-
-    			int inPortNum = numPorts;
-    			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-    			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-
-    			outputMsgs[outputIndex] += prob;
-    			sum += prob;
+    			sum += outputMsgs[i];
     		}
         
     		if (sum == 0)
@@ -96,6 +95,11 @@ public class TableFactorEngine
     		}
 
     		DimpleEnvironment.doubleArrayCache.release(saved);
+    		
+    		if (singlePrecision)
+    		{
+    			storeOutput(outputMsgs, floatOutputMsgs);
+    		}
     	}
     	else
     	{
@@ -118,21 +122,11 @@ public class TableFactorEngine
         		outMsg.setNormalizationEnergy(normalizationEnergy);
         	}
         	
-    		Arrays.fill(outputMsgs, 0);
-
-    		for (int tableIndex = tableLength; --tableIndex>=0;)
+    		computeOutput(outPortNum, outputMsgs);
+    		
+    		if (singlePrecision)
     		{
-    			double prob = values[tableIndex];
-    			final int[] tableRow = table[tableIndex];
-    			final int outputIndex = tableRow[outPortNum];
-
-    			int inPortNum = numPorts;
-    			while (--inPortNum > outPortNum)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-    			while (--inPortNum >= 0)
-    				prob *= inputMsgs[inPortNum][tableRow[inPortNum]];
-
-    			outputMsgs[outputIndex] += prob;
+    			storeOutput(outputMsgs, floatOutputMsgs);
     		}
         
     		try
@@ -145,69 +139,51 @@ public class TableFactorEngine
     				+ outPortNum + " on factor " + _factor.getLabel());
     		}
     	}
-		
+    	
+    	if (singlePrecision)
+    	{
+    		DimpleEnvironment.doubleArrayCache.release(outputMsgs);
+    	}
 	}
 	
 	
 	public void update()
 	{
 		final SumProductTableFactor tableFactor = _tableFactor;
-		final IFactorTable table = tableFactor.getFactorTable();
-	    final int[][] tableIndices = table.getIndicesSparseUnsafe();
-	    final double[] values = table.getWeightsSparseUnsafe();
-	    final int tableLength = tableIndices.length;
+		if (tableFactor._singlePrecision)
+		{
+			updateSinglePrecision();
+			return;
+		}
+		
 	    final int numPorts = _factor.getSiblingCount();
-	    
-	    final double [][] inMsgs = tableFactor.getInPortMsgs();
+	    final double[][] outMsgs = tableFactor.getOutPortMsgs();
 
 	    if (tableFactor._dampingInUse)
 	    {
-	    	final double[] saved =
-	    		DimpleEnvironment.doubleArrayCache.allocateAtLeast(table.getDomainIndexer().getSumOfDomainSizes());
-	    
+	    	int savedSize = 0;
+	    	for (int outPortNum = 0; outPortNum < numPorts; outPortNum++)
+	    	{
+	    		savedSize += outMsgs[outPortNum].length;
+	    	}
+	    	final double[] saved = DimpleEnvironment.doubleArrayCache.allocateAtLeast(savedSize);
 	    	for (int outPortNum = 0, savedOffset = 0; outPortNum < numPorts; outPortNum++)
 	    	{
-	    		final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
-	    		final int outputMsgLength = outputMsgs.length;
-
-	    		final double damping = tableFactor._dampingParams[outPortNum];
-	    		if (damping != 0)
-	    		{
-	    			System.arraycopy(outputMsgs, 0, saved, savedOffset, outputMsgLength);
-	    		}
-
-	    		Arrays.fill(outputMsgs, 0);
-
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
-	    		{
-	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
+	    		final double[] outputMsgs = outMsgs[outPortNum];
+	    		System.arraycopy(outputMsgs, 0, saved, savedOffset, outputMsgs.length);
+	    		savedOffset += outputMsgs.length;
+	    	}
 
-	    			int inPortNum = numPorts;
-	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			outputMsgs[outputIndex] += prob;
-	    		}
+	    	computeOutputs(outMsgs);
 
-	    		double sum = 0;
-	    		for (int i = outputMsgLength; --i>=0;)
-	    		{
-	    			sum += outputMsgs[i];
-	    		}
-	    		if (sum == 0)
-	    		{
-	    			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
-	    				+ outPortNum + " on factor " +_factor.getLabel());
-	    		}
+	    	for (int outPortNum = 0, savedOffset = 0; outPortNum < numPorts; outPortNum++)
+	    	{
+	    		final double[] outputMsgs = outMsgs[outPortNum];
+	    		final int outputMsgLength = outputMsgs.length;
 
-	    		for (int i = outputMsgLength; --i>=0;)
-	    		{
-	    			outputMsgs[i] /= sum;
-	    		}
+	    		normalizeOutput(outPortNum, outputMsgs, outputMsgLength);
 
+	    		final double damping = tableFactor._dampingParams[outPortNum];
 	    		if (damping != 0)
 	    		{
 	    			final double inverseDamping = 1.0 - damping;
@@ -224,44 +200,175 @@ public class TableFactorEngine
 	    }
 	    else // no damping
 	    {
+	    	computeOutputs(outMsgs);
+
 	    	for (int outPortNum = numPorts; --outPortNum>=0;)
 	    	{
-	    		final double[] outputMsgs = tableFactor.getOutPortMsg(outPortNum);
-	    		final int outputMsgLength = outputMsgs.length;
+	    		normalizeOutput(outPortNum, outMsgs[outPortNum], outMsgs[outPortNum].length);
+	    	}
+	    }
+	}
 
-	    		Arrays.fill(outputMsgs, 0);
+	/*---------------------------
+	 * TableFactorEngine methods
+	 */
+
+	/**
+	 * Computes unnormalized output message for a single port.
+	 * <p>
+	 * Invoked by {@link #updateEdge(int)}. The default implementation sums the product of the table
+	 * weight and the input messages from every other port over all sparse table entries. Subclasses
+	 * may override this to take advantage of the structure of the factor table.
+	 * <p>
+	 * @param outPortNum is the port whose message is to be computed.
+	 * @param outputMsgs is the output message for that port, which must be completely overwritten.
+	 * @since 0.08
+	 */
+	protected void computeOutput(int outPortNum, double[] outputMsgs)
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+	    final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+	    final double[] values = table.getWeightsSparseUnsafe();
+	    final double[] products = DimpleEnvironment.doubleArrayCache.allocateAtLeast(columns.size());
 
-	    		for (int tableIndex = tableLength; --tableIndex>=0;)
-	    		{
-	    			double prob = values[tableIndex];
-	    			final int[] tableRow = tableIndices[tableIndex];
-	    			int outputIndex = tableRow[outPortNum];
+	    computeProducts(products, columns, values, _tableFactor.getInPortMsgs(), _tableFactor._floatInputMessages,
+	    	_factor.getSiblingCount(), outPortNum);
+	    Arrays.fill(outputMsgs, 0);
+	    columns.sumInto(outPortNum, products, outputMsgs);
 
-	    			int inPortNum = numPorts;
-	    			while (--inPortNum > outPortNum)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			while (--inPortNum >= 0)
-	    				prob *= inMsgs[inPortNum][tableRow[inPortNum]];
-	    			outputMsgs[outputIndex] += prob;
-	    		}
+	    DimpleEnvironment.doubleArrayCache.release(products);
+	}
 
-	    		double sum = 0;
-	    		for (int i = outputMsgLength; --i>=0;)
-	    		{
-	    			sum += outputMsgs[i];
-	    		}
-	    		if (sum == 0)
-	    		{
-	    			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
-	    				+ outPortNum + " on factor " +_factor.getLabel());
-	    		}
+	/**
+	 * Computes unnormalized output messages for all ports.
+	 * <p>
+	 * Invoked by {@link #update()}. The default implementation computes each message independently
+	 * in the same way as {@link #computeOutput(int, double[])}.
+	 * <p>
+	 * @param outputMsgs are the output messages indexed by port, which must be completely overwritten.
+	 * @since 0.08
+	 */
+	protected void computeOutputs(double[][] outputMsgs)
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+	    final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+	    final double[] values = table.getWeightsSparseUnsafe();
+	    final double [][] inMsgs = _tableFactor.getInPortMsgs();
+	    final float[][] floatInMsgs = _tableFactor._floatInputMessages;
+	    final int numPorts = _factor.getSiblingCount();
+	    final double[] products = DimpleEnvironment.doubleArrayCache.allocateAtLeast(columns.size());
+
+	    for (int outPortNum = numPorts; --outPortNum>=0;)
+	    {
+	    	computeProducts(products, columns, values, inMsgs, floatInMsgs, numPorts, outPortNum);
+	    	Arrays.fill(outputMsgs[outPortNum], 0);
+	    	columns.sumInto(outPortNum, products, outputMsgs[outPortNum]);
+	    }
 
-	    		// normalize
+	    DimpleEnvironment.doubleArrayCache.release(products);
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Implementation of {@link #update()} for factors whose sibling edges use single precision messages.
+	 * <p>
+	 * Each output is accumulated and normalized in a double precision working array and rounded when
+	 * it is stored. Because outputs do not depend on each other, the same working array is used for every port.
+	 */
+	private void updateSinglePrecision()
+	{
+		final SumProductTableFactor tableFactor = _tableFactor;
+	    final float[][] floatOutMsgs = tableFactor._floatOutputMessages;
+	    final int numPorts = floatOutMsgs.length;
+	    
+	    int maxLength = 0;
+	    for (float[] floatOutputMsgs : floatOutMsgs)
+	    {
+	    	maxLength = Math.max(maxLength, floatOutputMsgs.length);
+	    }
+	    final double[] outputMsgs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(maxLength);
+	    
+	    for (int outPortNum = numPorts; --outPortNum>=0;)
+	    {
+	    	final float[] floatOutputMsgs = floatOutMsgs[outPortNum];
+	    	final int outputMsgLength = floatOutputMsgs.length;
+	    	
+	    	computeOutput(outPortNum, outputMsgs);
+	    	normalizeOutput(outPortNum, outputMsgs, outputMsgLength);
+	    	
+	    	final double damping = tableFactor._dampingInUse ? tableFactor._dampingParams[outPortNum] : 0.0;
+	    	if (damping != 0)
+	    	{
+	    		final double inverseDamping = 1.0 - damping;
 	    		for (int i = outputMsgLength; --i>=0;)
 	    		{
-	    			outputMsgs[i] /= sum;
+	    			floatOutputMsgs[i] = (float)(inverseDamping*outputMsgs[i] + damping*floatOutputMsgs[i]);
 	    		}
 	    	}
+	    	else
+	    	{
+	    		storeOutput(outputMsgs, floatOutputMsgs);
+	    	}
 	    }
+	    
+	    DimpleEnvironment.doubleArrayCache.release(outputMsgs);
+	}
+	
+	private static void storeOutput(double[] outputMsgs, float[] floatOutputMsgs)
+	{
+		for (int i = floatOutputMsgs.length; --i>=0;)
+		{
+			floatOutputMsgs[i] = (float)outputMsgs[i];
+		}
+	}
+	
+	private void normalizeOutput(int outPortNum, double[] outputMsgs, int outputMsgLength)
+	{
+		double sum = 0;
+		for (int i = outputMsgLength; --i>=0;)
+		{
+			sum += outputMsgs[i];
+		}
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ outPortNum + " on factor " +_factor.getLabel());
+		}
+
+		for (int i = outputMsgLength; --i>=0;)
+		{
+			outputMsgs[i] /= sum;
+		}
+	}
+
+	/**
+	 * Computes the product of the table weight and the input messages for every port other than
+	 * {@code outPortNum} for each sparse table entry.
+	 * <p>
+	 * Each input message is read from {@code floatInputMsgs} if it is single precision, and otherwise from
+	 * {@code inputMsgs}.
+	 */
+	private static void computeProducts(double[] products, SparseIndexColumns columns, double[] values,
+		double[][] inputMsgs, float[][] floatInputMsgs, int numPorts, int outPortNum)
+	{
+		System.arraycopy(values, 0, products, 0, columns.size());
+		for (int inPortNum = numPorts; --inPortNum>=0;)
+		{
+			if (inPortNum != outPortNum)
+			{
+				final float[] floatInputMsg = floatInputMsgs[inPortNum];
+				if (floatInputMsg.length > 0)
+				{
+					columns.multiplyFrom(inPortNum, products, floatInputMsg);
+				}
+				else
+				{
+					columns.multiplyFrom(inPortNum, products, inputMsgs[inPortNum]);
+				}
+			}
+		}
 	}
 }
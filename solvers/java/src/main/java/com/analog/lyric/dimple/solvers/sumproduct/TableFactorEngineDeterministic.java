@@ -0,0 +1,260 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Sum-product table factor engine for deterministic directed factor tables.
+ * <p>
+ * A {@linkplain IFactorTable#isDeterministicDirected() deterministic directed} table has exactly one
+ * sparse entry for each joint value of its inputs, which determines the value of its outputs, and all
+ * of its entries have the same weight. Because the weights are all the same, they can be ignored, since
+ * the messages will be normalized anyway.
+ * <p>
+ * The engine enumerates the joint values of the inputs directly and looks up the output index for each
+ * in a map built from the table, so it does not need the table's sparse index columns. All of the outgoing
+ * messages are computed in a single pass, in which the product of the messages from every port but one is
+ * computed for each port using prefix and suffix products. This takes time proportional to the number of
+ * entries times the degree instead of the number of entries times the square of the degree.
+ * <p>
+ * @since 0.08
+ */
+public class TableFactorEngineDeterministic extends TableFactorEngine
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * The table from which the index maps were built.
+	 */
+	private @Nullable IFactorTable _table = null;
+	
+	private int[] _inputPorts = new int[0];
+	private int[] _inputSizes = new int[0];
+	
+	/**
+	 * Change in input index when the element index of the corresponding input port is incremented.
+	 */
+	private int[] _inputStrides = new int[0];
+	
+	private int[] _outputPorts = new int[0];
+	
+	/**
+	 * Output index for each input index.
+	 */
+	private int[] _outputIndices = new int[0];
+	
+	/**
+	 * Element indices of the output ports for each output index, with the elements for output index
+	 * {@code i} starting at {@code i * _outputPorts.length}.
+	 */
+	private int[] _outputElements = new int[0];
+	
+	/**
+	 * Element index of each port for the current entry.
+	 */
+	private int[] _elements = new int[0];
+	
+	/*--------------
+	 * Construction
+	 */
+
+	public TableFactorEngineDeterministic(SumProductTableFactor tableFactor)
+	{
+		super(tableFactor);
+		indexTable(tableFactor.getFactorTable());
+	}
+
+	/*---------------------------
+	 * TableFactorEngine methods
+	 */
+
+	@Override
+	protected void computeOutput(int outPortNum, double[] outputMsgs)
+	{
+		final double[][] inputMsgs = _tableFactor.getInPortMsgs();
+		final int numPorts = inputMsgs.length;
+		final int[] elements = firstEntry();
+
+		Arrays.fill(outputMsgs, 0);
+
+		for (int inputIndex = 0; inputIndex >= 0; inputIndex = nextEntry(inputIndex))
+		{
+			setOutputElements(inputIndex);
+			
+			double product = 1.0;
+			for (int inPortNum = numPorts; --inPortNum>=0;)
+			{
+				if (inPortNum != outPortNum)
+				{
+					product *= inputMsgs[inPortNum][elements[inPortNum]];
+				}
+			}
+			outputMsgs[elements[outPortNum]] += product;
+		}
+	}
+
+	@Override
+	protected void computeOutputs(double[][] outputMsgs)
+	{
+		final double[][] inputMsgs = _tableFactor.getInPortMsgs();
+		final int numPorts = inputMsgs.length;
+		final double[] suffixes = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final int[] elements = firstEntry();
+
+		for (double[] outputMsg : outputMsgs)
+		{
+			Arrays.fill(outputMsg, 0);
+		}
+
+		for (int inputIndex = 0; inputIndex >= 0; inputIndex = nextEntry(inputIndex))
+		{
+			setOutputElements(inputIndex);
+
+			// suffixes[port] is the product of the inputs after port
+			double product = 1.0;
+			for (int port = numPorts; --port>=0;)
+			{
+				suffixes[port] = product;
+				product *= inputMsgs[port][elements[port]];
+			}
+
+			// Multiply by product of the inputs before port
+			product = 1.0;
+			for (int port = 0; port < numPorts; ++port)
+			{
+				outputMsgs[port][elements[port]] += product * suffixes[port];
+				product *= inputMsgs[port][elements[port]];
+			}
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(suffixes);
+	}
+	
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Sets the input elements to the first joint input value, rebuilding the index maps if the
+	 * factor's table has changed, and returns the element index array.
+	 */
+	private int[] firstEntry()
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+		if (table != _table)
+		{
+			indexTable(table);
+		}
+		
+		final int[] elements = _elements;
+		for (int port : _inputPorts)
+		{
+			elements[port] = 0;
+		}
+		return elements;
+	}
+	
+	/**
+	 * Advances the input elements to the next joint input value and returns its input index, or
+	 * -1 if {@code inputIndex} was the last one.
+	 */
+	private int nextEntry(int inputIndex)
+	{
+		final int[] elements = _elements;
+		for (int i = 0, n = _inputPorts.length; i < n; ++i)
+		{
+			final int port = _inputPorts[i];
+			if (++elements[port] < _inputSizes[i])
+			{
+				return inputIndex + _inputStrides[i];
+			}
+			elements[port] = 0;
+			inputIndex -= _inputStrides[i] * (_inputSizes[i] - 1);
+		}
+		return -1;
+	}
+	
+	private void setOutputElements(int inputIndex)
+	{
+		final int[] outputPorts = _outputPorts;
+		final int nOutputs = outputPorts.length;
+		final int offset = _outputIndices[inputIndex] * nOutputs;
+		for (int i = 0; i < nOutputs; ++i)
+		{
+			_elements[outputPorts[i]] = _outputElements[offset + i];
+		}
+	}
+	
+	private void indexTable(IFactorTable table)
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		final int[] inputPorts = requireNonNull(domains.getInputDomainIndices());
+		final int[] outputPorts = requireNonNull(domains.getOutputDomainIndices());
+		final int nInputs = inputPorts.length;
+		final int nOutputs = outputPorts.length;
+		final int[] indices = new int[domains.size()];
+		
+		final int[] inputSizes = new int[nInputs];
+		final int[] inputStrides = new int[nInputs];
+		for (int i = 0; i < nInputs; ++i)
+		{
+			final int port = inputPorts[i];
+			inputSizes[i] = domains.getDomainSize(port);
+			indices[port] = 1;
+			inputStrides[i] = domains.inputIndexFromIndices(indices);
+			indices[port] = 0;
+		}
+		
+		final int[] outputIndices = new int[domains.getInputCardinality()];
+		for (int si = table.sparseSize(); --si>=0;)
+		{
+			final int joint = table.sparseIndexToJointIndex(si);
+			outputIndices[domains.inputIndexFromJointIndex(joint)] = domains.outputIndexFromJointIndex(joint);
+		}
+		
+		final int outputCardinality = domains.getOutputCardinality();
+		final int[] outputElements = new int[outputCardinality * nOutputs];
+		for (int outputIndex = 0; outputIndex < outputCardinality; ++outputIndex)
+		{
+			domains.outputIndexToIndices(outputIndex, indices);
+			for (int i = 0; i < nOutputs; ++i)
+			{
+				outputElements[outputIndex * nOutputs + i] = indices[outputPorts[i]];
+			}
+		}
+		
+		_inputPorts = inputPorts;
+		_inputSizes = inputSizes;
+		_inputStrides = inputStrides;
+		_outputPorts = outputPorts;
+		_outputIndices = outputIndices;
+		_outputElements = outputElements;
+		_elements = new int[domains.size()];
+		_table = table;
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct;
+
+import java.util.Arrays;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.SparseIndexColumns;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+
+/**
+ * Sum-product table factor engine for equality constraints.
+ * <p>
+ * Used for tables whose dimensions all have the same size and whose only non-zero entries have the
+ * same element index in every dimension, such as the tables for
+ * {@link com.analog.lyric.dimple.factorfunctions.Equality Equality} factors without smoothing. For
+ * such a table, the message to each variable is just the product of the table weight and the messages
+ * from all of the other variables for each element index, so all of the messages are computed using
+ * prefix and suffix products in time proportional to the degree times the domain size, instead of
+ * the square of the degree times the domain size.
+ * <p>
+ * @since 0.08
+ */
+public class TableFactorEngineEquality extends TableFactorEngine
+{
+	/*--------------
+	 * Construction
+	 */
+
+	public TableFactorEngineEquality(SumProductTableFactor tableFactor)
+	{
+		super(tableFactor);
+	}
+
+	/**
+	 * True if {@code table} has the form required by this engine.
+	 * <p>
+	 * That is, it has at least two dimensions, all of the same size, and every sparse entry
+	 * has the same element index in every dimension.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static boolean supportsTable(IFactorTable table)
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		final int dimensions = domains.size();
+		if (dimensions < 2)
+		{
+			return false;
+		}
+
+		final int domainSize = domains.getDomainSize(0);
+		for (int i = 1; i < dimensions; ++i)
+		{
+			if (domains.getDomainSize(i) != domainSize)
+			{
+				return false;
+			}
+		}
+
+		if (table.countNonZeroWeights() > domainSize)
+		{
+			return false;
+		}
+
+		final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+		for (int si = columns.size(); --si>=0;)
+		{
+			final int index = columns.get(si, 0);
+			for (int i = 1; i < dimensions; ++i)
+			{
+				if (columns.get(si, i) != index)
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/*---------------------------
+	 * TableFactorEngine methods
+	 */
+
+	@Override
+	protected void computeOutput(int outPortNum, double[] outputMsgs)
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+		final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+		final double[] weights = table.getWeightsSparseUnsafe();
+		final double[][] inputMsgs = _tableFactor.getInPortMsgs();
+		final int numPorts = inputMsgs.length;
+
+		Arrays.fill(outputMsgs, 0);
+
+		for (int si = columns.size(); --si>=0;)
+		{
+			final int index = columns.get(si, 0);
+			double product = weights[si];
+			for (int inPortNum = numPorts; --inPortNum>=0;)
+			{
+				if (inPortNum != outPortNum)
+				{
+					product *= inputMsgs[inPortNum][index];
+				}
+			}
+			outputMsgs[index] = product;
+		}
+	}
+
+	@Override
+	protected void computeOutputs(double[][] outputMsgs)
+	{
+		final IFactorTable table = _tableFactor.getFactorTable();
+		final SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+		final double[] weights = table.getWeightsSparseUnsafe();
+		final double[][] inputMsgs = _tableFactor.getInPortMsgs();
+		final int numPorts = inputMsgs.length;
+		final double[] suffixes = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+
+		for (double[] outputMsg : outputMsgs)
+		{
+			Arrays.fill(outputMsg, 0);
+		}
+
+		for (int si = columns.size(); --si>=0;)
+		{
+			final int index = columns.get(si, 0);
+
+			// suffixes[port] is the product of the inputs after port
+			double product = 1.0;
+			for (int port = numPorts; --port>=0;)
+			{
+				suffixes[port] = product;
+				product *= inputMsgs[port][index];
+			}
+
+			// Multiply by weight and the product of the inputs before port
+			product = weights[si];
+			for (int port = 0; port < numPorts; ++port)
+			{
+				outputMsgs[port][index] = product * suffixes[port];
+				product *= inputMsgs[port][index];
+			}
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(suffixes);
+	}
+}
@@ -0,0 +1,537 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.core.SolverFactorCreationException;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+/**
+ * Custom sum-product factor for {@link Sum} and {@link Subtract} over discrete variables with
+ * integer domains.
+ * <p>
+ * Both functions constrain a signed sum of their arguments to be zero. The message to each variable is
+ * computed from the distribution of the signed sum of all of the other variables, which is the convolution
+ * of their input messages. All of the outgoing messages are computed from prefix and suffix convolutions
+ * of the inputs, so that a full update requires a number of convolutions linear in the number of variables,
+ * instead of visiting a factor table whose size is exponential in the number of variables. Large
+ * convolutions are computed using the FFT.
+ * <p>
+ * Domains do not need to be contiguous, but the cost of the convolutions is proportional to the range
+ * of the sum of the domains, not their sizes. Smoothing is not supported. Constant arguments must have
+ * integer values.
+ * <p>
+ * @since 0.08
+ */
+public class CustomDiscreteSum extends SumProductTableFactor
+{
+	/*-------
+	 * State
+	 */
+
+	/**
+	 * Convolutions in which either argument is no longer than this are computed directly instead of
+	 * using the FFT.
+	 */
+	private static final int MAX_DIRECT_CONVOLUTION_LENGTH = 64;
+
+	/**
+	 * Maximum range of values that may be taken by the signed sum of all of the variables.
+	 */
+	private static final long MAX_SUM_RANGE = 1L << 24;
+
+	/**
+	 * Multiple of the machine epsilon times the log of the FFT size below which the values of an FFT
+	 * convolution are treated as round-off error.
+	 */
+	private static final double FFT_ROUND_OFF_FACTOR = 16;
+
+	private final int _numPorts;
+
+	/**
+	 * Sign of each variable in the signed sum, which is either 1 or -1.
+	 */
+	private final int[] _signs;
+
+	/**
+	 * Integer value of each domain element indexed by port and element index.
+	 */
+	private final int[][] _values;
+
+	/**
+	 * Signed sum of constant arguments.
+	 */
+	private final long _constantSum;
+
+	/**
+	 * Smallest signed value of each variable, indexed by port.
+	 */
+	private final int[] _minSignedValues;
+
+	/**
+	 * Number of integers in the range of the signed sum of all of the variables.
+	 */
+	private final int _sumLength;
+
+	/**
+	 * FFT instances indexed by size.
+	 */
+	private final Map<Integer, DoubleFFT_1D> _ffts = new HashMap<>();
+
+	/*
+	 * Scratch distributions are reused across updates, since updates of the same factor are never run
+	 * concurrently. Those that may be large are only allocated by initialize().
+	 */
+
+	/**
+	 * Distribution of the signed value of each variable, indexed by port.
+	 */
+	private final Distribution[] _inputs;
+
+	/**
+	 * Distribution of the signed sum of the variables after each port, indexed by port.
+	 */
+	private Distribution[] _suffixes = new Distribution[0];
+
+	/**
+	 * Distributions with capacity for the signed sum of all of the variables.
+	 */
+	private Distribution _partialSum = Distribution.ZERO, _nextPartialSum = Distribution.ZERO, _others = Distribution.ZERO;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomDiscreteSum(Factor factor, SumProductSolverGraph parent)
+	{
+		super(factor, parent);
+
+		final FactorFunction function = factor.getFactorFunction();
+		if (!function.isDeterministicDirected())
+		{
+			throw new SolverFactorCreationException("%s does not support smoothing", getClass().getSimpleName());
+		}
+		final boolean subtract = function instanceof Subtract;
+
+		_numPorts = factor.getSiblingCount();
+		_signs = new int[_numPorts];
+		_values = new int[_numPorts][];
+		_minSignedValues = new int[_numPorts];
+		_inputs = new Distribution[_numPorts];
+
+		long constantSum = 0, range = 0;
+		for (int arg = 0, port = 0, nArgs = factor.getArgumentCount(); arg < nArgs; ++arg)
+		{
+			// The output is the first argument. For Subtract, only the second argument is added.
+			final int sign = arg == 0 || subtract && arg > 1 ? -1 : 1;
+
+			final Value constant = factor.hasConstantAtIndex(arg) ? factor.getConstantValueByIndex(arg) : null;
+			if (constant != null)
+			{
+				final double value = constant.getDouble();
+				if (value != Math.rint(value))
+				{
+					throw new SolverFactorCreationException("%s requires integer constants but got %s",
+						getClass().getSimpleName(), value);
+				}
+				constantSum += sign * (long)value;
+				continue;
+			}
+
+			final Variable var = factor.getSibling(port);
+			final DiscreteDomain domain = var.getDomain().asDiscrete();
+			if (domain == null || !domain.isIntegral())
+			{
+				throw new SolverFactorCreationException("%s requires variables with integer domains but '%s' has %s",
+					getClass().getSimpleName(), var, var.getDomain());
+			}
+
+			final int[] values = new int[domain.size()];
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = 0; i < values.length; ++i)
+			{
+				values[i] = domain.getIntElement(i);
+				min = Math.min(min, values[i]);
+				max = Math.max(max, values[i]);
+			}
+			range += (long)max - min;
+
+			_signs[port] = sign;
+			_values[port] = values;
+			_minSignedValues[port] = sign > 0 ? min : -max;
+			_inputs[port] = new Distribution(max - min + 1);
+			++port;
+		}
+
+		if (range >= MAX_SUM_RANGE)
+		{
+			throw new SolverFactorCreationException("%s does not support domains with combined range of %d",
+				getClass().getSimpleName(), range);
+		}
+
+		_constantSum = constantSum;
+		_sumLength = (int)range + 1;
+	}
+
+	/*---------------
+	 * SNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final int numPorts = _numPorts;
+		final Distribution[] inputs = _inputs, suffixes = _suffixes;
+		for (int port = 0; port < numPorts; ++port)
+		{
+			inputDistribution(port);
+		}
+
+		// suffixes[port] is the distribution of the signed sum of the inputs after port
+		for (int port = numPorts - 1; --port >= 0;)
+		{
+			convolve(inputs[port + 1], suffixes[port + 1], suffixes[port]);
+		}
+
+		// Combine with the distribution of the signed sum of the inputs before port
+		Distribution prefix = Distribution.ZERO;
+		for (int port = 0; port < numPorts; ++port)
+		{
+			convolve(prefix, suffixes[port], _others);
+			setOutput(port, _others);
+			if (port + 1 < numPorts)
+			{
+				prefix = convolve(prefix, inputs[port], nextPartialSum(prefix));
+			}
+		}
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		Distribution others = Distribution.ZERO;
+		for (int port = 0; port < _numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				others = convolve(others, inputDistribution(port), nextPartialSum(others));
+			}
+		}
+		setOutput(outPortNum, others);
+	}
+
+	/*---------------------
+	 * ISolverNode methods
+	 */
+
+	@Override
+	public void initialize()
+	{
+		super.initialize();
+
+		final int numPorts = _numPorts;
+		if (_suffixes.length != numPorts)
+		{
+			_suffixes = new Distribution[numPorts];
+			int suffixLength = 1;
+			for (int port = numPorts; --port >= 0;)
+			{
+				_suffixes[port] = port + 1 < numPorts ? new Distribution(suffixLength) : Distribution.ZERO;
+				suffixLength += _inputs[port]._weights.length - 1;
+			}
+			_partialSum = new Distribution(_sumLength);
+			_nextPartialSum = new Distribution(_sumLength);
+			_others = new Distribution(_sumLength);
+		}
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+	
+	/**
+	 * False, since updates use {@link #_inputMessages} and {@link #_outputMessages} directly.
+	 */
+	@Override
+	protected boolean supportsSinglePrecisionMessages()
+	{
+		return false;
+	}
+
+	/**
+	 * Does nothing, since updates use neither a table factor engine nor the factor table.
+	 */
+	@Override
+	public void setupTableFactorEngine()
+	{
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Computes normalized distribution of the signed value of the variable on given port and returns it.
+	 */
+	private Distribution inputDistribution(int port)
+	{
+		final double[] inMsg = _inputMessages[port];
+		final int[] values = _values[port];
+		final int sign = _signs[port];
+		final int min = _minSignedValues[port];
+		final Distribution input = _inputs[port];
+		final double[] weights = input._weights;
+
+		Arrays.fill(weights, 0.0);
+		for (int i = 0; i < values.length; ++i)
+		{
+			weights[sign * values[i] - min] += inMsg[i];
+		}
+
+		return input.set(min, weights.length).normalize();
+	}
+
+	/**
+	 * Sets output message on given port given the distribution of the signed sum of all of the other
+	 * variables, applying damping if enabled.
+	 */
+	private void setOutput(int port, Distribution others)
+	{
+		final double[] outMsg = _outputMessages[port];
+		final int[] values = _values[port];
+		final int sign = _signs[port];
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		final double[] saved = damping != 0.0 ? DimpleEnvironment.doubleArrayCache.allocateAtLeast(values.length) : outMsg;
+		if (damping != 0.0)
+		{
+			System.arraycopy(outMsg, 0, saved, 0, values.length);
+		}
+
+		// The variable's signed value plus the sum of the others plus the constants must be zero.
+		double sum = 0.0;
+		for (int i = 0; i < values.length; ++i)
+		{
+			sum += outMsg[i] = others.get(-_constantSum - sign * values[i]);
+		}
+
+		if (sum == 0)
+		{
+			throw new DimpleException("Update failed in SumProduct Solver.  All probabilities were zero when calculating message for port "
+				+ port + " on factor " + _model.getLabel());
+		}
+
+		for (int i = 0; i < values.length; ++i)
+		{
+			outMsg[i] /= sum;
+		}
+
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			for (int i = 0; i < values.length; ++i)
+			{
+				outMsg[i] = inverseDamping * outMsg[i] + damping * saved[i];
+			}
+			DimpleEnvironment.doubleArrayCache.release(saved);
+		}
+	}
+
+	/**
+	 * Returns the scratch partial sum distribution that is not {@code current}.
+	 */
+	private Distribution nextPartialSum(Distribution current)
+	{
+		return current == _partialSum ? _nextPartialSum : _partialSum;
+	}
+
+	/**
+	 * Computes normalized distribution of the sum of two independent values with given distributions
+	 * into {@code result}, which must be distinct from both, and returns it.
+	 */
+	private Distribution convolve(Distribution a, Distribution b, Distribution result)
+	{
+		final double[] x = a._weights, y = b._weights, z = result._weights;
+		final int xLength = a._length, yLength = b._length;
+		final int length = xLength + yLength - 1;
+
+		if (Math.min(xLength, yLength) <= MAX_DIRECT_CONVOLUTION_LENGTH)
+		{
+			Arrays.fill(z, 0, length, 0.0);
+			for (int i = 0; i < xLength; ++i)
+			{
+				final double xi = x[i];
+				if (xi != 0)
+				{
+					for (int j = 0; j < yLength; ++j)
+					{
+						z[i + j] += xi * y[j];
+					}
+				}
+			}
+		}
+		else
+		{
+			final int size = Integer.highestOneBit(length - 1) << 1;
+			DoubleFFT_1D fft = _ffts.get(size);
+			if (fft == null)
+			{
+				_ffts.put(size, fft = new DoubleFFT_1D(size));
+			}
+
+			// Interleaved complex arrays, zero padded
+			final double[] fx = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 * size);
+			final double[] fy = DimpleEnvironment.doubleArrayCache.allocateAtLeast(2 * size);
+			Arrays.fill(fx, 0, 2 * size, 0.0);
+			Arrays.fill(fy, 0, 2 * size, 0.0);
+			for (int i = 0; i < xLength; ++i)
+			{
+				fx[2 * i] = x[i];
+			}
+			for (int i = 0; i < yLength; ++i)
+			{
+				fy[2 * i] = y[i];
+			}
+
+			fft.complexForward(fx);
+			fft.complexForward(fy);
+
+			// Pointwise multiply
+			for (int i = 0; i < 2 * size; i += 2)
+			{
+				final double re = fx[i] * fy[i] - fx[i + 1] * fy[i + 1];
+				final double im = fx[i] * fy[i + 1] + fx[i + 1] * fy[i];
+				fx[i] = re;
+				fx[i + 1] = im;
+			}
+
+			fft.complexInverse(fx, true);
+
+			// Both arguments are normalized, so the round-off error in each value is on the order of
+			// the machine epsilon times the log of the size. Values within that of zero, including
+			// negative ones, are set to zero.
+			final double tolerance = FFT_ROUND_OFF_FACTOR * Math.ulp(1.0) * Integer.numberOfTrailingZeros(size);
+			for (int i = 0; i < length; ++i)
+			{
+				final double value = fx[2 * i];
+				z[i] = value > tolerance ? value : 0.0;
+			}
+
+			DimpleEnvironment.doubleArrayCache.release(fx);
+			DimpleEnvironment.doubleArrayCache.release(fy);
+		}
+
+		return result.set(a._offset + b._offset, length).normalize();
+	}
+
+	/*---------------
+	 * Inner classes
+	 */
+
+	/**
+	 * Distribution over a contiguous range of integers, whose weights are stored in a reusable
+	 * array that may be longer than the range.
+	 */
+	private static final class Distribution
+	{
+		/**
+		 * Distribution with all of its mass at zero. Must not be used as the result of a convolution.
+		 */
+		private static final Distribution ZERO = new Distribution(new double[] { 1.0 }).set(0, 1);
+
+		/**
+		 * The integer whose weight is at index zero.
+		 */
+		private int _offset;
+
+		/**
+		 * Number of integers in the range.
+		 */
+		private int _length;
+
+		private final double[] _weights;
+
+		private Distribution(double[] weights)
+		{
+			_weights = weights;
+		}
+
+		private Distribution(int capacity)
+		{
+			this(new double[capacity]);
+		}
+
+		private Distribution set(int offset, int length)
+		{
+			_offset = offset;
+			_length = length;
+			return this;
+		}
+
+		private double get(long value)
+		{
+			final long i = value - _offset;
+			return i >= 0 && i < _length ? _weights[(int)i] : 0.0;
+		}
+
+		/**
+		 * Scales weights to sum to one, to avoid underflow when convolving many distributions.
+		 */
+		private Distribution normalize()
+		{
+			final double[] weights = _weights;
+			final int length = _length;
+			double sum = 0.0;
+			for (int i = 0; i < length; ++i)
+			{
+				sum += weights[i];
+			}
+			if (sum > 0 && sum != 1.0)
+			{
+				for (int i = 0; i < length; ++i)
+				{
+					weights[i] /= sum;
+				}
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.solvers.sumproduct.customFactors;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.solvers.core.SolverFactorCreationException;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+
+/**
+ * Custom sum-product factor for {@link Xor}.
+ * <p>
+ * Messages are computed in the Hadamard (or "tanh rule") domain, in which the message for each binary
+ * variable is represented by the difference of its normalized weights, p(0) - p(1). In that domain the
+ * message to each variable is simply the product of the messages from all of the other variables, so
+ * all outgoing messages can be computed in time linear in the number of variables using prefix and
+ * suffix products, rather than in time proportional to the size of the factor table, which is
+ * exponential in the number of variables.
+ * <p>
+ * All variables must have binary domains whose first and second elements represent false (or 0) and
+ * true (or 1) respectively, as with {@link com.analog.lyric.dimple.model.variables.Bit Bit}. Constant
+ * arguments are supported, as is damping. The factor table is only computed if it is needed for some
+ * other purpose, such as computing the factor belief.
+ * <p>
+ * @since 0.08
+ */
+public class CustomXor extends SumProductTableFactor
+{
+	/*-------
+	 * State
+	 */
+
+	private final int _numPorts;
+
+	/**
+	 * Hadamard domain value of the constant arguments: 1 if their parity is even, else -1.
+	 */
+	private final double _constantParity;
+
+	/*--------------
+	 * Construction
+	 */
+
+	public CustomXor(Factor factor, SumProductSolverGraph parent)
+	{
+		super(factor, parent);
+
+		_numPorts = factor.getSiblingCount();
+		for (int i = 0; i < _numPorts; ++i)
+		{
+			final Variable var = factor.getSibling(i);
+			if (!isBooleanDomain(var.getDomain().asDiscrete()))
+			{
+				throw new SolverFactorCreationException("%s requires variables with boolean domains but '%s' has %s",
+					getClass().getSimpleName(), var, var.getDomain());
+			}
+		}
+
+		int constantParity = 0;
+		if (factor.hasConstants())
+		{
+			for (Value value : factor.getConstantValues())
+			{
+				if (value.getBoolean())
+				{
+					constantParity ^= 1;
+				}
+			}
+		}
+		_constantParity = constantParity == 0 ? 1.0 : -1.0;
+	}
+
+	/*---------------
+	 * SNode methods
+	 */
+
+	@Override
+	protected void doUpdate()
+	{
+		final int numPorts = _numPorts;
+		final double[] inputs = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+		final double[] suffixes = DimpleEnvironment.doubleArrayCache.allocateAtLeast(numPorts);
+
+		// suffixes[port] is the product of the constant parity and the inputs after port
+		double product = _constantParity;
+		for (int port = numPorts; --port >= 0;)
+		{
+			suffixes[port] = product;
+			product *= inputs[port] = inputHadamard(port);
+		}
+
+		// Multiply by product of inputs before port
+		product = 1.0;
+		for (int port = 0; port < numPorts; ++port)
+		{
+			setOutput(port, product * suffixes[port]);
+			product *= inputs[port];
+		}
+
+		DimpleEnvironment.doubleArrayCache.release(inputs);
+		DimpleEnvironment.doubleArrayCache.release(suffixes);
+	}
+
+	@Override
+	public void doUpdateEdge(int outPortNum)
+	{
+		double product = _constantParity;
+		for (int port = 0; port < _numPorts; ++port)
+		{
+			if (port != outPortNum)
+			{
+				product *= inputHadamard(port);
+			}
+		}
+		setOutput(outPortNum, product);
+	}
+
+	/*--------------------------
+	 * STableFactorBase methods
+	 */
+
+	@Override
+	protected boolean createFactorTableOnInit()
+	{
+		return false;
+	}
+
+	/*-------------------------------
+	 * SumProductTableFactor methods
+	 */
+	
+	/**
+	 * False, since updates use {@link #_inputMessages} and {@link #_outputMessages} directly.
+	 */
+	@Override
+	protected boolean supportsSinglePrecisionMessages()
+	{
+		return false;
+	}
+
+	/**
+	 * Does nothing, since updates use neither a table factor engine nor the factor table.
+	 */
+	@Override
+	public void setupTableFactorEngine()
+	{
+	}
+
+	/*-----------------
+	 * Private methods
+	 */
+
+	/**
+	 * Returns p(0) - p(1) for normalized input message on given port.
+	 */
+	private double inputHadamard(int port)
+	{
+		final double[] inMsg = _inputMessages[port];
+		final double sum = inMsg[0] + inMsg[1];
+		return sum != 0 ? (inMsg[0] - inMsg[1]) / sum : 0.0;
+	}
+
+	/**
+	 * Sets output message on given port from its Hadamard domain value, applying damping if enabled.
+	 */
+	private void setOutput(int port, double hadamard)
+	{
+		final double[] outMsg = _outputMessages[port];
+		final double p0 = (1 + hadamard) / 2, p1 = (1 - hadamard) / 2;
+
+		final double damping = _dampingInUse ? _dampingParams[port] : 0.0;
+		if (damping != 0.0)
+		{
+			final double inverseDamping = 1 - damping;
+			outMsg[0] = inverseDamping * p0 + damping * outMsg[0];
+			outMsg[1] = inverseDamping * p1 + damping * outMsg[1];
+		}
+		else
+		{
+			outMsg[0] = p0;
+			outMsg[1] = p1;
+		}
+	}
+
+	private static boolean isBooleanDomain(@Nullable DiscreteDomain domain)
+	{
+		return domain != null && domain.size() == 2 &&
+			!Value.create(domain.getElement(0)).getBoolean() && Value.create(domain.getElement(1)).getBoolean();
+	}
+}
@@ -16,15 +16,17 @@
 
 package com.analog.lyric.dimple.solvers.sumproduct.sampledfactor;
 
+import static java.util.Objects.*;
+
+import com.analog.lyric.collect.PrimitiveIterator;
 import com.analog.lyric.dimple.model.variables.Real;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
 import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
 import com.analog.lyric.dimple.solvers.sumproduct.SumProductNormalEdge;
 import com.analog.lyric.util.misc.Internal;
 
-import cern.colt.list.DoubleArrayList;
-
 /**
  * 
  * @since 0.08
@@ -75,18 +77,16 @@ class SumProductSampledNormalEdge extends SumProductNormalEdge
 	{
 		final NormalParameters outputMessage = factorToVarMsg;
 		
-		// Get the raw sample array to avoid making a copy; this is unsafe, so be careful not to modify it
-		@SuppressWarnings("null")
-		DoubleArrayList sampleValues = _svar._getSampleArrayUnsafe();
-		@SuppressWarnings("null")
-		int numSamples = sampleValues.size();
+		// Read the saved samples directly to avoid making a copy
+		final GibbsSampleStore.RealColumn sampleValues = requireNonNull(_svar.getSampleColumn());
+		final int numSamples = sampleValues.size();
 
 		// For all sample values, compute the output message
 		double sum = 0;
 		double sumsq = 0;
-		for (int i = 0; i < numSamples; i++)
+		for (PrimitiveIterator.OfDouble iter = sampleValues.iterator(); iter.hasNext();)
 		{
-			double tmp = sampleValues.get(i);
+			double tmp = iter.nextDouble();
 			if (Double.isInfinite(tmp) || Double.isNaN(tmp))
 			{
 				outputMessage.setNull();
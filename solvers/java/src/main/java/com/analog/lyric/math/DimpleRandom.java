@@ -24,6 +24,7 @@ import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomAdaptor;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
 
 import com.analog.lyric.dimple.environment.DimpleEnvironment;
 
@@ -36,6 +37,12 @@ import net.jcip.annotations.NotThreadSafe;
  * Most users will want to use {@link DimpleEnvironment#activeRandom()} rather than constructing
  * a new instance.
  * <p>
+ * Instances are not thread safe, so code that samples concurrently should give each thread
+ * its own stream. Lightweight streams backed by a {@link Xoroshiro128PlusGenerator} can be
+ * created using {@link #createStream(long)}, and independent streams can be deterministically
+ * derived from them using {@link #split(long)}, so that the results of parallel computations do
+ * not depend on the number of threads or the order in which they are scheduled.
+ * <p>
  * @since 0.08
  * @author Christopher Barber
  */
@@ -50,15 +57,21 @@ public class DimpleRandom extends RandomAdaptor
 
 	final RandomGenerator _randGenerator;
 	
-	private BetaDistribution _randBeta;
-	private BinomialDistribution _randBinomial;
+	/**
+	 * Same as {@link #_randGenerator} if it is a {@link Xoroshiro128PlusGenerator}, in which case
+	 * calls are made directly on this field to avoid the cost of interface dispatch.
+	 */
+	private final @Nullable Xoroshiro128PlusGenerator _fastGenerator;
+	
+	// Distribution objects are created lazily, since many streams will never use them.
+	private @Nullable BetaDistribution _randBeta;
+	private @Nullable BinomialDistribution _randBinomial;
 
 	// For now, continue to use the CERN Gamma implementation. It is somewhere between 40-100% faster
 	// and the Apache implementation causes tests to fail in a way that suggest that it might not be as
 	// numerically accurate or stable. We should look at the next Apache release (3.6) to see if it does
 	// anything about this...
-	private RandomEngine _randEngine;
-	private cern.jet.random.Gamma _randGamma;
+	private @Nullable cern.jet.random.Gamma _randGamma;
 	
 	private long _seed;
 	
@@ -75,11 +88,9 @@ public class DimpleRandom extends RandomAdaptor
 	{
 		super(randomGenerator);
 		_randGenerator = randomGenerator;
+		_fastGenerator = randomGenerator instanceof Xoroshiro128PlusGenerator ?
+			(Xoroshiro128PlusGenerator)randomGenerator : null;
 		_seed = seed;
-		_randEngine = new cern.jet.random.engine.MersenneTwister((int)seed);
-		_randGamma = new cern.jet.random.Gamma(1, 1, _randEngine);
-		_randBeta = new BetaDistribution(_randGenerator, 1, 1);
-		_randBinomial = new BinomialDistribution(_randGenerator, 1, 0.5);
 	}
 	
 	/**
@@ -115,6 +126,21 @@ public class DimpleRandom extends RandomAdaptor
 		this(new MersenneTwister());
 		setSeed(nextLong());
 	}
+	
+	/**
+	 * Creates a lightweight random stream with given seed.
+	 * <p>
+	 * The stream uses a {@link Xoroshiro128PlusGenerator}, which is much cheaper to create than
+	 * the default generator and is also used for {@link #nextGamma} samples, so that all values
+	 * drawn from the stream are determined by its seed. Independent child streams can be derived
+	 * from the stream using {@link #split(long)}.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static DimpleRandom createStream(long seed)
+	{
+		return new DimpleRandom(new Xoroshiro128PlusGenerator(seed), seed);
+	}
 
 	/*----------------
 	 * Random methods
@@ -125,8 +151,7 @@ public class DimpleRandom extends RandomAdaptor
 	{
 		super.setSeed(seed);
 		_seed = seed;
-		_randEngine = new cern.jet.random.engine.MersenneTwister((int)seed);
-		_randGamma = new cern.jet.random.Gamma(1, 1, _randEngine);
+		_randGamma = null;
 	}
 	
 	@Override
@@ -148,10 +173,70 @@ public class DimpleRandom extends RandomAdaptor
 		setSeed(lseed);
 	}
 	
+	@Override
+	public double nextDouble()
+	{
+		final Xoroshiro128PlusGenerator fast = _fastGenerator;
+		return fast != null ? fast.nextDouble() : _randGenerator.nextDouble();
+	}
+	
+	@Override
+	public int nextInt()
+	{
+		final Xoroshiro128PlusGenerator fast = _fastGenerator;
+		return fast != null ? fast.nextInt() : _randGenerator.nextInt();
+	}
+	
+	@Override
+	public int nextInt(int n)
+	{
+		final Xoroshiro128PlusGenerator fast = _fastGenerator;
+		return fast != null ? fast.nextInt(n) : _randGenerator.nextInt(n);
+	}
+	
+	@Override
+	public long nextLong()
+	{
+		final Xoroshiro128PlusGenerator fast = _fastGenerator;
+		return fast != null ? fast.nextLong() : _randGenerator.nextLong();
+	}
+	
 	/*----------------------
 	 * DimpleRandom methods
 	 */
 	
+	/**
+	 * Creates a new lightweight random stream seeded from the next value of this one.
+	 * <p>
+	 * This advances the state of this object. The returned stream can be used as the root of a tree
+	 * of independent streams using {@link #split(long)}.
+	 * <p>
+	 * @since 0.08
+	 * @see #createStream(long)
+	 */
+	public DimpleRandom fork()
+	{
+		return createStream(nextLong());
+	}
+	
+	/**
+	 * Returns independent random stream identified by {@code index}.
+	 * <p>
+	 * The seed of the returned stream is {@linkplain Xoroshiro128PlusGenerator#deriveSeed derived}
+	 * from the {@linkplain #getSeed() seed} of this object and {@code index}, and does not depend on
+	 * or modify the current state of this object. Streams for different indexes can therefore be
+	 * created in any order and on any thread (provided that the seed of this object is not being changed
+	 * concurrently), and will produce the same values given the same seed. This is intended to be used to
+	 * give each worker, chain or restart of a parallel computation its own stream.
+	 * <p>
+	 * @since 0.08
+	 * @see #fork()
+	 */
+	public DimpleRandom split(long index)
+	{
+		return createStream(Xoroshiro128PlusGenerator.deriveSeed(_seed, index));
+	}
+	
 	/**
 	 * The underlying Apache random generator.
 	 * <p>
@@ -193,7 +278,7 @@ public class DimpleRandom extends RandomAdaptor
 	{
 		BetaDistribution randBeta = _randBeta;
 		
-		if (randBeta.getAlpha() != alpha || randBeta.getBeta() != beta)
+		if (randBeta == null || randBeta.getAlpha() != alpha || randBeta.getBeta() != beta)
 		{
 			randBeta = new BetaDistribution(_randGenerator, alpha, beta);
 			_randBeta = randBeta;
@@ -237,7 +322,7 @@ public class DimpleRandom extends RandomAdaptor
 		
 		BinomialDistribution randBinomial = _randBinomial;
 		
-		if (randBinomial.getNumberOfTrials() != n || randBinomial.getProbabilityOfSuccess() != p)
+		if (randBinomial == null || randBinomial.getNumberOfTrials() != n || randBinomial.getProbabilityOfSuccess() != p)
 		{
 			_randBinomial = randBinomial = new BinomialDistribution(_randGenerator, n, p);
 		}
@@ -270,7 +355,67 @@ public class DimpleRandom extends RandomAdaptor
 	 */
 	public double nextGamma(double alpha, double beta)
 	{
-		return _randGamma.nextDouble(alpha, beta);
+		cern.jet.random.Gamma randGamma = _randGamma;
+		
+		if (randGamma == null)
+		{
+			final Xoroshiro128PlusGenerator fast = _fastGenerator;
+			final RandomEngine engine = fast != null ?
+				new GeneratorEngine(fast) : new cern.jet.random.engine.MersenneTwister((int)_seed);
+			_randGamma = randGamma = new cern.jet.random.Gamma(1, 1, engine);
+		}
+		
+		return randGamma.nextDouble(alpha, beta);
 	}
 	
+	/*---------------
+	 * Inner classes
+	 */
+	
+	/**
+	 * Adapts {@link Xoroshiro128PlusGenerator} for use with CERN distributions.
+	 */
+	private static final class GeneratorEngine extends RandomEngine
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Xoroshiro128PlusGenerator _generator;
+		
+		private GeneratorEngine(Xoroshiro128PlusGenerator generator)
+		{
+			_generator = generator;
+		}
+		
+		@Override
+		public int nextInt()
+		{
+			return _generator.nextInt();
+		}
+		
+		@Override
+		public long nextLong()
+		{
+			return _generator.nextLong();
+		}
+		
+		@Override
+		public double nextDouble()
+		{
+			return raw();
+		}
+		
+		/**
+		 * Returns uniformly distributed value in the open interval (0,1).
+		 */
+		@Override
+		public double raw()
+		{
+			double value;
+			do
+			{
+				value = _generator.nextDouble();
+			} while (value == 0.0);
+			return value;
+		}
+	}
 }
@@ -0,0 +1,250 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.math;
+
+import java.io.Serializable;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Small, fast random generator based on the xoroshiro128+ algorithm of Blackman and Vigna.
+ * <p>
+ * The generator has only 128 bits of state, which is initialized from a 64-bit seed using
+ * the SplitMix64 algorithm, so it is very cheap to create. This makes it suitable for use as one of
+ * many independent random streams, for instance one per worker thread or per restart in a parallel
+ * solver. Use {@link #deriveSeed(long, long)} to compute seeds for such streams.
+ * <p>
+ * Its period is 2<sup>128</sup>-1, which is much shorter than that of {@link org.apache.commons.math3.random.MersenneTwister},
+ * but is more than sufficient for Monte Carlo sampling.
+ * <p>
+ * @since 0.08
+ * @see DimpleRandom#split(long)
+ */
+@NotThreadSafe
+public final class Xoroshiro128PlusGenerator implements RandomGenerator, Serializable
+{
+	/*-------
+	 * State
+	 */
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Increment used by SplitMix64 (odd integer closest to 2<sup>64</sup>/phi).
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+	private static final float FLOAT_UNIT = 0x1.0p-24f;
+
+	private long _s0;
+	private long _s1;
+
+	private double _nextGaussian = Double.NaN;
+
+	/*--------------
+	 * Construction
+	 */
+
+	/**
+	 * Construct generator with given seed.
+	 * <p>
+	 * Generators constructed with the same seed will produce the same sequence of values.
+	 * @since 0.08
+	 */
+	public Xoroshiro128PlusGenerator(long seed)
+	{
+		setSeed(seed);
+	}
+
+	/*-------------------------
+	 * RandomGenerator methods
+	 */
+
+	@Override
+	public void setSeed(int seed)
+	{
+		setSeed((long)seed);
+	}
+
+	@NonNullByDefault(false)
+	@Override
+	public void setSeed(int[] seed)
+	{
+		long lseed = 0;
+		for (int i : seed)
+		{
+			lseed = lseed * 31 + i;
+		}
+		setSeed(lseed);
+	}
+
+	@Override
+	public void setSeed(long seed)
+	{
+		long s0 = mix64(seed += GOLDEN_GAMMA);
+		long s1 = mix64(seed + GOLDEN_GAMMA);
+		if ((s0 | s1) == 0)
+		{
+			// All zero state is a fixed point of the generator.
+			s0 = GOLDEN_GAMMA;
+		}
+		_s0 = s0;
+		_s1 = s1;
+		_nextGaussian = Double.NaN;
+	}
+
+	@NonNullByDefault(false)
+	@Override
+	public void nextBytes(byte[] bytes)
+	{
+		int i = 0;
+		final int n = bytes.length;
+		while (i < n)
+		{
+			long bits = nextLong();
+			for (int j = Math.min(n - i, 8); --j >= 0; bits >>>= 8)
+			{
+				bytes[i++] = (byte)bits;
+			}
+		}
+	}
+
+	@Override
+	public int nextInt()
+	{
+		return (int)(nextLong() >>> 32);
+	}
+
+	@Override
+	public int nextInt(int n)
+	{
+		if (n <= 0)
+		{
+			throw new NotStrictlyPositiveException(n);
+		}
+
+		// Rejection sampling to avoid modulo bias, as in java.util.Random
+		int bits, value;
+		do
+		{
+			bits = (int)(nextLong() >>> 33);
+			value = bits % n;
+		} while (bits - value + (n - 1) < 0);
+
+		return value;
+	}
+
+	@Override
+	public long nextLong()
+	{
+		final long s0 = _s0;
+		long s1 = _s1;
+		final long result = s0 + s1;
+
+		s1 ^= s0;
+		_s0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+		_s1 = Long.rotateLeft(s1, 37);
+
+		return result;
+	}
+
+	@Override
+	public boolean nextBoolean()
+	{
+		return nextLong() < 0;
+	}
+
+	@Override
+	public float nextFloat()
+	{
+		return (nextLong() >>> 40) * FLOAT_UNIT;
+	}
+
+	/**
+	 * Returns a uniformly distributed value in the range [0,1) with 53 bits of precision.
+	 */
+	@Override
+	public double nextDouble()
+	{
+		// The upper bits of xoroshiro128+ have the best statistical quality.
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Returns a normally distributed value with zero mean and unit variance.
+	 * <p>
+	 * Uses the Marsaglia polar method, which generates values in pairs.
+	 */
+	@Override
+	public double nextGaussian()
+	{
+		final double saved = _nextGaussian;
+		if (saved == saved)
+		{
+			_nextGaussian = Double.NaN;
+			return saved;
+		}
+
+		double v1, v2, s;
+		do
+		{
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+
+		final double multiplier = Math.sqrt(-2 * Math.log(s) / s);
+		_nextGaussian = v2 * multiplier;
+		return v1 * multiplier;
+	}
+
+	/*-----------------------------------
+	 * Xoroshiro128PlusGenerator methods
+	 */
+
+	/**
+	 * Computes seed for an independent random stream identified by {@code index} from a parent {@code seed}.
+	 * <p>
+	 * The result depends only on the two arguments, so streams can be derived recursively to form a
+	 * tree of seeds, and the same stream will be reproduced given the same root seed and path of
+	 * indexes regardless of the order in which streams are created or on which thread.
+	 * <p>
+	 * @since 0.08
+	 */
+	public static long deriveSeed(long seed, long index)
+	{
+		return mix64(seed ^ mix64((index + 1) * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * The SplitMix64 finalizer, which maps each 64-bit value to a well-mixed 64-bit value.
+	 * <p>
+	 * This is a bijection, so distinct inputs produce distinct outputs.
+	 * @since 0.08
+	 */
+	public static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -22,6 +22,7 @@ import static java.util.Objects.*;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -39,18 +40,25 @@ import com.analog.lyric.collect.BitSetUtil;
 import com.analog.lyric.collect.Comparators;
 import com.analog.lyric.collect.Tuple2;
 import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.MatrixProduct;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableBase;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableCache;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableEntry;
 import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTableBase;
 import com.analog.lyric.dimple.factorfunctions.core.IFactorTableIterator;
+import com.analog.lyric.dimple.factorfunctions.core.SparseIndexColumns;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.domains.DiscreteIndicesIterator;
 import com.analog.lyric.dimple.model.domains.JointDiscreteDomain;
 import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
 import com.analog.lyric.dimple.model.domains.JointDomainReindexer;
 import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
 import com.analog.lyric.dimple.test.DimpleTestBase;
 import com.analog.lyric.util.test.SerializationTester;
 import com.google.common.base.Stopwatch;
@@ -1338,6 +1346,276 @@ public class TestFactorTable extends DimpleTestBase
 		
 	}
 	
+	@Test
+	public void testSparseIndexColumns()
+	{
+		final DiscreteDomain domain300 = DiscreteDomain.range(0, 299);
+		final DiscreteDomain domain70000 = DiscreteDomain.range(0, 69999);
+		final JointDomainIndexer domains = JointDomainIndexer.create(domain256, domain300, domain70000);
+		
+		final int[][] indices = new int[][] {
+			new int[] { 0, 0, 0 },
+			new int[] { 255, 299, 69999 },
+			new int[] { 128, 1, 65536 },
+			new int[] { 128, 299, 3 }
+		};
+		
+		SparseIndexColumns columns = new SparseIndexColumns(domains, indices);
+		assertEquals(3, columns.columns());
+		assertEquals(4, columns.size());
+		assertEquals(1, columns.elementBytes(0));
+		assertEquals(2, columns.elementBytes(1));
+		assertEquals(4, columns.elementBytes(2));
+		assertEquals(4 * (1 + 2 + 4) + 3 * 16, columns.estimateBytes());
+		for (int si = 0; si < indices.length; ++si)
+		{
+			for (int column = 0; column < 3; ++column)
+			{
+				assertEquals(indices[si][column], columns.get(si, column));
+			}
+		}
+		
+		final double[] message0 = new double[256];
+		final double[] message1 = new double[300];
+		final double[] message2 = new double[70000];
+		for (int i = 0; i < message2.length; ++i)
+		{
+			if (i < message0.length)
+				message0[i] = i;
+			if (i < message1.length)
+				message1[i] = i * 1000;
+			message2[i] = i * 1e6;
+		}
+		
+		double[] values = new double[] { 1, 2, 3, 4 };
+		columns.addFrom(0, values, message0);
+		columns.addFrom(1, values, message1);
+		columns.addFrom(2, values, message2);
+		assertArrayEquals(new double[] { 1, 2 + 255 + 299e3 + 69999e6, 3 + 128 + 1e3 + 65536e6, 4 + 128 + 299e3 + 3e6 },
+			values, 0.0);
+		
+		values = new double[] { 1, 2, 3, 4 };
+		columns.multiplyFrom(0, values, message0);
+		assertArrayEquals(new double[] { 0, 2 * 255, 3 * 128, 4 * 128 }, values, 0.0);
+		
+		double[] out = new double[300];
+		columns.sumInto(1, new double[] { 1, 2, 3, 4 }, out);
+		assertEquals(1, out[0], 0.0);
+		assertEquals(3, out[1], 0.0);
+		assertEquals(6, out[299], 0.0);
+		
+		out = new double[256];
+		Arrays.fill(out, Double.POSITIVE_INFINITY);
+		columns.minInto(0, new double[] { 1, 2, 3, 4 }, null, out);
+		assertEquals(1, out[0], 0.0);
+		assertEquals(3, out[128], 0.0);
+		assertEquals(2, out[255], 0.0);
+		assertEquals(Double.POSITIVE_INFINITY, out[1], 0.0);
+		
+		out = new double[70000];
+		Arrays.fill(out, Double.POSITIVE_INFINITY);
+		columns.minInto(2, new double[] { 1, 2, 3, 4 }, message2, out);
+		assertEquals(1, out[0], 0.0);
+		assertEquals(2 - 69999e6, out[69999], 0.0);
+		assertEquals(4 - 3e6, out[3], 0.0);
+		
+		// Columns are cached by table until its indices change
+		IFactorTable table = FactorTable.create(domain2, domain3);
+		table.setWeightsSparse(new int[][] { new int[] { 0, 1 }, new int[] { 1, 2 } }, new double[] { .5, .5 });
+		table.getIndicesSparseUnsafe();
+		final long rowBytes = FactorTableCache.estimateBytes(table);
+		columns = table.getIndexColumnsSparseUnsafe();
+		assertSame(columns, table.getIndexColumnsSparseUnsafe());
+		// Columns are counted in addition to the rows
+		assertEquals(rowBytes + columns.estimateBytes(), FactorTableCache.estimateBytes(table));
+		assertEquals(2, columns.size());
+		table.setWeightsSparse(new int[][] { new int[] { 0, 0 }, new int[] { 1, 1 }, new int[] { 1, 2 } },
+			new double[] { .2, .3, .5 });
+		SparseIndexColumns columns2 = table.getIndexColumnsSparseUnsafe();
+		assertNotSame(columns, columns2);
+		assertEquals(3, columns2.size());
+		assertEquals(1, columns2.get(1, 1));
+		assertInvariants(table);
+		
+		// Columns are computed from the joint indices without computing the rows
+		table.setRepresentation(FactorTableRepresentation.SPARSE_WEIGHT);
+		columns = table.getIndexColumnsSparseUnsafe();
+		assertFalse(table.hasSparseIndices());
+		assertColumns(table, columns);
+		
+		table.setRepresentation(FactorTableRepresentation.DENSE_WEIGHT);
+		columns = table.getIndexColumnsSparseUnsafe();
+		assertFalse(table.hasSparseIndices());
+		assertTrue(table.hasSparseWeights());
+		assertColumns(table, columns);
+		
+		final JointDomainIndexer domains2 = JointDomainIndexer.create(domain256, domain300);
+		columns = new SparseIndexColumns(domains2, new int[] { 0, domains2.getCardinality() - 1 }, 2);
+		assertArrayEquals(new int[] { 255, 299 }, new int[] { columns.get(1, 0), columns.get(1, 1) });
+		columns = new SparseIndexColumns(table.getDomainIndexer(), new int[0], 3);
+		final int[] indices2 = table.getDomainIndexer().jointIndexToIndices(2);
+		assertArrayEquals(indices2, new int[] { columns.get(2, 0), columns.get(2, 1) });
+	}
+	
+	private static void assertColumns(IFactorTable table, SparseIndexColumns columns)
+	{
+		assertEquals(table.sparseSize(), columns.size());
+		for (int si = table.sparseSize(); --si>=0;)
+		{
+			final int[] indices = table.sparseIndexToIndices(si);
+			for (int column = columns.columns(); --column>=0;)
+			{
+				assertEquals(indices[column], columns.get(si, column));
+			}
+		}
+	}
+	
+	@Test
+	public void testParallelPopulation()
+	{
+		final DiscreteDomain domain50 = DiscreteDomain.range(0, 49);
+		final JointDomainIndexer domains = JointDomainIndexer.create(domain50, domain50, domain50);
+		
+		final FactorFunction denseFunction = new DenseTestFunction();
+		final FactorFunction sparseFunction = new SparseTestFunction();
+		
+		final JointDomainIndexer directedDomains =
+			JointDomainIndexer.create(new int[] { 0 }, new DiscreteDomain[] { DiscreteDomain.range(0, 147), domain50,
+				domain50, domain50 });
+		final FactorFunction sum = new Sum();
+		
+		final int prevThreshold = FactorTableBase.getParallelPopulationThreshold();
+		try
+		{
+			FactorTableBase.setParallelPopulationThreshold(Integer.MAX_VALUE);
+			IFactorTable serialDense = FactorTable.create(denseFunction, domains);
+			IFactorTable serialSparse = FactorTable.create(sparseFunction, domains);
+			IFactorTable serialSum = FactorTable.create(sum, directedDomains);
+
+			FactorTableBase.setParallelPopulationThreshold(1);
+			assertEquals(1, FactorTableBase.getParallelPopulationThreshold());
+			IFactorTable parallelDense = FactorTable.create(denseFunction, domains);
+			IFactorTable parallelSparse = FactorTable.create(sparseFunction, domains);
+			IFactorTable parallelSum = FactorTable.create(sum, directedDomains);
+			
+			assertTrue(parallelDense.hasDenseEnergies());
+			assertFalse(parallelSparse.hasDenseRepresentation());
+			assertTrue(parallelSum.isDeterministicDirected());
+			assertSame(denseFunction, parallelDense.getFactorFunction());
+			
+			for (IFactorTable[] pair : new IFactorTable[][] {
+				new IFactorTable[] { serialDense, parallelDense },
+				new IFactorTable[] { serialSparse, parallelSparse },
+				new IFactorTable[] { serialSum, parallelSum } })
+			{
+				final IFactorTable serial = pair[0], parallel = pair[1];
+				assertEquals(serial.sparseSize(), parallel.sparseSize());
+				for (int si = serial.sparseSize(); --si >= 0;)
+				{
+					assertEquals(serial.sparseIndexToJointIndex(si), parallel.sparseIndexToJointIndex(si));
+					assertEquals(serial.getEnergyForSparseIndex(si), parallel.getEnergyForSparseIndex(si), 0.0);
+				}
+				assertEquals(serial.isDeterministicDirected(), parallel.isDeterministicDirected());
+				if (!parallel.isDeterministicDirected())
+				{
+					// Tables built by setDeterministicOutputIndices are flagged as normalized, which
+					// assertInvariants does not allow for directed tables whether populated serially or not.
+					assertInvariants(parallel);
+				}
+			}
+		}
+		finally
+		{
+			FactorTableBase.setParallelPopulationThreshold(prevThreshold);
+		}
+	}
+	
+	/**
+	 * Functions that are not {@linkplain FactorFunction#isThreadSafe() thread safe}, such as
+	 * {@link MatrixProduct}, which uses instance fields as scratch space, must still produce the
+	 * same table when the population threshold is exceeded.
+	 */
+	@Test
+	public void testPopulationWithUnsafeFunction()
+	{
+		final DiscreteDomain inDomain = DiscreteDomain.range(0, 6);
+		final DiscreteDomain outDomain = DiscreteDomain.range(0, 72);
+		final DiscreteDomain[] domains = new DiscreteDomain[8];
+		Arrays.fill(domains, 0, 2, outDomain);
+		Arrays.fill(domains, 2, 8, inDomain);
+		final JointDomainIndexer indexer = JointDomainIndexer.create(new int[] { 0, 1 }, domains);
+		
+		final FactorFunction product = new MatrixProduct(1, 2, 2);
+		assertFalse(product.isThreadSafe());
+		assertTrue(new Sum().isThreadSafe());
+		
+		final int prevThreshold = FactorTableBase.getParallelPopulationThreshold();
+		try
+		{
+			// Make sure there are multiple chunks even on a single core machine.
+			ThreadPool.setNumThreads(4);
+			FactorTableBase.setParallelPopulationThreshold(Integer.MAX_VALUE);
+			IFactorTable serial = FactorTable.create(product, indexer);
+			
+			FactorTableBase.setParallelPopulationThreshold(1);
+			IFactorTable populated = FactorTable.create(product, indexer);
+			
+			assertTrue(populated.isDeterministicDirected());
+			assertEquals(serial.sparseSize(), populated.sparseSize());
+			for (int si = serial.sparseSize(); --si >= 0;)
+			{
+				assertEquals(serial.sparseIndexToJointIndex(si), populated.sparseIndexToJointIndex(si));
+			}
+		}
+		finally
+		{
+			FactorTableBase.setParallelPopulationThreshold(prevThreshold);
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+	
+	/**
+	 * Dense function for {@link #testParallelPopulation()}. The energies are kept small enough that
+	 * the weights do not underflow.
+	 */
+	private static class DenseTestFunction extends FactorFunction implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean isThreadSafe()
+		{
+			return true;
+		}
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			return 1e-4 * (values[0].getInt() + 50 * values[1].getInt() + 2500 * values[2].getInt());
+		}
+	}
+	
+	/**
+	 * Sparse function for {@link #testParallelPopulation()}.
+	 */
+	private static class SparseTestFunction extends FactorFunction implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public boolean isThreadSafe()
+		{
+			return true;
+		}
+		
+		@Override
+		public double evalEnergy(Value[] values)
+		{
+			final int sum = values[0].getInt() + values[1].getInt() + values[2].getInt();
+			return sum % 3 == 0 ? Double.POSITIVE_INFINITY : sum;
+		}
+	}
+	
 	private static void assertWeight(IFactorTable table, double weight, int jointIndex)
 	{
 		double energy = -Math.log(weight);
@@ -1411,6 +1689,21 @@ public class TestFactorTable extends DimpleTestBase
 				assertEquals(table.getWeightForSparseIndex(si), sparseWeights[si], 0.0);
 			}
 		}
+		if (table.hasSparseIndices())
+		{
+			int[][] sparseIndices = table.getIndicesSparseUnsafe();
+			SparseIndexColumns columns = table.getIndexColumnsSparseUnsafe();
+			assertSame(columns, table.getIndexColumnsSparseUnsafe());
+			assertEquals(sparseIndices.length, columns.size());
+			assertEquals(table.getDimensions(), columns.columns());
+			for (int si = sparseIndices.length; --si>=0;)
+			{
+				for (int column = columns.columns(); --column>=0;)
+				{
+					assertEquals(sparseIndices[si][column], columns.get(si, column));
+				}
+			}
+		}
 		
 		JointDomainReindexer nullConverter =
 			JointDomainReindexer.createPermuter(table.getDomainIndexer(), table.getDomainIndexer());
@@ -0,0 +1,160 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.NotEquals;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableCache;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorTableCache}
+ * @since 0.08
+ */
+public class TestFactorTableCache extends DimpleTestBase
+{
+	@Test
+	public void test() throws InterruptedException
+	{
+		final FactorTableCache cache = new FactorTableCache();
+		assertEquals(FactorTableCache.DEFAULT_CAPACITY, cache.getCapacity());
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+
+		final FactorFunction function = new NotEquals();
+		final JointDomainIndexer domains3 = JointDomainIndexer.create(DiscreteDomain.range(0,2), DiscreteDomain.range(0,2));
+		final JointDomainIndexer domains4 = JointDomainIndexer.create(DiscreteDomain.range(0,3), DiscreteDomain.range(0,3));
+
+		assertNull(cache.get(function, domains3));
+		assertFalse(cache.contains(function, domains3));
+		assertEquals(1, cache.getMissCount());
+
+		final IFactorTable table3 = cache.getOrCreate(function, domains3);
+		assertEquals(domains3, table3.getDomainIndexer());
+		assertTrue(cache.contains(function, domains3));
+		assertEquals(2, cache.getMissCount());
+		assertSame(table3, cache.getOrCreate(function, domains3));
+		assertSame(table3, cache.get(function, domains3));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getStrongCount());
+		final long bytes3 = FactorTableCache.estimateBytes(table3);
+		assertTrue(bytes3 > 0);
+		assertEquals(bytes3, cache.getBytes());
+
+		// Same domains, different function instance
+		assertFalse(cache.contains(new NotEquals(), domains3));
+
+		// Shrink capacity so that only the most recent table is strongly held
+		final IFactorTable table4 = cache.getOrCreate(function, domains4);
+		final long bytes4 = FactorTableCache.estimateBytes(table4);
+		assertEquals(bytes3 + bytes4, cache.getBytes());
+		cache.setCapacity(bytes4);
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(1, cache.getStrongCount());
+		assertEquals(bytes4, cache.getBytes());
+
+		// Evicted table is still found because it is still referenced
+		assertEquals(2, cache.size());
+		assertSame(table3, cache.get(function, domains3));
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals(1, cache.getStrongCount());
+		assertEquals(bytes3, cache.getBytes());
+
+		// Zero capacity keeps only weak references
+		cache.setCapacity(0);
+		assertEquals(0, cache.getStrongCount());
+		assertEquals(0, cache.getBytes());
+		assertSame(table4, cache.get(function, domains4));
+		assertEquals(0, cache.getStrongCount());
+
+		expectThrow(IllegalArgumentException.class, cache, "setCapacity", -1L);
+
+		cache.resetStatistics();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(0, cache.getMissCount());
+		assertEquals(0, cache.getEvictionCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertFalse(cache.contains(function, domains3));
+
+		// Sizes are re-estimated when tables are looked up after they grow
+		cache.setCapacity(FactorTableCache.DEFAULT_CAPACITY);
+		final IFactorTable table5 = cache.getOrCreate(function, domains4);
+		final long bytes5 = FactorTableCache.estimateBytes(table5);
+		assertEquals(bytes5, cache.getBytes());
+		table5.setRepresentation(FactorTableRepresentation.ALL);
+		final long grownBytes5 = FactorTableCache.estimateBytes(table5);
+		assertTrue(grownBytes5 > bytes5);
+		assertEquals(bytes5, cache.getBytes());
+		assertSame(table5, cache.get(function, domains4));
+		assertEquals(grownBytes5, cache.getBytes());
+		cache.setCapacity(grownBytes5 - 1);
+		assertEquals(0, cache.getStrongCount());
+		assertEquals(0, cache.getBytes());
+		cache.clear();
+
+		// Tables are removed once their function has been reclaimed. Unlike tables populated by evaluating
+		// the function, the Equality table does not refer to its function.
+		cache.setCapacity(FactorTableCache.DEFAULT_CAPACITY);
+		final WeakReference<FactorFunction> functionRef = new WeakReference<FactorFunction>(new Equality());
+		cache.getOrCreate(requireNonNull(functionRef.get()), domains3);
+		assertEquals(1, cache.getStrongCount());
+		System.gc();
+		assertNull(functionRef.get());
+		// Cleared references are enqueued asynchronously
+		for (int i = 0; i < 100 && cache.size() > 0; ++i)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(0, cache.getBytes());
+		assertEquals(0, cache.getStrongCount());
+		assertEquals(0, cache.size());
+
+		//
+		// Use through FactorFunction
+		//
+
+		final FactorTableCache envCache = DimpleEnvironment.active().factorTableCache();
+		final FactorGraph fg = new FactorGraph();
+		final Discrete a = new Discrete(DiscreteDomain.range(0,2));
+		final Discrete b = new Discrete(DiscreteDomain.range(0,2));
+		final Factor factor = fg.addFactor(function, a, b);
+		final IFactorTable table = factor.getFactorTable();
+		assertTrue(function.factorTableExists(factor));
+		assertTrue(envCache.contains(function, table.getDomainIndexer()));
+		assertSame(table, function.getFactorTableIfExists(factor));
+	}
+}
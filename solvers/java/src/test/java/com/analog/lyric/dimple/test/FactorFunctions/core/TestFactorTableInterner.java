@@ -0,0 +1,178 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableCache;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableInterner;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.DiscreteFactor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorTableInterner}
+ * @since 0.08
+ */
+public class TestFactorTableInterner extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final DiscreteDomain d3 = DiscreteDomain.range(0, 2);
+		final double[] weights = new double[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+		FactorTableInterner interner = new FactorTableInterner();
+		assertEquals(0, interner.getInternCount());
+
+		IFactorTable t1 = FactorTable.create(d3, d3);
+		t1.setWeightsDense(weights);
+		IFactorTable t2 = FactorTable.create(d3, d3);
+		t2.setWeightsDense(weights);
+		IFactorTable t3 = FactorTable.create(d3, d3);
+		t3.setWeightsDense(weights);
+		t3.setWeightForJointIndex(42, 8);
+
+		IFactorTable s1 = interner.intern(t1);
+		assertNotSame(t1, s1);
+		assertTrue(FactorTableInterner.isInterned(s1));
+		assertFalse(FactorTableInterner.isInterned(t1));
+		assertSame(s1, interner.intern(s1));
+		assertEquals(1, interner.getInternCount());
+		assertEquals(0, interner.getSharedCount());
+		assertEquals(0, interner.getBytesSaved());
+
+		// Modifying the original does not affect the interned copy.
+		t1.setWeightForJointIndex(0, 0);
+		assertEquals(1.0, s1.getWeightForJointIndex(0), 1e-12);
+
+		assertSame(s1, interner.intern(t2));
+		assertEquals(2, interner.getInternCount());
+		assertEquals(1, interner.getSharedCount());
+		assertEquals(FactorTableCache.estimateBytes(t2), interner.getBytesSaved());
+
+		IFactorTable s3 = interner.intern(t3);
+		assertNotSame(s1, s3);
+		assertEquals(42.0, s3.getWeightForJointIndex(8), 1e-12);
+
+		// Interned table cannot be modified, but its representation can be changed.
+		expectThrow(DimpleException.class, s1, "setWeightForJointIndex", 2.0, 0);
+		expectThrow(DimpleException.class, s1, "setEnergyForIndices", 2.0, new int[] { 0, 0 });
+		expectThrow(DimpleException.class, s1, "setWeightsDense", weights);
+		expectThrow(DimpleException.class, s1, "normalize");
+		expectThrow(DimpleException.class, s1, "compact");
+		expectThrow(DimpleException.class, s1, "setDirected", new BitSet());
+		expectThrow(DimpleException.class, s1, "copy", t3);
+		s1.setRepresentation(FactorTableRepresentation.ALL);
+		assertEquals(1.0, s1.getWeightForJointIndex(0), 1e-12);
+		IFactorTable copy = s1.clone();
+		assertFalse(FactorTableInterner.isInterned(copy));
+		copy.setWeightForJointIndex(2.0, 0);
+		assertEquals(1.0, s1.getWeightForJointIndex(0), 1e-12);
+
+		// Sparse and dense representations of the same contents are the same table.
+		final double[] sparseWeights = weights.clone();
+		sparseWeights[4] = 0;
+		IFactorTable dense = FactorTable.create(d3, d3);
+		dense.setWeightsDense(sparseWeights);
+		IFactorTable sparse = FactorTable.create(d3, d3);
+		sparse.setWeightsDense(sparseWeights);
+		sparse.setRepresentation(FactorTableRepresentation.SPARSE_ENERGY);
+		IFactorTable s5 = interner.intern(dense);
+		assertNotSame(s1, s5);
+		assertSame(s5, interner.intern(sparse));
+
+		// Different direction is a different table.
+		IFactorTable t4 = FactorTable.create(d3, d3);
+		t4.setWeightsDense(weights);
+		final BitSet outputs = new BitSet();
+		outputs.set(1);
+		t4.setDirected(outputs);
+		assertNotSame(s1, interner.intern(t4));
+
+		interner.resetStatistics();
+		assertEquals(0, interner.getInternCount());
+		assertEquals(0, interner.getSharedCount());
+		assertEquals(0, interner.getBytesSaved());
+
+		//
+		// Interning factor tables in a graph
+		//
+
+		final FactorGraph fg = new FactorGraph();
+		final int nVars = 5;
+		final Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(d3);
+		}
+		final DiscreteFactor[] factors = new DiscreteFactor[nVars - 1];
+		for (int i = 0; i < nVars - 1; ++i)
+		{
+			IFactorTable table = FactorTable.create(d3, d3);
+			table.setWeightsDense(weights);
+			factors[i] = (DiscreteFactor)fg.addFactor(table, vars[i], vars[i+1]);
+			assertFalse(factors[i].isFactorTableShared());
+		}
+
+		final FactorTableInterner envInterner = DimpleEnvironment.active().factorTableInterner();
+		final long prevShared = envInterner.getSharedCount();
+		final long saved = fg.internFactorTables();
+		// All but the first are shared, unless an equivalent table was already interned by another test
+		assertTrue(envInterner.getSharedCount() - prevShared >= factors.length - 1);
+		assertTrue(saved > 0);
+		final IFactorTable shared = factors[0].getFactorTable();
+		for (DiscreteFactor factor : factors)
+		{
+			assertTrue(factor.isFactorTableShared());
+			assertSame(shared, factor.getFactorTable());
+		}
+
+		// Belief computation still works with shared tables
+		vars[0].setInput(.2, .3, .5);
+		fg.solve();
+		final double[] belief = vars[4].getBelief();
+		assertEquals(3, belief.length);
+
+		// Copy on write
+		IFactorTable privateTable = factors[1].getFactorTableForUpdate();
+		assertNotSame(shared, privateTable);
+		assertFalse(factors[1].isFactorTableShared());
+		assertSame(privateTable, factors[1].getFactorTable());
+		privateTable.setWeightForJointIndex(100, 0);
+		assertEquals(1.0, shared.getWeightForJointIndex(0), 1e-12);
+		assertSame(shared, factors[2].getFactorTable());
+
+		// Changing direction unshares
+		factors[2].setUndirected();
+		assertFalse(factors[2].isFactorTableShared());
+		assertNotSame(shared, factors[2].getFactorTable());
+		assertTrue(factors[3].isFactorTableShared());
+	}
+}
@@ -0,0 +1,266 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.FactorFunctions.core;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTableRepresentation;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTableBase;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTableIterator;
+import com.analog.lyric.dimple.factorfunctions.core.MappedFactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.MappedTableFactorFunction;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.JointDomainIndexer;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsTableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.util.test.SerializationTester;
+
+/**
+ * Tests for {@link MappedFactorTable}
+ * @since 0.08
+ */
+public class TestMappedFactorTable extends DimpleTestBase
+{
+	@Test
+	public void test() throws IOException
+	{
+		final JointDomainIndexer domains =
+			JointDomainIndexer.create(DiscreteDomain.range(0, 2), DiscreteDomain.range(0, 3), DiscreteDomain.range(0, 4));
+		final int jointSize = domains.getCardinality();
+
+		// Dense
+		IFactorTable dense = FactorTable.create(domains);
+		double[] energies = new double[jointSize];
+		for (int i = 0; i < jointSize; ++i)
+		{
+			energies[i] = testRand.nextDouble();
+		}
+		dense.setEnergiesDense(energies);
+		testTable(dense);
+
+		// Sparse
+		IFactorTable sparse = FactorTable.create(domains);
+		final int[] jointIndices = new int[] { 0, 3, 4, 17, 22, 31, 45, 58, 59 };
+		energies = new double[jointIndices.length];
+		for (int i = 0; i < energies.length; ++i)
+		{
+			energies[i] = testRand.nextDouble();
+		}
+		sparse.setEnergiesSparse(jointIndices, energies);
+		testTable(sparse);
+
+		// Empty
+		IFactorTable empty = FactorTable.create(domains);
+		empty.setEnergiesSparse(new int[0], new double[0]);
+		testTable(empty);
+
+		// Mismatched domains
+		File file = tempFile();
+		MappedFactorTable.write(dense, file);
+		try
+		{
+			MappedFactorTable.open(file, JointDomainIndexer.create(DiscreteDomain.range(0, 2), DiscreteDomain.range(0, 3)));
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("dimensions"));
+		}
+
+		// Truncated
+		MappedFactorTable.write(sparse, file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(raf.length() - 8);
+		}
+		try
+		{
+			MappedFactorTable.open(file, domains);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("truncated"));
+		}
+	}
+
+	/**
+	 * Factors using {@link MappedTableFactorFunction} give the same results as ones using the heap table.
+	 */
+	@Test
+	public void testFactorFunction() throws IOException
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final JointDomainIndexer domains = JointDomainIndexer.create(domain, domain, domain);
+		final IFactorTable table = FactorTable.create(domains);
+		table.setRepresentation(FactorTableRepresentation.DENSE_ENERGY);
+		table.randomizeWeights(testRand);
+		final File file = tempFile();
+		MappedFactorTable.write(table, file);
+
+		try (MappedFactorTable mapped = MappedFactorTable.open(file, domains))
+		{
+			final MappedTableFactorFunction function = new MappedTableFactorFunction(mapped);
+			assertSame(mapped, function.getMappedTable());
+
+			final Discrete[] vars = new Discrete[3];
+			final Discrete[] heapVars = new Discrete[3];
+			final FactorGraph fg = new FactorGraph(), heapfg = new FactorGraph();
+			for (int i = 0; i < 3; ++i)
+			{
+				vars[i] = new Discrete(domain);
+				heapVars[i] = new Discrete(domain);
+				vars[i].setPrior(.3, .3, .4);
+				heapVars[i].setPrior(.3, .3, .4);
+			}
+			final Factor factor = fg.addFactor(function, vars);
+			heapfg.addFactor(table, heapVars);
+
+			// Sum-product loads a heap copy of the mapped table
+			fg.setSolverFactory(new SumProductSolver());
+			heapfg.setSolverFactory(new SumProductSolver());
+			fg.solve();
+			heapfg.solve();
+			for (int i = 0; i < 3; ++i)
+			{
+				assertArrayEquals(heapVars[i].getBelief(), vars[i].getBelief(), 1e-12);
+			}
+
+			// Gibbs reads slices from the mapped table without creating a heap table
+			final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+			final GibbsSolverGraph heapsfg = requireNonNull(heapfg.setSolverFactory(new GibbsSolver()));
+			fg.setOption(GibbsOptions.numSamples, 200);
+			heapfg.setOption(GibbsOptions.numSamples, 200);
+			sfg.setSeed(42);
+			fg.solve();
+			heapsfg.setSeed(42);
+			heapfg.solve();
+			assertNull(((GibbsTableFactor)requireNonNull(sfg.getSolverFactor(factor))).getFactorTableIfComputed());
+			for (int i = 0; i < 3; ++i)
+			{
+				assertArrayEquals(heapVars[i].getBelief(), vars[i].getBelief(), 0.0);
+			}
+		}
+	}
+
+	private void testTable(IFactorTable table) throws IOException
+	{
+		final JointDomainIndexer domains = table.getDomainIndexer();
+		final File file = tempFile();
+		MappedFactorTable.write(table, file);
+
+		try (MappedFactorTable mapped = MappedFactorTable.open(file, domains))
+		{
+			assertSame(domains, mapped.getDomainIndexer());
+			assertEquals(table.hasDenseRepresentation(), mapped.isDense());
+			assertEquals(table.jointSize(), mapped.jointSize());
+			assertEquals(table.hasDenseRepresentation() ? table.jointSize() : table.sparseSize(), mapped.sparseSize());
+
+			for (int joint = 0, n = table.jointSize(); joint < n; ++joint)
+			{
+				assertEquals(table.getEnergyForJointIndex(joint), mapped.getEnergyForJointIndex(joint), 0.0);
+				assertEquals(table.getWeightForJointIndex(joint), mapped.getWeightForJointIndex(joint), 1e-15);
+				final int[] indices = domains.jointIndexToIndices(joint);
+				assertEquals(table.getEnergyForIndices(indices), mapped.getEnergyForIndices(indices), 0.0);
+
+				final int si = mapped.sparseIndexFromJointIndex(joint);
+				if (si >= 0)
+				{
+					assertEquals(joint, mapped.sparseIndexToJointIndex(si));
+				}
+				else
+				{
+					assertEquals(Double.POSITIVE_INFINITY, mapped.getEnergyForJointIndex(joint), 0.0);
+				}
+
+				for (int dim = 0; dim < domains.size(); ++dim)
+				{
+					assertArrayEquals(table.getEnergySlice(dim, indices), mapped.getEnergySlice(null, dim, indices), 0.0);
+				}
+			}
+
+			final IFactorTable copy = mapped.toFactorTable();
+			for (int joint = 0, n = table.jointSize(); joint < n; ++joint)
+			{
+				assertEquals(table.getEnergyForJointIndex(joint), copy.getEnergyForJointIndex(joint), 0.0);
+			}
+
+			// Read-only view through the factor table interface
+			final IFactorTableBase view = mapped;
+			assertEquals(table.hasDenseRepresentation(), view.hasDenseEnergies());
+			assertEquals(!table.hasDenseRepresentation(), view.hasSparseEnergies());
+			assertFalse(view.hasDenseWeights() || view.hasSparseWeights());
+			assertEquals(table.countNonZeroWeights(), view.countNonZeroWeights());
+			assertEquals(table.getDimensions(), view.getDimensions());
+			final IFactorTableIterator expected = table.iterator(), actual = view.iterator();
+			while (expected.advance())
+			{
+				assertTrue(actual.advance());
+				assertEquals(expected.jointIndex(), actual.jointIndex());
+				assertEquals(expected.energy(), actual.energy(), 0.0);
+				assertArrayEquals(expected.indicesUnsafe(), actual.indicesUnsafe());
+			}
+			assertFalse(actual.advance());
+			for (int si = 0, n = view.sparseSize(); si < n; ++si)
+			{
+				final int[] indices = view.sparseIndexToIndices(si);
+				assertEquals(si, view.sparseIndexFromIndices(indices));
+				assertEquals(view.getEnergyForSparseIndex(si), view.getEnergyForIndicesDense(indices), 0.0);
+				assertArrayEquals(domains.jointIndexToElements(view.sparseIndexToJointIndex(si)),
+					view.sparseIndexToElements(si, null));
+			}
+			expectThrow(DimpleException.class, view, "setEnergyForJointIndex", 1.0, 0);
+			expectThrow(DimpleException.class, view, "setWeightForIndices", 1.0, new int[] { 0, 0, 0 });
+			expectThrow(DimpleException.class, view, "normalize");
+
+			// Clones and serialized copies are heap-based
+			for (IFactorTableBase heapCopy : new IFactorTableBase[] { view.clone(), SerializationTester.clone(view) })
+			{
+				assertTrue(heapCopy instanceof IFactorTable);
+				for (int joint = 0, n = table.jointSize(); joint < n; ++joint)
+				{
+					assertEquals(table.getEnergyForJointIndex(joint), heapCopy.getEnergyForJointIndex(joint), 0.0);
+				}
+			}
+		}
+	}
+
+	private static File tempFile() throws IOException
+	{
+		final File file = File.createTempFile("dimple-table", ".bin");
+		file.deleteOnExit();
+		return file;
+	}
+}
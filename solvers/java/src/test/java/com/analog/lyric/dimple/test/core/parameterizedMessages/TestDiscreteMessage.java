@@ -36,6 +36,7 @@ import com.analog.lyric.dimple.factorfunctions.core.IUnaryFactorFunction;
 import com.analog.lyric.dimple.model.domains.DiscreteDomain;
 import com.analog.lyric.dimple.model.values.Value;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteEnergyMessage;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteFloatWeightMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteWeightMessage;
 import com.analog.lyric.dimple.solvers.core.parameterizedMessages.IParameterizedMessage;
@@ -202,6 +203,79 @@ public class TestDiscreteMessage extends TestParameterizedMessage
 		assertArrayEquals(new double[] { 5, 7, 9 }, requireNonNull(msg).getEnergies(), 0.0);
 	}
 	
+	/**
+	 * Test {@link DiscreteFloatWeightMessage}
+	 * @since 0.08
+	 */
+	@Test
+	public void testSinglePrecision()
+	{
+		final double[] weights = new double[] { 1.0/3, .2, Math.PI, 0.0 };
+		DiscreteFloatWeightMessage msg = new DiscreteFloatWeightMessage(weights);
+		assertTrue(msg.isSinglePrecision());
+		assertTrue(msg.storesWeights());
+		assertEquals(weights.length, msg.size());
+		for (int i = 0; i < weights.length; ++i)
+		{
+			assertEquals((float)weights[i], msg.getWeight(i), 0.0);
+			assertEquals(weightToEnergy((float)weights[i]), msg.getEnergy(i), 0.0);
+		}
+		assertTrue(msg.hasZeroWeight(3));
+		assertEquals(0, msg.representation().length);
+		expectThrow(IllegalArgumentException.class, msg, "setWeights", new double[weights.length + 1]);
+		
+		// Values may be accessed directly in single precision
+		final float[] values = msg.floatRepresentation();
+		assertSame(values, msg.floatRepresentation());
+		assertEquals(weights.length, values.length);
+		assertEquals((float)weights[0], values[0], 0.0);
+		values[0] = 2.0f;
+		assertEquals(2.0, msg.getWeight(0), 0.0);
+		msg.setWeight(1, .2);
+		assertEquals((float).2, values[1], 0.0);
+		msg.setNormalizationEnergy(0.0);
+		msg.normalize();
+		final double sum = 2.0 + (float).2 + (float)Math.PI;
+		assertEquals((float)(2.0/sum), values[0], 0.0);
+		assertEquals(weightToEnergy(sum), msg.getNormalizationEnergy(), 1e-15);
+		assertEquals(1.0, msg.sumOfWeights(), 1e-6);
+		
+		DiscreteFloatWeightMessage msg2 = msg.clone();
+		assertTrue(msg.objectEquals(msg2));
+		assertTrue(msg.objectEquals(SerializationTester.clone(msg)));
+		msg2.setWeight(0, 2.0);
+		assertFalse(msg.objectEquals(msg2));
+		assertFalse(msg.objectEquals(new DiscreteWeightMessage(msg)));
+		
+		DiscreteWeightMessage msg3 = new DiscreteWeightMessage(msg);
+		assertArrayEquals(msg.getWeights(), msg3.getWeights(), 0.0);
+		msg3.setWeights(weights);
+		msg2.setFrom(msg3);
+		assertArrayEquals(new double[] { (float)weights[0], (float)weights[1], (float)weights[2], 0.0},
+			msg2.getWeights(), 0.0);
+		msg2.setFrom(new DiscreteEnergyMessage(msg3));
+		assertArrayEquals(weights, msg2.getWeights(), 1e-7);
+		msg3.setNull();
+		msg3.addWeightsFrom(msg2);
+		for (int i = 0; i < weights.length; ++i)
+		{
+			assertEquals(1.0 + msg2.getWeight(i), msg3.getWeight(i), 0.0);
+		}
+		final double w1 = msg2.getWeight(1);
+		msg2.addWeightsFrom(msg3);
+		assertEquals((float)(1.0 + 2 * w1), msg2.getWeight(1), 0.0);
+		
+		msg2.setNull();
+		assertTrue(msg2.isNull());
+		assertEquals(weightToEnergy(msg2.size()), msg2.getNormalizationEnergy(), 0.0);
+		msg2.setUniform();
+		assertEquals(.25, msg2.getWeight(2), 0.0);
+		msg2.setDeterministicIndex(2);
+		assertEquals(2, msg2.toDeterministicValueIndex());
+		msg2.setWeightsToZero();
+		expectThrow(NormalizationException.class, ".*weights add up to zero", msg2, "normalize");
+	}
+	
 	private double expectedKL(DiscreteMessage msg1, DiscreteMessage msg2)
 	{
 		double KL = 0.0;
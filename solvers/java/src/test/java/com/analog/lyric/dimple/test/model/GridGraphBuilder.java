@@ -0,0 +1,164 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+
+/**
+ * Test helper class for building loopy grid graphs with deterministic contents.
+ * <p>
+ * Each variable has a prior that depends on its position in the grid, and each pair of adjacent
+ * variables is connected by a factor that favors equal values. Unlike {@link RandomGraphGenerator},
+ * graphs built with the same attributes are identical, so their beliefs can be compared.
+ *
+ * @since 0.08
+ */
+public class GridGraphBuilder
+{
+	/*-------
+	 * State
+	 */
+
+	private DiscreteDomain _domain = DiscreteDomain.range(0, 2);
+	private double _diagonalWeight = 3;
+	private boolean _priorsAsFactors = false;
+
+	/*-------------------
+	 * Attribute methods
+	 */
+
+	/**
+	 * Domain of grid variables. Defaults to {0, 1, 2}.
+	 */
+	public DiscreteDomain domain()
+	{
+		return _domain;
+	}
+
+	public GridGraphBuilder domain(DiscreteDomain domain)
+	{
+		_domain = domain;
+		return this;
+	}
+
+	/**
+	 * Weight of coupling factor entries for which both variables have the same value. Defaults to 3.
+	 * <p>
+	 * Other entries have weight 1 / |i - j| for element indices i and j.
+	 */
+	public double diagonalWeight()
+	{
+		return _diagonalWeight;
+	}
+
+	public GridGraphBuilder diagonalWeight(double weight)
+	{
+		_diagonalWeight = weight;
+		return this;
+	}
+
+	/**
+	 * If true, variable priors are added as single-variable factors instead of being set on the
+	 * variables. Defaults to false.
+	 */
+	public boolean priorsAsFactors()
+	{
+		return _priorsAsFactors;
+	}
+
+	public GridGraphBuilder priorsAsFactors(boolean priorsAsFactors)
+	{
+		_priorsAsFactors = priorsAsFactors;
+		return this;
+	}
+
+	/*--------------------------
+	 * Graph generation methods
+	 */
+
+	/**
+	 * Builds grid graph with the dimensions of {@code vars}, filling it with the new variables.
+	 * <p>
+	 * The prior of the variable in row r and column c has weight p for the first element, 1 - p for the
+	 * second and .5 for any others, where p = (1 + (r * columns + c) % 5) / 6.
+	 */
+	public FactorGraph build(Discrete[][] vars)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final int rows = vars.length, cols = vars[0].length;
+		final int size = _domain.size();
+
+		final int[][] priorIndices = new int[size][];
+		for (int i = 0; i < size; ++i)
+		{
+			priorIndices[i] = new int[] { i };
+		}
+
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < cols; ++c)
+			{
+				Discrete var = vars[r][c] = new Discrete(_domain);
+				fg.addVariables(var);
+				double p = (1 + (r * cols + c) % 5) / 6.0;
+				final double[] prior = new double[size];
+				for (int i = 0; i < size; ++i)
+				{
+					prior[i] = i == 0 ? p : i == 1 ? 1 - p : .5;
+				}
+				if (_priorsAsFactors)
+				{
+					fg.addFactor(priorIndices, prior, var);
+				}
+				else
+				{
+					var.setPrior(prior);
+				}
+			}
+		}
+
+		final int[][] indices = new int[size * size][];
+		final double[] coupling = new double[size * size];
+		for (int i = 0, k = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j, ++k)
+			{
+				indices[k] = new int[] { i, j };
+				coupling[k] = i == j ? _diagonalWeight : 1.0 / Math.abs(i - j);
+			}
+		}
+
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < cols; ++c)
+			{
+				if (r + 1 < rows)
+				{
+					fg.addFactor(indices, coupling, vars[r][c], vars[r+1][c]);
+				}
+				if (c + 1 < cols)
+				{
+					fg.addFactor(indices, coupling, vars[r][c], vars[r][c+1]);
+				}
+			}
+		}
+
+		return fg;
+	}
+}
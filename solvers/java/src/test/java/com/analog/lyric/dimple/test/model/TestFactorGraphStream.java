@@ -0,0 +1,176 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.repeated.DiscreteStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.repeated.FactorGraphStream;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteMessage;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverEdgeState;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link FactorGraphStream}.
+ * @since 0.08
+ */
+public class TestFactorGraphStream extends DimpleTestBase
+{
+	@Test
+	public void testAdvance()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final int N = 50;
+
+		Discrete xi = new Discrete(domain), xo = new Discrete(domain);
+		FactorGraph sg = new FactorGraph(xi, xo);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {0,2}, {1,1}, {1,2}, {2,0}, {2,2} },
+			new double[] { 3, 1, .5, 2, 1, 1, 4 }, xi, xo);
+
+		FactorGraph fg = new FactorGraph();
+		DiscreteStream x = new DiscreteStream(domain);
+		FactorGraphStream stream = fg.addRepeatedFactorWithBufferSize(sg, 4, x, x.getSlice(1));
+
+		final double[][] input = new double[N][];
+		for (int i = 0; i < N; ++i)
+		{
+			double a = testRand.nextDouble(), b = testRand.nextDouble();
+			input[i] = new double[] { a, b, 1 };
+		}
+		fg.setNumStepsInfinite(false);
+		fg.setNumSteps(0);
+
+		testAdvance(fg, stream, x, input, new SumProductSolver());
+		testAdvance(fg, stream, x, input, new MinSumSolver());
+
+		stream.setBufferSize(6);
+		testAdvance(fg, stream, x, input, new SumProductSolver());
+
+		// Edges recreated on initialization with a different precision are picked up
+		fg.setOption(BPOptions.singlePrecisionMessages, true);
+		testAdvance(fg, stream, x, input);
+		fg.setOption(BPOptions.singlePrecisionMessages, false);
+		testAdvance(fg, stream, x, input);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private void testAdvance(FactorGraph fg, FactorGraphStream stream, DiscreteStream x, double[][] input,
+		IFactorGraphFactory<?> solver)
+	{
+		fg.setSolverFactory(solver);
+		testAdvance(fg, stream, x, input);
+	}
+
+	private void testAdvance(FactorGraph fg, FactorGraphStream stream, DiscreteStream x, double[][] input)
+	{
+		x.setDataSource(new DoubleArrayDataSource(input));
+		fg.solve();
+
+		for (int step = 0; step < 3; ++step)
+		{
+			final List<FactorGraph> nestedGraphs = stream.getNestedGraphs();
+			final int size = nestedGraphs.size();
+
+			List<List<double[]>> before = new ArrayList<>();
+			for (FactorGraph nestedGraph : nestedGraphs)
+			{
+				before.add(getMessages(nestedGraph));
+			}
+
+			fg.advance();
+
+			// Messages of each nested graph are moved to the one to its left
+			for (int j = 0; j < size - 1; ++j)
+			{
+				List<double[]> expected = before.get(j + 1);
+				List<double[]> actual = getMessages(nestedGraphs.get(j));
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); ++i)
+				{
+					assertArrayEquals(expected.get(i), actual.get(i), 0.0);
+				}
+			}
+
+			// Messages of the last nested graph are reset
+			assertReset(nestedGraphs.get(size - 1));
+
+			fg.getSolver().solveOneStep();
+		}
+		
+		// moveMessages moves the state of one nested graph to another and resets its source
+		final List<FactorGraph> nestedGraphs = stream.getNestedGraphs();
+		final List<double[]> expected = getMessages(nestedGraphs.get(1));
+		requireNonNull(nestedGraphs.get(0).getSolver()).moveMessages(requireNonNull(nestedGraphs.get(1).getSolver()));
+		final List<double[]> actual = getMessages(nestedGraphs.get(0));
+		for (int i = 0; i < expected.size(); ++i)
+		{
+			assertArrayEquals(expected.get(i), actual.get(i), 0.0);
+		}
+		assertReset(nestedGraphs.get(1));
+	}
+	
+	private void assertReset(FactorGraph graph)
+	{
+		for (double[] message : getMessages(graph))
+		{
+			for (double value : message)
+			{
+				assertEquals(message[0], value, 0.0);
+			}
+		}
+	}
+
+	private List<double[]> getMessages(FactorGraph graph)
+	{
+		final ISolverFactorGraph sgraph = requireNonNull(graph.getSolver());
+		final List<double[]> messages = new ArrayList<>();
+		for (int i = 0, n = graph.getGraphEdgeStateMaxIndex(); i <= n; ++i)
+		{
+			final ISolverEdgeState edge = sgraph.getSolverEdge(i);
+			if (edge != null)
+			{
+				messages.add(getValues((DiscreteMessage)edge.getVarToFactorMsg()));
+				messages.add(getValues((DiscreteMessage)edge.getFactorToVarMsg()));
+			}
+		}
+		assertFalse(messages.isEmpty());
+		return messages;
+	}
+
+	private double[] getValues(DiscreteMessage message)
+	{
+		return message.storesWeights() ? message.getWeights() : message.getEnergies();
+	}
+}
@@ -0,0 +1,196 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.repeated.DiscreteStream;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.DoubleArrayDataSource;
+import com.analog.lyric.dimple.model.repeated.MappedDoubleArrayDataSink;
+import com.analog.lyric.dimple.model.repeated.MappedDoubleArrayDataSource;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.NormalParameters;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link MappedDoubleArrayDataSource} and {@link MappedDoubleArrayDataSink}.
+ * @since 0.08
+ */
+public class TestMappedDoubleArrayDataSource extends DimpleTestBase
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		File file = File.createTempFile("TestMappedDoubleArrayDataSource", ".bin");
+		file.deleteOnExit();
+		try
+		{
+			for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN })
+			{
+				final double[][] data = new double[100][];
+				try (MappedDoubleArrayDataSink sink = new MappedDoubleArrayDataSink(file, 3, order))
+				{
+					assertEquals(3, sink.getRecordLength());
+					for (int i = 0; i < data.length; ++i)
+					{
+						data[i] = new double[] { testRand.nextDouble(), i, -i };
+						sink.push(data[i]);
+					}
+					assertEquals(data.length, sink.getRecordCount());
+
+					try
+					{
+						sink.push(new double[2]);
+						fail("expected DimpleException");
+					}
+					catch (DimpleException ex)
+					{
+						assertEquals(data.length, sink.getRecordCount());
+					}
+				}
+				assertEquals(data.length * 3 * 8, file.length());
+
+				try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(file, 3, order))
+				{
+					assertEquals(3, source.getRecordLength());
+					assertEquals(data.length, source.getRecordCount());
+					for (int pass = 0; pass < 2; ++pass)
+					{
+						for (double[] expected : data)
+						{
+							assertTrue(source.hasNext());
+							assertArrayEquals(expected, source.getNext(), 0.0);
+						}
+						assertFalse(source.hasNext());
+						assertEquals(0, source.getRemainingRecordCount());
+						source.rewind();
+					}
+				}
+			}
+
+			// Real beliefs are written as [mean, std]
+			try (MappedDoubleArrayDataSink sink = new MappedDoubleArrayDataSink(file, 2))
+			{
+				NormalParameters normal = new NormalParameters();
+				normal.setMean(2.5);
+				normal.setStandardDeviation(.5);
+				sink.push(normal);
+			}
+			try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(file, 2))
+			{
+				assertArrayEquals(new double[] { 2.5, .5 }, source.getNext(), 1e-15);
+				assertFalse(source.hasNext());
+			}
+
+			// File size must be a multiple of the record size
+			try
+			{
+				new MappedDoubleArrayDataSource(file, 3).close();
+				fail("expected DimpleException");
+			}
+			catch (DimpleException ex)
+			{
+			}
+		}
+		finally
+		{
+			assertTrue(file.delete());
+		}
+	}
+
+	@Test
+	public void testStream() throws IOException
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final int N = 40;
+
+		final double[][] input = new double[N][];
+		for (int i = 0; i < N; ++i)
+		{
+			input[i] = new double[] { testRand.nextDouble(), testRand.nextDouble(), testRand.nextDouble() };
+		}
+
+		Discrete xi = new Discrete(domain), xo = new Discrete(domain);
+		FactorGraph sg = new FactorGraph(xi, xo);
+		sg.addFactor(new int[][] { {0,0}, {0,1}, {1,1}, {1,2}, {2,0}, {2,2} },
+			new double[] { 3, 1, 2, 1, 1, 4 }, xi, xo);
+
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		DiscreteStream x = new DiscreteStream(domain);
+		fg.addRepeatedFactorWithBufferSize(sg, 3, x, x.getSlice(1));
+
+		// Solve using heap based source and sink
+		x.setDataSource(new DoubleArrayDataSource(input));
+		DoubleArrayDataSink expectedSink = new DoubleArrayDataSink();
+		x.setDataSink(expectedSink);
+		fg.solve();
+		final double[][] expected = expectedSink.getArray();
+		assertTrue(expected.length > 0);
+
+		File inputFile = File.createTempFile("TestMappedDoubleArrayDataSource", ".in");
+		File outputFile = File.createTempFile("TestMappedDoubleArrayDataSource", ".out");
+		inputFile.deleteOnExit();
+		outputFile.deleteOnExit();
+		try
+		{
+			try (MappedDoubleArrayDataSink sink = new MappedDoubleArrayDataSink(inputFile, domain.size()))
+			{
+				for (double[] weights : input)
+				{
+					sink.push(weights);
+				}
+			}
+
+			// Solve again using memory mapped source and sink
+			try (MappedDoubleArrayDataSource source = new MappedDoubleArrayDataSource(inputFile, domain.size());
+				MappedDoubleArrayDataSink sink = new MappedDoubleArrayDataSink(outputFile, domain.size()))
+			{
+				x.setDataSource(source);
+				x.setDataSink(sink);
+				fg.solve();
+				assertFalse(source.hasNext());
+				assertEquals(expected.length, sink.getRecordCount());
+			}
+
+			try (MappedDoubleArrayDataSource output = new MappedDoubleArrayDataSource(outputFile, domain.size()))
+			{
+				assertEquals(expected.length, output.getRecordCount());
+				for (double[] belief : expected)
+				{
+					assertArrayEquals(belief, output.getNext(), 0.0);
+				}
+			}
+		}
+		finally
+		{
+			assertTrue(inputFile.delete());
+			assertTrue(outputFile.delete());
+		}
+	}
+}
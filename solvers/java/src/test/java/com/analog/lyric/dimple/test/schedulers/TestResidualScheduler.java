@@ -0,0 +1,112 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.schedulers;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.ResidualScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.ResidualSchedule;
+import com.analog.lyric.dimple.solvers.interfaces.ISolverFactorGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.GridGraphBuilder;
+import com.google.common.collect.Iterators;
+
+/**
+ * Tests for {@link ResidualScheduler} and {@link ResidualSchedule}
+ * @since 0.08
+ */
+public class TestResidualScheduler extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		ResidualScheduler scheduler = new ResidualScheduler();
+		assertEquals(ResidualScheduler.DEFAULT_THRESHOLD, scheduler.getThreshold(), 0.0);
+		assertEquals(scheduler, new ResidualScheduler());
+		assertEquals(scheduler.hashCode(), new ResidualScheduler().hashCode());
+		assertNotEquals(scheduler, new ResidualScheduler(.1));
+		assertFalse(scheduler.isMutable());
+
+		try
+		{
+			new ResidualScheduler(-1);
+			fail("expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+
+		final int rows = 4, cols = 4, iterations = 200;
+
+		Discrete[][] flooding = new Discrete[rows][cols];
+		FactorGraph floodingGraph = new GridGraphBuilder().priorsAsFactors(true).build(flooding);
+		floodingGraph.setOption(BPOptions.scheduler, new FloodingScheduler());
+		floodingGraph.setOption(BPOptions.iterations, iterations);
+		floodingGraph.solve();
+
+		Discrete[][] residual = new Discrete[rows][cols];
+		FactorGraph residualGraph = new GridGraphBuilder().priorsAsFactors(true).build(residual);
+		residualGraph.setOption(BPOptions.scheduler, new ResidualScheduler(1e-9));
+		residualGraph.setOption(BPOptions.iterations, iterations);
+		ISolverFactorGraph sgraph = requireNonNull(residualGraph.getSolver());
+		ResidualSchedule schedule = (ResidualSchedule)sgraph.getSchedule();
+		assertEquals(1e-9, schedule.getThreshold(), 0.0);
+
+		// 2 * (number of factor edges): (3*4 + 3*4) pairwise factors with two edges + 16 single variable factors
+		final int nEdges = 2 * (2 * 24 + 16);
+		assertEquals(nEdges, schedule.getEdgeCount());
+		assertEquals(nEdges, Iterators.size(schedule.iterator()));
+
+		residualGraph.solve();
+
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < cols; ++c)
+			{
+				assertArrayEquals(flooding[r][c].getBelief(), residual[r][c].getBelief(), 1e-6);
+			}
+		}
+
+		// Should have converged without doing a full update on every iteration.
+		final long updates = schedule.getUpdateCount();
+		assertTrue(updates > nEdges);
+		assertTrue(updates < (long)nEdges * iterations / 2);
+		assertEquals(0, schedule.getPendingEdgeCount());
+
+		// Further iterations do nothing once converged
+		sgraph.iterate(5);
+		assertEquals(updates, schedule.getUpdateCount());
+
+		// Touching a node requeues its outgoing edges
+		assertTrue(schedule.touch(residual[0][0]));
+		assertEquals(residual[0][0].getSiblingCount(), schedule.getPendingEdgeCount());
+		assertFalse(schedule.touch(flooding[0][0]));
+		assertEquals(residual[0][0].getSiblingCount(), schedule.getPendingEdgeCount());
+
+		// Reinitializing resets the schedule
+		residualGraph.initialize();
+		assertEquals(0, schedule.getUpdateCount());
+		assertEquals(nEdges, schedule.getPendingEdgeCount());
+	}
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.environment.DimpleEnvironment;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.MessageDeltaTracker;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.GridGraphBuilder;
+import com.analog.lyric.util.test.TestLogger;
+
+/**
+ * Tests for {@link MessageDeltaTracker} and convergence based termination of BP solvers.
+ * @since 0.08
+ */
+public class TestMessageDeltaTracker extends DimpleTestBase
+{
+	@Test
+	public void testTracker()
+	{
+		MessageDeltaTracker tracker = new MessageDeltaTracker();
+		assertEquals(0.0, tracker.getMaxDelta(), 0.0);
+
+		tracker.record(.5);
+		tracker.record(-.75);
+		tracker.record(.25);
+		assertEquals(.75, tracker.getMaxDelta(), 0.0);
+		assertEquals(.75, tracker.reset(), 0.0);
+		assertEquals(0.0, tracker.getMaxDelta(), 0.0);
+
+		double[] message = new double[] { .2, .3, .5 };
+		double[] saved = tracker.save(message);
+		assertArrayEquals(message, Arrays.copyOf(saved, 3), 0.0);
+		message[1] = .1;
+		message[2] = .7;
+		tracker.record(message, saved);
+		assertEquals(.2, tracker.reset(), 1e-12);
+
+		double[][] messages = new double[][] { new double[] { 0, 1 }, new double[] { 1, 2, Double.POSITIVE_INFINITY } };
+		saved = tracker.save(messages);
+		messages[0][0] = .5;
+		tracker.record(messages, saved);
+		assertEquals(.5, tracker.reset(), 0.0);
+
+		saved = tracker.save(messages);
+		messages[1][2] = 3;
+		tracker.record(messages, saved);
+		assertEquals(Double.POSITIVE_INFINITY, tracker.reset(), 0.0);
+
+		tracker.record(Double.NaN);
+		assertEquals(Double.POSITIVE_INFINITY, tracker.getMaxDelta(), 0.0);
+	}
+
+	@Test
+	public void testConvergence()
+	{
+		assertEquals(0.0, BPOptions.convergenceTolerance.defaultValue(), 0.0);
+		assertEquals(0, (int)BPOptions.maxIterations.defaultValue());
+
+		testConvergence(new SumProductSolver());
+		testConvergence(new MinSumSolver());
+
+		// Nodes that do not report their message changes disable convergence checking
+		Discrete[][] vars = new Discrete[3][3];
+		FactorGraph fg = new GridGraphBuilder().build(vars);
+		Real a = new Real(), b = new Real(), c = new Real();
+		fg.addFactor(new Normal(0.0, 1.0), a);
+		fg.addFactor(new Normal(1.0, 1.0), b);
+		fg.addFactor(new Sum(), c, a, b);
+		fg.setSolverFactory(new SumProductSolver());
+		fg.setOption(BPOptions.iterations, 20);
+		fg.setOption(BPOptions.maxIterations, 50);
+		fg.setOption(BPOptions.convergenceTolerance, 1e-7);
+		SFactorGraphBase<?,?,?,?> sfg = (SFactorGraphBase<?,?,?,?>)requireNonNull(fg.getSolver());
+		TestLogger logger = new TestLogger("com.analog.lyric.dimple");
+		DimpleEnvironment.active().setLogger(logger);
+		fg.solve();
+		assertNull(sfg.getMessageDeltaTracker());
+		assertEquals(20, sfg.getIterationsUsed());
+		assertTrue(Double.isNaN(sfg.getFinalResidual()));
+		LogRecord record = logger.loggedRecords().remove();
+		assertEquals(Level.WARNING, record.getLevel());
+		assertTrue(record.getMessage().contains("convergenceTolerance"));
+		assertTrue(logger.loggedRecords().isEmpty());
+	}
+
+	private void testConvergence(IFactorGraphFactory<?> solver)
+	{
+		final int size = 4;
+
+		// Without tolerance, runs all iterations
+		Discrete[][] vars = new Discrete[size][size];
+		FactorGraph fg = new GridGraphBuilder().build(vars);
+		fg.setSolverFactory(solver);
+		fg.setOption(BPOptions.iterations, 200);
+		SFactorGraphBase<?,?,?,?> sfg = (SFactorGraphBase<?,?,?,?>)requireNonNull(fg.getSolver());
+		fg.solve();
+		assertNull(sfg.getMessageDeltaTracker());
+		assertEquals(200, sfg.getIterationsUsed());
+		assertTrue(Double.isNaN(sfg.getFinalResidual()));
+		double[] expectedBelief = vars[1][2].getBelief();
+
+		// With tolerance, stops early
+		fg.setOption(BPOptions.convergenceTolerance, 1e-7);
+		fg.solve();
+		assertNotNull(sfg.getMessageDeltaTracker());
+		final int used = sfg.getIterationsUsed();
+		assertTrue(used > 1);
+		assertTrue(used < 200);
+		assertTrue(sfg.getFinalResidual() <= 1e-7);
+		assertArrayEquals(expectedBelief, vars[1][2].getBelief(), 1e-5);
+
+		// Additional iterations stop right away
+		sfg.iterate(10);
+		assertEquals(used + 1, sfg.getIterationsUsed());
+
+		// maxIterations limits iterations when using tolerance
+		fg.setOption(BPOptions.maxIterations, 3);
+		fg.solve();
+		assertEquals(3, sfg.getIterationsUsed());
+		assertTrue(sfg.getFinalResidual() > 1e-7);
+
+		// But is ignored without tolerance
+		fg.setOption(BPOptions.convergenceTolerance, 0.0);
+		fg.solve();
+		assertEquals(200, sfg.getIterationsUsed());
+	}
+}
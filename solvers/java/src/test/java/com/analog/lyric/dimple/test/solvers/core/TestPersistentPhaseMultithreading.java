@@ -0,0 +1,112 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.core;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultiThreadingManager;
+import com.analog.lyric.dimple.solvers.core.multithreading.MultithreadingMode;
+import com.analog.lyric.dimple.solvers.core.multithreading.phasealgorithm.PersistentPhaseMultithreadingAlgorithm;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.GridGraphBuilder;
+
+/**
+ * Tests for {@link PersistentPhaseMultithreadingAlgorithm}
+ * @since 0.08
+ */
+public class TestPersistentPhaseMultithreading extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int size = 5;
+
+		Discrete[][] expectedVars = new Discrete[size][size];
+		FactorGraph expectedGraph = new GridGraphBuilder().build(expectedVars);
+		expectedGraph.setOption(BPOptions.iterations, 20);
+		expectedGraph.solve();
+
+		Discrete[][] vars = new Discrete[size][size];
+		FactorGraph fg = new GridGraphBuilder().build(vars);
+		fg.setOption(BPOptions.iterations, 20);
+		SFactorGraphBase<?,?,?,?> sfg = (SFactorGraphBase<?,?,?,?>)requireNonNull(fg.getSolver());
+		sfg.useMultithreading(true);
+		MultiThreadingManager manager = sfg.getMultithreadingManager();
+		manager.setMode(MultithreadingMode.PersistentPhase);
+
+		for (int nWorkers : new int[] { 4, 4, 1, 3 })
+		{
+			manager.setNumWorkers(nWorkers);
+			fg.solve();
+			assertBeliefs(expectedVars, vars);
+		}
+
+		// Iterating in small steps reuses the same worker threads.
+		fg.initialize();
+		for (int i = 0; i < 20; ++i)
+		{
+			sfg.iterate(1);
+		}
+		assertBeliefs(expectedVars, vars);
+
+		// Works with convergence checking
+		expectedGraph.setOption(BPOptions.convergenceTolerance, 1e-6);
+		expectedGraph.solve();
+		fg.setOption(BPOptions.convergenceTolerance, 1e-6);
+		fg.solve();
+		assertBeliefs(expectedVars, vars);
+
+		// Damped updates are not idempotent, so the beliefs will differ if any entry is run more than
+		// once in a phase, including in the first run of a new partitioning.
+		expectedGraph.setOption(BPOptions.damping, .5);
+		expectedGraph.unsetOption(BPOptions.convergenceTolerance);
+		expectedGraph.solve();
+		fg.setOption(BPOptions.damping, .5);
+		fg.unsetOption(BPOptions.convergenceTolerance);
+		for (int i = 0; i < 10; ++i)
+		{
+			for (int nWorkers = 2; nWorkers <= 6; ++nWorkers)
+			{
+				manager.setNumWorkers(nWorkers);
+				fg.solve();
+				assertBeliefs(expectedVars, vars);
+			}
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private void assertBeliefs(Discrete[][] expected, Discrete[][] actual)
+	{
+		for (int r = 0; r < expected.length; ++r)
+		{
+			for (int c = 0; c < expected[r].length; ++c)
+			{
+				assertArrayEquals(expected[r][c].getBelief(), actual[r][c].getBelief(), 1e-12);
+			}
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.domains.Domain;
+import com.analog.lyric.dimple.model.values.DiscreteValue;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.AliasSampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.CDFSampler;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IDiscreteSamplerClient;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.generic.IGenericSampler;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link AliasSampler} and {@link GibbsOptions#cacheDiscreteConditionals}.
+ * @since 0.08
+ */
+public class TestAliasSampler extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		//
+		// Sampler used directly
+		//
+
+		final int size = 37;
+		final DiscreteDomain domain = DiscreteDomain.range(0, size - 1);
+		final DiscreteValue value = Value.create(domain);
+		final double[] energy = new double[size];
+		double minEnergy = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < size; ++i)
+		{
+			energy[i] = i % 5 == 3 ? Double.POSITIVE_INFINITY : (i % 7) * .5;
+			minEnergy = Math.min(minEnergy, energy[i]);
+		}
+		final double[] expected = normalizedWeights(energy);
+
+		final AliasSampler sampler = new AliasSampler();
+		sampler.initialize(domain);
+		final Client client = new Client(domain);
+
+		final int n = 100000;
+		final int[] counts = new int[size];
+		sampler.nextSample(value, energy, minEnergy, client);
+		++counts[client._index];
+		for (int i = 1; i < n; ++i)
+		{
+			sampler.nextSampleFromCache(value, energy, minEnergy, client);
+			++counts[client._index];
+		}
+		assertFrequencies(expected, counts, n);
+
+		final double[] infinite = new double[size];
+		Arrays.fill(infinite, Double.POSITIVE_INFINITY);
+		expectThrow(DimpleException.class, sampler, "nextSample", value, infinite, 0.0, client);
+
+		//
+		// Cached conditionals in the solver
+		//
+
+		// CDFSampler draws exactly the same random numbers whether or not the conditional is cached
+		final int[][] uncachedSamples = solveChain(CDFSampler.class, false);
+		final int[][] cachedSamples = solveChain(CDFSampler.class, true);
+		for (int i = 0; i < uncachedSamples.length; ++i)
+		{
+			assertArrayEquals(uncachedSamples[i], cachedSamples[i]);
+		}
+
+		final int[][] aliasUncachedSamples = solveChain(AliasSampler.class, false);
+		final int[][] aliasCachedSamples = solveChain(AliasSampler.class, true);
+		for (int i = 0; i < aliasUncachedSamples.length; ++i)
+		{
+			assertArrayEquals(aliasUncachedSamples[i], aliasCachedSamples[i]);
+		}
+
+		// Variable without neighbors always reuses its conditional
+		for (Class<? extends IGenericSampler> samplerClass : Arrays.asList(AliasSampler.class, CDFSampler.class))
+		{
+			final FactorGraph fg = new FactorGraph();
+			final Discrete x = new Discrete(domain);
+			fg.addVariables(x);
+			final double[] weights = new double[size];
+			for (int i = 0; i < size; ++i)
+			{
+				weights[i] = Math.exp(-energy[i]);
+			}
+			x.setInput(weights);
+			final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+			fg.setOption(GibbsOptions.discreteSampler, samplerClass);
+			fg.setOption(GibbsOptions.cacheDiscreteConditionals, true);
+			fg.setOption(GibbsOptions.numSamples, n);
+			fg.setOption(GibbsOptions.saveAllSamples, true);
+			fg.setOption(DimpleOptions.randomSeed, 42L);
+			fg.solve();
+
+			Arrays.fill(counts, 0);
+			for (int index : requireNonNull(sfg.getDiscrete(x).getAllSampleIndices()))
+			{
+				++counts[index];
+			}
+			assertFrequencies(expected, counts, n);
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Solves a chain of large discrete variables with strong coupling, so that variables often
+	 * keep their values and cached conditionals are reused, and returns the samples of each variable.
+	 */
+	private int[][] solveChain(Class<? extends IGenericSampler> samplerClass, boolean cache)
+	{
+		final int size = 20;
+		final int length = 5;
+		final DiscreteDomain domain = DiscreteDomain.range(1, size);
+		final FactorGraph fg = new FactorGraph();
+		final Discrete[] vars = new Discrete[length];
+		for (int i = 0; i < length; ++i)
+		{
+			vars[i] = new Discrete(domain);
+		}
+		fg.addVariables(vars);
+
+		final double[][] weights = new double[size][size];
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				weights[i][j] = i == j ? 50 : 1.0 / (1 + Math.abs(i - j));
+			}
+		}
+		for (int i = 1; i < length; ++i)
+		{
+			fg.addFactor(FactorTable.create(weights, new DiscreteDomain[] { domain, domain }), vars[i-1], vars[i]);
+		}
+
+		final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.discreteSampler, samplerClass);
+		fg.setOption(GibbsOptions.cacheDiscreteConditionals, cache);
+		fg.setOption(GibbsOptions.numSamples, 2000);
+		fg.setOption(GibbsOptions.burnInScans, 10);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(DimpleOptions.randomSeed, 123L);
+		fg.solve();
+
+		final int[][] samples = new int[length][];
+		for (int i = 0; i < length; ++i)
+		{
+			samples[i] = requireNonNull(sfg.getDiscrete(vars[i]).getAllSampleIndices());
+		}
+		return samples;
+	}
+
+	private static double[] normalizedWeights(double[] energy)
+	{
+		final double[] weights = new double[energy.length];
+		double sum = 0;
+		for (int i = 0; i < energy.length; ++i)
+		{
+			sum += weights[i] = Math.exp(-energy[i]);
+		}
+		for (int i = 0; i < energy.length; ++i)
+		{
+			weights[i] /= sum;
+		}
+		return weights;
+	}
+
+	private static void assertFrequencies(double[] expected, int[] counts, int n)
+	{
+		for (int i = 0; i < expected.length; ++i)
+		{
+			final double p = expected[i];
+			final double tolerance = 5 * Math.sqrt(p * (1 - p) / n) + 1e-9;
+			assertEquals(p, (double)counts[i] / n, tolerance);
+		}
+	}
+
+	private static class Client implements IDiscreteSamplerClient
+	{
+		private final Domain _domain;
+		private int _index = -1;
+
+		private Client(Domain domain)
+		{
+			_domain = domain;
+		}
+
+		@Override
+		public double getSampleScore(Value sampleValue)
+		{
+			return 0;
+		}
+
+		@Override
+		public double getCurrentSampleScore()
+		{
+			return 0;
+		}
+
+		@Override
+		public void setNextSampleValue(Value sampleValue)
+		{
+		}
+
+		@Override
+		public Domain getDomain()
+		{
+			return _domain;
+		}
+
+		@Override
+		public double getSampleScore(int sampleIndex)
+		{
+			return 0;
+		}
+
+		@Override
+		public void setNextSampleIndex(int sampleIndex)
+		{
+			_index = sampleIndex;
+		}
+	}
+}
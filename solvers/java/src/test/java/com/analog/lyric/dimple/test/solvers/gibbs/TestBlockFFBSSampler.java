@@ -0,0 +1,130 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.schedulers.CustomScheduler;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.samplers.block.BlockFFBSSampler;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link BlockFFBSSampler}
+ * @since 0.08
+ */
+public class TestBlockFFBSSampler extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final BlockFFBSSampler sampler = new BlockFFBSSampler();
+		assertNotSame(sampler, sampler.copy(new HashMap<Object,Object>()));
+
+		final int length = 6;
+		final FactorGraph fg = new FactorGraph();
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final Discrete[] states = new Discrete[length];
+		final Bit[] observations = new Bit[length];
+		for (int i = 0; i < length; ++i)
+		{
+			states[i] = new Discrete(domain);
+			observations[i] = new Bit();
+		}
+		fg.addVariables(states);
+		fg.addVariables(observations);
+
+		// Strongly coupled transitions, so that single variable updates mix slowly
+		final double[][] transition = new double[][] {
+			{ 20, 1, .5 },
+			{ 1, 20, 1 },
+			{ .5, 1, 20 } };
+		final double[][] emission = new double[][] {
+			{ .8, .2 },
+			{ .5, .5 },
+			{ .1, .9 } };
+		states[0].setInput(.5, .3, .2);
+		for (int i = 0; i < length; ++i)
+		{
+			if (i > 0)
+			{
+				fg.addFactor(FactorTable.create(transition, new DiscreteDomain[] { domain, domain }), states[i-1], states[i]);
+			}
+			fg.addFactor(FactorTable.create(emission, new DiscreteDomain[] { domain, DiscreteDomain.bit() }),
+				states[i], observations[i]);
+			observations[i].setFixedValue(i < length / 2 ? 0 : 1);
+		}
+
+		// Exact marginals
+		fg.setSolverFactory(new SumProductSolver());
+		fg.solve();
+		final double[][] expected = new double[length][];
+		for (int i = 0; i < length; ++i)
+		{
+			expected[i] = states[i].getBelief();
+		}
+
+		fg.setSolverFactory(new GibbsSolver());
+		fg.setOption(GibbsOptions.numSamples, 20000);
+		fg.setOption(GibbsOptions.burnInScans, 100);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+
+		// Block in chain order
+		CustomScheduler scheduler = new CustomScheduler(fg, GibbsOptions.scheduler);
+		scheduler.addBlock(new BlockFFBSSampler(), states);
+		fg.setOption(GibbsOptions.scheduler, scheduler);
+		fg.solve();
+		assertBeliefs(expected, states, .02);
+
+		// Block with two chains
+		scheduler = new CustomScheduler(fg, GibbsOptions.scheduler);
+		scheduler.addBlock(new BlockFFBSSampler(), states[0], states[1], states[2]);
+		scheduler.addBlock(new BlockFFBSSampler(), states[3], states[4], states[5]);
+		fg.setOption(GibbsOptions.scheduler, scheduler);
+		fg.solve();
+		assertBeliefs(expected, states, .02);
+
+		// Block not in chain order, falls back to updating variables individually
+		scheduler = new CustomScheduler(fg, GibbsOptions.scheduler);
+		scheduler.addBlock(new BlockFFBSSampler(), states[0], states[2], states[1]);
+		scheduler.addVariables(states[3], states[4], states[5]);
+		fg.setOption(GibbsOptions.scheduler, scheduler);
+		fg.setOption(GibbsOptions.numSamples, 100000);
+		fg.solve();
+		assertBeliefs(expected, states, .05);
+	}
+
+	private void assertBeliefs(double[][] expected, Discrete[] vars, double tolerance)
+	{
+		for (int i = 0; i < vars.length; ++i)
+		{
+			assertArrayEquals(expected[i], vars[i].getBelief(), tolerance);
+		}
+	}
+}
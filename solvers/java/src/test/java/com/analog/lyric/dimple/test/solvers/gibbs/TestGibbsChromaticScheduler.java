@@ -0,0 +1,147 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Variable;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.schedulers.schedule.GibbsChromaticSchedule;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.IScheduleEntry;
+import com.analog.lyric.dimple.schedulers.scheduleEntry.NodeScheduleEntry;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.GridGraphBuilder;
+
+/**
+ * Tests for {@link GibbsChromaticScheduler} and concurrent Gibbs sampling.
+ * @since 0.08
+ */
+public class TestGibbsChromaticScheduler extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int size = 8;
+
+		Discrete[][] vars = new Discrete[size][size];
+		FactorGraph fg = new GridGraphBuilder().domain(DiscreteDomain.bit()).diagonalWeight(1.5).build(vars);
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		fg.setOption(GibbsOptions.numSamples, 4000);
+		fg.setOption(GibbsOptions.burnInScans, 10);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.initialize();
+
+		// Grid is two-colorable
+		GibbsChromaticSchedule schedule = (GibbsChromaticSchedule)sfg.getSchedule();
+		assertEquals(size * size, schedule.size());
+		assertEquals(2, schedule.getColorCount());
+		int nEntries = 0;
+		for (int color = 0; color < schedule.getColorCount(); ++color)
+		{
+			Set<Factor> factors = new HashSet<>();
+			for (IScheduleEntry entry : schedule.getColor(color))
+			{
+				Variable var = (Variable)((NodeScheduleEntry)entry).getNode();
+				for (Factor factor : var.getFactors())
+				{
+					assertTrue(factors.add(factor));
+				}
+				++nEntries;
+			}
+		}
+		assertEquals(size * size, nEntries);
+
+		// Sequential
+		fg.solve();
+		double[][][] sequentialBeliefs = getBeliefs(vars);
+
+		// Concurrent
+		fg.setOption(SolverOptions.enableMultithreading, true);
+		sfg.getMultithreadingManager().setNumWorkers(4);
+		fg.solve();
+		double[][][] concurrentBeliefs = getBeliefs(vars);
+		assertBeliefs(sequentialBeliefs, concurrentBeliefs, .05);
+
+		// Reproducible with same seed and number of workers
+		fg.solve();
+		assertBeliefs(concurrentBeliefs, getBeliefs(vars), 0.0);
+
+		// Random streams are per block of entries, so results do not depend on number of workers
+		sfg.getMultithreadingManager().setNumWorkers(2);
+		fg.solve();
+		assertBeliefs(concurrentBeliefs, getBeliefs(vars), 0.0);
+		sfg.getMultithreadingManager().setNumWorkers(1);
+		fg.solve();
+		assertBeliefs(concurrentBeliefs, getBeliefs(vars), 0.0);
+
+		// Variables with deterministic dependents are updated sequentially, before the other variables of their color
+		Discrete out = new Discrete(DiscreteDomain.bit());
+		fg.addFactor(new Xor(), out, vars[0][0], vars[size-1][size-1]);
+		fg.solve();
+		double[][][] serialBeliefs = getBeliefs(vars);
+		double[] outBelief = out.getBelief();
+		sfg.getMultithreadingManager().setNumWorkers(4);
+		fg.solve();
+		assertBeliefs(serialBeliefs, getBeliefs(vars), 0.0);
+		assertArrayEquals(outBelief, out.getBelief(), 0.0);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private double[][][] getBeliefs(Discrete[][] vars)
+	{
+		double[][][] beliefs = new double[vars.length][vars[0].length][];
+		for (int r = 0; r < vars.length; ++r)
+		{
+			for (int c = 0; c < vars[r].length; ++c)
+			{
+				beliefs[r][c] = vars[r][c].getBelief();
+			}
+		}
+		return beliefs;
+	}
+
+	private void assertBeliefs(double[][][] expected, double[][][] actual, double tolerance)
+	{
+		for (int r = 0; r < expected.length; ++r)
+		{
+			for (int c = 0; c < expected[r].length; ++c)
+			{
+				assertArrayEquals(expected[r][c], actual[r][c], tolerance);
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.options.SolverOptions;
+import com.analog.lyric.dimple.schedulers.GibbsChromaticScheduler;
+import com.analog.lyric.dimple.solvers.core.multithreading.ThreadPool;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsOptions#concurrentRestarts}.
+ * @since 0.08
+ */
+public class TestGibbsConcurrentRestarts extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int size = 6;
+		final int numSamples = 500;
+		final int numRestarts = 7;
+		final int nSamplesTotal = numSamples * (numRestarts + 1);
+
+		Bit[] bits = new Bit[size];
+		Real real = new Real();
+		FactorGraph fg = buildChain(bits, real);
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, numSamples);
+		fg.setOption(GibbsOptions.numRandomRestarts, numRestarts);
+		fg.setOption(GibbsOptions.burnInScans, 5);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+
+		// Sequential
+		fg.solve();
+		final double[][] sequentialBeliefs = getBeliefs(bits);
+		final double sequentialMean = sfg.getReal(real).getSampleMean();
+		final long sequentialUpdates = sfg.getDiscrete(bits[0]).getUpdateCount();
+		assertEquals(nSamplesTotal, requireNonNull(sfg.getAllScores()).length);
+		final double[] sequentialScores = requireNonNull(sfg.getAllScores());
+
+		// Concurrent
+		fg.setOption(GibbsOptions.concurrentRestarts, 3);
+		fg.solve();
+		final double[][] concurrentBeliefs = getBeliefs(bits);
+		assertBeliefs(sequentialBeliefs, concurrentBeliefs, .05);
+		assertEquals(sequentialMean, sfg.getReal(real).getSampleMean(), .2);
+
+		// Statistics from all of the chains are merged
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(nSamplesTotal, scores.length);
+		for (Bit bit : bits)
+		{
+			GibbsDiscrete sbit = sfg.getDiscrete(bit);
+			assertEquals(nSamplesTotal, sbit.getAllSampleIndices().length);
+			assertEquals(sequentialUpdates, sbit.getUpdateCount());
+		}
+		GibbsReal sreal = sfg.getReal(real);
+		assertEquals(nSamplesTotal, sreal.getAllSamples().length);
+
+		// Best sample is the one with the lowest score from any chain
+		double minScore = Double.POSITIVE_INFINITY;
+		for (double score : scores)
+		{
+			minScore = Math.min(minScore, score);
+		}
+		assertEquals(minScore, sfg.getBestSampleScore(), 0.0);
+		for (Bit bit : bits)
+		{
+			sfg.getDiscrete(bit).setCurrentSample(sfg.getDiscrete(bit).getBestSample());
+		}
+		sreal.setCurrentSample(sreal.getBestSample());
+		assertEquals(minScore, sfg.getSampleScore(), 1e-10);
+
+		// Reproducible with same seed and number of chains
+		fg.solve();
+		assertBeliefs(concurrentBeliefs, getBeliefs(bits), 0.0);
+		assertArrayEquals(scores, sfg.getAllScores(), 0.0);
+
+		// Each restart uses the same random stream whether or not it is run concurrently
+		assertArrayEquals(sequentialScores, scores, 0.0);
+		assertBeliefs(sequentialBeliefs, concurrentBeliefs, 0.0);
+
+		// Further steps reuse the copies made for the solve
+		sfg.solveOneStep();
+		assertEquals(2 * nSamplesTotal, requireNonNull(sfg.getAllScores()).length);
+
+		// More chains than restarts
+		fg.setOption(GibbsOptions.concurrentRestarts, 20);
+		fg.solve();
+		assertEquals(nSamplesTotal, requireNonNull(sfg.getAllScores()).length);
+		assertBeliefs(sequentialBeliefs, getBeliefs(bits), .05);
+	}
+
+	@Test(timeout = 60000)
+	public void testChromaticWithFewerThreadsThanChains()
+	{
+		final int size = 40;
+		final int numRestarts = 3;
+
+		Bit[] bits = new Bit[size];
+		Real real = new Real();
+		FactorGraph fg = buildChain(bits, real);
+
+		// Root graph with a nested graph is supported
+		final Bit boundaryA = new Bit(), boundaryB = new Bit();
+		final FactorGraph template = new FactorGraph(boundaryA, boundaryB);
+		template.addFactor(new int[][] { {0,0}, {0,1}, {1,0}, {1,1} }, new double[] { 2, 1, 1, 2 }, boundaryA, boundaryB);
+		fg.addGraph(template, bits[0], bits[size - 1]);
+
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.scheduler, new GibbsChromaticScheduler());
+		fg.setOption(GibbsOptions.numSamples, 1000);
+		fg.setOption(GibbsOptions.numRandomRestarts, numRestarts);
+		fg.setOption(GibbsOptions.burnInScans, 5);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.setOption(SolverOptions.enableMultithreading, true);
+		sfg.getMultithreadingManager().setNumWorkers(4);
+
+		fg.solve();
+		final double[][] sequentialBeliefs = getBeliefs(bits);
+
+		// Chains must not wait on the pool for chromatic updates from one of the pool's own threads
+		ThreadPool.setNumThreads(1);
+		try
+		{
+			fg.setOption(GibbsOptions.concurrentRestarts, numRestarts + 1);
+			fg.solve();
+			assertEquals(1000 * (numRestarts + 1), requireNonNull(sfg.getAllScores()).length);
+			assertBeliefs(sequentialBeliefs, getBeliefs(bits), .05);
+		}
+		finally
+		{
+			ThreadPool.setNumThreadsToDefault();
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private double[][] getBeliefs(Bit[] vars)
+	{
+		double[][] beliefs = new double[vars.length][];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			beliefs[i] = vars[i].getBelief();
+		}
+		return beliefs;
+	}
+
+	private void assertBeliefs(double[][] expected, double[][] actual, double tolerance)
+	{
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], tolerance);
+		}
+	}
+
+	private FactorGraph buildChain(Bit[] vars, Real real)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final int size = vars.length;
+
+		for (int i = 0; i < size; ++i)
+		{
+			Bit var = vars[i] = new Bit();
+			fg.addVariables(var);
+			double p = (1 + i % 5) / 6.0;
+			var.setPrior(1 - p, p);
+		}
+
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		final double[] coupling = new double[] { 2, 1, 1, 2 };
+		for (int i = 0; i + 1 < size; ++i)
+		{
+			fg.addFactor(indices, coupling, vars[i], vars[i+1]);
+		}
+
+		fg.addVariables(real);
+		fg.addFactor(new Normal(1.0, 4.0), real);
+
+		return fg;
+	}
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsConvergenceDiagnostics;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsConvergenceDiagnostics} and {@link GibbsOptions#stopWhenConverged}.
+ * @since 0.08
+ */
+public class TestGibbsConvergenceDiagnostics extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int numSamples = 5000;
+
+		// Real variable with independent samples and a pair of strongly coupled bits
+		final Real real = new Real();
+		final Bit a = new Bit(), b = new Bit();
+		final FactorGraph fg = buildGraph(real, a, b, 50);
+		final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, numSamples);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+
+		fg.solve();
+		assertNull(sfg.getConvergenceDiagnostics());
+
+		fg.setOption(GibbsOptions.computeConvergenceDiagnostics, true);
+		fg.solve();
+		GibbsConvergenceDiagnostics diagnostics = requireNonNull(sfg.getConvergenceDiagnostics());
+		assertEquals(1, diagnostics.getChainCount());
+		assertEquals(numSamples, diagnostics.getSampleCount());
+		assertEquals(numSamples, diagnostics.getChainSampleCount());
+		assertEquals(GibbsConvergenceDiagnostics.DEFAULT_MAX_LAG, diagnostics.getMaxLag());
+
+		final double realEss = diagnostics.getEffectiveSampleSize(real);
+		assertTrue(realEss > numSamples / 2);
+		assertTrue(realEss < numSamples * 2);
+		assertEquals(0.0, diagnostics.getAutocorrelation(real, 1), .1);
+		assertEquals(1.0, diagnostics.getRHat(real), .05);
+
+		assertTrue(diagnostics.getEffectiveSampleSize(a) < numSamples / 5);
+		assertTrue(diagnostics.getAutocorrelation(a, 1) > .5);
+		assertTrue(diagnostics.getAutocorrelation(a, 1) > diagnostics.getAutocorrelation(a, 10));
+		assertEquals(diagnostics.getEffectiveSampleSize(a), diagnostics.getEffectiveSampleSize(b), numSamples / 5);
+
+		assertTrue(diagnostics.getMinEffectiveSampleSize() <= diagnostics.getEffectiveSampleSize(a));
+		assertTrue(diagnostics.getMinEffectiveSampleSize() <= diagnostics.getScoreEffectiveSampleSize());
+		assertTrue(diagnostics.getMaxRHat() >= diagnostics.getRHat(real));
+		assertTrue(diagnostics.getMaxRHat() >= diagnostics.getScoreRHat());
+		assertFalse(Double.isNaN(diagnostics.getScoreAutocorrelation(1)));
+		assertFalse(Double.isNaN(diagnostics.getChainMaxRHat()));
+
+		expectThrow(IllegalArgumentException.class, diagnostics, "getEffectiveSampleSize", new Bit());
+		expectThrow(IndexOutOfBoundsException.class, diagnostics, "getScoreAutocorrelation", 0);
+		expectThrow(IndexOutOfBoundsException.class, diagnostics, "getAutocorrelation", real, 11);
+
+		// Each restart is a separate chain
+		fg.setOption(GibbsOptions.numRandomRestarts, 3);
+		fg.solve();
+		diagnostics = requireNonNull(sfg.getConvergenceDiagnostics());
+		assertEquals(4, diagnostics.getChainCount());
+		assertEquals(4 * numSamples, diagnostics.getSampleCount());
+		assertEquals(numSamples, diagnostics.getChainSampleCount());
+		assertTrue(diagnostics.getEffectiveSampleSize(real) > 2 * numSamples);
+		assertEquals(1.0, diagnostics.getRHat(real), .05);
+
+		// Including those run concurrently
+		fg.setOption(GibbsOptions.concurrentRestarts, 2);
+		fg.solve();
+		diagnostics = requireNonNull(sfg.getConvergenceDiagnostics());
+		assertEquals(4, diagnostics.getChainCount());
+		assertEquals(4 * numSamples, diagnostics.getSampleCount());
+		assertTrue(diagnostics.getEffectiveSampleSize(real) > 2 * numSamples);
+		assertEquals(1.0, diagnostics.getRHat(real), .05);
+
+		//
+		// Automatic stopping
+		//
+
+		final Real real2 = new Real();
+		final Bit a2 = new Bit(), b2 = new Bit();
+		final FactorGraph fg2 = buildGraph(real2, a2, b2, 2);
+		final GibbsSolverGraph sfg2 = requireNonNull(fg2.setSolverFactory(new GibbsSolver()));
+		final int maxBurnIn = 100000;
+		final int maxSamples = 1000000;
+		fg2.setOption(GibbsOptions.burnInScans, maxBurnIn);
+		fg2.setOption(GibbsOptions.numSamples, maxSamples);
+		fg2.setOption(GibbsOptions.stopWhenConverged, true);
+		fg2.setOption(GibbsOptions.convergenceEffectiveSampleSize, 200.0);
+		fg2.setOption(GibbsOptions.convergenceRHat, 1.1);
+		fg2.setOption(GibbsOptions.saveAllScores, true);
+		fg2.setOption(DimpleOptions.randomSeed, 23L);
+		fg2.solve();
+
+		diagnostics = requireNonNull(sfg2.getConvergenceDiagnostics());
+		final long nSamples = diagnostics.getSampleCount();
+		assertTrue(nSamples >= GibbsConvergenceDiagnostics.MIN_CONVERGENCE_SAMPLES);
+		assertTrue(nSamples < maxSamples);
+		assertEquals(nSamples, requireNonNull(sfg2.getAllScores()).length);
+		assertTrue(diagnostics.getChainMinEffectiveSampleSize() >= 200);
+		assertTrue(diagnostics.getChainMaxRHat() <= 1.1);
+		assertTrue(diagnostics.isChainConverged(200, 1.1));
+
+		// Burn-in also ended early
+		assertTrue(sfg2.getDiscrete(a2).getUpdateCount() < maxBurnIn);
+	}
+
+	private FactorGraph buildGraph(Real real, Bit a, Bit b, double coupling)
+	{
+		final FactorGraph fg = new FactorGraph();
+		fg.addVariables(real, a, b);
+		fg.addFactor(new Normal(1.0, 4.0), real);
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		fg.addFactor(indices, new double[] { coupling, 1, 1, coupling }, a, b);
+		return fg;
+	}
+}
@@ -51,6 +51,7 @@ public class TestGibbsOptions extends DimpleTestBase
 		assertEquals(0, GibbsOptions.burnInScans.defaultIntValue());
 		assertFalse(GibbsOptions.saveAllSamples.defaultBooleanValue());
 		assertFalse(GibbsOptions.saveAllScores.defaultBooleanValue());
+		assertEquals(100, GibbsOptions.scoreRecomputeInterval.defaultIntValue());
 		assertFalse(GibbsOptions.enableAnnealing.defaultValue());
 		assertEquals(1.0, GibbsOptions.initialTemperature.defaultDoubleValue(), 1.0);
 		assertEquals(1.0, GibbsOptions.annealingHalfLife.defaultDoubleValue(), 1.0);
@@ -0,0 +1,170 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests incremental computation of Gibbs sample scores controlled by {@link GibbsOptions#scoreRecomputeInterval}.
+ * @since 0.08
+ */
+public class TestGibbsSampleScore extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int size = 8;
+
+		// Discrete variables only, with deterministic dependents
+		Bit[] vars = new Bit[size];
+		FactorGraph fg = buildChain(vars, false);
+		testScores(fg, vars[0]);
+		fg.setOption(GibbsOptions.enableAnnealing, true);
+		fg.setOption(GibbsOptions.initialTemperature, 4.0);
+		fg.setOption(GibbsOptions.annealingHalfLife, 50.0);
+		testScores(fg, vars[0]);
+
+		// Real variable updates force recomputation
+		fg = buildChain(vars, true);
+		testScores(fg, vars[0]);
+
+		// Variables in nested graphs update the score of the root graph
+		fg = buildChain(vars, false);
+		addSubgraph(fg, vars[0], vars[size - 1], false);
+		addSubgraph(fg, vars[1], vars[size - 2], false);
+		testScores(fg, vars[0]);
+		fg = buildChain(vars, false);
+		addSubgraph(fg, vars[0], vars[size - 1], true);
+		testScores(fg, vars[0]);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private void testScores(FactorGraph fg, Bit bit)
+	{
+		final int numSamples = 300;
+
+		GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, numSamples);
+		fg.setOption(GibbsOptions.numRandomRestarts, 1);
+		fg.setOption(GibbsOptions.burnInScans, 3);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 123L);
+
+		// Full computation for every sample
+		fg.setOption(GibbsOptions.scoreRecomputeInterval, 1);
+		fg.solve();
+		final double[] expectedScores = requireNonNull(sfg.getAllScores());
+		final double expectedBestScore = sfg.getBestSampleScore();
+		assertEquals(2 * numSamples, expectedScores.length);
+
+		// Incremental computation produces the same scores
+		for (int interval : new int[] { 7, Integer.MAX_VALUE })
+		{
+			fg.setOption(GibbsOptions.scoreRecomputeInterval, interval);
+			fg.solve();
+			assertArrayEquals(expectedScores, sfg.getAllScores(), 1e-9);
+			assertEquals(expectedBestScore, sfg.getBestSampleScore(), 1e-9);
+			assertEquals(sfg.getSampleScore(), expectedScores[expectedScores.length - 1], 1e-9);
+		}
+
+		// Scores remain correct if values are modified between samples
+		final GibbsDiscrete sbit = sfg.getDiscrete(bit);
+		sbit.setCurrentSampleIndex(1 - sbit.getCurrentSampleIndex());
+		sfg.sample();
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(sfg.getSampleScore(), scores[scores.length - 1], 1e-9);
+	}
+
+	/**
+	 * Adds a subgraph connecting {@code a} and {@code b} through an internal variable with a prior.
+	 */
+	private FactorGraph addSubgraph(FactorGraph fg, Bit a, Bit b, boolean withReal)
+	{
+		final Bit boundaryA = new Bit(), boundaryB = new Bit();
+		final FactorGraph template = new FactorGraph(boundaryA, boundaryB);
+		final Bit internal = new Bit();
+		internal.setPrior(.4, .6);
+		template.addVariables(internal);
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		template.addFactor(indices, new double[] { 3, 1, 1, 2 }, boundaryA, internal);
+		template.addFactor(indices, new double[] { 1, 2, 4, 1 }, internal, boundaryB);
+
+		if (withReal)
+		{
+			Real real = new Real();
+			template.addFactor(new Normal(1.0, 1.0), real);
+		}
+
+		return fg.addGraph(template, a, b);
+	}
+
+	private FactorGraph buildChain(Bit[] vars, boolean withReal)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final int size = vars.length;
+
+		for (int i = 0; i < size; ++i)
+		{
+			Bit var = vars[i] = new Bit();
+			fg.addVariables(var);
+			double p = (1 + i % 5) / 6.0;
+			var.setPrior(1 - p, p);
+		}
+
+		final int[][] indices = new int[][] { {0,0}, {0,1}, {1,0}, {1,1} };
+		final double[] coupling = new double[] { 2, 1, 1, 3 };
+		for (int i = 0; i + 1 < size; ++i)
+		{
+			fg.addFactor(indices, coupling, vars[i], vars[i+1]);
+		}
+
+		// Deterministic outputs, each of which has a prior and a neighbor
+		for (int i = 0; i + 2 < size; i += 2)
+		{
+			Bit out = new Bit();
+			out.setPrior(.3, .7);
+			fg.addFactor(new Xor(), out, vars[i], vars[i+1]);
+			fg.addFactor(indices, coupling, out, vars[i+2]);
+		}
+
+		if (withReal)
+		{
+			Real real = new Real();
+			fg.addFactor(new Normal(0.0, 1.0), real);
+		}
+
+		return fg;
+	}
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.gibbs;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import com.analog.lyric.collect.PrimitiveIterator;
+import com.analog.lyric.dimple.factorfunctions.Normal;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.DimpleOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsDiscrete;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsOptions;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsReal;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSampleStore;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolver;
+import com.analog.lyric.dimple.solvers.gibbs.GibbsSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link GibbsSampleStore}
+ * @since 0.08
+ */
+public class TestGibbsSampleStore extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final GibbsSampleStore store = new GibbsSampleStore();
+		assertEquals(GibbsSampleStore.DEFAULT_CHUNK_SIZE, store.getChunkSize());
+		assertEquals(Long.MAX_VALUE, store.getMemoryLimit());
+		assertEquals(0, store.getColumnCount());
+		assertEquals(0, store.getHeapBytes());
+		assertEquals(0, store.getSpilledBytes());
+		assertNull(store.getSpillDirectory());
+
+		expectThrow(IllegalArgumentException.class, store, "reset", 0, 10L);
+		expectThrow(IllegalArgumentException.class, store, "reset", 10, -1L);
+		expectThrow(IllegalArgumentException.class, store, "setMemoryLimit", -1L);
+
+		final int chunkSize = 100;
+		store.reset(chunkSize, Long.MAX_VALUE);
+		assertEquals(chunkSize, store.getChunkSize());
+
+		// Encodings depend on domain size
+		final GibbsSampleStore.DiscreteColumn small = store.addDiscreteColumn(256);
+		final GibbsSampleStore.DiscreteColumn medium = store.addDiscreteColumn(257);
+		final GibbsSampleStore.DiscreteColumn large = store.addDiscreteColumn(70000);
+		final GibbsSampleStore.RealColumn real = store.addRealColumn();
+		assertEquals(1, small.bytesPerSample());
+		assertEquals(2, medium.bytesPerSample());
+		assertEquals(4, large.bytesPerSample());
+		assertEquals(8, real.bytesPerSample());
+		assertEquals(256, small.getDomainSize());
+		assertEquals(4, store.getColumnCount());
+		assertSame(store, real.getStore());
+
+		final int n = 1234;
+		for (int i = 0; i < n; ++i)
+		{
+			small.add(i % 256);
+			medium.add(i % 257);
+			large.add((i * 37) % 70000);
+			real.add(i * .5);
+		}
+		assertColumn(small, n, 256, 1);
+		assertColumn(medium, n, 257, 1);
+		assertColumn(large, n, 70000, 37);
+		assertColumn(real, n);
+		assertEquals((n + chunkSize - 1) / chunkSize, real.getChunkCount());
+		assertTrue(store.getHeapBytes() >= (long)n * (1 + 2 + 4 + 8));
+		assertEquals(0, store.getSpilledBytes());
+
+		expectThrow(IndexOutOfBoundsException.class, real, "get", n);
+		expectThrow(IndexOutOfBoundsException.class, small, "get", -1);
+
+		// Spill all full chunks
+		store.setMemoryLimit(0);
+		assertEquals(0, store.getMemoryLimit());
+		final long spilled = store.getSpilledBytes();
+		assertEquals((long)(n / chunkSize) * chunkSize * (1 + 2 + 4 + 8), spilled);
+		assertColumn(small, n, 256, 1);
+		assertColumn(medium, n, 257, 1);
+		assertColumn(large, n, 70000, 37);
+		assertColumn(real, n);
+
+		// New full chunks are spilled as they are filled
+		for (int i = n; i < 2 * n; ++i)
+		{
+			real.add(i * .5);
+		}
+		assertColumn(real, 2 * n);
+		assertEquals(spilled + (long)((2 * n) / chunkSize - n / chunkSize) * chunkSize * 8, store.getSpilledBytes());
+
+		// addAll
+		final GibbsSampleStore.RealColumn real2 = store.addRealColumn();
+		real2.addAll(real);
+		assertArrayEquals(real.toArray(), real2.toArray(), 0.0);
+		final GibbsSampleStore.DiscreteColumn small2 = store.addDiscreteColumn(256);
+		small2.addAll(small);
+		assertArrayEquals(small.toArray(), small2.toArray());
+
+		// Release
+		real2.release();
+		small2.release();
+		assertEquals(4, store.getColumnCount());
+
+		// Clear
+		store.clear();
+		assertEquals(0, store.getHeapBytes());
+		assertEquals(0, store.getSpilledBytes());
+		assertEquals(0, real.size());
+		assertEquals(0, real.getChunkCount());
+		assertFalse(real.iterator().hasNext());
+
+		// Spill space is reused after clear
+		for (int i = 0; i < n; ++i)
+		{
+			real.add(i * .5);
+		}
+		assertColumn(real, n);
+
+		store.close();
+		assertEquals(0, real.size());
+		for (int i = 0; i < n; ++i)
+		{
+			real.add(i * .5);
+		}
+		assertColumn(real, n);
+		store.close();
+
+		//
+		// Use through solver
+		//
+
+		final FactorGraph fg = new FactorGraph();
+		final Discrete d = new Discrete(DiscreteDomain.range(0, 2));
+		final Real r = new Real();
+		fg.addVariables(d, r);
+		d.setPrior(.2, .3, .5);
+		fg.addFactor(new Normal(1.0, 4.0), r);
+		final GibbsSolverGraph sfg = requireNonNull(fg.setSolverFactory(new GibbsSolver()));
+		fg.setOption(GibbsOptions.numSamples, 1000);
+		fg.setOption(GibbsOptions.saveAllSamples, true);
+		fg.setOption(GibbsOptions.saveAllScores, true);
+		fg.setOption(DimpleOptions.randomSeed, 42L);
+		fg.solve();
+
+		final GibbsDiscrete sd = sfg.getDiscrete(d);
+		final GibbsReal sr = sfg.getReal(r);
+		final int[] indices = sd.getAllSampleIndices();
+		final double[] values = sr.getAllSamples();
+		final double[] scores = requireNonNull(sfg.getAllScores());
+		assertEquals(1000, indices.length);
+		assertEquals(1000, values.length);
+		assertEquals(1000, scores.length);
+		assertArrayEquals(indices, requireNonNull(sd.getSampleColumn()).toArray());
+		assertArrayEquals(values, requireNonNull(sr.getSampleColumn()).toArray(), 0.0);
+		assertArrayEquals(scores, requireNonNull(sfg.getScoreColumn()).toArray(), 0.0);
+		final GibbsSampleStore sfgStore = sfg.getSampleStore();
+		assertEquals(3, sfgStore.getColumnCount());
+		assertEquals(0, sfgStore.getSpilledBytes());
+
+		// Same results when spilling small chunks
+		fg.setOption(GibbsOptions.sampleChunkSize, 64);
+		fg.setOption(GibbsOptions.sampleMemoryLimit, 0L);
+		fg.solve();
+		assertSame(sfgStore, sfg.getSampleStore());
+		assertEquals(64, sfgStore.getChunkSize());
+		assertTrue(sfgStore.getSpilledBytes() > 0);
+		assertArrayEquals(indices, sd.getAllSampleIndices());
+		assertArrayEquals(values, sr.getAllSamples(), 0.0);
+		assertArrayEquals(scores, sfg.getAllScores(), 0.0);
+
+		// Disabling releases the columns
+		fg.setOption(GibbsOptions.saveAllSamples, false);
+		fg.setOption(GibbsOptions.saveAllScores, false);
+		fg.solve();
+		assertNull(sd.getSampleColumn());
+		assertNull(sr.getSampleColumn());
+		assertNull(sfg.getScoreColumn());
+		assertEquals(0, sfgStore.getColumnCount());
+		assertEquals(0, sd.getAllSampleIndices().length);
+		sfgStore.close();
+	}
+
+	private void assertColumn(GibbsSampleStore.DiscreteColumn column, int size, int modulus, int multiplier)
+	{
+		assertEquals(size, column.size());
+		final int[] array = column.toArray();
+		assertEquals(size, array.length);
+		final PrimitiveIterator.OfInt iter = column.iterator();
+		for (int i = 0; i < size; ++i)
+		{
+			final int expected = (int)(((long)i * multiplier) % modulus);
+			assertEquals(expected, column.get(i));
+			assertEquals(expected, array[i]);
+			assertTrue(iter.hasNext());
+			assertEquals(expected, iter.nextInt());
+		}
+		assertFalse(iter.hasNext());
+		try
+		{
+			iter.nextInt();
+			fail("expected NoSuchElementException");
+		}
+		catch (NoSuchElementException ex)
+		{
+		}
+	}
+
+	private void assertColumn(GibbsSampleStore.RealColumn column, int size)
+	{
+		assertEquals(size, column.size());
+		final double[] array = column.toArray();
+		assertEquals(size, array.length);
+		final PrimitiveIterator.OfDouble iter = column.iterator();
+		for (int i = 0; i < size; ++i)
+		{
+			final double expected = i * .5;
+			assertEquals(expected, column.get(i), 0.0);
+			assertEquals(expected, array[i], 0.0);
+			assertEquals(expected, iter.next(), 0.0);
+		}
+		assertFalse(iter.hasNext());
+	}
+}
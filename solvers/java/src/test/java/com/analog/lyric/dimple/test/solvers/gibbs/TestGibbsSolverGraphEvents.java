@@ -129,6 +129,9 @@ public class TestGibbsSolverGraphEvents extends DimpleTestBase
 		{
 			GibbsSampleStatisticsEvent event = (GibbsSampleStatisticsEvent)handler.events.get(i);
 			assertEquals(scores[i], event.sampleScore(), 0.0);
+			// Convergence diagnostics are not enabled
+			assertTrue(Double.isNaN(event.effectiveSampleSize()));
+			assertTrue(Double.isNaN(event.rHat()));
 		}
 	}
 	
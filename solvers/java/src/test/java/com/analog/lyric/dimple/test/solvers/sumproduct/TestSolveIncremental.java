@@ -0,0 +1,193 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.data.GenericDataLayer;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.core.BPSolverGraph;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteWeightMessage;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link BPSolverGraph#solveIncremental()}.
+ * @since 0.08
+ */
+public class TestSolveIncremental extends DimpleTestBase
+{
+	private final DiscreteDomain domain = DiscreteDomain.range(0, 3);
+
+	@Test
+	public void testTree()
+	{
+		final int n = 30;
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = buildChain(fg, n);
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.convergenceTolerance, 1e-12);
+
+		assertEquals(-1, sfg.getIncrementalUpdateCount());
+		sfg.solveIncremental();
+		assertEquals(-1, sfg.getIncrementalUpdateCount());
+
+		// Nothing changed
+		sfg.solveIncremental();
+		assertEquals(0, sfg.getIncrementalUpdateCount());
+
+		// Change input near end of chain
+		vars[n - 3].setInput(randomWeights(domain.size()));
+		final long nEdges = 2 * 2 * (n - 1);
+		long count = assertIncremental(sfg, vars, 1e-9);
+		assertTrue(count > 0);
+		assertTrue(count < nEdges);
+
+		// Fixed value
+		vars[n / 2].setFixedValue(2);
+		assertTrue(assertIncremental(sfg, vars, 1e-9) > 0);
+
+		// Change from fixed value back to input
+		vars[n / 2].setInput(randomWeights(domain.size()));
+		vars[1].setInput(randomWeights(domain.size()));
+		assertIncremental(sfg, vars, 1e-9);
+
+		// Condition
+		GenericDataLayer layer = new GenericDataLayer(fg);
+		layer.put(vars[4], new DiscreteWeightMessage(randomWeights(domain.size())));
+		layer.put(vars[7], Value.createWithIndex(domain, 1));
+		sfg.setConditioningLayer(layer);
+		assertIncremental(sfg, vars, 1e-9);
+		sfg.setConditioningLayer(null);
+		assertIncremental(sfg, vars, 1e-9);
+
+		// Structure change forces full solve
+		Discrete extra = new Discrete(domain);
+		fg.addFactor(randomTable(), vars[0], extra);
+		extra.setInput(randomWeights(domain.size()));
+		sfg.solveIncremental();
+		assertEquals(-1, sfg.getIncrementalUpdateCount());
+		vars[0].setInput(randomWeights(domain.size()));
+		sfg.solveIncremental();
+		assertTrue(sfg.getIncrementalUpdateCount() > 0);
+
+		// Initializing discards incremental state
+		fg.initialize();
+		sfg.solveIncremental();
+		assertEquals(-1, sfg.getIncrementalUpdateCount());
+	}
+
+	@Test
+	public void testLoopy()
+	{
+		for (boolean minSum : new boolean[] { false, true })
+		{
+			FactorGraph fg = new FactorGraph();
+			Discrete[] vars = buildChain(fg, 12);
+			fg.addFactor(randomTable(), vars[0], vars[11]);
+			fg.addFactor(randomTable(), vars[3], vars[8]);
+			BPSolverGraph<?,?,?> sfg = requireNonNull(minSum ?
+				fg.setSolverFactory(new MinSumSolver()) : fg.setSolverFactory(new SumProductSolver()));
+			fg.setOption(BPOptions.iterations, 200);
+			fg.setOption(BPOptions.convergenceTolerance, 1e-13);
+
+			sfg.solveIncremental();
+			for (int i = 0; i < 5; ++i)
+			{
+				vars[testRand.nextInt(vars.length)].setInput(randomWeights(domain.size()));
+				assertIncremental(sfg, vars, 1e-8);
+			}
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Solves incrementally and compares beliefs against full solve.
+	 * @return number of edge updates done by incremental solve
+	 */
+	private long assertIncremental(BPSolverGraph<?,?,?> sfg, Discrete[] vars, double tolerance)
+	{
+		sfg.solveIncremental();
+		final long count = sfg.getIncrementalUpdateCount();
+		assertTrue(count >= 0);
+		double[][] incremental = new double[vars.length][];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			incremental[i] = vars[i].getBelief();
+		}
+
+		sfg.solve();
+		for (int i = 0; i < vars.length; ++i)
+		{
+			assertArrayEquals(vars[i].getBelief(), incremental[i], tolerance);
+		}
+
+		// Full solve discards incremental state, so start over
+		sfg.solveIncremental();
+		assertEquals(-1, sfg.getIncrementalUpdateCount());
+		sfg.solveIncremental();
+		assertEquals(0, sfg.getIncrementalUpdateCount());
+
+		return count;
+	}
+
+	private Discrete[] buildChain(FactorGraph fg, int n)
+	{
+		Discrete[] vars = new Discrete[n];
+		for (int i = 0; i < n; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			vars[i].setInput(randomWeights(domain.size()));
+			if (i > 0)
+			{
+				fg.addFactor(randomTable(), vars[i - 1], vars[i]);
+			}
+		}
+		return vars;
+	}
+
+	private IFactorTable randomTable()
+	{
+		IFactorTable table = FactorTable.create(domain, domain);
+		table.setWeightsDense(randomWeights(domain.size() * domain.size()));
+		return table;
+	}
+
+	private double[] randomWeights(int size)
+	{
+		double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = .1 + testRand.nextDouble();
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.data.GenericDataLayer;
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.XorDelta;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.values.Value;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.model.variables.Real;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteWeightMessage;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductBatch;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolverGraph;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for {@link SumProductBatch}.
+ * @since 0.08
+ */
+public class TestSumProductBatch extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final int batchSize = 7;
+
+		FactorGraph fg = new FactorGraph();
+		Discrete[] vars = buildGraph(fg);
+		SumProductSolverGraph sfg = requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.iterations, 5);
+
+		// Evidence as data layers, including a fixed value
+		List<GenericDataLayer> layers = new ArrayList<>();
+		for (int b = 0; b < batchSize; ++b)
+		{
+			GenericDataLayer layer = new GenericDataLayer(fg);
+			for (int i = 0; i < vars.length; i += 2)
+			{
+				layer.put(vars[i], new DiscreteWeightMessage(randomWeights(vars[i].getDomain().size())));
+			}
+			if (b % 3 == 1)
+			{
+				layer.put(vars[1], Value.createWithIndex(vars[1].getDomain(), b % 2));
+			}
+			layers.add(layer);
+		}
+
+		for (boolean sequential : new boolean[] { false, true })
+		{
+			if (sequential)
+			{
+				fg.setOption(BPOptions.scheduler, new SequentialScheduler());
+			}
+			fg.initialize();
+
+			SumProductBatch batch = new SumProductBatch(sfg);
+			batch.solve(layers);
+			assertEquals(batchSize, batch.getBatchSize());
+			assertEquals(vars.length + 1, batch.getVariables().size());
+
+			for (int b = 0; b < batchSize; ++b)
+			{
+				sfg.setConditioningLayer(layers.get(b));
+				fg.solve();
+				assertBeliefs(batch, vars, b);
+			}
+			sfg.setConditioningLayer(null);
+
+			// Evidence as a dense matrix of inputs
+			Discrete[] inputVars = new Discrete[] { vars[0], vars[3], vars[4] };
+			double[][] inputs = new double[batchSize][];
+			for (int b = 0; b < batchSize; ++b)
+			{
+				double[] w0 = randomWeights(3), w3 = randomWeights(3), w4 = randomWeights(2);
+				inputs[b] = new double[] { w0[0], w0[1], w0[2], w3[0], w3[1], w3[2], w4[0], w4[1] };
+			}
+			batch.solve(inputVars, inputs);
+
+			for (int b = 0; b < batchSize; ++b)
+			{
+				for (int i = 0, offset = 0; i < inputVars.length; ++i)
+				{
+					int size = inputVars[i].getDomain().size();
+					double[] input = new double[size];
+					System.arraycopy(inputs[b], offset, input, 0, size);
+					inputVars[i].setInput(input);
+					offset += size;
+				}
+				fg.solve();
+				assertBeliefs(batch, vars, b);
+			}
+
+			double[] beliefs = batch.getBeliefs(vars[2]);
+			assertEquals(batchSize * 3, beliefs.length);
+			for (int b = 0; b < batchSize; ++b)
+			{
+				int offset = b * batch.getBeliefStride() + batch.getBeliefOffset(vars[2]);
+				for (int d = 0; d < 3; ++d)
+				{
+					assertEquals(beliefs[b * 3 + d], batch.getBeliefs()[offset + d], 0.0);
+				}
+			}
+		}
+
+		// Unsupported graphs
+		Real real = new Real();
+		fg.addVariables(real);
+		fg.initialize();
+		try
+		{
+			new SumProductBatch(sfg);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("non-discrete"));
+		}
+		fg.remove(real);
+
+		fg.setOption(BPOptions.damping, .5);
+		fg.initialize();
+		try
+		{
+			new SumProductBatch(sfg);
+			fail("expected DimpleException");
+		}
+		catch (DimpleException ex)
+		{
+			assertTrue(ex.getMessage().contains("damping"));
+		}
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private void assertBeliefs(SumProductBatch batch, Discrete[] vars, int b)
+	{
+		for (Discrete var : vars)
+		{
+			assertArrayEquals(var.getBelief(), batch.getBelief(var, b), 1e-12);
+		}
+	}
+
+	private double[] randomWeights(int size)
+	{
+		double[] weights = new double[size];
+		for (int i = 0; i < size; ++i)
+		{
+			weights[i] = .1 + testRand.nextDouble();
+		}
+		return weights;
+	}
+
+	/**
+	 * Builds loopy graph with pairwise, three-way and deterministic factors.
+	 */
+	private Discrete[] buildGraph(FactorGraph fg)
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 2);
+		final Discrete[] vars = new Discrete[6];
+		for (int i = 0; i < 4; ++i)
+		{
+			vars[i] = new Discrete(domain);
+		}
+		final Bit b4 = new Bit(), b5 = new Bit();
+		vars[4] = b4;
+		vars[5] = b5;
+
+		for (int i = 0; i < 4; ++i)
+		{
+			IFactorTable table = FactorTable.create(domain, domain);
+			table.setWeightsDense(randomWeights(9));
+			fg.addFactor(table, vars[i], vars[(i + 1) % 4]);
+		}
+
+		IFactorTable table = FactorTable.create(domain, domain, DiscreteDomain.bit());
+		table.setWeightsDense(randomWeights(18));
+		fg.addFactor(table, vars[0], vars[2], vars[4]);
+
+		Bit out = new Bit();
+		fg.addFactor(new XorDelta(), out, b4, b5);
+		out.setInput(.3);
+		b5.setInput(.6);
+
+		return vars;
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Subtract;
+import com.analog.lyric.dimple.factorfunctions.Sum;
+import com.analog.lyric.dimple.factorfunctions.core.FactorFunction;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomDiscreteSum;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product {@link CustomDiscreteSum}.
+ * @since 0.08
+ */
+public class TestSumProductCustomDiscreteSum extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		final DiscreteDomain small = DiscreteDomain.range(0, 3);
+		final DiscreteDomain negative = DiscreteDomain.range(-2, 2);
+		final DiscreteDomain sparse = DiscreteDomain.create(0, 3, 7);
+		final DiscreteDomain output = DiscreteDomain.range(-6, 16);
+
+		// Sum with constant
+		testAgainstTable(new Sum(), 0.0, new Object[] { output, small, negative, 2, sparse });
+		// Subtract with constant
+		testAgainstTable(new Subtract(), 0.0, new Object[] { output, sparse, small, -1, negative });
+		// Damping
+		testAgainstTable(new Sum(), .4, new Object[] { output, small, negative, sparse });
+
+		// Large domains use FFT
+		final DiscreteDomain large = DiscreteDomain.range(0, 99);
+		testAgainstTable(new Sum(), 0.0, new Object[] { DiscreteDomain.range(0, 250), large, large, DiscreteDomain.range(0, 50) });
+		testAgainstTable(new Subtract(), 0.0, new Object[] { DiscreteDomain.range(-100, 100), large, large });
+
+		// Counting many bits does not require factor table
+		final int n = 40;
+		final double p = .3;
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		Object[] args = new Object[n + 1];
+		Discrete count = new Discrete(DiscreteDomain.range(0, n));
+		args[0] = count;
+		for (int i = 1; i <= n; ++i)
+		{
+			Bit bit = new Bit();
+			bit.setInput(p);
+			args[i] = bit;
+		}
+		Factor factor = fg.addFactor(new Sum(), args);
+		assertTrue(factor.getSolver() instanceof CustomDiscreteSum);
+		fg.solve();
+		assertFalse(factor.hasFactorTable());
+		double[] belief = count.getBelief();
+		double binomial = Math.pow(1 - p, n);
+		for (int k = 0; k <= n; ++k)
+		{
+			assertEquals(binomial, belief[k], 1e-12);
+			binomial *= (double)(n - k) / (k + 1) * p / (1 - p);
+		}
+
+		// Constant output: x + y = 2
+		fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		Discrete x = new Discrete(DiscreteDomain.range(0, 2)), y = new Discrete(DiscreteDomain.range(0, 2));
+		x.setInput(.2, .3, .5);
+		y.setInput(.6, .3, .1);
+		factor = fg.addFactor(new Sum(), 2, x, y);
+		assertTrue(factor.getSolver() instanceof CustomDiscreteSum);
+		fg.solve();
+		assertArrayEquals(new double[] { .02 / .41, .09 / .41, .30 / .41 }, x.getBelief(), 1e-12);
+		assertArrayEquals(new double[] { .30 / .41, .09 / .41, .02 / .41 }, y.getBelief(), 1e-12);
+
+		// Smoothing and non-integer domains are not supported
+		fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		factor = fg.addFactor(new Sum(1.0), new Discrete(small), new Discrete(small), new Discrete(small));
+		assertFalse(factor.getSolver() instanceof CustomDiscreteSum);
+		DiscreteDomain halves = DiscreteDomain.create(0.0, 0.5, 1.0);
+		factor = fg.addFactor(new Sum(), new Discrete(halves), new Discrete(halves), new Discrete(halves));
+		assertFalse(factor.getSolver() instanceof CustomDiscreteSum);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Compares beliefs of variables in loopy graph using {@code function} with graph using
+	 * equivalent factor table.
+	 *
+	 * @param args are factor arguments, with domains standing in for variables.
+	 */
+	private void testAgainstTable(FactorFunction function, double damping, Object[] args)
+	{
+		FactorGraph customGraph = new FactorGraph(), tableGraph = new FactorGraph();
+		requireNonNull(customGraph.setSolverFactory(new SumProductSolver()));
+		requireNonNull(tableGraph.setSolverFactory(new SumProductSolver()));
+
+		int nVars = 0;
+		for (Object arg : args)
+		{
+			if (arg instanceof DiscreteDomain)
+			{
+				++nVars;
+			}
+		}
+
+		Discrete[] customVars = new Discrete[nVars], tableVars = new Discrete[nVars];
+		Object[] customArgs = args.clone();
+		for (int i = 0, v = 0; i < args.length; ++i)
+		{
+			if (args[i] instanceof DiscreteDomain)
+			{
+				DiscreteDomain domain = (DiscreteDomain)args[i];
+				double[] input = new double[domain.size()];
+				for (int j = 0; j < input.length; ++j)
+				{
+					input[j] = .1 + testRand.nextDouble();
+				}
+				customArgs[i] = customVars[v] = new Discrete(domain);
+				tableVars[v] = new Discrete(domain);
+				customVars[v].setInput(input);
+				tableVars[v].setInput(input);
+				++v;
+			}
+		}
+
+		Factor customFactor = customGraph.addFactor(function, customArgs);
+		assertTrue(customFactor.getSolver() instanceof CustomDiscreteSum);
+		IFactorTable table = customFactor.getFactorTable();
+		Factor tableFactor = tableGraph.addFactor(table, tableVars);
+		assertFalse(tableFactor.getSolver() instanceof CustomDiscreteSum);
+
+		// Add a loop through the first two variables
+		final IFactorTable pairTable = FactorTable.create(customVars[0].getDomain(), customVars[1].getDomain());
+		final double[] pairWeights = new double[pairTable.getDomainIndexer().getCardinality()];
+		for (int i = 0; i < pairWeights.length; ++i)
+		{
+			pairWeights[i] = .1 + testRand.nextDouble();
+		}
+		pairTable.setWeightsDense(pairWeights);
+
+		for (FactorGraph fg : new FactorGraph[] { customGraph, tableGraph })
+		{
+			Discrete[] vars = fg == customGraph ? customVars : tableVars;
+			fg.addFactor(pairTable, vars[0], vars[1]);
+			fg.setOption(BPOptions.iterations, 10);
+			fg.setOption(BPOptions.damping, damping);
+			fg.solve();
+		}
+
+		for (int i = 0; i < nVars; ++i)
+		{
+			assertArrayEquals(tableVars[i].getBelief(), customVars[i].getBelief(), 1e-10);
+		}
+
+		if (damping == 0.0)
+		{
+			// Edge updates produce the same messages as a full update
+			final CustomDiscreteSum sfactor = (CustomDiscreteSum)requireNonNull(customFactor.getSolver());
+			sfactor.update();
+			final double[][] outputs = sfactor.getOutPortMsgs();
+			for (int port = 0; port < outputs.length; ++port)
+			{
+				final double[] expected = outputs[port].clone();
+				sfactor.updateEdge(port);
+				assertArrayEquals(expected, outputs[port], 1e-12);
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.XorDelta;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.customFactors.CustomXor;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for sum-product {@link CustomXor}.
+ * @since 0.08
+ */
+public class TestSumProductCustomXor extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		// Parity check code with overlapping checks, one with a constant argument
+		final int[][] checks = new int[][] { { 0, 1, 2, 3 }, { 2, 3, 4, 5, 6 }, { 0, 4, 6, 7 }, { 1, 5, 7 } };
+		final double[] inputs = new double[8];
+		for (int i = 0; i < inputs.length; ++i)
+		{
+			inputs[i] = testRand.nextDouble();
+		}
+
+		for (double damping : new double[] { 0.0, .3 })
+		{
+			FactorGraph customGraph = new FactorGraph();
+			Bit[] customBits = buildCode(customGraph, checks, inputs, false);
+			FactorGraph tableGraph = new FactorGraph();
+			Bit[] tableBits = buildCode(tableGraph, checks, inputs, true);
+
+			for (Factor factor : customGraph.getFactors())
+			{
+				assertTrue(factor.getSolver() instanceof CustomXor);
+			}
+			for (Factor factor : tableGraph.getFactors())
+			{
+				assertFalse(factor.getSolver() instanceof CustomXor);
+			}
+
+			for (FactorGraph fg : new FactorGraph[] { customGraph, tableGraph })
+			{
+				fg.setOption(BPOptions.iterations, 20);
+				fg.setOption(BPOptions.damping, damping);
+				fg.solve();
+			}
+
+			for (int i = 0; i < inputs.length; ++i)
+			{
+				assertArrayEquals(tableBits[i].getBelief(), customBits[i].getBelief(), 1e-12);
+			}
+		}
+
+		// Large check nodes do not require a factor table
+		final int n = 40;
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		Bit[] bits = new Bit[n];
+		for (int i = 0; i < n; ++i)
+		{
+			bits[i] = new Bit();
+			bits[i].setInput(i == 0 ? .5 : .9);
+		}
+		Factor factor = fg.addFactor(new XorDelta(), bits);
+		assertTrue(factor.getSolver() instanceof CustomXor);
+		fg.solve();
+		assertFalse(factor.hasFactorTable());
+		// Bits 1..n-1 have even parity with probability (1 + (-.8)^(n-1))/2
+		final double expected = (1 + Math.pow(-.8, n - 1)) / 2;
+		assertEquals(expected, bits[0].getBelief()[0], 1e-12);
+
+		// Non-boolean domains fall back to factor table
+		fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		DiscreteDomain domain = DiscreteDomain.create(1, 0);
+		factor = fg.addFactor(new Xor(), new Discrete(domain), new Discrete(domain), new Discrete(domain));
+		assertFalse(factor.getSolver() instanceof CustomXor);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	private Bit[] buildCode(FactorGraph fg, int[][] checks, double[] inputs, boolean useTable)
+	{
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+
+		final Bit[] bits = new Bit[inputs.length];
+		for (int i = 0; i < bits.length; ++i)
+		{
+			bits[i] = new Bit();
+			bits[i].setInput(inputs[i]);
+		}
+
+		for (int c = 0; c < checks.length; ++c)
+		{
+			final int[] check = checks[c];
+			final boolean withConstant = c == 1;
+			final Object[] args = new Object[check.length + (withConstant ? 1 : 0)];
+			for (int i = 0; i < check.length; ++i)
+			{
+				args[i] = bits[check[i]];
+			}
+			if (withConstant)
+			{
+				args[check.length] = 1;
+			}
+
+			final Factor factor = fg.addFactor(new Xor(), args);
+			if (useTable)
+			{
+				// Replace with equivalent table factor
+				final IFactorTable table = factor.getFactorTable();
+				fg.remove(factor);
+				Bit[] vars = new Bit[check.length];
+				for (int i = 0; i < check.length; ++i)
+				{
+					vars[i] = bits[check[i]];
+				}
+				fg.addFactor(table, vars);
+			}
+		}
+
+		return bits;
+	}
+}
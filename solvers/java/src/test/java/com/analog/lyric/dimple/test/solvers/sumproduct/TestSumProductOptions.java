@@ -134,7 +134,8 @@ public class TestSumProductOptions extends DimpleTestBase
 		
 		assertEquals(.9, sv1.getDamping(0), 0.0);
 
-		assertEquals(UpdateApproach.OPTIMIZED, sf1.getEffectiveUpdateApproach());
+		// Custom Xor factor does not use factor table, so there is no optimized update plan
+		assertEquals(UpdateApproach.NORMAL, sf1.getEffectiveUpdateApproach());
 		assertEquals(UpdateApproach.NORMAL, sf2.getEffectiveUpdateApproach());
 		
 		// Test using set methods
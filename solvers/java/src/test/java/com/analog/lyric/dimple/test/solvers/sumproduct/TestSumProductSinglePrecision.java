@@ -0,0 +1,223 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static com.analog.lyric.util.test.ExceptionTester.*;
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.exceptions.DimpleException;
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.Xor;
+import com.analog.lyric.dimple.factorfunctions.core.FactorTable;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Bit;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.schedulers.FloodingScheduler;
+import com.analog.lyric.dimple.schedulers.IScheduler;
+import com.analog.lyric.dimple.schedulers.SequentialScheduler;
+import com.analog.lyric.dimple.solvers.core.parameterizedMessages.DiscreteFloatWeightMessage;
+import com.analog.lyric.dimple.solvers.core.SFactorGraphBase;
+import com.analog.lyric.dimple.solvers.interfaces.IFactorGraphFactory;
+import com.analog.lyric.dimple.solvers.minsum.MinSumSolver;
+import com.analog.lyric.dimple.solvers.particleBP.ParticleBPSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductDiscreteEdge;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+import com.analog.lyric.dimple.test.model.GridGraphBuilder;
+
+/**
+ * Tests for {@link BPOptions#singlePrecisionMessages} in the sum-product solver.
+ * @since 0.08
+ */
+public class TestSumProductSinglePrecision extends DimpleTestBase
+{
+	@Test
+	public void test()
+	{
+		testLoopyGraph(new FloodingScheduler(), 0.0);
+		testLoopyGraph(new FloodingScheduler(), .3);
+		testLoopyGraph(new SequentialScheduler(), 0.0);
+		testLoopyGraph(new SequentialScheduler(), .3);
+
+		// Other solvers reject the option
+		testUnsupported(new MinSumSolver());
+		testUnsupported(new ParticleBPSolver());
+	}
+
+	/**
+	 * Single precision message changes are tracked for {@link BPOptions#convergenceTolerance}.
+	 */
+	@Test
+	public void testConvergence()
+	{
+		Discrete[][] vars = new Discrete[4][4];
+		FactorGraph fg = new GridGraphBuilder().build(vars);
+		SFactorGraphBase<?,?,?,?> sfg = (SFactorGraphBase<?,?,?,?>)requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.iterations, 200);
+		fg.solve();
+		final double[] expectedBelief = vars[1][2].getBelief();
+		
+		fg.setOption(BPOptions.singlePrecisionMessages, true);
+		fg.setOption(BPOptions.convergenceTolerance, 1e-5);
+		fg.solve();
+		assertNotNull(sfg.getMessageDeltaTracker());
+		final int used = sfg.getIterationsUsed();
+		assertTrue(used > 1);
+		assertTrue(used < 200);
+		assertTrue(sfg.getFinalResidual() <= 1e-5);
+		assertArrayEquals(expectedBelief, vars[1][2].getBelief(), 1e-4);
+	}
+	
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Compares beliefs in a loopy graph with and without single precision messages.
+	 */
+	private void testLoopyGraph(IScheduler scheduler, double damping)
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 4);
+		final int nVars = 8;
+
+		FactorGraph fg = new FactorGraph();
+		requireNonNull(fg.setSolverFactory(new SumProductSolver()));
+		fg.setOption(BPOptions.scheduler, scheduler);
+		fg.setOption(BPOptions.damping, damping);
+		fg.setOption(BPOptions.iterations, 20);
+
+		Discrete[] vars = new Discrete[nVars];
+		for (int i = 0; i < nVars; ++i)
+		{
+			vars[i] = new Discrete(domain);
+			double[] input = new double[domain.size()];
+			for (int j = 0; j < input.length; ++j)
+			{
+				input[j] = .1 + testRand.nextDouble();
+			}
+			vars[i].setInput(input);
+		}
+
+		// Ring of random pairwise factors with an equality across it
+		for (int i = 0; i < nVars; ++i)
+		{
+			final IFactorTable table = FactorTable.create(domain, domain);
+			final double[] weights = new double[table.getDomainIndexer().getCardinality()];
+			for (int j = 0; j < weights.length; ++j)
+			{
+				weights[j] = testRand.nextDouble();
+			}
+			table.setWeightsDense(weights);
+			fg.addFactor(table, vars[i], vars[(i + 1) % nVars]);
+		}
+		Factor equals = fg.addFactor(new Equality(), vars[0], vars[nVars / 2]);
+
+		// Factor that uses k-best update
+		Discrete d = new Discrete(domain);
+		final IFactorTable kbestTable = FactorTable.create(domain, domain);
+		kbestTable.setWeightsDense(new double[kbestTable.getDomainIndexer().getCardinality()]);
+		kbestTable.randomizeWeights(testRand);
+		Factor kbest = fg.addFactor(kbestTable, vars[1], d);
+		kbest.setOption(BPOptions.maxMessageSize, 2);
+		
+		// Custom factor that extends SumProductTableFactor
+		Bit a = new Bit(), b = new Bit(), c = new Bit();
+		a.setInput(.3);
+		b.setInput(.8);
+		Factor xor = fg.addFactor(new Xor(), a, b, c);
+		fg.addFactor(new Equality(), a, new Bit());
+
+		fg.solve();
+		final double[][] expected = beliefs(vars, c);
+		assertSinglePrecision(equals, false);
+
+		fg.setOption(BPOptions.singlePrecisionMessages, true);
+		fg.solve();
+		assertSinglePrecision(equals, true);
+		assertSinglePrecision(xor, false);
+		assertSinglePrecision(kbest, false);
+		final double[][] actual = beliefs(vars, c);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], actual[i], 1e-5);
+		}
+
+		// Edge messages are readable outside of updates
+		SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(equals.getSolver());
+		SumProductDiscreteEdge sedge = sfactor.getSiblingEdgeState(0);
+		assertEquals(1.0, sedge.factorToVarMsg.sumOfWeights(), 1e-6);
+		assertArrayEquals(sedge.factorToVarMsg.getWeights(), (double[])sfactor.getOutputMsg(0), 0.0);
+
+		// Reverting option restores double precision results
+		fg.setOption(BPOptions.singlePrecisionMessages, false);
+		fg.solve();
+		assertSinglePrecision(equals, false);
+		final double[][] reverted = beliefs(vars, c);
+		for (int i = 0; i < expected.length; ++i)
+		{
+			assertArrayEquals(expected[i], reverted[i], 1e-14);
+		}
+	}
+
+	private void testUnsupported(IFactorGraphFactory<?> solver)
+	{
+		final FactorGraph fg = new FactorGraph();
+		final Bit a = new Bit(), b = new Bit();
+		final Factor factor = fg.addFactor(new int[][] { {0,0}, {1,1} }, new double[] { 2, 1 }, a, b);
+		fg.setSolverFactory(solver);
+		fg.initialize();
+
+		factor.setOption(BPOptions.singlePrecisionMessages, true);
+		expectThrow(DimpleException.class, fg, "initialize");
+		factor.unsetOption(BPOptions.singlePrecisionMessages);
+		fg.initialize();
+
+		fg.setOption(BPOptions.singlePrecisionMessages, true);
+		expectThrow(DimpleException.class, fg, "initialize");
+	}
+
+	private static void assertSinglePrecision(Factor factor, boolean singlePrecision)
+	{
+		SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(factor.getSolver());
+		for (int i = 0, n = factor.getSiblingCount(); i < n; ++i)
+		{
+			SumProductDiscreteEdge sedge = sfactor.getSiblingEdgeState(i);
+			assertEquals(singlePrecision, sedge.isSinglePrecision());
+			assertEquals(singlePrecision, sedge.varToFactorMsg instanceof DiscreteFloatWeightMessage);
+			assertEquals(singlePrecision, sedge.factorToVarMsg instanceof DiscreteFloatWeightMessage);
+		}
+	}
+
+	private static double[][] beliefs(Discrete[] vars, Discrete extra)
+	{
+		final double[][] beliefs = new double[vars.length + 1][];
+		for (int i = 0; i < vars.length; ++i)
+		{
+			beliefs[i] = vars[i].getBelief();
+		}
+		beliefs[vars.length] = extra.getBelief();
+		return beliefs;
+	}
+}
@@ -0,0 +1,200 @@
+/*******************************************************************************
+*   Copyright 2015 Analog Devices, Inc.
+*
+*   Licensed under the Apache License, Version 2.0 (the "License");
+*   you may not use this file except in compliance with the License.
+*   You may obtain a copy of the License at
+*
+*       http://www.apache.org/licenses/LICENSE-2.0
+*
+*   Unless required by applicable law or agreed to in writing, software
+*   distributed under the License is distributed on an "AS IS" BASIS,
+*   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*   See the License for the specific language governing permissions and
+*   limitations under the License.
+********************************************************************************/
+
+package com.analog.lyric.dimple.test.solvers.sumproduct;
+
+import static java.util.Objects.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.analog.lyric.dimple.factorfunctions.Equality;
+import com.analog.lyric.dimple.factorfunctions.Product;
+import com.analog.lyric.dimple.factorfunctions.core.IFactorTable;
+import com.analog.lyric.dimple.model.core.FactorGraph;
+import com.analog.lyric.dimple.model.domains.DiscreteDomain;
+import com.analog.lyric.dimple.model.factors.Factor;
+import com.analog.lyric.dimple.model.variables.Discrete;
+import com.analog.lyric.dimple.options.BPOptions;
+import com.analog.lyric.dimple.solvers.optimizedupdate.UpdateApproach;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductSolver;
+import com.analog.lyric.dimple.solvers.sumproduct.SumProductTableFactor;
+import com.analog.lyric.dimple.solvers.sumproduct.TableFactorEngine;
+import com.analog.lyric.dimple.solvers.sumproduct.TableFactorEngineDeterministic;
+import com.analog.lyric.dimple.solvers.sumproduct.TableFactorEngineEquality;
+import com.analog.lyric.dimple.test.DimpleTestBase;
+
+/**
+ * Tests for specialized sum-product {@link TableFactorEngine} implementations.
+ * @since 0.08
+ */
+public class TestSumProductTableFactorEngines extends DimpleTestBase
+{
+	@Test
+	public void testEquality()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(0, 4);
+
+		for (double damping : new double[] { 0.0, .25 })
+		{
+			FactorGraph fg = new FactorGraph();
+			fg.setSolverFactory(new SumProductSolver());
+			fg.setOption(BPOptions.damping, damping);
+			// The optimized update plan is built from the sparse index rows
+			fg.setOption(BPOptions.updateApproach, UpdateApproach.NORMAL);
+			Discrete[] vars = new Discrete[8];
+			for (int i = 0; i < vars.length; ++i)
+			{
+				vars[i] = new Discrete(domain);
+			}
+
+			Factor equals = fg.addFactor(new Equality(), vars);
+			Factor smallEquals = fg.addFactor(new Equality(), vars[0], vars[1]);
+			assertTrue(TableFactorEngineEquality.supportsTable(equals.getFactorTable()));
+			assertTrue(TableFactorEngineEquality.supportsTable(smallEquals.getFactorTable()));
+			fg.initialize();
+
+			SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(equals.getSolver());
+			assertTrue(sfactor.getTableFactorEngine() instanceof TableFactorEngineEquality);
+			compareEngines(sfactor, new TableFactorEngineEquality(sfactor));
+			sfactor = (SumProductTableFactor)requireNonNull(smallEquals.getSolver());
+			compareEngines(sfactor, new TableFactorEngineEquality(sfactor));
+
+			// The engines use index columns, so the table's sparse index rows are not needed
+			fg.solve();
+			assertFalse(sfactor.getFactorTable().hasSparseIndices());
+		}
+
+		// Smoothing and mismatched domains are not supported
+		FactorGraph fg = new FactorGraph();
+		Discrete a = new Discrete(domain), b = new Discrete(domain), c = new Discrete(DiscreteDomain.range(0, 5));
+		assertFalse(TableFactorEngineEquality.supportsTable(fg.addFactor(new Equality(1.0), a, b).getFactorTable()));
+		assertFalse(TableFactorEngineEquality.supportsTable(fg.addFactor(new Equality(), a, c).getFactorTable()));
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		final DiscreteDomain domain = DiscreteDomain.range(1, 4);
+
+		for (double damping : new double[] { 0.0, .25 })
+		{
+			FactorGraph fg = new FactorGraph();
+			fg.setSolverFactory(new SumProductSolver());
+			fg.setOption(BPOptions.damping, damping);
+			// The optimized update plan is built from the sparse index rows
+			fg.setOption(BPOptions.updateApproach, UpdateApproach.NORMAL);
+			Discrete out = new Discrete(DiscreteDomain.range(1, 64));
+			Discrete[] in = new Discrete[3];
+			for (int i = 0; i < in.length; ++i)
+			{
+				in[i] = new Discrete(domain);
+			}
+
+			Factor product = fg.addFactor(new Product(), out, in[0], in[1], in[2]);
+			IFactorTable table = product.getFactorTable();
+			assertTrue(table.isDeterministicDirected());
+			assertFalse(TableFactorEngineEquality.supportsTable(table));
+			fg.initialize();
+
+			SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(product.getSolver());
+			assertTrue(sfactor.getTableFactorEngine() instanceof TableFactorEngineDeterministic);
+			compareEngines(sfactor, new TableFactorEngineDeterministic(sfactor));
+
+			fg.solve();
+			assertFalse(sfactor.getFactorTable().hasSparseIndices());
+		}
+
+		// The engine is chosen from the table even if the solver has not computed it before initialization
+		FactorGraph fg = new FactorGraph();
+		fg.setSolverFactory(new SumProductSolver());
+		fg.setOption(BPOptions.updateApproach, UpdateApproach.NORMAL);
+		Discrete out = new Discrete(DiscreteDomain.range(1, 16)), a = new Discrete(domain), b = new Discrete(domain);
+		Factor product = fg.addFactor(new Product(), out, a, b);
+		SumProductTableFactor sfactor = (SumProductTableFactor)requireNonNull(product.getSolver());
+		assertNull(sfactor.getFactorTableIfComputed());
+		fg.initialize();
+		assertTrue(sfactor.getTableFactorEngine() instanceof TableFactorEngineDeterministic);
+	}
+
+	/*-----------------
+	 * Helper methods
+	 */
+
+	/**
+	 * Sets random input messages for {@code sfactor} and verifies that {@code engine} produces the
+	 * same output messages as the generic {@link TableFactorEngine} for both update and updateEdge.
+	 */
+	private void compareEngines(SumProductTableFactor sfactor, TableFactorEngine engine)
+	{
+		final double[][] inputs = sfactor.getInPortMsgs();
+		final double[][] outputs = sfactor.getOutPortMsgs();
+		for (double[] input : inputs)
+		{
+			for (int i = 0; i < input.length; ++i)
+			{
+				input[i] = testRand.nextDouble();
+			}
+		}
+		for (double[] output : outputs)
+		{
+			for (int i = 0; i < output.length; ++i)
+			{
+				output[i] = testRand.nextDouble();
+			}
+		}
+
+		final TableFactorEngine generic = new TableFactorEngine(sfactor);
+		final double[][] initial = copy(outputs);
+
+		generic.update();
+		final double[][] expected = copy(outputs);
+		restore(outputs, initial);
+		engine.update();
+		for (int port = 0; port < outputs.length; ++port)
+		{
+			assertArrayEquals(expected[port], outputs[port], 1e-14);
+		}
+
+		for (int port = 0; port < outputs.length; ++port)
+		{
+			restore(outputs, initial);
+			generic.updateEdge(port);
+			final double[] expectedEdge = outputs[port].clone();
+			restore(outputs, initial);
+			engine.updateEdge(port);
+			assertArrayEquals(expectedEdge, outputs[port], 1e-14);
+		}
+	}
+
+	private static double[][] copy(double[][] messages)
+	{
+		final double[][] result = new double[messages.length][];
+		for (int i = 0; i < messages.length; ++i)
+		{
+			result[i] = messages[i].clone();
+		}
+		return result;
+	}
+
+	private static void restore(double[][] messages, double[][] saved)
+	{
+		for (int i = 0; i < messages.length; ++i)
+		{
+			System.arraycopy(saved[i], 0, messages[i], 0, saved[i].length);
+		}
+	}
+}
@@ -26,6 +26,7 @@ import org.apache.commons.math3.random.RandomGenerator;
 import org.junit.Test;
 
 import com.analog.lyric.math.DimpleRandom;
+import com.analog.lyric.math.Xoroshiro128PlusGenerator;
 
 /**
  * 
@@ -56,6 +57,70 @@ public class TestDimpleRandom
 		}
 	}
 
+	@Test
+	public void testStreams()
+	{
+		DimpleRandom root = DimpleRandom.createStream(42);
+		assertEquals(42, root.getSeed());
+		assertTrue(root.getGenerator() instanceof Xoroshiro128PlusGenerator);
+		
+		// Split streams depend only on seed and index
+		DimpleRandom s1 = root.split(1);
+		root.nextDouble();
+		DimpleRandom s1b = root.split(1);
+		DimpleRandom s2 = root.split(2);
+		assertEquals(s1.getSeed(), s1b.getSeed());
+		assertTrue(s1.getSeed() != s2.getSeed());
+		assertEquals(Xoroshiro128PlusGenerator.deriveSeed(42, 1), s1.getSeed());
+		assertEquals(s1.split(3).getSeed(), s1b.split(3).getSeed());
+		assertTrue(s1.split(3).getSeed() != s2.split(3).getSeed());
+		
+		for (int i = 0; i < 100; ++i)
+		{
+			final double d = s1.nextDouble();
+			assertTrue(d >= 0 && d < 1);
+			assertEquals(d, s1b.nextDouble(), 0.0);
+			assertEquals(s1.nextInt(7), s1b.nextInt(7));
+			assertEquals(s1.nextLong(), s1b.nextLong());
+			assertEquals(s1.nextGaussian(), s1b.nextGaussian(), 0.0);
+			assertEquals(s1.nextGamma(.5, .7), s1b.nextGamma(.5, .7), 0.0);
+			assertEquals(s1.nextBeta(2, 3), s1b.nextBeta(2, 3), 0.0);
+			assertEquals(s1.nextBinomial(10, .3), s1b.nextBinomial(10, .3));
+		}
+		
+		// Reseeding replicates results
+		s1.setSeed(23);
+		s2.setSeed(23);
+		for (int i = 0; i < 10; ++i)
+		{
+			assertEquals(s1.nextDouble(), s2.nextDouble(), 0.0);
+			assertEquals(s1.nextGamma(), s2.nextGamma(), 0.0);
+		}
+		
+		// Fork advances the parent but is deterministic given the parent's seed
+		DimpleRandom r1 = new DimpleRandom(123);
+		DimpleRandom r2 = new DimpleRandom(123);
+		DimpleRandom f1 = r1.fork();
+		assertEquals(f1.getSeed(), r2.fork().getSeed());
+		assertTrue(f1.getSeed() != r1.fork().getSeed());
+		
+		// Sanity check on uniformity of generator
+		Xoroshiro128PlusGenerator generator = new Xoroshiro128PlusGenerator(0);
+		final int n = 100000;
+		final int[] counts = new int[10];
+		double sum = 0.0;
+		for (int i = 0; i < n; ++i)
+		{
+			++counts[generator.nextInt(10)];
+			sum += generator.nextDouble();
+		}
+		assertEquals(.5, sum / n, .01);
+		for (int count : counts)
+		{
+			assertEquals(n / 10, count, n / 100);
+		}
+	}
+	
 	/**
 	 * Measures speed of Apache vs Colt generators
 	 */